@@ -16,6 +16,8 @@ package com.google.testing.junit.runner.sharding;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.inject.Inject;
 
 /**
@@ -33,6 +35,9 @@ public class ShardingEnvironment {
   /** Usage: -Dtest.sharding.strategy=round_robin */
   private static final String TEST_SHARDING_STRATEGY = "test.sharding.strategy";
 
+  /** Usage: -Dtest.sharding.durations=shard_1_of_2/test.xml:shard_2_of_2/test.xml */
+  private static final String TEST_SHARDING_DURATIONS = "test.sharding.durations";
+
   @Inject
   public ShardingEnvironment() {}
 
@@ -93,4 +98,21 @@ public class ShardingEnvironment {
   public String getTestShardingStrategy() {
     return System.getProperty(TEST_SHARDING_STRATEGY);
   }
+
+  /**
+   * Returns the JUnit XML test reports to take test durations from, as optionally specified by the
+   * JVM flag {@link #TEST_SHARDING_DURATIONS}. Used by the {@code durations} sharding strategy.
+   */
+  public List<File> getTestDurationsFiles() {
+    String paths = System.getProperty(TEST_SHARDING_DURATIONS);
+    List<File> files = new ArrayList<>();
+    if (paths != null) {
+      for (String path : paths.split(File.pathSeparator)) {
+        if (!path.isEmpty()) {
+          files.add(new File(path));
+        }
+      }
+    }
+    return files;
+  }
 }
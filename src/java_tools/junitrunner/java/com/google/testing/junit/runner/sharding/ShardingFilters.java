@@ -15,7 +15,11 @@
 package com.google.testing.junit.runner.sharding;
 
 import com.google.testing.junit.runner.sharding.api.ShardingFilterFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import javax.inject.Inject;
 import org.junit.runner.Description;
@@ -51,6 +55,26 @@ public class ShardingFilters {
           int shardIndex, int totalShards) {
         return new RoundRobinShardingFilter(testDescriptions, shardIndex, totalShards);
       }
+    },
+
+    /**
+     * {@link com.google.testing.junit.runner.sharding.WeightedShardingFilter}, weighing tests by
+     * the durations in the test reports given by {@link
+     * ShardingEnvironment#getTestDurationsFiles()}.
+     */
+    DURATIONS {
+      @Override
+      public Filter createFilter(Collection<Description> testDescriptions,
+          int shardIndex, int totalShards) {
+        List<File> durationsFiles = ShardingEnvironment.DEFAULT.getTestDurationsFiles();
+        TestDurations durations;
+        try {
+          durations = TestDurations.readFrom(durationsFiles);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return new WeightedShardingFilter(testDescriptions, shardIndex, totalShards, durations);
+      }
     }
   }
 
@@ -0,0 +1,94 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.sharding;
+
+import com.google.testing.junit.runner.sharding.api.WeightStrategy;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.junit.runner.Description;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * A {@link WeightStrategy} that weighs each test by its duration as recorded in JUnit XML test
+ * reports, such as the test.xml files written by earlier runs of the same test.
+ *
+ * <p>Tests that do not appear in any report are weighed as the average recorded test.
+ */
+public final class TestDurations implements WeightStrategy {
+  private final Map<String, Integer> millisByTest;
+  private final int defaultMillis;
+
+  // VisibleForTesting
+  TestDurations(Map<String, Integer> millisByTest) {
+    this.millisByTest = millisByTest;
+    long total = 0;
+    for (int millis : millisByTest.values()) {
+      total += millis;
+    }
+    this.defaultMillis = millisByTest.isEmpty() ? 1 : (int) (total / millisByTest.size());
+  }
+
+  /**
+   * Reads the durations of all test cases in the given XML reports. Reports that don't exist are
+   * skipped, as there are none before the first run.
+   */
+  public static TestDurations readFrom(Collection<File> xmlFiles) throws IOException {
+    Map<String, Integer> millisByTest = new HashMap<>();
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    for (File xmlFile : xmlFiles) {
+      if (!xmlFile.isFile()) {
+        continue;
+      }
+      NodeList testCases;
+      try {
+        testCases =
+            factory.newDocumentBuilder().parse(xmlFile).getElementsByTagName("testcase");
+      } catch (ParserConfigurationException | SAXException e) {
+        throw new IOException("Could not parse test durations from " + xmlFile, e);
+      }
+      for (int i = 0; i < testCases.getLength(); i++) {
+        Element testCase = (Element) testCases.item(i);
+        String time = testCase.getAttribute("time");
+        if (time.isEmpty()) {
+          continue;
+        }
+        int millis;
+        try {
+          millis = (int) Math.min(Integer.MAX_VALUE, Math.round(Double.parseDouble(time) * 1000));
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        // Matches Description#getDisplayName of a test method.
+        String name =
+            testCase.getAttribute("name") + "(" + testCase.getAttribute("classname") + ")";
+        millisByTest.merge(name, millis, Math::max);
+      }
+    }
+    return new TestDurations(millisByTest);
+  }
+
+  @Override
+  public int getDescriptionWeight(Description description) {
+    Integer millis = millisByTest.get(description.getDisplayName());
+    return millis != null ? millis : defaultMillis;
+  }
+}
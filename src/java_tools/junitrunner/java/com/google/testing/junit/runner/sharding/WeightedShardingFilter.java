@@ -0,0 +1,109 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.sharding;
+
+import com.google.testing.junit.runner.sharding.api.WeightStrategy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+/**
+ * Implements a sharding strategy that balances the total weight of the tests on each shard.
+ *
+ * <p>Tests are assigned heaviest first, each to the shard with the least weight so far. With
+ * weights taken from the durations of a previous run, this keeps a few slow tests from piling up
+ * on one shard and making it the long pole. When all weights are equal this is the same assignment
+ * as {@link RoundRobinShardingFilter}.
+ */
+public final class WeightedShardingFilter extends Filter {
+  // VisibleForTesting
+  final Map<Description, Integer> testToShardMap;
+  // VisibleForTesting
+  final int shardIndex;
+  // VisibleForTesting
+  final int totalShards;
+
+  public WeightedShardingFilter(Collection<Description> testDescriptions,
+      int shardIndex, int totalShards, WeightStrategy weightStrategy) {
+    if (shardIndex < 0 || totalShards <= shardIndex) {
+      throw new IllegalArgumentException();
+    }
+    this.testToShardMap = buildTestToShardMap(testDescriptions, totalShards, weightStrategy);
+    this.shardIndex = shardIndex;
+    this.totalShards = totalShards;
+  }
+
+  /**
+   * Given a list of test case descriptions, returns a mapping from each to the shard it runs on.
+   */
+  private static Map<Description, Integer> buildTestToShardMap(
+      Collection<Description> testDescriptions, int totalShards, WeightStrategy weightStrategy) {
+    Map<Description, Integer> weights = new HashMap<>();
+    for (Description description : testDescriptions) {
+      if (!description.isTest()) {
+        throw new IllegalArgumentException("Test suite should not be included in the set of tests "
+            + "to shard: " + description.getDisplayName());
+      }
+      weights.put(description, Math.max(0, weightStrategy.getDescriptionWeight(description)));
+    }
+
+    // Every shard has to come up with the same assignment, so the order must not depend on the
+    // order of the descriptions: sort by name, then (stably) by descending weight. Duplicate
+    // descriptions collapse into one entry and thus run on the same shard.
+    List<Description> sortedDescriptions = new ArrayList<>(weights.keySet());
+    Collections.sort(sortedDescriptions, new RoundRobinShardingFilter.DescriptionComparator());
+    Collections.sort(sortedDescriptions, (d1, d2) -> weights.get(d2).compareTo(weights.get(d1)));
+
+    Map<Description, Integer> map = new HashMap<>();
+    long[] shardWeights = new long[totalShards];
+    for (Description description : sortedDescriptions) {
+      int lightestShard = 0;
+      for (int shard = 1; shard < totalShards; shard++) {
+        if (shardWeights[shard] < shardWeights[lightestShard]) {
+          lightestShard = shard;
+        }
+      }
+      map.put(description, lightestShard);
+      // Count every test as at least one unit, so that tests without a recorded duration are
+      // still spread across shards.
+      shardWeights[lightestShard] += Math.max(1, weights.get(description));
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  @Override
+  public boolean shouldRun(Description description) {
+    if (description.isSuite()) {
+      return true;
+    }
+    Integer shard = testToShardMap.get(description);
+    if (shard == null) {
+      throw new IllegalArgumentException("This filter keeps a mapping from each test "
+          + "description to a shard, and the given description was not passed in when "
+          + "filter was constructed: " + description);
+    }
+    return shard == shardIndex;
+  }
+
+  @Override
+  public String describe() {
+    return "weighted sharding filter";
+  }
+}
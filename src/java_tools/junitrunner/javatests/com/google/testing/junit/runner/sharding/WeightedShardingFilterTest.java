@@ -0,0 +1,121 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.sharding;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.testing.junit.runner.sharding.api.ShardingFilterFactory;
+import com.google.testing.junit.runner.sharding.testing.ShardingFilterTestCase;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+/** Tests for the {@link WeightedShardingFilter} and {@link TestDurations}. */
+public class WeightedShardingFilterTest extends ShardingFilterTestCase {
+
+  private static final List<Description> GENERIC_TEST_DESCRIPTIONS =
+      ShardingFilterTestCase.createGenericTestCaseDescriptions(6);
+
+  public void testShardingIsBalancedByWeight() {
+    // test0 alone takes as long as all the other tests together.
+    TestDurations durations =
+        new TestDurations(
+            ImmutableMap.<String, Integer>builder()
+                .put(GENERIC_TEST_DESCRIPTIONS.get(0).getDisplayName(), 500)
+                .put(GENERIC_TEST_DESCRIPTIONS.get(1).getDisplayName(), 100)
+                .put(GENERIC_TEST_DESCRIPTIONS.get(2).getDisplayName(), 100)
+                .put(GENERIC_TEST_DESCRIPTIONS.get(3).getDisplayName(), 100)
+                .put(GENERIC_TEST_DESCRIPTIONS.get(4).getDisplayName(), 100)
+                .put(GENERIC_TEST_DESCRIPTIONS.get(5).getDisplayName(), 100)
+                .build());
+    List<Filter> filters =
+        createFilters(
+            GENERIC_TEST_DESCRIPTIONS,
+            2,
+            (descriptions, shardIndex, totalShards) ->
+                new WeightedShardingFilter(descriptions, shardIndex, totalShards, durations));
+
+    Map<Filter, List<Description>> run = simulateTestRun(filters, GENERIC_TEST_DESCRIPTIONS);
+    assertThat(run.get(filters.get(0))).containsExactly(GENERIC_TEST_DESCRIPTIONS.get(0));
+    assertThat(run.get(filters.get(1))).hasSize(5);
+  }
+
+  public void testShardingWithoutDurationsIsRoundRobin() {
+    TestDurations durations = new TestDurations(ImmutableMap.of());
+    for (int totalShards = 1; totalShards <= 7; totalShards++) {
+      for (int shardIndex = 0; shardIndex < totalShards; shardIndex++) {
+        WeightedShardingFilter weighted =
+            new WeightedShardingFilter(
+                GENERIC_TEST_DESCRIPTIONS, shardIndex, totalShards, durations);
+        RoundRobinShardingFilter roundRobin =
+            new RoundRobinShardingFilter(GENERIC_TEST_DESCRIPTIONS, shardIndex, totalShards);
+        for (Description description : GENERIC_TEST_DESCRIPTIONS) {
+          assertThat(weighted.shouldRun(description)).isEqualTo(roundRobin.shouldRun(description));
+        }
+      }
+    }
+  }
+
+  public void testDurationsReadFromTestXml() throws Exception {
+    File dir = Files.createTempDirectory("durations").toFile();
+    File testXml = new File(dir, "test.xml");
+    Files.write(
+        testXml.toPath(),
+        ImmutableList.of(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<testsuites>",
+            "  <testsuite name='com.example.FooTest' tests='2'>",
+            "    <testcase name='testSlow' classname='com.example.FooTest' time='1.5'/>",
+            "    <testcase name='testFast' classname='com.example.FooTest' time='0.25'/>",
+            "  </testsuite>",
+            "</testsuites>"),
+        UTF_8);
+
+    TestDurations durations =
+        TestDurations.readFrom(ImmutableList.of(testXml, new File(dir, "missing.xml")));
+
+    assertThat(durations.getDescriptionWeight(
+            Description.createTestDescription("com.example.FooTest", "testSlow")))
+        .isEqualTo(1500);
+    assertThat(durations.getDescriptionWeight(
+            Description.createTestDescription("com.example.FooTest", "testFast")))
+        .isEqualTo(250);
+    // Tests without a recorded duration are weighed as the average test.
+    assertThat(durations.getDescriptionWeight(
+            Description.createTestDescription("com.example.FooTest", "testNew")))
+        .isEqualTo(875);
+  }
+
+  public void testShouldRun_throwsExceptionForUnknownDescription() {
+    assertThrowsExceptionForUnknownDescription(
+        createShardingFilterFactory().createFilter(GENERIC_TEST_DESCRIPTIONS, 0, 3));
+  }
+
+  @Override
+  protected ShardingFilterFactory createShardingFilterFactory() {
+    return (descriptions, shardIndex, totalShards) ->
+        new WeightedShardingFilter(
+            descriptions,
+            shardIndex,
+            totalShards,
+            description -> description.getDisplayName().length());
+  }
+}
@@ -31,10 +31,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
@@ -62,6 +68,10 @@ import javax.annotation.Nullable;
  * <p>This class performs only rudimentary data checking. If the input files
  * are damaged, the output will likely also be damaged.
  *
+ * <p>Entries that are already compressed as required are copied as raw bytes. Entries that need
+ * to be deflated are compressed on a pool of background threads, and are written out in the order
+ * they were added so the output does not depend on thread scheduling.
+ *
  * <p>Also see:
  * <a href="http://www.pkware.com/documents/casestudies/APPNOTE.TXT">ZIP format</a>
  */
@@ -200,6 +210,19 @@ public class ZipCombiner implements AutoCloseable {
     }
   }
 
+  /** An entry whose data is being deflated in the background, waiting to be written. */
+  private static final class PendingEntry {
+    private final ZipFileEntry entry;
+    private final Future<byte[]> compressed;
+    private final int uncompressedSize;
+
+    PendingEntry(ZipFileEntry entry, Future<byte[]> compressed, int uncompressedSize) {
+      this.entry = entry;
+      this.compressed = compressed;
+      this.uncompressedSize = uncompressedSize;
+    }
+  }
+
   private final class FilterCallback implements StrategyCallback {
     private String filename;
     private final AtomicBoolean called = new AtomicBoolean();
@@ -245,6 +268,14 @@ public class ZipCombiner implements AutoCloseable {
     return new Inflater(true);
   }
 
+  /** Returns the DEFLATE compressed form of the given data. */
+  private static byte[] deflate(byte[] uncompressed) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    copyStream(new DeflaterInputStream(new ByteArrayInputStream(uncompressed), getDeflater()),
+        compressed);
+    return compressed.toByteArray();
+  }
+
   /** Copies all data from the input stream to the output stream. */
   private static long copyStream(InputStream from, OutputStream to) throws IOException {
     byte[] buf = new byte[0x1000];
@@ -257,6 +288,12 @@ public class ZipCombiner implements AutoCloseable {
     return total;
   }
 
+  /** Size of the buffer in front of the output stream. */
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+  /** Bounds on the entries waiting to be written, to limit the memory held by their data. */
+  private static final int MAX_PENDING_ENTRIES = 1024;
+  private static final long MAX_PENDING_BYTES = 64L << 20;
+
   private final OutputMode mode;
   private final ZipEntryFilter entryFilter;
   private final FilterCallback callback;
@@ -265,6 +302,12 @@ public class ZipCombiner implements AutoCloseable {
   private final Map<String, ZipFileEntry> entries;
   private final Map<String, EntryAction> actions;
 
+  /** Entries being deflated in the background, in the order they must be written. */
+  private final ArrayDeque<PendingEntry> pendingEntries = new ArrayDeque<>();
+  private long pendingBytes;
+  /** Created on first use, so combining already compressed entries starts no threads. */
+  @Nullable private ExecutorService deflaterPool;
+
   /**
    * Creates a {@link ZipCombiner} for combining ZIP files using the specified {@link OutputMode},
    * {@link ZipEntryFilter}, and destination {@link OutputStream}.
@@ -277,7 +320,7 @@ public class ZipCombiner implements AutoCloseable {
     this.mode = mode;
     this.entryFilter = entryFilter;
     this.callback = new FilterCallback();
-    this.out = new ZipWriter(new BufferedOutputStream(out), UTF_8);
+    this.out = new ZipWriter(new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE), UTF_8);
     this.entries = new HashMap<>();
     this.actions = new HashMap<>();
   }
@@ -324,6 +367,7 @@ public class ZipCombiner implements AutoCloseable {
    * @throws IOException if there is an error writing the prefix file
    */
   public void prependExecutable(InputStream in) throws IOException {
+    writePendingEntries(0);
     out.startPrefixFile();
     copyStream(in, out);
     out.endPrefixFile();
@@ -361,6 +405,7 @@ public class ZipCombiner implements AutoCloseable {
     entry.setCompressedSize(0);
     entry.setTime(date != null ? date.getTime() : new Date().getTime());
     entry.setExtra(new ExtraDataList(extra));
+    writePendingEntries(0);
     out.putNextEntry(entry);
     out.closeEntry();
     entries.put(filename, entry);
@@ -491,12 +536,64 @@ public class ZipCombiner implements AutoCloseable {
       entry.setCompressedSize(uncompressed.length);
       writeEntry(entry, new ByteArrayInputStream(uncompressed));
     } else {
-      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
-      copyStream(new DeflaterInputStream(new ByteArrayInputStream(uncompressed), getDeflater()),
-          compressed);
-      entry.setMethod(Compression.DEFLATED);
-      entry.setCompressedSize(compressed.size());
-      writeEntry(entry, new ByteArrayInputStream(compressed.toByteArray()));
+      writeEntryDeflated(entry, uncompressed);
+    }
+  }
+
+  /**
+   * Deflates the given data in the background and queues the entry to be written once all entries
+   * added before it have been written.
+   */
+  private void writeEntryDeflated(ZipFileEntry entry, byte[] uncompressed) throws IOException {
+    if (deflaterPool == null) {
+      deflaterPool =
+          Executors.newFixedThreadPool(
+              Runtime.getRuntime().availableProcessors(),
+              r -> {
+                Thread thread = new Thread(r, "zip-combiner-deflater");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    entry.setMethod(Compression.DEFLATED);
+    pendingEntries.add(
+        new PendingEntry(
+            entry, deflaterPool.submit(() -> deflate(uncompressed)), uncompressed.length));
+    pendingBytes += uncompressed.length;
+    // Claim the name right away, so later duplicates are skipped as if it were already written.
+    entries.put(entry.getName(), entry);
+    while (pendingEntries.size() > MAX_PENDING_ENTRIES || pendingBytes > MAX_PENDING_BYTES) {
+      writePendingEntries(pendingEntries.size() - 1);
+    }
+  }
+
+  /** Writes queued entries in order until no more than {@code maxPending} are left. */
+  private void writePendingEntries(int maxPending) throws IOException {
+    while (pendingEntries.size() > maxPending) {
+      PendingEntry pending = pendingEntries.remove();
+      pendingBytes -= pending.uncompressedSize;
+      byte[] compressed;
+      try {
+        compressed = pending.compressed.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while compressing " + pending.entry.getName());
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IOException(cause);
+      }
+      pending.entry.setCompressedSize(compressed.length);
+      out.putNextEntry(pending.entry);
+      out.write(compressed);
+      out.closeEntry();
     }
   }
 
@@ -525,14 +622,13 @@ public class ZipCombiner implements AutoCloseable {
 
     InputStream data;
     if (mode == OutputMode.FORCE_DEFLATE && entry.getMethod() != Compression.DEFLATED) {
-      // The output mode is deflate, but the entry compression is not. Create a deflater stream
-      // from the raw file data and deflate to a temporary byte array to determine the deflated
-      // size. Then use this byte array as the input stream for writing the entry.
-      ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-      copyStream(new DeflaterInputStream(zip.getRawInputStream(entry), getDeflater()), tmp);
-      data = new ByteArrayInputStream(tmp.toByteArray());
-      outEntry.setMethod(Compression.DEFLATED);
-      outEntry.setCompressedSize(tmp.size());
+      // The output mode is deflate, but the entry compression is not. Read the raw file data here,
+      // as the reader is not thread-safe, and deflate it in the background; the deflated size is
+      // only known once that is done.
+      ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+      copyStream(zip.getRawInputStream(entry), uncompressed);
+      writeEntryDeflated(outEntry, uncompressed.toByteArray());
+      return;
     } else if (mode == OutputMode.FORCE_STORED && entry.getMethod() != Compression.STORED) {
       // The output mode is stored, but the entry compression is not; create an inflater stream
       // from the raw file data. 
@@ -550,6 +646,7 @@ public class ZipCombiner implements AutoCloseable {
    * Writes the specified {@link ZipFileEntry} using the data from the given {@link InputStream}.
    */
   private void writeEntry(ZipFileEntry entry, InputStream data) throws IOException {
+    writePendingEntries(0);
     out.putNextEntry(entry);
     copyStream(data, out);
     out.closeEntry();
@@ -592,6 +689,14 @@ public class ZipCombiner implements AutoCloseable {
         writeEntryFromBuffer(e, uncompressed.toByteArray());
       }
     }
+    try {
+      writePendingEntries(0);
+    } finally {
+      if (deflaterPool != null) {
+        deflaterPool.shutdownNow();
+        deflaterPool = null;
+      }
+    }
     out.finish();
   }
 
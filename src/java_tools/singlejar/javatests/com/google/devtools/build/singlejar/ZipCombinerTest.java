@@ -776,6 +776,30 @@ public class ZipCombinerTest {
         .isEqualTo(y.getFlags() | (1 << 3) | (1 << 11));
   }
 
+  @Test
+  public void testForceDeflateKeepsEntryOrder() throws IOException {
+    int fileCount = 2000;
+    ZipFactory factory = new ZipFactory();
+    for (int i = 0; i < fileCount; i++) {
+      // Alternate between entries that have to be deflated and ones that are copied as is.
+      factory.addFile("hello" + i, "Hello " + i + "!", i % 2 == 0);
+    }
+    File zip = writeInputStreamToFile(factory.toInputStream());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipCombiner zipCombiner = new ZipCombiner(OutputMode.FORCE_DEFLATE, out)) {
+      zipCombiner.addZip(zip);
+      zipCombiner.addDirectory("dir/", ZipCombiner.DOS_EPOCH);
+      zipCombiner.addFile("last", ZipCombiner.DOS_EPOCH, asStream("Last!"));
+    }
+    ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+    for (int i = 0; i < fileCount; i++) {
+      assertEntry(zipInput, "hello" + i, "Hello " + i + "!");
+    }
+    assertEntry(zipInput, "dir/", "");
+    assertEntry(zipInput, "last", "Last!");
+    assertThat(zipInput.getNextEntry()).isNull();
+  }
+
   /**
    * Ensures that the code that grows the central directory and the code that patches it is not
    * obviously broken.
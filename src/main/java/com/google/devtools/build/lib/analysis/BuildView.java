@@ -14,6 +14,7 @@
 
 package com.google.devtools.build.lib.analysis;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
@@ -44,6 +45,7 @@ import com.google.devtools.build.lib.analysis.config.InvalidConfigurationExcepti
 import com.google.devtools.build.lib.analysis.constraints.PlatformRestrictionsResult;
 import com.google.devtools.build.lib.analysis.constraints.RuleContextConstraintSemantics;
 import com.google.devtools.build.lib.analysis.constraints.TopLevelConstraintSemantics;
+import com.google.devtools.build.lib.analysis.starlark.FunctionTransitionUtil;
 import com.google.devtools.build.lib.analysis.test.CoverageReportActionFactory;
 import com.google.devtools.build.lib.analysis.test.CoverageReportActionFactory.CoverageReportActionsWrapper;
 import com.google.devtools.build.lib.analysis.test.InstrumentedFilesInfo;
@@ -207,6 +209,7 @@ public class BuildView {
       throws ViewCreationFailedException, InvalidConfigurationException, InterruptedException {
     logger.atInfo().log("Starting analysis");
     pollInterruptedStatus();
+    CacheStats transitionCacheStatsBefore = FunctionTransitionUtil.getCacheStats();
 
     skyframeBuildView.resetProgressReceiver();
 
@@ -444,6 +447,9 @@ public class BuildView {
             skyframeAnalysisResult,
             targetsToSkip,
             topLevelTargetsWithConfigsResult);
+    logger.atInfo().log(
+        "Starlark transition cache stats: %s",
+        FunctionTransitionUtil.getCacheStats().minus(transitionCacheStatsBefore));
     logger.atInfo().log("Finished analysis");
     return result;
   }
@@ -228,6 +228,46 @@ public final class BuildOptions implements Cloneable, Serializable {
     return new BuildOptions(nativeOptionsBuilder.build(), ImmutableMap.copyOf(starlarkOptionsMap));
   }
 
+  /**
+   * Returns options that are otherwise identical to these, with the given fragments replacing the
+   * fragments of the same class.
+   *
+   * <p>Unlike {@link #clone}, fragments that are not replaced are shared with this instance by
+   * reference, so that deriving options allocates in proportion to the fragments that change and
+   * {@link #diff} can skip unchanged fragments by identity. Callers must therefore not mutate any
+   * fragment of either instance afterwards, which is the contract for options passed to
+   * transitions anyway.
+   */
+  public BuildOptions withReplacedFragments(
+      Map<Class<? extends FragmentOptions>, FragmentOptions> replacements) {
+    if (replacements.isEmpty()) {
+      return this;
+    }
+    ImmutableMap.Builder<Class<? extends FragmentOptions>, FragmentOptions> nativeOptionsBuilder =
+        ImmutableMap.builderWithExpectedSize(fragmentOptionsMap.size());
+    int replaced = 0;
+    for (Map.Entry<Class<? extends FragmentOptions>, FragmentOptions> entry :
+        fragmentOptionsMap.entrySet()) {
+      FragmentOptions replacement = replacements.get(entry.getKey());
+      if (replacement != null) {
+        checkArgument(
+            replacement.getClass() == entry.getKey(),
+            "%s cannot replace %s",
+            replacement.getClass(),
+            entry.getKey());
+        replaced++;
+      }
+      nativeOptionsBuilder.put(
+          entry.getKey(), replacement != null ? replacement : entry.getValue());
+    }
+    checkArgument(
+        replaced == replacements.size(),
+        "Cannot add fragments %s to %s",
+        Sets.difference(replacements.keySet(), fragmentOptionsMap.keySet()),
+        fragmentOptionsMap.keySet());
+    return new BuildOptions(nativeOptionsBuilder.build(), starlarkOptionsMap);
+  }
+
   @Override
   public boolean equals(Object other) {
     if (this == other) {
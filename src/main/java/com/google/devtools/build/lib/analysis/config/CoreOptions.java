@@ -924,7 +924,7 @@ public class CoreOptions extends FragmentOptions implements Cloneable {
 
   @Override
   public CoreOptions getNormalized() {
-    CoreOptions result = (CoreOptions) clone();
+    CoreOptions result = this;
 
     if (collapseDuplicateDefines) {
       LinkedHashMap<String, String> flagValueByName = new LinkedHashMap<>();
@@ -933,9 +933,10 @@ public class CoreOptions extends FragmentOptions implements Cloneable {
         flagValueByName.put(entry.getKey(), entry.getValue());
       }
 
-      // This check is an optimization to avoid creating a new list if the normalization was a
-      // no-op.
+      // This check is an optimization to avoid cloning and creating a new list if the
+      // normalization was a no-op.
       if (flagValueByName.size() != result.commandLineBuildVariables.size()) {
+        result = (CoreOptions) clone();
         result.commandLineBuildVariables =
             flagValueByName.entrySet().stream()
                 // The entries in the transformed list must be serializable.
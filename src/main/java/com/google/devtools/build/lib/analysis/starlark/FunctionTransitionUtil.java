@@ -18,6 +18,10 @@ import static com.google.devtools.build.lib.analysis.config.StarlarkDefinedConfi
 import static com.google.devtools.build.lib.analysis.config.transitions.ConfigurationTransition.PATCH_TRANSITION_KEY;
 import static java.util.stream.Collectors.joining;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -31,6 +35,7 @@ import com.google.devtools.build.lib.analysis.config.StarlarkDefinedConfigTransi
 import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
+import com.google.devtools.build.lib.events.StoredEventHandler;
 import com.google.devtools.build.lib.packages.StructImpl;
 import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.common.options.OptionDefinition;
@@ -42,6 +47,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -62,6 +68,21 @@ public class FunctionTransitionUtil {
   // Limited for ergonomics and MAX_PATH reasons.
   private static final int HASH_LENGTH = 12;
 
+  /**
+   * Results of earlier successful {@link #applyAndValidate} calls by transition, so that applying
+   * the same transition with the same attributes to the same options skips both the Starlark call
+   * and the conversion of options to and from Starlark.
+   *
+   * <p>The cache is shared by all builds of the server. Transitions are held weakly and compared by
+   * identity, so the results of a transition go away with it, e.g. when the .bzl file defining it
+   * is loaded again after a change. Everything is dropped by {@link #clearCache} when the analysis
+   * cache is discarded. Results are stored softly.
+   */
+  private static final Cache<StarlarkDefinedConfigTransition, Cache<CacheKey, CachedResult>>
+      cache = Caffeine.newBuilder().weakKeys().build();
+
+  private static final ConcurrentStatsCounter cacheStats = new ConcurrentStatsCounter();
+
   /**
    * Figure out what build settings the given transition changes and apply those changes to the
    * incoming {@link BuildOptions}. For native options, this involves a preprocess step of
@@ -81,6 +102,53 @@ public class FunctionTransitionUtil {
       StructImpl attrObject,
       EventHandler handler)
       throws InterruptedException {
+    Cache<CacheKey, CachedResult> transitionCache =
+        cache.get(starlarkTransition, unused -> Caffeine.newBuilder().softValues().build());
+    CacheKey cacheKey = new CacheKey(buildOptions.checksum(), attrObject);
+    CachedResult cachedResult = transitionCache.getIfPresent(cacheKey);
+    if (cachedResult != null) {
+      cacheStats.recordHits(1);
+      cachedResult.events.forEach(handler::handle);
+      return cachedResult.splitBuildOptions;
+    }
+    cacheStats.recordMisses(1);
+
+    // Events are recorded so that they can be replayed on cache hits, e.g. a print() in the
+    // transition function.
+    StoredEventHandler storedEventHandler = new StoredEventHandler();
+    Map<String, BuildOptions> result;
+    try {
+      result =
+          applyAndValidateUncached(
+              buildOptions, starlarkTransition, attrObject, storedEventHandler);
+    } finally {
+      storedEventHandler.getEvents().forEach(handler::handle);
+    }
+    if (result != null && !storedEventHandler.hasErrors()) {
+      transitionCache.put(
+          cacheKey,
+          new CachedResult(ImmutableMap.copyOf(result), storedEventHandler.getEvents()));
+    }
+    return result;
+  }
+
+  /** Returns the hit and miss counts of the cache of transition results since server start. */
+  public static CacheStats getCacheStats() {
+    return cacheStats.snapshot();
+  }
+
+  /** Drops all cached transition results. */
+  public static void clearCache() {
+    cache.invalidateAll();
+  }
+
+  @Nullable
+  private static Map<String, BuildOptions> applyAndValidateUncached(
+      BuildOptions buildOptions,
+      StarlarkDefinedConfigTransition starlarkTransition,
+      StructImpl attrObject,
+      EventHandler handler)
+      throws InterruptedException {
     try {
       checkForDenylistedOptions(starlarkTransition);
 
@@ -272,16 +340,14 @@ public class FunctionTransitionUtil {
       Map<String, OptionInfo> optionInfoMap,
       StarlarkDefinedConfigTransition starlarkTransition)
       throws ValidationException {
-    // toOptions being null means the transition hasn't changed anything. We avoid preemptively
-    // cloning it from fromOptions since options cloning is an expensive operation.
-    BuildOptions toOptions = null;
+    // Native fragments that are different after this transition, each cloned from fromOptions the
+    // first time one of its options changes. All other fragments are shared with fromOptions.
+    Map<Class<? extends FragmentOptions>, FragmentOptions> changedFragments =
+        new LinkedHashMap<>();
     // The names and values of options (Starlark + native) that are different after this transition.
     Set<String> convertedNewValues = new HashSet<>();
-    // Starlark options that are different after this transition. We collect all of them, then clone
-    // the build options once with all cumulative changes. Native option changes, in contrast, are
-    // set directly in the BuildOptions instance. The former approach is preferred since it makes
-    // BuildOptions objects more immutable. Native options use the latter approach for legacy
-    // reasons. While not preferred, direct mutation doesn't require expensive cloning.
+    // Starlark options that are different after this transition. We collect all of them, then
+    // build the new options once with all cumulative changes.
     Map<Label, Object> changedStarlarkOptions = new LinkedHashMap<>();
     for (Map.Entry<String, Object> entry : newValues.entrySet()) {
       String optionName = entry.getKey();
@@ -357,10 +423,10 @@ public class FunctionTransitionUtil {
           if ((oldValue == null && convertedValue != null)
               || (oldValue != null && convertedValue == null)
               || (oldValue != null && !oldValue.equals(convertedValue))) {
-            if (toOptions == null) {
-              toOptions = fromOptions.clone();
-            }
-            field.set(toOptions.get(optionInfo.getOptionClass()), convertedValue);
+            FragmentOptions changedFragment =
+                changedFragments.computeIfAbsent(
+                    optionInfo.getOptionClass(), c -> fromOptions.get(c).clone());
+            field.set(changedFragment, convertedValue);
             convertedNewValues.add(entry.getKey());
           }
 
@@ -377,16 +443,19 @@ public class FunctionTransitionUtil {
       }
     }
 
+    if (changedFragments.isEmpty() && changedStarlarkOptions.isEmpty()) {
+      return fromOptions;
+    }
+    // CoreOptions is updated below to record this transition.
+    changedFragments.computeIfAbsent(CoreOptions.class, c -> fromOptions.get(c).clone());
+    BuildOptions toOptions = fromOptions.withReplacedFragments(changedFragments);
     if (!changedStarlarkOptions.isEmpty()) {
       toOptions =
           BuildOptions.builder()
-              .merge(toOptions == null ? fromOptions.clone() : toOptions)
+              .merge(toOptions)
               .addStarlarkOptions(changedStarlarkOptions)
               .build();
     }
-    if (toOptions == null) {
-      return fromOptions;
-    }
     if (starlarkTransition.isForAnalysisTesting()) {
       // We need to record every time we change a configuration option.
       // see {@link #updateOutputDirectoryNameFragment} for usage.
@@ -492,4 +561,51 @@ public class FunctionTransitionUtil {
       return definition;
     }
   }
+
+  /**
+   * Identifies the result of {@link #applyAndValidate} for a given transition: the attributes it
+   * can read and the options it is applied to, matched by {@link BuildOptions#checksum()}.
+   */
+  private static final class CacheKey {
+    private final String checksum;
+    private final StructImpl attrObject;
+    private final int hashCode;
+
+    CacheKey(String checksum, StructImpl attrObject) {
+      this.checksum = checksum;
+      this.attrObject = attrObject;
+      // Hashing the attributes walks all of their values, so only do it once.
+      this.hashCode = Objects.hash(checksum, attrObject);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (other == this) {
+        return true;
+      }
+      if (!(other instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey casted = (CacheKey) other;
+      return hashCode == casted.hashCode
+          && checksum.equals(casted.checksum)
+          && attrObject.equals(casted.attrObject);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final class CachedResult {
+    private final ImmutableMap<String, BuildOptions> splitBuildOptions;
+    private final ImmutableList<Event> events;
+
+    CachedResult(
+        ImmutableMap<String, BuildOptions> splitBuildOptions, ImmutableList<Event> events) {
+      this.splitBuildOptions = splitBuildOptions;
+      this.events = events;
+    }
+  }
 }
@@ -22,8 +22,11 @@ import com.google.devtools.build.lib.bazel.repository.DecompressorValue.Decompre
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Date;
 import java.util.HashMap;
@@ -37,22 +40,58 @@ import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
  * Common code for unarchiving a compressed TAR file.
  */
 public abstract class CompressedTarFunction implements Decompressor {
-  protected abstract InputStream getDecompressorStream(DecompressorDescriptor descriptor)
-      throws IOException;
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  /** Returns a stream of the uncompressed tar content of the given compressed stream. */
+  protected abstract InputStream getDecompressorStream(InputStream compressed) throws IOException;
 
   @Override
   public Path decompress(DecompressorDescriptor descriptor)
       throws InterruptedException, IOException {
+    InputStream compressed =
+        new BufferedInputStream(
+            new FileInputStream(descriptor.archivePath().getPathFile()), BUFFER_SIZE);
+    decompress(
+        compressed,
+        descriptor.archivePath().getBaseName(),
+        descriptor.prefix(),
+        descriptor.repositoryPath(),
+        descriptor.repositoryPath());
+    return descriptor.repositoryPath();
+  }
+
+  /**
+   * Extracts the compressed tar content of the given stream, which is closed afterwards, into
+   * {@code outputDirectory}.
+   *
+   * <p>Absolute symlinks are resolved against {@code repositoryPath}, which is where the content
+   * ends up eventually, even if {@code outputDirectory} is a staging directory.
+   */
+  void decompress(
+      InputStream compressed,
+      String archiveName,
+      Optional<String> prefix,
+      Path repositoryPath,
+      Path outputDirectory)
+      throws InterruptedException, IOException {
     if (Thread.interrupted()) {
+      compressed.close();
       throw new InterruptedException();
     }
-    Optional<String> prefix = descriptor.prefix();
     boolean foundPrefix = false;
     Set<String> availablePrefixes = new HashSet<>();
     // Store link, target info of symlinks, we create them after regular files are extracted.
     Map<Path, PathFragment> symlinks = new HashMap<>();
 
-    try (InputStream decompressorStream = getDecompressorStream(descriptor)) {
+    InputStream uncompressed;
+    try {
+      uncompressed = getDecompressorStream(compressed);
+    } catch (IOException e) {
+      compressed.close();
+      throw e;
+    }
+    // Decompress on a separate thread so that decompression overlaps with writing the entries.
+    try (InputStream decompressorStream = new ReadAheadInputStream(uncompressed, archiveName)) {
       TarArchiveInputStream tarStream = new TarArchiveInputStream(decompressorStream);
       TarArchiveEntry entry;
       while ((entry = tarStream.getNextTarEntry()) != null) {
@@ -71,18 +110,20 @@ public abstract class CompressedTarFunction implements Decompressor {
           continue;
         }
 
-        Path filePath = descriptor.repositoryPath().getRelative(entryPath.getPathFragment());
+        Path filePath = outputDirectory.getRelative(entryPath.getPathFragment());
         FileSystemUtils.createDirectoryAndParents(filePath.getParentDirectory());
         if (entry.isDirectory()) {
           FileSystemUtils.createDirectoryAndParents(filePath);
         } else {
           if (entry.isSymbolicLink() || entry.isLink()) {
             PathFragment targetName = PathFragment.create(entry.getLinkName());
-            targetName = maybeDeprefixSymlink(targetName, prefix, descriptor.repositoryPath());
             if (entry.isSymbolicLink()) {
-              symlinks.put(filePath, targetName);
+              symlinks.put(filePath, maybeDeprefixSymlink(targetName, prefix, repositoryPath));
             } else {
-              Path targetPath = descriptor.repositoryPath().getRelative(targetName);
+              // Hard links must point at the extracted file itself, wherever it is extracted to.
+              Path targetPath =
+                  outputDirectory.getRelative(
+                      maybeDeprefixSymlink(targetName, prefix, outputDirectory));
               if (filePath.equals(targetPath)) {
                 // The behavior here is semantically different, depending on whether the underlying
                 // filesystem is case-sensitive or case-insensitive. However, it is effectively the
@@ -128,8 +169,8 @@ public abstract class CompressedTarFunction implements Decompressor {
       if (prefix.isPresent() && !foundPrefix) {
         throw new CouldNotFindPrefixException(prefix.get(), availablePrefixes);
       }
+    } catch (InterruptedIOException e) {
+      throw new InterruptedException(e.getMessage());
     }
-
-    return descriptor.repositoryPath();
   }
 }
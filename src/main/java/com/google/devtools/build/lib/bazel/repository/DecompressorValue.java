@@ -22,6 +22,7 @@ import com.google.devtools.build.skyframe.SkyFunctionException.Transience;
 import com.google.devtools.build.skyframe.SkyValue;
 import java.io.IOException;
 import java.util.Set;
+import javax.annotation.Nullable;
 import net.starlark.java.eval.Starlark;
 
 /**
@@ -91,6 +92,21 @@ public class DecompressorValue implements SkyValue {
 
   static Decompressor getDecompressor(Path archivePath)
       throws RepositoryFunctionException {
+    Decompressor decompressor = getDecompressorOrNull(archivePath);
+    if (decompressor == null) {
+      throw new RepositoryFunctionException(
+          Starlark.errorf(
+              "Expected a file with a .zip, .jar, .war, .tar, .tar.gz, .tgz, .tar.xz, .txz, or "
+                  + ".tar.bz2 suffix (got %s)",
+              archivePath),
+          Transience.PERSISTENT);
+    }
+    return decompressor;
+  }
+
+  /** Returns the decompressor for the suffix of the given archive, or null if it has none. */
+  @Nullable
+  static Decompressor getDecompressorOrNull(Path archivePath) {
     String baseName = archivePath.getBaseName();
     if (baseName.endsWith(".zip") || baseName.endsWith(".jar") || baseName.endsWith(".war")) {
       return ZipDecompressor.INSTANCE;
@@ -103,12 +119,7 @@ public class DecompressorValue implements SkyValue {
     } else if (baseName.endsWith(".tar.bz2")) {
       return TarBz2Function.INSTANCE;
     } else {
-      throw new RepositoryFunctionException(
-          Starlark.errorf(
-              "Expected a file with a .zip, .jar, .war, .tar, .tar.gz, .tgz, .tar.xz, .txz, or "
-                  + ".tar.bz2 suffix (got %s)",
-              archivePath),
-          Transience.PERSISTENT);
+      return null;
     }
   }
 
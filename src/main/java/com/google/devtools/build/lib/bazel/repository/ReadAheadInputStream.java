@@ -0,0 +1,157 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.bazel.repository;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link InputStream} that reads its delegate on a separate thread, a bounded number of chunks
+ * ahead of the consumer.
+ *
+ * <p>Used to decompress an archive concurrently with parsing it and writing out its entries, so
+ * that extraction takes roughly the time of the slower of the two rather than their sum.
+ *
+ * <p>The delegate is owned by the reading thread and closed by it once the end of the stream is
+ * reached, an error occurs, or this stream is closed. Errors of the reading thread are rethrown
+ * to the consumer, wrapped in an {@link IOException}, by every read after the content that was
+ * read before the error. Reading a closed stream throws an {@link IOException}.
+ */
+final class ReadAheadInputStream extends InputStream {
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int MAX_CHUNKS_AHEAD = 16;
+  private static final byte[] END_OF_STREAM = new byte[0];
+
+  private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_CHUNKS_AHEAD);
+  private final String name;
+  private final Thread readerThread;
+  // Written by the reader thread before it enqueues END_OF_STREAM, so the queue publishes it.
+  @Nullable private Throwable readFailure;
+
+  private byte[] currentChunk;
+  private int position;
+  private boolean closed;
+
+  ReadAheadInputStream(InputStream delegate, String name) {
+    this.name = name;
+    readerThread = new Thread(() -> readAhead(delegate), "read-ahead " + name);
+    readerThread.setDaemon(true);
+    readerThread.start();
+  }
+
+  private void readAhead(InputStream delegate) {
+    try (InputStream in = delegate) {
+      int read;
+      do {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        read = ByteStreams.read(in, chunk, 0, CHUNK_SIZE);
+        if (read > 0) {
+          chunks.put(read == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, read));
+        }
+      } while (read == CHUNK_SIZE);
+    } catch (InterruptedException e) {
+      // The consumer closed the stream and is not interested in the remaining content.
+      return;
+    } catch (Throwable e) {
+      // Anything else, including unchecked exceptions from the decompressor, must reach the
+      // consumer, which would otherwise wait for the next chunk forever.
+      readFailure = e;
+    }
+    try {
+      chunks.put(END_OF_STREAM);
+    } catch (InterruptedException e) {
+      // Closed by the consumer.
+    }
+  }
+
+  /** Makes sure the current chunk has bytes left and returns false at the end of the stream. */
+  private boolean ensureAvailable() throws IOException {
+    if (closed) {
+      throw new IOException("Stream " + name + " is closed");
+    }
+    if (currentChunk == END_OF_STREAM) {
+      return atEndOfStream();
+    }
+    if (currentChunk != null && position < currentChunk.length) {
+      return true;
+    }
+    try {
+      currentChunk = chunks.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for archive content");
+    }
+    position = 0;
+    if (currentChunk == END_OF_STREAM) {
+      return atEndOfStream();
+    }
+    return true;
+  }
+
+  /** Returns false if the reading thread reached the end of the stream, and throws otherwise. */
+  private boolean atEndOfStream() throws IOException {
+    if (readFailure != null) {
+      throw new IOException("Failed to read " + name, readFailure);
+    }
+    return false;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureAvailable()) {
+      return -1;
+    }
+    return currentChunk[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureAvailable()) {
+      return -1;
+    }
+    int count = Math.min(len, currentChunk.length - position);
+    System.arraycopy(currentChunk, position, b, off, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+    if (closed) {
+      throw new IOException("Stream " + name + " is closed");
+    }
+    return currentChunk == null || currentChunk == END_OF_STREAM
+        ? 0
+        : currentChunk.length - position;
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      readerThread.interrupt();
+      currentChunk = null;
+    }
+  }
+}
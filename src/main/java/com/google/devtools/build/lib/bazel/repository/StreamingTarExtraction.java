@@ -0,0 +1,234 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.bazel.repository;
+
+import com.google.common.base.Optional;
+import com.google.devtools.build.lib.bazel.repository.DecompressorValue.Decompressor;
+import com.google.devtools.build.lib.bazel.repository.downloader.DownloadSink;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.annotation.Nullable;
+
+/**
+ * Extracts a tar archive while it is being downloaded.
+ *
+ * <p>The archive is extracted on a separate thread into a staging directory. {@link #commit} moves
+ * the extracted entries into the repository only if the download completed, which implies that
+ * the checksum of the archive matched. If the download was abandoned, for example because the
+ * checksum didn't match, or if the extraction failed, nothing is moved and the caller has to
+ * extract the downloaded file as usual. This restarts the extraction from verified content, and
+ * reports the same errors as if the archive had never been streamed.
+ *
+ * <p>Zip archives are not streamed, since they can only be read from their central directory at
+ * the end of the file.
+ */
+public final class StreamingTarExtraction implements DownloadSink {
+  private static final int MAX_CHUNKS_AHEAD = 16;
+  private static final byte[] END_OF_STREAM = new byte[0];
+  private static final byte[] ABANDONED = new byte[0];
+
+  private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_CHUNKS_AHEAD);
+  private final Path repositoryPath;
+  private final Optional<String> prefix;
+  private final Path stagingDirectory;
+
+  @Nullable private Thread extractorThread;
+  // Set by the extractor thread once it no longer reads chunks, so that the download stops
+  // passing them on instead of waiting for it.
+  private volatile boolean extractorDone;
+  private volatile boolean extracted;
+  private volatile boolean completed;
+
+  /**
+   * @param repositoryPath the directory the archive is eventually extracted to
+   * @param prefix the prefix to strip from the entries of the archive, if any
+   * @param stagingDirectory a directory that does not exist yet, on the same file system as {@code
+   *     repositoryPath}, to extract the archive to until the download completes
+   */
+  public StreamingTarExtraction(
+      Path repositoryPath, @Nullable String prefix, Path stagingDirectory) {
+    this.repositoryPath = repositoryPath;
+    this.prefix = Optional.fromNullable(prefix);
+    this.stagingDirectory = stagingDirectory;
+  }
+
+  @Override
+  public boolean accept(Path destination) {
+    Decompressor decompressor = DecompressorValue.getDecompressorOrNull(destination);
+    if (extractorThread != null || !(decompressor instanceof CompressedTarFunction)) {
+      return false;
+    }
+    CompressedTarFunction tarFunction = (CompressedTarFunction) decompressor;
+    String archiveName = destination.getBaseName();
+    extractorThread = new Thread(() -> extract(tarFunction, archiveName), "extract " + archiveName);
+    extractorThread.setDaemon(true);
+    extractorThread.start();
+    return true;
+  }
+
+  private void extract(CompressedTarFunction tarFunction, String archiveName) {
+    try {
+      tarFunction.decompress(
+          new ChunkInputStream(), archiveName, prefix, repositoryPath, stagingDirectory);
+      extracted = true;
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      // Left to the extraction of the downloaded file, which reports the error if it recurs.
+    } finally {
+      extractorDone = true;
+      // Unblocks the download if it waits for space in the queue.
+      chunks.clear();
+    }
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int length) throws IOException {
+    if (length > 0) {
+      enqueue(Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+  }
+
+  @Override
+  public void complete() throws IOException {
+    completed = true;
+    enqueue(END_OF_STREAM);
+  }
+
+  @Override
+  public void abandon() {
+    if (!extractorDone) {
+      // Only the download enqueues chunks, and it has stopped, so there is room after clearing.
+      chunks.clear();
+      chunks.offer(ABANDONED);
+    }
+  }
+
+  private void enqueue(byte[] chunk) throws IOException {
+    if (extractorDone) {
+      return;
+    }
+    try {
+      chunks.put(chunk);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while passing on downloaded content");
+    }
+  }
+
+  /**
+   * Waits for the extraction to finish and, if the download completed and the archive was
+   * extracted successfully, moves the extracted entries into the repository.
+   *
+   * @return whether the archive was extracted; if false, the caller must extract the downloaded
+   *     file itself. The staging directory is left for the caller to delete in either case.
+   */
+  public boolean commit() throws InterruptedException {
+    if (extractorThread == null) {
+      return false;
+    }
+    if (!completed) {
+      abandon();
+    }
+    extractorThread.join();
+    if (!completed || !extracted) {
+      return false;
+    }
+    try {
+      moveEntries(stagingDirectory, repositoryPath);
+    } catch (IOException e) {
+      // Extracting the downloaded file overwrites the entries that were already moved.
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Moves the entries of one directory into another, merging subdirectories and replacing other
+   * existing entries as extracting the archive in place would.
+   */
+  private static void moveEntries(Path from, Path to) throws IOException {
+    FileSystemUtils.createDirectoryAndParents(to);
+    for (Path entry : from.getDirectoryEntries()) {
+      Path target = to.getChild(entry.getBaseName());
+      boolean isDirectory = entry.isDirectory(Symlinks.NOFOLLOW);
+      if (target.exists(Symlinks.NOFOLLOW)) {
+        if (isDirectory != target.isDirectory(Symlinks.NOFOLLOW)) {
+          // Extracting in place fails here, so leave it to report the error.
+          throw new IOException("Cannot replace " + target + " with " + entry);
+        }
+        if (isDirectory) {
+          moveEntries(entry, target);
+          continue;
+        }
+        target.delete();
+      }
+      entry.renameTo(target);
+    }
+  }
+
+  /** Reads the chunks passed on by the download, on the extractor thread. */
+  private final class ChunkInputStream extends InputStream {
+    @Nullable private byte[] chunk;
+    private int position;
+
+    /** Makes sure the current chunk has bytes left and returns false at the end of the stream. */
+    private boolean ensureAvailable() throws IOException {
+      while (chunk == null || position == chunk.length) {
+        if (chunk == END_OF_STREAM) {
+          return false;
+        }
+        if (chunk == ABANDONED) {
+          throw new IOException("The download was abandoned");
+        }
+        try {
+          chunk = chunks.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for downloaded content");
+        }
+        position = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      int count = Math.min(len, chunk.length - position);
+      System.arraycopy(chunk, position, b, off, count);
+      position += count;
+      return count;
+    }
+  }
+}
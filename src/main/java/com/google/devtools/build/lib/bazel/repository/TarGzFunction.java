@@ -15,8 +15,6 @@
 package com.google.devtools.build.lib.bazel.repository;
 
 import com.google.devtools.build.lib.bazel.repository.DecompressorValue.Decompressor;
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
@@ -26,16 +24,12 @@ import java.util.zip.GZIPInputStream;
  */
 public class TarGzFunction extends CompressedTarFunction {
   public static final Decompressor INSTANCE = new TarGzFunction();
-  private static final int BUFFER_SIZE = 32 * 1024;
 
   private TarGzFunction() {
   }
 
   @Override
-  protected InputStream getDecompressorStream(DecompressorDescriptor descriptor)
-      throws IOException {
-    return new GZIPInputStream(
-        new BufferedInputStream(
-            new FileInputStream(descriptor.archivePath().getPathFile()), BUFFER_SIZE));
+  protected InputStream getDecompressorStream(InputStream compressed) throws IOException {
+    return new GZIPInputStream(compressed);
   }
 }
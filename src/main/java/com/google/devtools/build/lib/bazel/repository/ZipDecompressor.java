@@ -43,6 +43,8 @@ import javax.annotation.Nullable;
 public class ZipDecompressor implements Decompressor {
   public static final Decompressor INSTANCE = new ZipDecompressor();
   private static final long MAX_PATH_LENGTH = 256;
+  // Entries at least this large are inflated on a separate thread while they are written.
+  private static final long MIN_READ_AHEAD_ENTRY_SIZE = 1024 * 1024;
 
   private ZipDecompressor() {
   }
@@ -154,7 +156,7 @@ public class ZipDecompressor implements Decompressor {
       target = maybeDeprefixSymlink(target, prefix, destinationDirectory);
       symlinks.put(outputPath, target);
     } else {
-      try (InputStream input = reader.getInputStream(entry);
+      try (InputStream input = getEntryInputStream(reader, entry);
           OutputStream output = outputPath.getOutputStream()) {
         ByteStreams.copy(input, output);
         if (Thread.interrupted()) {
@@ -166,6 +168,16 @@ public class ZipDecompressor implements Decompressor {
     }
   }
 
+  private static InputStream getEntryInputStream(ZipReader reader, ZipFileEntry entry)
+      throws IOException {
+    InputStream input = reader.getInputStream(entry);
+    // The reading thread is done with the reader once the entry has been consumed, so entries are
+    // still read one at a time.
+    return entry.getSize() >= MIN_READ_AHEAD_ENTRY_SIZE
+        ? new ReadAheadInputStream(input, entry.getName())
+        : input;
+  }
+
   @VisibleForTesting
   static int getPermissions(int permissions, String path) throws IOException {
     // Sometimes zip files list directories as being "regular" executable files (i.e., 0100755).
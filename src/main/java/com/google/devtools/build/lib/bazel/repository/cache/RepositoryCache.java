@@ -14,6 +14,7 @@
 
 package com.google.devtools.build.lib.bazel.repository.cache;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.base.Preconditions;
@@ -21,8 +22,10 @@ import com.google.common.base.Strings;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.devtools.build.lib.vfs.FileStatus;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.Symlinks;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -85,6 +88,9 @@ public class RepositoryCache {
   public static final String DEFAULT_CACHE_FILENAME = "file";
   public static final String TMP_PREFIX = "tmp-";
   public static final String ID_PREFIX = "id-";
+  // Records the file status of a cache value at the time its checksum was last verified, so that
+  // subsequent cache hits on an unmodified file do not need to hash it again.
+  public static final String VERIFIED_FILENAME = "verified";
 
   @Nullable private Path repositoryCachePath;
   @Nullable private Path contentAddressablePath;
@@ -171,12 +177,14 @@ public class RepositoryCache {
     Path cacheEntry = keyType.getCachePath(contentAddressablePath).getRelative(cacheKey);
     Path cacheValue = cacheEntry.getRelative(DEFAULT_CACHE_FILENAME);
 
-    try {
-      assertFileChecksum(cacheKey, cacheValue, keyType);
-    } catch (IOException e) {
-      // New lines because this error message gets large printing multiple absolute filepaths.
-      throw new IOException(e.getMessage() + "\n\n"
-          + "Please delete the directory " + cacheEntry + " and try again.");
+    if (!isVerified(cacheEntry, cacheValue)) {
+      try {
+        assertFileChecksum(cacheKey, cacheValue, keyType);
+      } catch (IOException e) {
+        // New lines because this error message gets large printing multiple absolute filepaths.
+        throw new IOException(e.getMessage() + "\n\n"
+            + "Please delete the directory " + cacheEntry + " and try again.");
+      }
     }
 
     if (!Strings.isNullOrEmpty(canonicalId)) {
@@ -194,6 +202,8 @@ public class RepositoryCache {
 
     try {
       FileSystemUtils.touchFile(cacheValue);
+      // Both touching and hardlinking the cache value change its status, so record it again.
+      recordVerified(cacheEntry, cacheValue);
     } catch (IOException e) {
       // Ignore, because the cache might be on a read-only volume.
     }
@@ -234,6 +244,9 @@ public class RepositoryCache {
     FileSystemUtils.createDirectoryAndParents(cacheEntry);
     FileSystemUtils.copyFile(sourcePath, tmpName);
     FileSystemUtils.moveFile(tmpName, cacheValue);
+    // Callers only put content that matches the cache key, either because they computed the key
+    // from the content or because the download was verified against it.
+    recordVerified(cacheEntry, cacheValue);
 
     if (!Strings.isNullOrEmpty(canonicalId)) {
       byte[] canonicalIdBytes = canonicalId.getBytes(UTF_8);
@@ -273,6 +286,37 @@ public class RepositoryCache {
     }
   }
 
+  /**
+   * Returns true if the cache value is known to match its cache key because its file status has not
+   * changed since its checksum was last verified.
+   */
+  private static boolean isVerified(Path cacheEntry, Path cacheValue) {
+    try {
+      Path verified = cacheEntry.getChild(VERIFIED_FILENAME);
+      return verified.exists()
+          && FileSystemUtils.readContent(verified, ISO_8859_1)
+              .equals(fileStatusFingerprint(cacheValue));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void recordVerified(Path cacheEntry, Path cacheValue) throws IOException {
+    Path verified = cacheEntry.getChild(VERIFIED_FILENAME);
+    Path tmpName = cacheEntry.getChild(TMP_PREFIX + UUID.randomUUID());
+    FileSystemUtils.writeContentAsLatin1(tmpName, fileStatusFingerprint(cacheValue));
+    FileSystemUtils.moveFile(tmpName, verified);
+  }
+
+  /**
+   * Returns a string identifying the current content of a file without reading it. Any write to the
+   * file changes its change time, so a matching fingerprint means the content is unchanged.
+   */
+  private static String fileStatusFingerprint(Path path) throws IOException {
+    FileStatus status = path.stat(Symlinks.NOFOLLOW);
+    return status.getSize() + " " + status.getLastChangeTime() + " " + status.getNodeId();
+  }
+
   /**
    * Assert that a file has an expected checksum.
    *
@@ -55,11 +55,35 @@ public class DelegatingDownloader implements Downloader {
       Map<String, String> clientEnv,
       Optional<String> type)
       throws IOException, InterruptedException {
+    download(
+        urls,
+        authHeaders,
+        checksum,
+        canonicalId,
+        destination,
+        eventHandler,
+        clientEnv,
+        type,
+        /* sink= */ null);
+  }
+
+  @Override
+  public void download(
+      List<URL> urls,
+      Map<URI, Map<String, String>> authHeaders,
+      Optional<Checksum> checksum,
+      String canonicalId,
+      Path destination,
+      ExtendedEventHandler eventHandler,
+      Map<String, String> clientEnv,
+      Optional<String> type,
+      @Nullable DownloadSink sink)
+      throws IOException, InterruptedException {
     Downloader downloader = defaultDelegate;
     if (delegate != null) {
       downloader = delegate;
     }
     downloader.download(
-        urls, authHeaders, checksum, canonicalId, destination, eventHandler, clientEnv, type);
+        urls, authHeaders, checksum, canonicalId, destination, eventHandler, clientEnv, type, sink);
   }
 }
@@ -19,6 +19,8 @@ import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache;
 import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache.KeyType;
 import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCacheHitEvent;
@@ -33,6 +35,8 @@ import java.net.URI;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 
 /**
@@ -49,6 +53,13 @@ public class DownloadManager {
   private final Downloader downloader;
   private boolean disableDownload = false;
 
+  /**
+   * Downloads currently populating the repository cache, keyed by the expected checksum. Used to
+   * avoid fetching the same file several times when multiple repositories request it concurrently.
+   */
+  private final ConcurrentHashMap<String, ListenableFuture<Void>> inFlightDownloads =
+      new ConcurrentHashMap<>();
+
   public DownloadManager(RepositoryCache repositoryCache, Downloader downloader) {
     this.repositoryCache = repositoryCache;
     this.downloader = downloader;
@@ -96,6 +107,105 @@ public class DownloadManager {
       Map<String, String> clientEnv,
       String repo)
       throws IOException, InterruptedException {
+    return download(
+        originalUrls,
+        authHeaders,
+        checksum,
+        canonicalId,
+        type,
+        output,
+        eventHandler,
+        clientEnv,
+        repo,
+        /* sink= */ null);
+  }
+
+  /**
+   * Downloads file to disk like {@link #download(List, Map, Optional, String, Optional, Path,
+   * ExtendedEventHandler, Map, String)}, and passes its content to the given sink while it is
+   * fetched from the network.
+   *
+   * <p>The sink is only offered the file if it is actually downloaded, not if it is found in the
+   * repository cache, a distdir or the destination. Callers must be prepared to read the returned
+   * path instead.
+   */
+  public Path download(
+      List<URL> originalUrls,
+      Map<URI, Map<String, String>> authHeaders,
+      Optional<Checksum> checksum,
+      String canonicalId,
+      Optional<String> type,
+      Path output,
+      ExtendedEventHandler eventHandler,
+      Map<String, String> clientEnv,
+      String repo,
+      @Nullable DownloadSink sink)
+      throws IOException, InterruptedException {
+    if (!checksum.isPresent() || !repositoryCache.isEnabled()) {
+      return downloadOnce(
+          originalUrls,
+          authHeaders,
+          checksum,
+          canonicalId,
+          type,
+          output,
+          eventHandler,
+          clientEnv,
+          repo,
+          sink);
+    }
+
+    // Only one call at a time fetches a given checksum. The others wait for it and then retry,
+    // which finds the file in the repository cache if the download succeeded, or else makes one of
+    // them try the download itself.
+    String cacheKey = checksum.get().toString();
+    while (true) {
+      SettableFuture<Void> download = SettableFuture.create();
+      ListenableFuture<Void> concurrentDownload = inFlightDownloads.putIfAbsent(cacheKey, download);
+      if (concurrentDownload == null) {
+        try {
+          return downloadOnce(
+              originalUrls,
+              authHeaders,
+              checksum,
+              canonicalId,
+              type,
+              output,
+              eventHandler,
+              clientEnv,
+              repo,
+              sink);
+        } finally {
+          inFlightDownloads.remove(cacheKey, download);
+          download.set(null);
+        }
+      }
+      String url = originalUrls.isEmpty() ? cacheKey : originalUrls.get(0).toString();
+      eventHandler.post(new CacheProgress(url, "Waiting for concurrent download of " + cacheKey));
+      try {
+        concurrentDownload.get();
+      } catch (ExecutionException e) {
+        // Never set to fail.
+        throw new IllegalStateException(e);
+      } finally {
+        eventHandler.post(new CacheProgress(url));
+      }
+    }
+  }
+
+  /** Implements {@link #download} without regard to concurrent calls for the same file. */
+  private Path downloadOnce(
+      List<URL> originalUrls,
+      Map<URI, Map<String, String>> authHeaders,
+      Optional<Checksum> checksum,
+      String canonicalId,
+      Optional<String> type,
+      Path output,
+      ExtendedEventHandler eventHandler,
+      Map<String, String> clientEnv,
+      String repo,
+      @Nullable DownloadSink sink)
+      throws IOException, InterruptedException {
     if (Thread.interrupted()) {
       throw new InterruptedException();
     }
@@ -215,6 +325,9 @@ public class DownloadManager {
       throw new IOException(getRewriterBlockedAllUrlsMessage(originalUrls));
     }
 
+    if (sink != null && !sink.accept(destination)) {
+      sink = null;
+    }
     try {
       downloader.download(
           rewrittenUrls,
@@ -224,7 +337,8 @@ public class DownloadManager {
           destination,
           eventHandler,
           clientEnv,
-          type);
+          type,
+          sink);
     } catch (InterruptedIOException e) {
       throw new InterruptedException(e.getMessage());
     }
@@ -0,0 +1,44 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.bazel.repository.downloader;
+
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+
+/**
+ * Receives the content of a file while it is being downloaded, so that it can be processed
+ * concurrently with the download.
+ *
+ * <p>The content is unverified until {@link #complete} is called: a sink must not make the result
+ * of processing it visible before then, and must discard it when {@link #abandon} is called. A
+ * download calls exactly one of the two on a sink that accepted it.
+ */
+public interface DownloadSink {
+
+  /**
+   * Returns whether the sink wants the content of the file about to be downloaded to the given
+   * destination. If it returns false, no other method is called.
+   */
+  boolean accept(Path destination);
+
+  /** Passes on the next bytes of the file. The buffer may be reused once the call returns. */
+  void write(byte[] buffer, int offset, int length) throws IOException;
+
+  /** Signals that all bytes were written and that their checksum, if any, was verified. */
+  void complete() throws IOException;
+
+  /** Signals that the download failed, so that the bytes written so far must be discarded. */
+  void abandon();
+}
@@ -22,6 +22,7 @@ import java.net.URI;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /** Interface for implementing the download of a file. */
 public interface Downloader {
@@ -50,4 +51,29 @@ public interface Downloader {
       Map<String, String> clientEnv,
       Optional<String> type)
       throws IOException, InterruptedException;
+
+  /**
+   * Downloads a file like {@link #download(List, Map, Optional, String, Path,
+   * ExtendedEventHandler, Map, Optional)}, additionally passing its content to the given sink, if
+   * any, as it arrives.
+   *
+   * <p>Implementations that can't stream the content abandon the sink and download the file as
+   * usual.
+   */
+  default void download(
+      List<URL> urls,
+      Map<URI, Map<String, String>> authHeaders,
+      Optional<Checksum> checksum,
+      String canonicalId,
+      Path output,
+      ExtendedEventHandler eventHandler,
+      Map<String, String> clientEnv,
+      Optional<String> type,
+      @Nullable DownloadSink sink)
+      throws IOException, InterruptedException {
+    if (sink != null) {
+      sink.abandon();
+    }
+    download(urls, authHeaders, checksum, canonicalId, output, eventHandler, clientEnv, type);
+  }
 }
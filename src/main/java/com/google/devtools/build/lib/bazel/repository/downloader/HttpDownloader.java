@@ -28,6 +28,7 @@ import com.google.devtools.build.lib.util.Sleeper;
 import com.google.devtools.build.lib.vfs.Path;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.SocketTimeoutException;
@@ -38,6 +39,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
+import javax.annotation.Nullable;
 
 /**
  * HTTP implementation of {@link Downloader}.
@@ -51,6 +53,7 @@ public class HttpDownloader implements Downloader {
   private static final Clock CLOCK = new JavaClock();
   private static final Sleeper SLEEPER = new JavaSleeper();
   private static final Locale LOCALE = Locale.getDefault();
+  private static final int BUFFER_SIZE = 32 * 1024;
 
   private float timeoutScaling = 1.0f;
 
@@ -71,6 +74,36 @@ public class HttpDownloader implements Downloader {
       Map<String, String> clientEnv,
       Optional<String> type)
       throws IOException, InterruptedException {
+    download(
+        urls,
+        authHeaders,
+        checksum,
+        canonicalId,
+        destination,
+        eventHandler,
+        clientEnv,
+        type,
+        /* sink= */ null);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Only the first attempt is passed to the sink. If it fails, for example because the checksum
+   * doesn't match, the sink is abandoned and the remaining mirrors are downloaded as usual.
+   */
+  @Override
+  public void download(
+      List<URL> urls,
+      Map<URI, Map<String, String>> authHeaders,
+      Optional<Checksum> checksum,
+      String canonicalId,
+      Path destination,
+      ExtendedEventHandler eventHandler,
+      Map<String, String> clientEnv,
+      Optional<String> type,
+      @Nullable DownloadSink sink)
+      throws IOException, InterruptedException {
     HttpConnectorMultiplexer multiplexer = setUpConnectorMultiplexer(eventHandler, clientEnv);
 
     // Iterate over urls and download the file falling back to the next url if previous failed,
@@ -85,7 +118,11 @@ public class HttpDownloader implements Downloader {
       try (HttpStream payload = multiplexer.connect(url, checksum, authHeaders, type);
           OutputStream out = destination.getOutputStream()) {
         try {
-          ByteStreams.copy(payload, out);
+          if (sink == null) {
+            ByteStreams.copy(payload, out);
+          } else {
+            copy(payload, out, sink);
+          }
         } catch (SocketTimeoutException e) {
           // SocketTimeoutExceptions are InterruptedIOExceptions; however they do not signify
           // an external interruption, but simply a failed download due to some server timing
@@ -106,10 +143,23 @@ public class HttpDownloader implements Downloader {
         continue;
       } finally {
         SEMAPHORE.release();
+        if (sink != null && !success) {
+          sink.abandon();
+          sink = null;
+        }
         eventHandler.post(new FetchEvent(url.toString(), success));
       }
     }
 
+    if (sink != null) {
+      // The checksum, if any, was verified when the copy reached the end of the payload.
+      if (success) {
+        sink.complete();
+      } else {
+        sink.abandon();
+      }
+    }
+
     if (!success) {
       final IOException exception =
           new IOException(
@@ -129,6 +179,17 @@ public class HttpDownloader implements Downloader {
     }
   }
 
+  /** Copies the payload to the output file and to the sink. */
+  private static void copy(InputStream payload, OutputStream out, DownloadSink sink)
+      throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = payload.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+      sink.write(buffer, 0, read);
+    }
+  }
+
   /** Downloads the contents of one URL and reads it into a byte array. */
   public byte[] downloadAndReadOneUrl(
       URL url, ExtendedEventHandler eventHandler, Map<String, String> clientEnv)
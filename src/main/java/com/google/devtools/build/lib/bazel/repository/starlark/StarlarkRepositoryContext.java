@@ -31,6 +31,7 @@ import com.google.devtools.build.lib.bazel.debug.WorkspaceRuleEvent;
 import com.google.devtools.build.lib.bazel.repository.DecompressorDescriptor;
 import com.google.devtools.build.lib.bazel.repository.DecompressorValue;
 import com.google.devtools.build.lib.bazel.repository.PatchUtil;
+import com.google.devtools.build.lib.bazel.repository.StreamingTarExtraction;
 import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache;
 import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache.KeyType;
 import com.google.devtools.build.lib.bazel.repository.downloader.Checksum;
@@ -873,6 +874,7 @@ public class StarlarkRepositoryContext
 
     Path downloadedPath;
     Path downloadDirectory;
+    StreamingTarExtraction extraction;
     try (SilentCloseable c =
         Profiler.instance().profile("fetching: " + rule.getLabel().toString())) {
 
@@ -882,6 +884,11 @@ public class StarlarkRepositoryContext
       downloadDirectory =
           outputDirectory.getFileSystem().getPath(tempDirectory.toFile().getAbsolutePath());
 
+      // Extracts the archive while it is downloaded. Only files with a tar suffix are streamed, so
+      // the downloaded file can't clash with the staging directory.
+      extraction =
+          new StreamingTarExtraction(
+              outputPath.getPath(), stripPrefix, downloadDirectory.getChild("extracted"));
       downloadedPath =
           downloadManager.download(
               urls,
@@ -892,7 +899,8 @@ public class StarlarkRepositoryContext
               downloadDirectory,
               env.getListener(),
               osObject.getEnvironmentVariables(),
-              getName());
+              getName(),
+              extraction);
     } catch (InterruptedException e) {
       env.getListener().post(w);
       throw new RepositoryFunctionException(
@@ -915,14 +923,18 @@ public class StarlarkRepositoryContext
       env.getListener()
           .post(
               new ExtractProgress(outputPath.getPath().toString(), "Extracting " + downloadedPath));
-      DecompressorValue.decompress(
-          DecompressorDescriptor.builder()
-              .setTargetKind(rule.getTargetKind())
-              .setTargetName(rule.getName())
-              .setArchivePath(downloadedPath)
-              .setRepositoryPath(outputPath.getPath())
-              .setPrefix(stripPrefix)
-              .build());
+      // If the archive was not streamed, or its download or extraction failed, extract the
+      // verified file from the start.
+      if (!extraction.commit()) {
+        DecompressorValue.decompress(
+            DecompressorDescriptor.builder()
+                .setTargetKind(rule.getTargetKind())
+                .setTargetName(rule.getName())
+                .setArchivePath(downloadedPath)
+                .setRepositoryPath(outputPath.getPath())
+                .setPrefix(stripPrefix)
+                .build());
+      }
       env.getListener().post(new ExtractProgress(outputPath.getPath().toString()));
     }
 
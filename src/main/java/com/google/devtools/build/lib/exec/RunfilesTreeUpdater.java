@@ -18,8 +18,10 @@ import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.RunfilesSupplier;
 import com.google.devtools.build.lib.analysis.RunfilesSupport;
+import com.google.devtools.build.lib.concurrent.ExecutorUtil;
 import com.google.devtools.build.lib.profiler.Profiler;
 import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.util.OS;
 import com.google.devtools.build.lib.util.io.OutErr;
 import com.google.devtools.build.lib.vfs.DigestUtils;
 import com.google.devtools.build.lib.vfs.Path;
@@ -28,6 +30,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -96,6 +99,25 @@ public class RunfilesTreeUpdater {
 
     SymlinkTreeHelper helper =
         new SymlinkTreeHelper(inputManifest, runfilesDirPath, /* filesetTree= */ false);
+    // If the tree was previously created from a different manifest, only apply the difference.
+    // Windows is excluded since build-runfiles-windows may have copied files instead of creating
+    // symlinks.
+    if (enableRunfiles && OS.getCurrent() != OS.WINDOWS) {
+      // Used to update independent parts of the tree in parallel. Threads are only started for
+      // changes that are actually applied.
+      ExecutorService updatePool =
+          ExecutorUtil.newSlackPool(
+              Runtime.getRuntime().availableProcessors(), "runfiles-tree-updater");
+      try {
+        if (helper.updateSymlinksIncrementally(updatePool)) {
+          return;
+        }
+      } catch (IOException e) {
+        // Ignore it - we will just recreate the runfiles directory from scratch.
+      } finally {
+        updatePool.shutdown();
+      }
+    }
     helper.createSymlinks(execRoot, outErr, binTools, env, enableRunfiles);
   }
 
@@ -16,6 +16,7 @@ package com.google.devtools.build.lib.exec;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -23,6 +24,8 @@ import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.EnvironmentalExecException;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.FilesetOutputSymlink;
+import com.google.devtools.build.lib.profiler.Profiler;
+import com.google.devtools.build.lib.profiler.SilentCloseable;
 import com.google.devtools.build.lib.server.FailureDetails.Execution;
 import com.google.devtools.build.lib.server.FailureDetails.Execution.Code;
 import com.google.devtools.build.lib.server.FailureDetails.FailureDetail;
@@ -39,9 +42,13 @@ import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.build.lib.vfs.Symlinks;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.annotation.Nullable;
 
 /**
@@ -52,6 +59,14 @@ public final class SymlinkTreeHelper {
   @VisibleForTesting
   public static final String BUILD_RUNFILES = "build-runfiles" + OsUtils.executableExtension();
 
+  /**
+   * Name of an empty file in a runfiles tree whose presence records that the tree holds the
+   * symlinks listed in its output manifest. The output manifest alone doesn't tell, as it is also
+   * written when runfiles are disabled. The file is not part of any manifest, so {@code
+   * build-runfiles} and {@link #createSymlinksDirectly} delete it when they rebuild the tree.
+   */
+  @VisibleForTesting static final String SYMLINK_TREE_MARKER = ".symlink_tree";
+
   private final Path inputManifest;
   private final Path symlinkTreeRoot;
   private final boolean filesetTree;
@@ -74,6 +89,10 @@ public final class SymlinkTreeHelper {
     return symlinkTreeRoot.getChild("MANIFEST");
   }
 
+  private Path getSymlinkTreeMarker() {
+    return symlinkTreeRoot.getChild(SYMLINK_TREE_MARKER);
+  }
+
   /** Creates a symlink tree by making VFS calls. */
   public void createSymlinksDirectly(Path symlinkTreeRoot, Map<PathFragment, Artifact> symlinks)
       throws IOException {
@@ -117,6 +136,107 @@ public final class SymlinkTreeHelper {
     root.syncTreeRecursively(symlinkTreeRoot);
   }
 
+  /**
+   * Brings an existing runfiles tree up to date with the input manifest by applying only the
+   * difference between the output manifest, which records the tree as it was last created, and the
+   * input manifest. Only trees created by {@link #createSymlinks} or by an earlier incremental
+   * update are updated this way. Unchanged entries are not touched at all, so the cost is
+   * proportional to the size of the change rather than to the size of the tree. Changes below
+   * different top-level directories are applied in parallel on {@code executor}.
+   *
+   * <p>The output manifest and the marker are deleted before the tree is modified and only
+   * rewritten once all changes have been applied, so that an interrupted or failed update is never
+   * mistaken for an up-to-date tree. Files in the tree that are not listed in the old output
+   * manifest are not detected; use {@link #createSymlinks} if the tree may have been modified by
+   * other means.
+   *
+   * @return {@code false} if there is no output manifest of a symlink tree to diff against, in
+   *     which case nothing was changed and the tree must be created from scratch
+   * @throws IOException if either manifest cannot be read or parsed, or if the tree cannot be
+   *     updated; the tree is left without an output manifest in that case
+   */
+  public boolean updateSymlinksIncrementally(ExecutorService executor)
+      throws IOException, InterruptedException {
+    Preconditions.checkState(!filesetTree);
+    Path outputManifest = getOutputManifest();
+    Path marker = getSymlinkTreeMarker();
+    if (!outputManifest.isFile(Symlinks.NOFOLLOW) || !marker.isFile(Symlinks.NOFOLLOW)) {
+      return false;
+    }
+    try (SilentCloseable c = Profiler.instance().profile("Updating runfiles tree incrementally")) {
+      Map<PathFragment, String> oldEntries = readRunfilesManifest(outputManifest);
+      Map<PathFragment, String> newEntries = readRunfilesManifest(inputManifest);
+      marker.delete();
+      outputManifest.delete();
+
+      // Group the changes by top-level directory. Entries can only conflict with each other if one
+      // is a prefix of the other, so the groups can safely be applied concurrently.
+      Map<String, SymlinkTreeDiff> diffs = new HashMap<>();
+      for (Map.Entry<PathFragment, String> entry : oldEntries.entrySet()) {
+        if (!entry.getValue().equals(newEntries.get(entry.getKey()))) {
+          diffs
+              .computeIfAbsent(entry.getKey().getSegment(0), k -> new SymlinkTreeDiff())
+              .removed
+              .add(entry.getKey());
+        }
+      }
+      for (Map.Entry<PathFragment, String> entry : newEntries.entrySet()) {
+        if (!entry.getValue().equals(oldEntries.get(entry.getKey()))) {
+          diffs
+              .computeIfAbsent(entry.getKey().getSegment(0), k -> new SymlinkTreeDiff())
+              .added
+              .put(entry.getKey(), entry.getValue());
+        }
+      }
+
+      List<Future<?>> futures = new ArrayList<>(diffs.size());
+      try {
+        for (Map.Entry<String, SymlinkTreeDiff> diff : diffs.entrySet()) {
+          futures.add(
+              executor.submit(
+                  () -> {
+                    diff.getValue().apply(symlinkTreeRoot, diff.getKey());
+                    return null;
+                  }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), IOException.class);
+        throw new IllegalStateException(e.getCause());
+      } finally {
+        for (Future<?> future : futures) {
+          future.cancel(/* mayInterruptIfRunning= */ true);
+        }
+      }
+
+      FileSystemUtils.copyFile(inputManifest, outputManifest);
+      FileSystemUtils.createEmptyFile(marker);
+    }
+    return true;
+  }
+
+  /**
+   * Parses a runfiles manifest as understood by {@code build-runfiles.cc} into a map from the
+   * runfiles-relative path to the symlink target, which is empty for empty files.
+   */
+  @VisibleForTesting
+  static Map<PathFragment, String> readRunfilesManifest(Path manifest) throws IOException {
+    Map<PathFragment, String> entries = new HashMap<>();
+    int lineNumber = 0;
+    for (String line : FileSystemUtils.readLinesAsLatin1(manifest)) {
+      lineNumber++;
+      int space = line.indexOf(' ');
+      if (space <= 0 || line.indexOf(' ', space + 1) != -1 || line.charAt(0) == '/') {
+        throw new IOException(
+            String.format("Malformed line %d in manifest '%s': '%s'", lineNumber, manifest, line));
+      }
+      entries.put(PathFragment.create(line.substring(0, space)), line.substring(space + 1));
+    }
+    return entries;
+  }
+
   /**
    * Creates symlink tree and output manifest using the {@code build-runfiles.cc} tool.
    *
@@ -141,6 +261,8 @@ public final class SymlinkTreeHelper {
     // Pretend we created the runfiles tree by copying the manifest
     try {
       symlinkTreeRoot.createDirectoryAndParents();
+      // The symlinks that may be left in the tree don't match the new output manifest.
+      getSymlinkTreeMarker().delete();
       FileSystemUtils.copyFile(inputManifest, getOutputManifest());
     } catch (IOException e) {
       throw new EnvironmentalExecException(e, Code.SYMLINK_TREE_MANIFEST_COPY_IO_EXCEPTION);
@@ -173,6 +295,13 @@ public final class SymlinkTreeHelper {
                   Execution.newBuilder().setCode(Code.SYMLINK_TREE_CREATION_COMMAND_EXCEPTION))
               .build());
     }
+    if (!filesetTree) {
+      try {
+        FileSystemUtils.createEmptyFile(getSymlinkTreeMarker());
+      } catch (IOException e) {
+        // The tree is created from scratch the next time it is updated.
+      }
+    }
   }
 
   @VisibleForTesting
@@ -202,6 +331,48 @@ public final class SymlinkTreeHelper {
     return ImmutableMap.copyOf(symlinks);
   }
 
+  /** The changes to apply below a single top-level directory of a symlink tree. */
+  private static final class SymlinkTreeDiff {
+    private final List<PathFragment> removed = new ArrayList<>();
+    private final Map<PathFragment, String> added = new HashMap<>();
+
+    void apply(Path root, String topLevelDirectory) throws IOException {
+      try (SilentCloseable c =
+          Profiler.instance().profile("Updating runfiles subtree " + topLevelDirectory)) {
+        for (PathFragment entry : removed) {
+          root.getRelative(entry).deleteTree();
+        }
+        for (Map.Entry<PathFragment, String> entry : added.entrySet()) {
+          Path next = root.getRelative(entry.getKey());
+          if (next.statNullable(Symlinks.NOFOLLOW) != null) {
+            next.deleteTree();
+          } else {
+            next.getParentDirectory().createDirectoryAndParents();
+          }
+          if (entry.getValue().isEmpty()) {
+            FileSystemUtils.createEmptyFile(next);
+          } else {
+            next.createSymbolicLink(PathFragment.create(entry.getValue()));
+          }
+        }
+        // Directories that only contained removed entries are not part of the new tree. Any
+        // directory still needed by the new tree is non-empty at this point.
+        for (PathFragment entry : removed) {
+          for (PathFragment dir = entry.getParentDirectory();
+              !dir.isEmpty();
+              dir = dir.getParentDirectory()) {
+            Path dirPath = root.getRelative(dir);
+            if (!dirPath.isDirectory(Symlinks.NOFOLLOW)
+                || !dirPath.readdir(Symlinks.NOFOLLOW).isEmpty()) {
+              break;
+            }
+            dirPath.delete();
+          }
+        }
+      }
+    }
+  }
+
   private static final class Directory {
     private final Map<String, Artifact> symlinks = new HashMap<>();
     private final Map<String, Directory> directories = new HashMap<>();
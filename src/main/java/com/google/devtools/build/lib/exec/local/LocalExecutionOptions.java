@@ -94,6 +94,17 @@ public class LocalExecutionOptions extends OptionsBase {
               + "process we are trying to run, introducing corruption in its file reads.")
   public int localRetriesOnCrash;
 
+  @Option(
+      name = "experimental_local_spawn_launcher",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.EXECUTION},
+      help =
+          "When true, local spawns are started by a small helper process that is started once per "
+              + "server, instead of by forking the server itself. This makes the cost of starting "
+              + "a spawn independent of the size of the server's heap.")
+  public boolean localSpawnLauncher;
+
   public Duration getLocalSigkillGraceSeconds() {
     // TODO(ulfjack): Change localSigkillGraceSeconds type to Duration.
     return Duration.ofSeconds(localSigkillGraceSeconds);
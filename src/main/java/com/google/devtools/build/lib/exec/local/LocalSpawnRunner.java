@@ -27,6 +27,7 @@ import com.google.devtools.build.lib.actions.ActionExecutionMetadata;
 import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.ForbiddenActionInputException;
 import com.google.devtools.build.lib.actions.ResourceManager;
 import com.google.devtools.build.lib.actions.ResourceManager.ResourceHandle;
@@ -49,6 +50,8 @@ import com.google.devtools.build.lib.server.FailureDetails;
 import com.google.devtools.build.lib.server.FailureDetails.FailureDetail;
 import com.google.devtools.build.lib.server.FailureDetails.Spawn.Code;
 import com.google.devtools.build.lib.shell.ExecutionStatistics;
+import com.google.devtools.build.lib.shell.SpawnLauncherSubprocessFactory;
+import com.google.devtools.build.lib.shell.SpawnLauncherSubprocessFactory.LauncherSubprocess;
 import com.google.devtools.build.lib.shell.Subprocess;
 import com.google.devtools.build.lib.shell.SubprocessBuilder;
 import com.google.devtools.build.lib.shell.TerminationStatus;
@@ -67,6 +70,7 @@ import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Level;
 import javax.annotation.Nullable;
 
@@ -91,6 +95,9 @@ public class LocalSpawnRunner implements SpawnRunner {
 
   @Nullable private final ProcessWrapper processWrapper;
 
+  /** Starts subprocesses without forking the server, or null to use the default factory. */
+  @Nullable private final SpawnLauncherSubprocessFactory spawnLauncher;
+
   private final LocalEnvProvider localEnvProvider;
   private final BinTools binTools;
 
@@ -104,8 +111,29 @@ public class LocalSpawnRunner implements SpawnRunner {
       BinTools binTools,
       ProcessWrapper processWrapper,
       RunfilesTreeUpdater runfilesTreeUpdater) {
+    this(
+        execRoot,
+        localExecutionOptions,
+        resourceManager,
+        localEnvProvider,
+        binTools,
+        processWrapper,
+        /* spawnLauncher= */ null,
+        runfilesTreeUpdater);
+  }
+
+  public LocalSpawnRunner(
+      Path execRoot,
+      LocalExecutionOptions localExecutionOptions,
+      ResourceManager resourceManager,
+      LocalEnvProvider localEnvProvider,
+      BinTools binTools,
+      ProcessWrapper processWrapper,
+      @Nullable SpawnLauncherSubprocessFactory spawnLauncher,
+      RunfilesTreeUpdater runfilesTreeUpdater) {
     this.execRoot = execRoot;
     this.processWrapper = processWrapper;
+    this.spawnLauncher = spawnLauncher;
     this.localExecutionOptions = Preconditions.checkNotNull(localExecutionOptions);
     this.hostName = NetUtil.getCachedShortHostName();
     this.resourceManager = resourceManager;
@@ -350,13 +378,23 @@ public class LocalSpawnRunner implements SpawnRunner {
             localEnvProvider.rewriteLocalEnv(
                 spawn.getEnvironment(), binTools, commandTmpDir.getPathString());
 
-        SubprocessBuilder subprocessBuilder = new SubprocessBuilder();
+        SubprocessBuilder subprocessBuilder =
+            spawnLauncher != null ? new SubprocessBuilder(spawnLauncher) : new SubprocessBuilder();
         subprocessBuilder.setWorkingDirectory(execRoot.getPathFile());
         subprocessBuilder.setStdout(outErr.getOutputPath().getPathFile());
         subprocessBuilder.setStderr(outErr.getErrorPath().getPathFile());
         subprocessBuilder.setEnv(environment);
+        // The spawn launcher enforces timeouts with the same grace period and collects resource
+        // usage itself, so the process-wrapper is only needed for graceful termination.
+        boolean useProcessWrapper =
+            processWrapper != null
+                && (spawnLauncher == null
+                    || localExecutionOptions.processWrapperGracefulSigterm
+                    || spawn
+                        .getExecutionInfo()
+                        .containsKey(ExecutionRequirements.GRACEFUL_TERMINATION));
         ImmutableList<String> args;
-        if (processWrapper != null) {
+        if (useProcessWrapper) {
           // If the process wrapper is enabled, we use its timeout feature, which first interrupts
           // the subprocess and only kills it after a grace period so that the subprocess can output
           // a stack trace, test log or similar, which is incredibly helpful for debugging.
@@ -386,6 +424,7 @@ public class LocalSpawnRunner implements SpawnRunner {
 
         long startTime = System.currentTimeMillis();
         TerminationStatus terminationStatus;
+        Optional<ExecutionStatistics.ResourceUsage> resourceUsage = Optional.empty();
         try (SilentCloseable c =
             Profiler.instance()
                 .profile(ProfilerTask.PROCESS_TIME, spawn.getResourceOwner().getMnemonic())) {
@@ -396,6 +435,10 @@ public class LocalSpawnRunner implements SpawnRunner {
             subprocess.waitFor();
             terminationStatus =
                 new TerminationStatus(subprocess.exitValue(), subprocess.timedout());
+            if (localExecutionOptions.collectLocalExecutionStatistics
+                && subprocess instanceof LauncherSubprocess) {
+              resourceUsage = ((LauncherSubprocess) subprocess).getResourceUsage();
+            }
           } catch (InterruptedException | IOException e) {
             subprocess.destroyAndWait();
             throw e;
@@ -428,7 +471,7 @@ public class LocalSpawnRunner implements SpawnRunner {
         Duration wallTime = Duration.ofMillis(System.currentTimeMillis() - startTime);
         boolean wasTimeout =
             terminationStatus.timedOut()
-                || (processWrapper != null && wasTimeout(context.getTimeout(), wallTime));
+                || (useProcessWrapper && wasTimeout(context.getTimeout(), wallTime));
         int exitCode =
             wasTimeout ? SpawnResult.POSIX_TIMEOUT_EXIT_CODE : terminationStatus.getRawExitCode();
         Status status =
@@ -444,27 +487,24 @@ public class LocalSpawnRunner implements SpawnRunner {
           spawnResultBuilder.setFailureDetail(makeFailureDetail(exitCode, status, actionType));
         }
         if (statisticsPath != null) {
-          ExecutionStatistics.getResourceUsage(statisticsPath)
-              .ifPresent(
-                  resourceUsage -> {
-                    spawnResultBuilder.setUserTime(resourceUsage.getUserExecutionTime());
-                    spawnResultBuilder.setSystemTime(resourceUsage.getSystemExecutionTime());
-                    spawnResultBuilder.setNumBlockOutputOperations(
-                        resourceUsage.getBlockOutputOperations());
-                    spawnResultBuilder.setNumBlockInputOperations(
-                        resourceUsage.getBlockInputOperations());
-                    spawnResultBuilder.setNumInvoluntaryContextSwitches(
-                        resourceUsage.getInvoluntaryContextSwitches());
-                    // The memory usage of the largest child process. For Darwin maxrss returns size
-                    // in bytes.
-                    if (OS.getCurrent() == OS.DARWIN) {
-                      spawnResultBuilder.setMemoryInKb(
-                          resourceUsage.getMaximumResidentSetSize() / 1000);
-                    } else {
-                      spawnResultBuilder.setMemoryInKb(resourceUsage.getMaximumResidentSetSize());
-                    }
-                  });
+          resourceUsage = ExecutionStatistics.getResourceUsage(statisticsPath);
         }
+        resourceUsage.ifPresent(
+            usage -> {
+              spawnResultBuilder.setUserTime(usage.getUserExecutionTime());
+              spawnResultBuilder.setSystemTime(usage.getSystemExecutionTime());
+              spawnResultBuilder.setNumBlockOutputOperations(usage.getBlockOutputOperations());
+              spawnResultBuilder.setNumBlockInputOperations(usage.getBlockInputOperations());
+              spawnResultBuilder.setNumInvoluntaryContextSwitches(
+                  usage.getInvoluntaryContextSwitches());
+              // The memory usage of the largest child process. For Darwin maxrss returns size in
+              // bytes.
+              if (OS.getCurrent() == OS.DARWIN) {
+                spawnResultBuilder.setMemoryInKb(usage.getMaximumResidentSetSize() / 1000);
+              } else {
+                spawnResultBuilder.setMemoryInKb(usage.getMaximumResidentSetSize());
+              }
+            });
         return spawnResultBuilder.build();
       } finally {
         // Delete the temp directory tree, so the next action that this thread executes will get a
@@ -61,6 +61,7 @@ public enum ProfilerTask {
   THREAD_SORT_INDEX("thread sort index"),
   SKYFRAME_EVAL("skyframe evaluator"),
   SKYFUNCTION("skyfunction"),
+  SKYFUNCTION_RESTART("skyfunction restart"),
   CRITICAL_PATH("critical path"),
   CRITICAL_PATH_COMPONENT("critical path component"),
   HANDLE_GC_NOTIFICATION("gc notification"),
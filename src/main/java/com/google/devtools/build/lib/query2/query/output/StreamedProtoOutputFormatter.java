@@ -13,33 +13,145 @@
 // limitations under the License.
 package com.google.devtools.build.lib.query2.query.output;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashFunction;
+import com.google.devtools.build.lib.concurrent.NamedForkJoinPool;
 import com.google.devtools.build.lib.packages.Target;
+import com.google.devtools.build.lib.query2.common.CommonQueryOptions;
 import com.google.devtools.build.lib.query2.engine.OutputFormatterCallback;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build;
+import com.google.devtools.build.lib.query2.query.aspectresolvers.AspectResolver;
+import com.google.devtools.build.lib.query2.query.aspectresolvers.ConservativeAspectResolver;
+import com.google.devtools.build.lib.query2.query.aspectresolvers.NullAspectResolver;
+import com.google.protobuf.CodedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.Nullable;
 
 /**
  * An output formatter that outputs a protocol buffer representation of a query result and outputs
  * the proto bytes to the output print stream. By taking the bytes and calling {@code mergeFrom()}
  * on a {@code Build.QueryResult} object the full result can be reconstructed.
+ *
+ * <p>Converting targets to protos and serializing them dominates the cost of large queries, so it
+ * is done in parallel, a bounded chunk of targets at a time. The output is written in the order of
+ * the query result regardless. With {@code --aspect_deps=precise}, converting a target may load
+ * the packages of its dependencies, so targets are converted sequentially then.
  */
 public class StreamedProtoOutputFormatter extends ProtoOutputFormatter {
+  /** Targets converted before their output is written, to bound the memory held by it. */
+  private static final int MAX_CHUNK_SIZE = 1000;
+  /** Chunks smaller than this are not worth handing to other threads. */
+  private static final int MIN_PARALLEL_CHUNK_SIZE = 16;
+
+  private boolean convertInParallel;
+
   @Override
   public String getName() {
     return "streamed_proto";
   }
 
+  @Override
+  public void setOptions(
+      CommonQueryOptions options, AspectResolver aspectResolver, HashFunction hashFunction) {
+    super.setOptions(options, aspectResolver, hashFunction);
+    // Only these resolvers compute aspect dependencies without loading packages.
+    this.convertInParallel =
+        aspectResolver == null
+            || aspectResolver instanceof NullAspectResolver
+            || aspectResolver instanceof ConservativeAspectResolver;
+  }
+
   @Override
   public OutputFormatterCallback<Target> createPostFactoStreamCallback(
       final OutputStream out, final QueryOptions options) {
     return new OutputFormatterCallback<Target>() {
+      @Nullable private ForkJoinPool executor;
+
       @Override
       public void processOutput(Iterable<Target> partialResult)
           throws IOException, InterruptedException {
-        for (Target target : partialResult) {
-          toTargetProtoBuffer(target).writeDelimitedTo(out);
+        for (List<Target> chunk : Iterables.partition(partialResult, MAX_CHUNK_SIZE)) {
+          for (byte[] serializedTarget : serialize(chunk)) {
+            out.write(serializedTarget);
+          }
+        }
+      }
+
+      @Override
+      public void close(boolean failFast) {
+        if (executor != null) {
+          executor.shutdownNow();
+          executor = null;
+        }
+      }
+
+      private List<byte[]> serialize(List<Target> targets) throws InterruptedException {
+        if (!convertInParallel || targets.size() < MIN_PARALLEL_CHUNK_SIZE) {
+          ImmutableList.Builder<byte[]> serializedTargets =
+              ImmutableList.builderWithExpectedSize(targets.size());
+          for (Target target : targets) {
+            serializedTargets.add(writeDelimited(target));
+          }
+          return serializedTargets.build();
+        }
+        if (executor == null) {
+          executor =
+              NamedForkJoinPool.newNamedPool(
+                  "streamed-proto-output", Runtime.getRuntime().availableProcessors());
+        }
+        try {
+          return executor
+              .submit(
+                  () ->
+                      targets.parallelStream()
+                          .map(this::writeDelimitedUnchecked)
+                          .collect(ImmutableList.toImmutableList()))
+              .get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof WrappedInterruptedException) {
+            throw new InterruptedException(cause.getMessage());
+          }
+          Throwables.throwIfUnchecked(cause);
+          throw new IllegalStateException(cause);
+        }
+      }
+
+      private byte[] writeDelimitedUnchecked(Target target) {
+        try {
+          return writeDelimited(target);
+        } catch (InterruptedException e) {
+          throw new WrappedInterruptedException(e);
         }
       }
     };
   }
+
+  /** Returns the length-delimited serialization of the target, as by {@code writeDelimitedTo}. */
+  private byte[] writeDelimited(Target target) throws InterruptedException {
+    Build.Target targetPb = toTargetProtoBuffer(target);
+    int size = targetPb.getSerializedSize();
+    byte[] bytes = new byte[CodedOutputStream.computeUInt32SizeNoTag(size) + size];
+    CodedOutputStream codedOut = CodedOutputStream.newInstance(bytes);
+    try {
+      codedOut.writeUInt32NoTag(size);
+      targetPb.writeTo(codedOut);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unexpected failure writing to a byte array", e);
+    }
+    codedOut.checkNoSpaceLeft();
+    return bytes;
+  }
+
+  private static final class WrappedInterruptedException extends RuntimeException {
+    WrappedInterruptedException(InterruptedException e) {
+      super(e.getMessage(), e);
+    }
+  }
 }
@@ -0,0 +1,62 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import build.bazel.remote.execution.v2.ActionResult;
+import build.bazel.remote.execution.v2.Digest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.devtools.build.lib.remote.common.RemoteCacheClient.ActionKey;
+import java.time.Duration;
+import javax.annotation.Nullable;
+
+/**
+ * Remembers the {@link ActionResult}s that were recently looked up in or uploaded to the remote
+ * cache, so that looking them up again in a later command of the same server doesn't take a round
+ * trip.
+ *
+ * <p>The outputs of a remembered result are not checked for existence before it is used, which
+ * would take a round trip again. Instead, entries expire a fixed time after the remote cache last
+ * returned or accepted them, which must be below the time the remote cache keeps the outputs of
+ * results it returns. Results whose outputs turn out to be missing when they are downloaded are
+ * forgotten. A cache must only be used with the remote cache and the cache options that it was
+ * filled with.
+ */
+final class ActionResultMemoryCache {
+
+  private final Cache<Digest, ActionResult> results;
+
+  ActionResultMemoryCache(int maxSize, Duration ttl) {
+    this.results = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+  }
+
+  /** Returns the remembered result of the given action, or null. */
+  @Nullable
+  ActionResult get(ActionKey actionKey) {
+    return results.getIfPresent(actionKey.getDigest());
+  }
+
+  /** Remembers the result of the given action, if it was successful. */
+  void put(ActionKey actionKey, @Nullable ActionResult result) {
+    if (result != null && result.getExitCode() == 0) {
+      results.put(actionKey.getDigest(), result);
+    }
+  }
+
+  /** Forgets the result of the given action. */
+  void invalidate(ActionKey actionKey) {
+    results.invalidate(actionKey.getDigest());
+  }
+}
@@ -288,9 +288,11 @@ class ByteStreamUploader extends AbstractReferenceCounted {
     }
   }
 
-  private static String buildUploadResourceName(String instanceName, UUID uuid, Digest digest) {
-    String resourceName =
-        format("uploads/%s/blobs/%s/%d", uuid, digest.getHash(), digest.getSizeBytes());
+  private static String buildUploadResourceName(
+      String instanceName, UUID uuid, Digest digest, boolean compressed) {
+    String template =
+        compressed ? "uploads/%s/compressed-blobs/deflate/%s/%d" : "uploads/%s/blobs/%s/%d";
+    String resourceName = format(template, uuid, digest.getHash(), digest.getSizeBytes());
     if (!Strings.isNullOrEmpty(instanceName)) {
       resourceName = instanceName + "/" + resourceName;
     }
@@ -315,7 +317,8 @@ class ByteStreamUploader extends AbstractReferenceCounted {
     }
 
     UUID uploadId = UUID.randomUUID();
-    String resourceName = buildUploadResourceName(instanceName, uploadId, digest);
+    String resourceName =
+        buildUploadResourceName(instanceName, uploadId, digest, chunker.isCompressed());
     AsyncUpload newUpload =
         new AsyncUpload(
             context,
@@ -395,7 +398,7 @@ class ByteStreamUploader extends AbstractReferenceCounted {
               () ->
                   retrier.executeAsync(
                       () -> {
-                        if (committedOffset.get() < chunker.getSize()) {
+                        if (!isComplete(committedOffset.get())) {
                           return callAndQueryOnFailure(committedOffset, progressiveBackoff);
                         }
                         return Futures.immediateFuture(null);
@@ -407,6 +410,16 @@ class ByteStreamUploader extends AbstractReferenceCounted {
           callFuture,
           (result) -> {
             long committedSize = committedOffset.get();
+            if (chunker.isCompressed()) {
+              if (!isComplete(committedSize)) {
+                String message =
+                    format(
+                        "compressed write incomplete: committed_size %d for %d compressed bytes",
+                        committedSize, chunker.getOffset());
+                return Futures.immediateFailedFuture(new IOException(message));
+              }
+              return Futures.immediateFuture(null);
+            }
             long expected = chunker.getSize();
             if (committedSize != expected) {
               String message =
@@ -419,6 +432,20 @@ class ByteStreamUploader extends AbstractReferenceCounted {
           MoreExecutors.directExecutor());
     }
 
+    /**
+     * Returns whether the server has committed the whole blob.
+     *
+     * <p>For compressed uploads the committed size refers to the compressed data, whose total size
+     * is only known once the chunker has been fully consumed. A server that already has the blob
+     * may also short-circuit the upload by returning a committed size of -1.
+     */
+    private boolean isComplete(long committedSize) {
+      if (!chunker.isCompressed()) {
+        return committedSize >= chunker.getSize();
+      }
+      return committedSize == -1 || (!chunker.hasNext() && committedSize == chunker.getOffset());
+    }
+
     private ByteStreamFutureStub bsFutureStub() {
       return ByteStreamGrpc.newFutureStub(channel)
           .withInterceptors(
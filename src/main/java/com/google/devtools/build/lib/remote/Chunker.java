@@ -29,9 +29,12 @@ import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
 
 /**
  * Splits a data source into one or more {@link Chunk}s of at most {@code chunkSize} bytes.
@@ -40,6 +43,11 @@ import java.util.function.Supplier;
  * {@code false}, the chunker closes the underlying data source (i.e. file) itself. However, in
  * case of error or when a data source does not get fully consumed, a user must call
  * {@link #reset()} manually.
+ *
+ * <p>A chunker may compress its data source with raw DEFLATE (RFC 1951), as used by the {@code
+ * compressed-blobs} ByteStream resources of the remote execution API. In that case the chunks,
+ * their offsets and {@link #seek} refer to the compressed data, whose size is not known in
+ * advance, while {@link #getSize()} still returns the size of the uncompressed data source.
  */
 public final class Chunker {
 
@@ -97,6 +105,7 @@ public final class Chunker {
   private final long size;
   private final int chunkSize;
   private final Chunk emptyChunk;
+  private final boolean compressed;
 
   private InputStream data;
   private long offset;
@@ -106,21 +115,28 @@ public final class Chunker {
   // lazily on the first call to next(), as opposed to opening it in the constructor or on reset().
   private boolean initialized;
 
-  Chunker(Supplier<InputStream> dataSupplier, long size, int chunkSize) {
+  Chunker(Supplier<InputStream> dataSupplier, long size, int chunkSize, boolean compressed) {
     this.dataSupplier = checkNotNull(dataSupplier);
     this.size = size;
     this.chunkSize = chunkSize;
     this.emptyChunk = new Chunk(ByteString.EMPTY, 0);
+    this.compressed = compressed;
   }
 
   public long getOffset() {
     return offset;
   }
 
+  /** Returns the size of the uncompressed data source. */
   public long getSize() {
     return size;
   }
 
+  /** Returns whether the chunks are compressed with raw DEFLATE. */
+  public boolean isCompressed() {
+    return compressed;
+  }
+
   /**
    * Reset the {@link Chunker} state to when it was newly constructed.
    *
@@ -178,6 +194,10 @@ public final class Chunker {
       return emptyChunk;
     }
 
+    if (compressed) {
+      return nextCompressed();
+    }
+
     // The cast to int is safe, because the return value is capped at chunkSize.
     int bytesToRead = (int) Math.min(bytesLeft(), chunkSize);
     if (bytesToRead == 0) {
@@ -214,6 +234,34 @@ public final class Chunker {
     return new Chunk(blob, offsetBefore);
   }
 
+  private Chunk nextCompressed() throws IOException {
+    if (chunkCache == null) {
+      // The compressed size is not known up front, so always allocate a full chunk.
+      chunkCache = new byte[chunkSize];
+    }
+
+    long offsetBefore = offset;
+    int bytesRead = ByteStreams.read(data, chunkCache, 0, chunkSize);
+    offset += bytesRead;
+
+    ByteString blob = ByteString.copyFrom(chunkCache, 0, bytesRead);
+
+    // Look ahead so that hasNext() reports the end of the compressed data right after the last
+    // chunk, which lets callers mark that chunk as the last one.
+    PushbackInputStream compressedData = (PushbackInputStream) data;
+    int nextByte = bytesRead < chunkSize ? -1 : compressedData.read();
+    if (nextByte == -1) {
+      data.close();
+      data = null;
+      chunkCache = null;
+    } else {
+      compressedData.unread(nextByte);
+    }
+
+    return new Chunk(blob, offsetBefore);
+  }
+
+  /** Returns the number of uncompressed bytes left; only meaningful for uncompressed chunkers. */
   public long bytesLeft() {
     return getSize() - getOffset();
   }
@@ -227,6 +275,9 @@ public final class Chunker {
     checkState(chunkCache == null);
     try {
       data = dataSupplier.get();
+      if (compressed) {
+        data = new PushbackInputStream(new CompressingInputStream(data), 1);
+      }
     } catch (RuntimeException e) {
       Throwables.propagateIfPossible(e.getCause(), IOException.class);
       throw e;
@@ -234,6 +285,23 @@ public final class Chunker {
     initialized = true;
   }
 
+  /** Compresses a stream with raw DEFLATE and releases the native compressor when closed. */
+  private static final class CompressingInputStream extends DeflaterInputStream {
+    CompressingInputStream(InputStream in) {
+      // Favor throughput, as the data is compressed on the fly while it is being uploaded.
+      super(in, new Deflater(Deflater.BEST_SPEED, /* nowrap= */ true));
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        def.end();
+      }
+    }
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -243,6 +311,7 @@ public final class Chunker {
     private int chunkSize = getDefaultChunkSize();
     private long size;
     private Supplier<InputStream> inputStream;
+    private boolean compressed;
 
     public Builder setInput(byte[] data) {
       checkState(inputStream == null);
@@ -303,9 +372,18 @@ public final class Chunker {
       return this;
     }
 
+    /**
+     * Sets whether to compress the data source with raw DEFLATE. Empty data sources are never
+     * compressed.
+     */
+    public Builder setCompressed(boolean compressed) {
+      this.compressed = compressed;
+      return this;
+    }
+
     public Chunker build() {
       checkNotNull(inputStream);
-      return new Chunker(inputStream, size, chunkSize);
+      return new Chunker(inputStream, size, chunkSize, compressed && size > 0);
     }
   }
 }
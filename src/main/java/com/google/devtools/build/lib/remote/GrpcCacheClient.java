@@ -68,6 +68,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
 import javax.annotation.Nullable;
 
 /** A RemoteActionCache implementation that uses gRPC calls to a remote cache server. */
@@ -307,6 +309,11 @@ public class GrpcCacheClient implements RemoteCacheClient, MissingDigestsFinder
       Digest digest,
       OutputStream out,
       @Nullable Supplier<Digest> digestSupplier) {
+    // For compressed downloads the read offset counts compressed bytes, so a single decompressor
+    // is shared by all attempts to resume the download where the previous one left off.
+    @Nullable
+    InflatingOutputStream inflater = shouldCompress(digest) ? new InflatingOutputStream(out) : null;
+    OutputStream sink = inflater != null ? inflater : out;
     AtomicLong offset = new AtomicLong(0);
     ProgressiveBackoff progressiveBackoff = new ProgressiveBackoff(retrier::newBackoff);
     ListenableFuture<Void> downloadFuture =
@@ -315,10 +322,19 @@ public class GrpcCacheClient implements RemoteCacheClient, MissingDigestsFinder
                 retrier.executeAsync(
                     () ->
                         requestRead(
-                            context, offset, progressiveBackoff, digest, out, digestSupplier),
+                            context,
+                            offset,
+                            progressiveBackoff,
+                            digest,
+                            sink,
+                            inflater,
+                            digestSupplier),
                     progressiveBackoff),
             callCredentialsProvider);
 
+    if (inflater != null) {
+      downloadFuture.addListener(inflater::end, MoreExecutors.directExecutor());
+    }
     return Futures.catchingAsync(
         downloadFuture,
         StatusRuntimeException.class,
@@ -327,11 +343,22 @@ public class GrpcCacheClient implements RemoteCacheClient, MissingDigestsFinder
   }
 
   public static String getResourceName(String instanceName, Digest digest) {
+    return getResourceName(instanceName, digest, /* compressed= */ false);
+  }
+
+  private static String getResourceName(String instanceName, Digest digest, boolean compressed) {
     String resourceName = "";
     if (!instanceName.isEmpty()) {
       resourceName += instanceName + "/";
     }
-    return resourceName + "blobs/" + DigestUtil.toString(digest);
+    return resourceName
+        + (compressed ? "compressed-blobs/deflate/" : "blobs/")
+        + DigestUtil.toString(digest);
+  }
+
+  /** Returns whether a blob with the given digest is transferred in compressed form. */
+  private boolean shouldCompress(Digest digest) {
+    return options.cacheCompression && digest.getSizeBytes() >= options.cacheCompressionThreshold;
   }
 
   private ListenableFuture<Void> requestRead(
@@ -340,8 +367,9 @@ public class GrpcCacheClient implements RemoteCacheClient, MissingDigestsFinder
       ProgressiveBackoff progressiveBackoff,
       Digest digest,
       OutputStream out,
+      @Nullable InflatingOutputStream inflater,
       @Nullable Supplier<Digest> digestSupplier) {
-    String resourceName = getResourceName(options.remoteInstanceName, digest);
+    String resourceName = getResourceName(options.remoteInstanceName, digest, inflater != null);
     SettableFuture<Void> future = SettableFuture.create();
     bsAsyncStub(context)
         .read(
@@ -377,6 +405,16 @@ public class GrpcCacheClient implements RemoteCacheClient, MissingDigestsFinder
               @Override
               public void onCompleted() {
                 try {
+                  if (inflater != null) {
+                    // Flushes the remaining decompressed data to the underlying stream.
+                    inflater.finish();
+                    if (!inflater.isInflaterFinished()) {
+                      throw new IOException(
+                          String.format(
+                              "Compressed data of blob %s ended prematurely",
+                              DigestUtil.toString(digest)));
+                    }
+                  }
                   if (digestSupplier != null) {
                     Utils.verifyBlobContents(digest, digestSupplier.get());
                   }
@@ -399,7 +437,10 @@ public class GrpcCacheClient implements RemoteCacheClient, MissingDigestsFinder
     return uploader.uploadBlobAsync(
         context,
         digest,
-        Chunker.builder().setInput(digest.getSizeBytes(), path).build(),
+        Chunker.builder()
+            .setInput(digest.getSizeBytes(), path)
+            .setCompressed(shouldCompress(digest))
+            .build(),
         /* forceUpload= */ true);
   }
 
@@ -409,7 +450,69 @@ public class GrpcCacheClient implements RemoteCacheClient, MissingDigestsFinder
     return uploader.uploadBlobAsync(
         context,
         digest,
-        Chunker.builder().setInput(data.toByteArray()).build(),
+        Chunker.builder()
+            .setInput(data.toByteArray())
+            .setCompressed(shouldCompress(digest))
+            .build(),
         /* forceUpload= */ true);
   }
+
+  /**
+   * Decompresses a compressed download into another stream.
+   *
+   * <p>The caller may cancel a download while gRPC still delivers data for it. The inflater is
+   * therefore only used and ended under the lock of this stream, and writing after it was ended
+   * fails, which cancels the call, instead of using the released inflater.
+   */
+  private static final class InflatingOutputStream extends InflaterOutputStream {
+    private boolean ended;
+
+    InflatingOutputStream(OutputStream out) {
+      super(out, new Inflater(/* nowrap= */ true));
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+      checkNotEnded();
+      super.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      checkNotEnded();
+      super.write(b, off, len);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+      checkNotEnded();
+      super.flush();
+    }
+
+    @Override
+    public synchronized void finish() throws IOException {
+      checkNotEnded();
+      super.finish();
+    }
+
+    /** Returns whether the end of the compressed data was reached. */
+    synchronized boolean isInflaterFinished() throws IOException {
+      checkNotEnded();
+      return inf.finished();
+    }
+
+    /** Releases the inflater once the download is done or cancelled. */
+    synchronized void end() {
+      if (!ended) {
+        ended = true;
+        inf.end();
+      }
+    }
+
+    private void checkNotEnded() throws IOException {
+      if (ended) {
+        throw new IOException("The download was already finished or cancelled");
+      }
+    }
+  }
 }
@@ -13,9 +13,12 @@
 // limitations under the License.
 package com.google.devtools.build.lib.remote;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.GoogleLogger;
 import com.google.devtools.build.lib.remote.grpc.ChannelConnectionFactory;
 import com.google.devtools.build.lib.remote.grpc.ChannelConnectionFactory.ChannelConnection;
 import com.google.devtools.build.lib.remote.grpc.DynamicConnectionPool;
+import com.google.devtools.build.lib.remote.grpc.DynamicConnectionPool.ConnectionStats;
 import com.google.devtools.build.lib.remote.grpc.SharedConnectionFactory.SharedConnection;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
@@ -37,11 +40,14 @@ import java.io.IOException;
  * <p>See {@link ReferenceCounted} for more information about reference counting.
  */
 public class ReferenceCountedChannel extends Channel implements ReferenceCounted {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
   private final DynamicConnectionPool dynamicConnectionPool;
   private final AbstractReferenceCounted referenceCounted =
       new AbstractReferenceCounted() {
         @Override
         protected void deallocate() {
+          logger.atFine().log("Closing channel with connections %s", getConnectionStats());
           try {
             dynamicConnectionPool.close();
           } catch (IOException e) {
@@ -56,14 +62,28 @@ public class ReferenceCountedChannel extends Channel implements ReferenceCounted
       };
 
   public ReferenceCountedChannel(ChannelConnectionFactory connectionFactory) {
+    this(connectionFactory, /* minConnections= */ 1);
+  }
+
+  /**
+   * Creates a channel that spreads its calls over at least {@code minConnections} connections
+   * created by {@code connectionFactory}, routing each call to the least loaded one.
+   */
+  public ReferenceCountedChannel(ChannelConnectionFactory connectionFactory, int minConnections) {
     this.dynamicConnectionPool =
-        new DynamicConnectionPool(connectionFactory, connectionFactory.maxConcurrency());
+        new DynamicConnectionPool(
+            connectionFactory, connectionFactory.maxConcurrency(), minConnections);
   }
 
   public boolean isShutdown() {
     return dynamicConnectionPool.isClosed();
   }
 
+  /** Returns the load statistics of the connections currently used by this channel. */
+  public ImmutableList<ConnectionStats> getConnectionStats() {
+    return dynamicConnectionPool.getConnectionStats();
+  }
+
   /** A {@link ClientCall} which call {@link SharedConnection#close()} after the RPC is closed. */
   static class ConnectionCleanupCall<ReqT, RespT>
       extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
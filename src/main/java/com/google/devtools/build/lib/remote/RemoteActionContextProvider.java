@@ -169,15 +169,19 @@ final class RemoteActionContextProvider implements ExecutorLifecycleListener {
    * Registers a spawn cache action context
    *
    * @param registryBuilder builder with which to register the cache
+   * @param actionResultMemoryCache results of earlier lookups to answer lookups from, or null
    */
-  public void registerSpawnCache(ModuleActionContextRegistry.Builder registryBuilder) {
+  public void registerSpawnCache(
+      ModuleActionContextRegistry.Builder registryBuilder,
+      @Nullable ActionResultMemoryCache actionResultMemoryCache) {
     RemoteSpawnCache spawnCache =
         new RemoteSpawnCache(
             env.getExecRoot(),
             checkNotNull(env.getOptions().getOptions(RemoteOptions.class)),
             checkNotNull(env.getOptions().getOptions(ExecutionOptions.class)).verboseFailures,
             env.getReporter(),
-            getRemoteExecutionService());
+            getRemoteExecutionService(),
+            actionResultMemoryCache);
     registryBuilder.register(SpawnCache.class, spawnCache, "remote-cache");
   }
 
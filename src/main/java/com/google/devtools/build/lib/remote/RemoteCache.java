@@ -425,46 +425,58 @@ public class RemoteCache implements AutoCloseable {
       OutputFilesLocker outputFilesLocker,
       ProgressStatusListener progressStatusListener)
       throws ExecException, IOException, InterruptedException {
-    ActionResultMetadata metadata = parseActionResultMetadata(context, remotePathResolver, result);
-
-    List<ListenableFuture<FileMetadata>> downloads =
-        Stream.concat(
-                metadata.files().stream(),
-                metadata.directories().stream()
-                    .flatMap((entry) -> entry.getValue().files().stream()))
-            .map(
-                (file) -> {
-                  try {
-                    ListenableFuture<Void> download =
-                        downloadFile(
-                            context,
-                            remotePathResolver.localPathToOutputPath(file.path()),
-                            toTmpDownloadPath(file.path()),
-                            file.digest(),
-                            new DownloadProgressReporter(
-                                progressStatusListener,
-                                remotePathResolver.localPathToOutputPath(file.path()),
-                                file.digest().getSizeBytes()));
-                    return Futures.transform(download, (d) -> file, directExecutor());
-                  } catch (IOException e) {
-                    return Futures.<FileMetadata>immediateFailedFuture(e);
-                  }
-                })
-            .collect(Collectors.toList());
-
     // Subsequently we need to wait for *every* download to finish, even if we already know that
     // one failed. That's so that when exiting this method we can be sure that all downloads have
     // finished and don't race with the cleanup routine.
+    List<ListenableFuture<FileMetadata>> downloads = new ArrayList<>();
 
     FileOutErr tmpOutErr = null;
     if (origOutErr != null) {
       tmpOutErr = origOutErr.childOutErr();
     }
+
+    // Output files and stdout/stderr don't depend on the trees of the output directories, so they
+    // are already downloaded while the trees are being fetched.
+    for (OutputFile file : result.getOutputFilesList()) {
+      Path localPath = remotePathResolver.outputPathToLocalPath(file.getPath());
+      downloads.add(
+          downloadOutputFile(
+              context,
+              remotePathResolver,
+              new FileMetadata(localPath, file.getDigest(), file.getIsExecutable()),
+              progressStatusListener));
+    }
     downloads.addAll(downloadOutErr(context, result, tmpOutErr));
 
+    ActionResultMetadata metadata = null;
     try {
+      metadata = parseActionResultMetadata(context, remotePathResolver, result);
+      for (Entry<Path, DirectoryMetadata> entry : metadata.directories()) {
+        for (FileMetadata file : entry.getValue().files()) {
+          downloads.add(
+              downloadOutputFile(context, remotePathResolver, file, progressStatusListener));
+        }
+      }
       waitForBulkTransfer(downloads, /* cancelRemainingOnInterrupt=*/ true);
     } catch (Exception e) {
+      if (metadata == null) {
+        // Fetching the trees failed, so the downloads that were already started haven't been
+        // waited for yet.
+        try {
+          waitForBulkTransfer(downloads, /* cancelRemainingOnInterrupt=*/ true);
+        } catch (BulkTransferException downloadException) {
+          if (e instanceof BulkTransferException) {
+            // Report them as if they had been part of the same bulk transfer.
+            for (Throwable suppressed : downloadException.getSuppressed()) {
+              ((BulkTransferException) e).add((IOException) suppressed);
+            }
+          } else {
+            e.addSuppressed(downloadException);
+          }
+        } catch (InterruptedException downloadException) {
+          e.addSuppressed(downloadException);
+        }
+      }
       if (captureCorruptedOutputsDir != null) {
         if (e instanceof BulkTransferException) {
           for (Throwable suppressed : e.getSuppressed()) {
@@ -546,6 +558,28 @@ public class RemoteCache implements AutoCloseable {
     createSymlinks(symlinks);
   }
 
+  private ListenableFuture<FileMetadata> downloadOutputFile(
+      RemoteActionExecutionContext context,
+      RemotePathResolver remotePathResolver,
+      FileMetadata file,
+      ProgressStatusListener progressStatusListener) {
+    try {
+      ListenableFuture<Void> download =
+          downloadFile(
+              context,
+              remotePathResolver.localPathToOutputPath(file.path()),
+              toTmpDownloadPath(file.path()),
+              file.digest(),
+              new DownloadProgressReporter(
+                  progressStatusListener,
+                  remotePathResolver.localPathToOutputPath(file.path()),
+                  file.digest().getSizeBytes()));
+      return Futures.transform(download, (d) -> file, directExecutor());
+    } catch (IOException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
   /**
    * Copies moves the downloaded outputs from their download location to their declared location.
    */
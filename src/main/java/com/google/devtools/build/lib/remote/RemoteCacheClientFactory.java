@@ -96,6 +96,7 @@ public final class RemoteCacheClientFactory {
               uri,
               Math.toIntExact(options.remoteTimeout.getSeconds()),
               options.remoteMaxConnections,
+              options.remoteCacheHttp2,
               options.remoteVerifyDownloads,
               ImmutableList.copyOf(options.remoteHeaders),
               digestUtil,
@@ -108,6 +109,7 @@ public final class RemoteCacheClientFactory {
             uri,
             Math.toIntExact(options.remoteTimeout.getSeconds()),
             options.remoteMaxConnections,
+            options.remoteCacheHttp2,
             options.remoteVerifyDownloads,
             ImmutableList.copyOf(options.remoteHeaders),
             digestUtil,
@@ -203,6 +203,11 @@ public class RemoteExecutionService {
       return actionKey.getDigest().getHash();
     }
 
+    /** Returns the key of this action in the action cache. */
+    public ActionKey getActionKey() {
+      return actionKey;
+    }
+
     /**
      * Returns a {@link SortedMap} which maps from input paths for remote action to {@link
      * ActionInput}.
@@ -304,6 +309,11 @@ public class RemoteExecutionService {
       this.executeResponse = executeResponse;
     }
 
+    /** Returns the underlying {@link ActionResult}. */
+    public ActionResult getActionResult() {
+      return actionResult;
+    }
+
     /** Returns the exit code of remote executed action. */
     public int getExitCode() {
       return actionResult.getExitCode();
@@ -405,15 +415,19 @@ public class RemoteExecutionService {
     return inMemoryOutput;
   }
 
-  /** Upload outputs of a remote action which was executed locally to remote cache. */
-  public void uploadOutputs(RemoteAction action)
+  /**
+   * Upload outputs of a remote action which was executed locally to remote cache.
+   *
+   * @return the uploaded action result
+   */
+  public ActionResult uploadOutputs(RemoteAction action)
       throws InterruptedException, IOException, ExecException {
     checkNotNull(remoteCache, "remoteCache can't be null");
     Collection<Path> outputFiles =
         action.spawn.getOutputFiles().stream()
             .map((inp) -> execRoot.getRelative(inp.getExecPath()))
             .collect(ImmutableList.toImmutableList());
-    remoteCache.upload(
+    return remoteCache.upload(
         action.remoteActionExecutionContext,
         remotePathResolver,
         action.actionKey,
@@ -103,6 +103,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
 
 /** RemoteModule provides distributed cache and remote execution for Bazel. */
 public final class RemoteModule extends BlazeModule {
@@ -119,6 +120,14 @@ public final class RemoteModule extends BlazeModule {
   private RemoteOutputsMode remoteOutputsMode;
   private RemoteOutputService remoteOutputService;
 
+  /**
+   * Results of remote cache lookups that are kept across commands, and the remote cache options
+   * they were made with.
+   */
+  @Nullable private ActionResultMemoryCache actionResultMemoryCache;
+
+  @Nullable private String actionResultMemoryCacheKey;
+
   private ChannelFactory channelFactory =
       new ChannelFactory() {
         @Override
@@ -320,6 +329,7 @@ public final class RemoteModule extends BlazeModule {
     // based on the resolved IPs of that server. We assume servers normally have 2 IPs. So the
     // max concurrency per connection is 100.
     int maxConcurrencyPerConnection = 100;
+    int minConnections = Math.max(1, remoteOptions.remoteMinConnections);
 
     if (enableRemoteExecution) {
       ImmutableList.Builder<ClientInterceptor> interceptors = ImmutableList.builder();
@@ -335,7 +345,8 @@ public final class RemoteModule extends BlazeModule {
                   remoteOptions.remoteProxy,
                   authAndTlsOptions,
                   interceptors.build(),
-                  maxConcurrencyPerConnection));
+                  maxConcurrencyPerConnection),
+              minConnections);
 
       // Create a separate channel if --remote_executor and --remote_cache point to different
       // endpoints.
@@ -358,7 +369,8 @@ public final class RemoteModule extends BlazeModule {
                   remoteOptions.remoteProxy,
                   authAndTlsOptions,
                   interceptors.build(),
-                  maxConcurrencyPerConnection));
+                  maxConcurrencyPerConnection),
+              minConnections);
     }
 
     if (enableRemoteDownloader) {
@@ -379,7 +391,8 @@ public final class RemoteModule extends BlazeModule {
                     remoteOptions.remoteProxy,
                     authAndTlsOptions,
                     interceptors.build(),
-                    maxConcurrencyPerConnection));
+                    maxConcurrencyPerConnection),
+                minConnections);
       }
     }
 
@@ -794,7 +807,44 @@ public final class RemoteModule extends BlazeModule {
     if (actionContextProvider == null) {
       return;
     }
-    actionContextProvider.registerSpawnCache(registryBuilder);
+    RemoteOptions remoteOptions =
+        Preconditions.checkNotNull(
+            env.getOptions().getOptions(RemoteOptions.class), "RemoteOptions");
+    actionContextProvider.registerSpawnCache(
+        registryBuilder, getActionResultMemoryCache(env, remoteOptions));
+  }
+
+  /**
+   * Returns the cache of action results for the current command, or null if it is disabled. The
+   * cache is kept as long as the options that affect which results it may hold stay the same.
+   */
+  @Nullable
+  private ActionResultMemoryCache getActionResultMemoryCache(
+      CommandEnvironment env, RemoteOptions remoteOptions) {
+    if (remoteOptions.actionResultMemoryCacheSize <= 0) {
+      actionResultMemoryCache = null;
+      actionResultMemoryCacheKey = null;
+      return null;
+    }
+    String key =
+        String.join(
+            "\n",
+            Strings.nullToEmpty(remoteOptions.remoteCache),
+            Strings.nullToEmpty(remoteOptions.remoteInstanceName),
+            String.valueOf(remoteOptions.diskCache),
+            Boolean.toString(remoteOptions.remoteAcceptCached),
+            Boolean.toString(remoteOptions.remoteUploadLocalResults),
+            Boolean.toString(remoteOptions.incompatibleRemoteResultsIgnoreDisk),
+            env.getRuntime().getFileSystem().getDigestFunction().toString(),
+            Integer.toString(remoteOptions.actionResultMemoryCacheSize),
+            remoteOptions.actionResultMemoryCacheTtl.toString());
+    if (actionResultMemoryCache == null || !key.equals(actionResultMemoryCacheKey)) {
+      actionResultMemoryCache =
+          new ActionResultMemoryCache(
+              remoteOptions.actionResultMemoryCacheSize, remoteOptions.actionResultMemoryCacheTtl);
+      actionResultMemoryCacheKey = key;
+    }
+    return actionResultMemoryCache;
   }
 
   @Override
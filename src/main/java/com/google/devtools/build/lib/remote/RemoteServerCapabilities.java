@@ -17,6 +17,7 @@ package com.google.devtools.build.lib.remote;
 import build.bazel.remote.execution.v2.CacheCapabilities;
 import build.bazel.remote.execution.v2.CapabilitiesGrpc;
 import build.bazel.remote.execution.v2.CapabilitiesGrpc.CapabilitiesBlockingStub;
+import build.bazel.remote.execution.v2.Compressor;
 import build.bazel.remote.execution.v2.DigestFunction;
 import build.bazel.remote.execution.v2.ExecutionCapabilities;
 import build.bazel.remote.execution.v2.GetCapabilitiesRequest;
@@ -228,6 +229,16 @@ class RemoteServerCapabilities {
                 digestFunction, cacheCap.getDigestFunctionList()));
       }
 
+      // Check the server can handle compressed blobs, if requested.
+      if (remoteOptions.cacheCompression
+          && !cacheCap.getSupportedCompressorsList().contains(Compressor.Value.DEFLATE)) {
+        result.addError(
+            String.format(
+                "--experimental_remote_cache_compression requested but remote does not support "
+                    + "DEFLATE compression. Server supported compressors are: %s",
+                cacheCap.getSupportedCompressorsList()));
+      }
+
       // Check updating remote cache is allowed, if we ever need to do that.
       boolean remoteExecution = !Strings.isNullOrEmpty(remoteOptions.remoteExecutor);
       if (remoteExecution) {
@@ -17,6 +17,7 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.devtools.build.lib.profiler.ProfilerTask.REMOTE_DOWNLOAD;
 import static com.google.devtools.build.lib.remote.util.Utils.createSpawnResult;
 
+import build.bazel.remote.execution.v2.ActionResult;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.devtools.build.lib.actions.ActionInput;
@@ -67,18 +68,21 @@ final class RemoteSpawnCache implements SpawnCache {
   @Nullable private final Reporter cmdlineReporter;
   private final Set<String> reportedErrors = new HashSet<>();
   private final RemoteExecutionService remoteExecutionService;
+  @Nullable private final ActionResultMemoryCache actionResultMemoryCache;
 
   RemoteSpawnCache(
       Path execRoot,
       RemoteOptions options,
       boolean verboseFailures,
       @Nullable Reporter cmdlineReporter,
-      RemoteExecutionService remoteExecutionService) {
+      RemoteExecutionService remoteExecutionService,
+      @Nullable ActionResultMemoryCache actionResultMemoryCache) {
     this.execRoot = execRoot;
     this.options = options;
     this.verboseFailures = verboseFailures;
     this.cmdlineReporter = cmdlineReporter;
     this.remoteExecutionService = remoteExecutionService;
+    this.actionResultMemoryCache = actionResultMemoryCache;
   }
 
   @Override
@@ -110,7 +114,20 @@ final class RemoteSpawnCache implements SpawnCache {
       try {
         RemoteActionResult result;
         try (SilentCloseable c = prof.profile(ProfilerTask.REMOTE_CACHE_CHECK, "check cache hit")) {
-          result = remoteExecutionService.lookupCache(action);
+          // A remembered result is used without asking the remote cache whether its outputs are
+          // still there, as the memory cache forgets results before the remote cache does.
+          ActionResult rememberedResult =
+              actionResultMemoryCache != null
+                  ? actionResultMemoryCache.get(action.getActionKey())
+                  : null;
+          if (rememberedResult != null) {
+            result = RemoteActionResult.createFromCache(rememberedResult);
+          } else {
+            result = remoteExecutionService.lookupCache(action);
+            if (actionResultMemoryCache != null && result != null) {
+              actionResultMemoryCache.put(action.getActionKey(), result.getActionResult());
+            }
+          }
         }
         // In case the remote cache returned a failed action (exit code != 0) we treat it as a
         // cache miss
@@ -137,10 +154,11 @@ final class RemoteSpawnCache implements SpawnCache {
           return SpawnCache.success(spawnResult);
         }
       } catch (CacheNotFoundException e) {
-        // Intentionally left blank
+        forgetResult(action);
       } catch (IOException e) {
         if (BulkTransferException.isOnlyCausedByCacheNotFoundException(e)) {
-          // Intentionally left blank
+          // The outputs of the result are gone, don't use it again.
+          forgetResult(action);
         } else {
           String errorMessage;
           if (!verboseFailures) {
@@ -197,7 +215,12 @@ final class RemoteSpawnCache implements SpawnCache {
           }
 
           try (SilentCloseable c = prof.profile(ProfilerTask.UPLOAD_TIME, "upload outputs")) {
-            remoteExecutionService.uploadOutputs(action);
+            ActionResult uploaded = remoteExecutionService.uploadOutputs(action);
+            // Only remember the result if it went to every cache that lookups read from.
+            if (actionResultMemoryCache != null
+                && (options.remoteUploadLocalResults || !options.remoteAcceptCached)) {
+              actionResultMemoryCache.put(action.getActionKey(), uploaded);
+            }
           } catch (IOException e) {
             String errorMessage;
             if (!verboseFailures) {
@@ -235,6 +258,12 @@ final class RemoteSpawnCache implements SpawnCache {
     }
   }
 
+  private void forgetResult(RemoteAction action) {
+    if (actionResultMemoryCache != null) {
+      actionResultMemoryCache.invalidate(action.getActionKey());
+    }
+  }
+
   private void report(Event evt) {
     if (cmdlineReporter == null) {
       return;
@@ -154,6 +154,11 @@ public class DiskCacheClient implements RemoteCacheClient {
     return root.getChild(key);
   }
 
+  /** Returns the directory that holds the CAS, with one subdirectory per hash prefix. */
+  protected Path getCasDirectory() {
+    return root.getChild(CAS_DIRECTORY);
+  }
+
   protected Path toPath(String key, boolean actionResult) {
     String cacheFolder = actionResult ? AC_DIRECTORY : CAS_DIRECTORY;
     // Create the file in a subfolder to bypass possible folder file count limits
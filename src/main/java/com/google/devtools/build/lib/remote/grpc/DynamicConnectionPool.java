@@ -13,6 +13,9 @@
 // limitations under the License.
 package com.google.devtools.build.lib.remote.grpc;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
 import com.google.devtools.build.lib.remote.grpc.SharedConnectionFactory.SharedConnection;
 import io.reactivex.rxjava3.core.Single;
 import java.io.IOException;
@@ -23,13 +26,20 @@ import javax.annotation.concurrent.GuardedBy;
 /**
  * A {@link ConnectionPool} that creates new connection with given {@link ConnectionFactory} on
  * demand and applies rate limiting w.r.t {@code maxConcurrencyPerConnection} for one underlying
- * connection. It also uses Round-Robin algorithm to load balancing between underlying connections.
+ * connection. Requests are routed to the least loaded underlying connection, i.e. the one with the
+ * fewest in-flight requests, breaking ties in round-robin order.
+ *
+ * <p>Until {@code minConnections} underlying connections exist, every request opens a new one. This
+ * spreads concurrent requests over several connections from the start instead of multiplexing up
+ * to {@code maxConcurrencyPerConnection} of them over a single connection, where they would be
+ * limited by its flow control window and suffer from head-of-line blocking.
  *
  * <p>Connections must be closed with {@link Connection#close()} in order to be reused later.
  */
 public class DynamicConnectionPool implements ConnectionPool {
   private final ConnectionFactory connectionFactory;
   private final int maxConcurrencyPerConnection;
+  private final int minConnections;
   private final AtomicBoolean closed = new AtomicBoolean(false);
 
   @GuardedBy("this")
@@ -40,8 +50,15 @@ public class DynamicConnectionPool implements ConnectionPool {
 
   public DynamicConnectionPool(
       ConnectionFactory connectionFactory, int maxConcurrencyPerConnection) {
+    this(connectionFactory, maxConcurrencyPerConnection, /* minConnections= */ 1);
+  }
+
+  public DynamicConnectionPool(
+      ConnectionFactory connectionFactory, int maxConcurrencyPerConnection, int minConnections) {
+    checkArgument(minConnections > 0, "minConnections must be positive: %s", minConnections);
     this.connectionFactory = connectionFactory;
     this.maxConcurrencyPerConnection = maxConcurrencyPerConnection;
+    this.minConnections = minConnections;
     this.factories = new ArrayList<>();
   }
 
@@ -62,11 +79,12 @@ public class DynamicConnectionPool implements ConnectionPool {
   }
 
   /**
-   * Performs a simple round robin on the list of {@link SharedConnectionFactory} and return one
-   * having available connections at this moment.
+   * Returns the {@link SharedConnectionFactory} with the most available connections at this
+   * moment. The search starts at a round-robin position, so that equally loaded factories take
+   * turns.
    *
-   * <p>If no factory has available connections, it will create a new {@link
-   * SharedConnectionFactory}.
+   * <p>If fewer than {@code minConnections} factories exist, or no factory has available
+   * connections, it will create a new {@link SharedConnectionFactory}.
    */
   private SharedConnectionFactory nextAvailableFactory() {
     if (closed.get()) {
@@ -74,13 +92,21 @@ public class DynamicConnectionPool implements ConnectionPool {
     }
 
     synchronized (this) {
-      for (int times = 0; times < factories.size(); ++times) {
-        int index = Math.abs(indexTicker % factories.size());
+      if (factories.size() >= minConnections) {
+        SharedConnectionFactory leastLoaded = null;
+        int maxAvailable = 0;
+        int start = Math.abs(indexTicker % factories.size());
         indexTicker += 1;
-
-        SharedConnectionFactory factory = factories.get(index);
-        if (factory.numAvailableConnections() > 0) {
-          return factory;
+        for (int times = 0; times < factories.size(); ++times) {
+          SharedConnectionFactory factory = factories.get((start + times) % factories.size());
+          int available = factory.numAvailableConnections();
+          if (available > maxAvailable) {
+            leastLoaded = factory;
+            maxAvailable = available;
+          }
+        }
+        if (leastLoaded != null) {
+          return leastLoaded;
         }
       }
 
@@ -91,6 +117,44 @@ public class DynamicConnectionPool implements ConnectionPool {
     }
   }
 
+  /** Load statistics of one underlying connection of the pool. */
+  public static final class ConnectionStats {
+    private final int inFlightRequests;
+    private final long totalRequests;
+
+    ConnectionStats(int inFlightRequests, long totalRequests) {
+      this.inFlightRequests = inFlightRequests;
+      this.totalRequests = totalRequests;
+    }
+
+    /** Returns the number of requests currently using the connection. */
+    public int getInFlightRequests() {
+      return inFlightRequests;
+    }
+
+    /** Returns the number of requests that have used the connection so far. */
+    public long getTotalRequests() {
+      return totalRequests;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("{in-flight: %d, total: %d}", inFlightRequests, totalRequests);
+    }
+  }
+
+  /** Returns the load statistics of the underlying connections, in order of their creation. */
+  public synchronized ImmutableList<ConnectionStats> getConnectionStats() {
+    ImmutableList.Builder<ConnectionStats> stats =
+        ImmutableList.builderWithExpectedSize(factories.size());
+    for (SharedConnectionFactory factory : factories) {
+      stats.add(
+          new ConnectionStats(
+              factory.numInFlightConnections(), factory.numAcquiredConnections()));
+    }
+    return stats.build();
+  }
+
   @Override
   public Single<SharedConnection> create() {
     return Single.defer(
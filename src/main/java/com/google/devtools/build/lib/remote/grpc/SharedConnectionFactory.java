@@ -24,6 +24,7 @@ import io.reactivex.rxjava3.subjects.AsyncSubject;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
@@ -41,6 +42,8 @@ import javax.annotation.concurrent.GuardedBy;
 public class SharedConnectionFactory implements ConnectionPool {
   private final TokenBucket<Integer> tokenBucket;
   private final ConnectionFactory factory;
+  private final int maxConcurrency;
+  private final AtomicLong numAcquiredConnections = new AtomicLong(0);
 
   @Nullable
   @GuardedBy("this")
@@ -51,6 +54,7 @@ public class SharedConnectionFactory implements ConnectionPool {
 
   public SharedConnectionFactory(ConnectionFactory factory, int maxConcurrency) {
     this.factory = factory;
+    this.maxConcurrency = maxConcurrency;
 
     List<Integer> initialTokens = new ArrayList<>(maxConcurrency);
     for (int i = 0; i < maxConcurrency; ++i) {
@@ -115,9 +119,11 @@ public class SharedConnectionFactory implements ConnectionPool {
                     .doOnError(ignored -> tokenBucket.addToken(token))
                     .doOnDispose(() -> tokenBucket.addToken(token))
                     .map(
-                        conn ->
-                            new SharedConnection(
-                                conn, /* onClose= */ () -> tokenBucket.addToken(token))));
+                        conn -> {
+                          numAcquiredConnections.incrementAndGet();
+                          return new SharedConnection(
+                              conn, /* onClose= */ () -> tokenBucket.addToken(token));
+                        }));
   }
 
   /** Returns current number of available connections. */
@@ -125,6 +131,16 @@ public class SharedConnectionFactory implements ConnectionPool {
     return tokenBucket.size();
   }
 
+  /** Returns the number of shared connections that are currently acquired, or being acquired. */
+  public int numInFlightConnections() {
+    return maxConcurrency - tokenBucket.size();
+  }
+
+  /** Returns the total number of shared connections handed out by this factory so far. */
+  public long numAcquiredConnections() {
+    return numAcquiredConnections.get();
+  }
+
   /** A {@link Connection} which wraps an underlying connection and is shared between consumers. */
   public static class SharedConnection implements Connection {
     private final Connection connection;
@@ -0,0 +1,340 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.remote.http;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link ChannelPool} that hands out HTTP/2 streams multiplexed over a small number of
+ * connections.
+ *
+ * <p>Acquired channels are {@link Http2StreamChannel}s with an empty pipeline. Each of them carries
+ * a single request and is closed when released. Streams are opened on the connection with the
+ * fewest active streams. A new connection is only opened once every connection carries {@code
+ * maxStreamsPerConnection} streams, and at most {@code maxConnections} connections are opened (0
+ * means no limit). Streams exceeding the server's {@code SETTINGS_MAX_CONCURRENT_STREAMS} are
+ * queued by the connection until an earlier stream completes. A connection that the server sends
+ * a GOAWAY on gets no new streams and is closed once its active streams have completed.
+ *
+ * <p>With TLS, HTTP/2 is negotiated via ALPN ("h2"). Without TLS, HTTP/2 is spoken with prior
+ * knowledge ("h2c").
+ */
+final class Http2ChannelPool implements ChannelPool {
+
+  private final Bootstrap bootstrap;
+  @Nullable private final SslContext sslCtx;
+  private final String hostname;
+  private final int port;
+  private final int maxConnections;
+  private final int maxStreamsPerConnection;
+
+  /** Connections on which new streams are opened. */
+  @GuardedBy("this")
+  private final List<PooledConnection> connections = new ArrayList<>();
+
+  /** All connections that aren't closed yet, including those retired after a GOAWAY. */
+  @GuardedBy("this")
+  private final Set<PooledConnection> openConnections = new HashSet<>();
+
+  @GuardedBy("this")
+  private boolean closed;
+
+  /** A connection and the number of streams that are open, or being opened, on it. */
+  private static final class PooledConnection {
+    /** Completed with the connection once streams can be opened on it. */
+    private final Promise<Channel> ready;
+
+    @Nullable private Channel channel;
+
+    private int activeStreams;
+
+    /** Whether new streams are no longer opened on this connection. */
+    private boolean retired;
+
+    private PooledConnection(Promise<Channel> ready) {
+      this.ready = ready;
+    }
+  }
+
+  Http2ChannelPool(
+      Bootstrap bootstrap,
+      @Nullable SslContext sslCtx,
+      String hostname,
+      int port,
+      int maxConnections,
+      int maxStreamsPerConnection) {
+    this.bootstrap = bootstrap;
+    this.sslCtx = sslCtx;
+    this.hostname = hostname;
+    this.port = port;
+    this.maxConnections = maxConnections;
+    this.maxStreamsPerConnection = maxStreamsPerConnection;
+  }
+
+  @Override
+  public Future<Channel> acquire() {
+    return acquire(bootstrap.config().group().next().newPromise());
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  @Override
+  public Future<Channel> acquire(Promise<Channel> promise) {
+    PooledConnection conn;
+    synchronized (this) {
+      if (closed) {
+        promise.setFailure(new IllegalStateException("closed"));
+        return promise;
+      }
+      conn = nextConnection();
+      conn.activeStreams++;
+    }
+
+    conn.ready.addListener(
+        (Future<Channel> connected) -> {
+          if (!connected.isSuccess()) {
+            streamClosed(conn);
+            promise.tryFailure(connected.cause());
+            return;
+          }
+          new Http2StreamChannelBootstrap(connected.getNow())
+              .open()
+              .addListener(
+                  (Future<Http2StreamChannel> opened) -> {
+                    if (!opened.isSuccess()) {
+                      streamClosed(conn);
+                      promise.tryFailure(opened.cause());
+                      return;
+                    }
+                    Http2StreamChannel stream = opened.getNow();
+                    stream.closeFuture().addListener((f) -> streamClosed(conn));
+                    if (!promise.trySuccess(stream)) {
+                      stream.close();
+                    }
+                  });
+        });
+    return promise;
+  }
+
+  /**
+   * Returns the connection with the fewest active streams, or opens a new connection if all of them
+   * are busy and the connection limit allows it.
+   */
+  @GuardedBy("this")
+  private PooledConnection nextConnection() {
+    PooledConnection leastLoaded = null;
+    for (PooledConnection conn : connections) {
+      if (leastLoaded == null || conn.activeStreams < leastLoaded.activeStreams) {
+        leastLoaded = conn;
+      }
+    }
+    if (leastLoaded == null
+        || (leastLoaded.activeStreams >= maxStreamsPerConnection
+            && (maxConnections <= 0 || connections.size() < maxConnections))) {
+      leastLoaded = connect();
+    }
+    return leastLoaded;
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  @GuardedBy("this")
+  private PooledConnection connect() {
+    PooledConnection conn =
+        new PooledConnection(bootstrap.config().group().next().<Channel>newPromise());
+    ChannelFuture connectFuture =
+        bootstrap
+            .clone()
+            .handler(
+                new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) {
+                    initConnection(ch.pipeline(), conn);
+                  }
+                })
+            .connect();
+    conn.channel = connectFuture.channel();
+    // Add the connection before registering the listeners below, as they may run immediately.
+    connections.add(conn);
+    openConnections.add(conn);
+    connectFuture.addListener(
+        (ChannelFuture f) -> {
+          if (!f.isSuccess()) {
+            conn.ready.tryFailure(f.cause());
+          } else if (sslCtx == null) {
+            conn.ready.trySuccess(f.channel());
+          }
+        });
+    conn.channel
+        .closeFuture()
+        .addListener(
+            (f) -> {
+              connectionClosed(conn);
+              conn.ready.tryFailure(new ClosedChannelException());
+            });
+    return conn;
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private void initConnection(ChannelPipeline pipeline, PooledConnection conn) {
+    if (sslCtx == null) {
+      addHttp2Handlers(pipeline, conn);
+      return;
+    }
+    pipeline.addLast("ssl-handler", sslCtx.newHandler(pipeline.channel().alloc(), hostname, port));
+    pipeline.addLast(
+        new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+          @Override
+          protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+            if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+              addHttp2Handlers(ctx.pipeline(), conn);
+              conn.ready.trySuccess(ctx.channel());
+            } else {
+              conn.ready.tryFailure(
+                  new IOException(
+                      String.format(
+                          "%s:%d does not support HTTP/2, negotiated protocol: %s",
+                          hostname, port, protocol)));
+              ctx.close();
+            }
+          }
+
+          @Override
+          protected void handshakeFailure(ChannelHandlerContext ctx, Throwable cause) {
+            conn.ready.tryFailure(cause);
+            ctx.close();
+          }
+        });
+  }
+
+  private void addHttp2Handlers(ChannelPipeline pipeline, PooledConnection conn) {
+    pipeline.addLast(
+        Http2FrameCodecBuilder.forClient()
+            .initialSettings(Http2Settings.defaultSettings().pushEnabled(false))
+            // Queue streams beyond the server's concurrency limit instead of failing them.
+            .encoderEnforceMaxConcurrentStreams(true)
+            .build());
+    pipeline.addLast(new Http2MultiplexHandler(RejectInboundStreamHandler.INSTANCE));
+    pipeline.addLast(
+        new SimpleChannelInboundHandler<Http2GoAwayFrame>() {
+          @Override
+          protected void channelRead0(ChannelHandlerContext ctx, Http2GoAwayFrame goAway) {
+            // The server won't accept new streams on this connection, but lets active streams
+            // complete.
+            retire(conn);
+          }
+        });
+  }
+
+  /**
+   * Stops opening new streams on the given connection, and closes it once its active streams have
+   * completed.
+   */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private void retire(PooledConnection conn) {
+    synchronized (this) {
+      connections.remove(conn);
+      conn.retired = true;
+      if (conn.activeStreams > 0) {
+        return;
+      }
+    }
+    conn.channel.close();
+  }
+
+  private synchronized void connectionClosed(PooledConnection conn) {
+    connections.remove(conn);
+    openConnections.remove(conn);
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private void streamClosed(PooledConnection conn) {
+    synchronized (this) {
+      conn.activeStreams--;
+      if (!conn.retired || conn.activeStreams > 0) {
+        return;
+      }
+    }
+    conn.channel.close();
+  }
+
+  @Override
+  public Future<Void> release(Channel channel) {
+    return release(channel, bootstrap.config().group().next().newPromise());
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  @Override
+  public Future<Void> release(Channel channel, Promise<Void> promise) {
+    // Streams can't be reused. Closing a stream that hasn't completed resets it.
+    channel.close();
+    return promise.setSuccess(null);
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  @Override
+  public void close() {
+    List<PooledConnection> toClose;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      toClose = new ArrayList<>(openConnections);
+      connections.clear();
+      openConnections.clear();
+    }
+    for (PooledConnection conn : toClose) {
+      conn.channel.close();
+    }
+  }
+
+  /** Closes streams initiated by the server. Server push is disabled, so there should be none. */
+  @Sharable
+  private static final class RejectInboundStreamHandler extends ChannelInboundHandlerAdapter {
+    private static final RejectInboundStreamHandler INSTANCE = new RejectInboundStreamHandler();
+
+    @SuppressWarnings("FutureReturnValueIgnored")
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+      ctx.close();
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.GoogleLogger;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -59,11 +60,19 @@ import io.netty.handler.codec.http.HttpRequestEncoder;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseDecoder;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
 import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.handler.timeout.ReadTimeoutException;
 import io.netty.handler.timeout.WriteTimeoutException;
@@ -77,9 +86,11 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -113,6 +124,11 @@ import javax.net.ssl.SSLEngine;
  * accepted.
  *
  * <p>The implementation currently does not support transfer encoding chunked.
+ *
+ * <p>Optionally, HTTP/2 can be used instead of HTTP/1.1: "h2" negotiated via ALPN for HTTPS, and
+ * "h2c" with prior knowledge otherwise. Requests are then multiplexed as streams over a few
+ * connections, and {@link #findMissingDigests} checks the existence of CAS blobs with concurrent
+ * {@code HEAD} requests, so that blobs already in the cache are not uploaded again.
  */
 public final class HttpCacheClient implements RemoteCacheClient {
   private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
@@ -121,6 +137,9 @@ public final class HttpCacheClient implements RemoteCacheClient {
   public static final String CAS_PREFIX = "cas/";
   private static final Pattern INVALID_TOKEN_ERROR =
       Pattern.compile("\\s*error\\s*=\\s*\"?invalid_token\"?");
+  // The number of HTTP/2 streams per connection before opening another connection. Matches the
+  // SETTINGS_MAX_CONCURRENT_STREAMS that common servers advertise.
+  private static final int MAX_STREAMS_PER_CONNECTION = 100;
 
   private final ConcurrentHashMap<String, Boolean> storedBlobs = new ConcurrentHashMap<>();
 
@@ -130,6 +149,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
   private final int timeoutSeconds;
   private final ImmutableList<Entry<String, String>> extraHttpHeaders;
   private final boolean useTls;
+  private final boolean useHttp2;
   private final boolean verifyDownloads;
   private final DigestUtil digestUtil;
 
@@ -150,6 +170,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
       URI uri,
       int timeoutSeconds,
       int remoteMaxConnections,
+      boolean useHttp2,
       boolean verifyDownloads,
       ImmutableList<Entry<String, String>> extraHttpHeaders,
       DigestUtil digestUtil,
@@ -161,6 +182,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
         uri,
         timeoutSeconds,
         remoteMaxConnections,
+        useHttp2,
         verifyDownloads,
         extraHttpHeaders,
         digestUtil,
@@ -173,6 +195,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
       URI uri,
       int timeoutSeconds,
       int remoteMaxConnections,
+      boolean useHttp2,
       boolean verifyDownloads,
       ImmutableList<Entry<String, String>> extraHttpHeaders,
       DigestUtil digestUtil,
@@ -186,6 +209,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
           uri,
           timeoutSeconds,
           remoteMaxConnections,
+          useHttp2,
           verifyDownloads,
           extraHttpHeaders,
           digestUtil,
@@ -198,6 +222,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
           uri,
           timeoutSeconds,
           remoteMaxConnections,
+          useHttp2,
           verifyDownloads,
           extraHttpHeaders,
           digestUtil,
@@ -214,6 +239,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
       URI uri,
       int timeoutSeconds,
       int remoteMaxConnections,
+      boolean useHttp2,
       boolean verifyDownloads,
       ImmutableList<Entry<String, String>> extraHttpHeaders,
       DigestUtil digestUtil,
@@ -221,6 +247,7 @@ public final class HttpCacheClient implements RemoteCacheClient {
       @Nullable SocketAddress socketAddress)
       throws Exception {
     useTls = uri.getScheme().equals("https");
+    this.useHttp2 = useHttp2;
     if (uri.getPort() == -1) {
       int port = useTls ? 443 : 80;
       uri =
@@ -243,7 +270,18 @@ public final class HttpCacheClient implements RemoteCacheClient {
       // OpenSsl gives us a > 2x speed improvement on fast networks, but requires netty tcnative
       // to be there which is not available on all platforms and environments.
       SslProvider sslProvider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
-      sslCtx = SslContextBuilder.forClient().sslProvider(sslProvider).build();
+      SslContextBuilder sslCtxBuilder = SslContextBuilder.forClient().sslProvider(sslProvider);
+      if (useHttp2) {
+        sslCtxBuilder
+            .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+            .applicationProtocolConfig(
+                new ApplicationProtocolConfig(
+                    Protocol.ALPN,
+                    SelectorFailureBehavior.NO_ADVERTISE,
+                    SelectedListenerFailureBehavior.ACCEPT,
+                    ApplicationProtocolNames.HTTP_2));
+      }
+      sslCtx = sslCtxBuilder.build();
     } else {
       sslCtx = null;
     }
@@ -275,7 +313,18 @@ public final class HttpCacheClient implements RemoteCacheClient {
             }
           }
         };
-    if (remoteMaxConnections > 0) {
+    if (useHttp2) {
+      // With HTTP/2, --remote_max_connections limits the number of connections, each of which
+      // multiplexes many requests.
+      channelPool =
+          new Http2ChannelPool(
+              clientBootstrap,
+              sslCtx,
+              hostname,
+              port,
+              remoteMaxConnections,
+              MAX_STREAMS_PER_CONNECTION);
+    } else if (remoteMaxConnections > 0) {
       channelPool = new FixedChannelPool(clientBootstrap, channelPoolHandler, remoteMaxConnections);
     } else {
       channelPool = new SimpleChannelPool(clientBootstrap, channelPoolHandler);
@@ -312,14 +361,22 @@ public final class HttpCacheClient implements RemoteCacheClient {
                 pipeline.addFirst(
                     "timeout-handler",
                     new IdleTimeoutHandler(timeoutSeconds, WriteTimeoutException.INSTANCE));
-                pipeline.addLast(new HttpResponseDecoder());
+                if (useHttp2) {
+                  pipeline.addLast(new Http2StreamFrameToHttpObjectCodec(/* isServer= */ false));
+                } else {
+                  pipeline.addLast(new HttpResponseDecoder());
+                }
                 // The 10KiB limit was chosen arbitrarily. We only expect HTTP servers to respond
                 // with an error message in the body, and that should always be less than 10KiB. If
                 // the response is larger than 10KiB, HttpUploadHandler will catch the
                 // TooLongFrameException that HttpObjectAggregator throws and convert it to an
                 // IOException.
                 pipeline.addLast(new HttpObjectAggregator(10 * 1024));
-                pipeline.addLast(new HttpRequestEncoder());
+                if (!useHttp2) {
+                  pipeline.addLast(new HttpRequestEncoder());
+                }
+                // For HTTP/2 streams, ChunkedWriteHandler only reads more of the upload while the
+                // stream's flow control window allows sending it.
                 pipeline.addLast(new ChunkedWriteHandler());
                 synchronized (credentialsLock) {
                   pipeline.addLast(new HttpUploadHandler(creds, extraHttpHeaders));
@@ -344,7 +401,8 @@ public final class HttpCacheClient implements RemoteCacheClient {
 
   @SuppressWarnings("FutureReturnValueIgnored")
   private void releaseUploadChannel(Channel ch) {
-    if (ch.isOpen()) {
+    // HTTP/2 streams are closed on release instead of being reused, so keep their handlers.
+    if (ch.isOpen() && !useHttp2) {
       try {
         ch.pipeline().remove(IdleTimeoutHandler.class);
         ch.pipeline().remove(HttpResponseDecoder.class);
@@ -386,7 +444,11 @@ public final class HttpCacheClient implements RemoteCacheClient {
                 pipeline.addFirst(
                     "timeout-handler",
                     new IdleTimeoutHandler(timeoutSeconds, ReadTimeoutException.INSTANCE));
-                pipeline.addLast(new HttpClientCodec());
+                if (useHttp2) {
+                  pipeline.addLast(new Http2StreamFrameToHttpObjectCodec(/* isServer= */ false));
+                } else {
+                  pipeline.addLast(new HttpClientCodec());
+                }
                 pipeline.addLast("inflater", new HttpContentDecompressor());
                 synchronized (credentialsLock) {
                   pipeline.addLast(new HttpDownloadHandler(creds, extraHttpHeaders));
@@ -412,7 +474,8 @@ public final class HttpCacheClient implements RemoteCacheClient {
 
   @SuppressWarnings("FutureReturnValueIgnored")
   private void releaseDownloadChannel(Channel ch) {
-    if (ch.isOpen()) {
+    // HTTP/2 streams are closed on release instead of being reused, so keep their handlers.
+    if (ch.isOpen() && !useHttp2) {
       // The channel might have been closed due to an error, in which case its pipeline
       // has already been cleared. Closed channels can't be reused.
       try {
@@ -430,6 +493,51 @@ public final class HttpCacheClient implements RemoteCacheClient {
     channelPool.release(ch);
   }
 
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private Future<Channel> acquireHeadChannel() {
+    Promise<Channel> channelReady = eventLoop.next().newPromise();
+    channelPool
+        .acquire()
+        .addListener(
+            (Future<Channel> channelAcquired) -> {
+              if (!channelAcquired.isSuccess()) {
+                channelReady.setFailure(channelAcquired.cause());
+                return;
+              }
+
+              try {
+                Channel channel = channelAcquired.getNow();
+                ChannelPipeline pipeline = channel.pipeline();
+
+                if (!isChannelPipelineEmpty(pipeline)) {
+                  channelReady.setFailure(
+                      new IllegalStateException("Channel pipeline is not empty."));
+                  return;
+                }
+                pipeline.addFirst(
+                    "timeout-handler",
+                    new IdleTimeoutHandler(timeoutSeconds, ReadTimeoutException.INSTANCE));
+                pipeline.addLast(new Http2StreamFrameToHttpObjectCodec(/* isServer= */ false));
+                // A response to a HEAD request has no body, but servers may still send one.
+                pipeline.addLast(new HttpObjectAggregator(10 * 1024));
+                synchronized (credentialsLock) {
+                  pipeline.addLast(new HttpHeadHandler(creds, extraHttpHeaders));
+                }
+
+                if (!channel.eventLoop().inEventLoop()) {
+                  // See acquireDownloadChannel.
+                  channel.eventLoop().execute(() -> channelReady.setSuccess(channel));
+                } else {
+                  channelReady.setSuccess(channel);
+                }
+              } catch (Throwable t) {
+                channelReady.setFailure(t);
+              }
+            });
+
+    return channelReady;
+  }
+
   private boolean isChannelPipelineEmpty(ChannelPipeline pipeline) {
     return (pipeline.first() == null)
         || (useTls
@@ -692,7 +800,71 @@ public final class HttpCacheClient implements RemoteCacheClient {
   @Override
   public ListenableFuture<ImmutableSet<Digest>> findMissingDigests(
       RemoteActionExecutionContext context, Iterable<Digest> digests) {
-    return Futures.immediateFuture(ImmutableSet.copyOf(digests));
+    if (!useHttp2) {
+      // Checking for existence would cost a connection per blob, so just upload everything.
+      return Futures.immediateFuture(ImmutableSet.copyOf(digests));
+    }
+    // With HTTP/2 all checks share a few connections, so issue them all at once.
+    ImmutableList<Digest> toCheck = ImmutableSet.copyOf(digests).asList();
+    List<ListenableFuture<Boolean>> checks = new ArrayList<>(toCheck.size());
+    for (Digest digest : toCheck) {
+      checks.add(exists(digest));
+    }
+    return Futures.whenAllComplete(checks)
+        .call(
+            () -> {
+              ImmutableSet.Builder<Digest> missing = ImmutableSet.builder();
+              for (int i = 0; i < toCheck.size(); i++) {
+                boolean exists;
+                try {
+                  exists = Futures.getDone(checks.get(i));
+                } catch (ExecutionException | CancellationException e) {
+                  // Fall back to uploading the blob.
+                  exists = false;
+                }
+                if (!exists) {
+                  missing.add(toCheck.get(i));
+                }
+              }
+              return missing.build();
+            },
+            MoreExecutors.directExecutor());
+  }
+
+  /** Checks whether the CAS contains a blob, using a {@code HEAD} request. */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private ListenableFuture<Boolean> exists(Digest digest) {
+    DownloadCommand headCmd =
+        new DownloadCommand(
+            uri, /* casDownload= */ true, digest, /* out= */ ByteStreams.nullOutputStream());
+    SettableFuture<Boolean> result = SettableFuture.create();
+    acquireHeadChannel()
+        .addListener(
+            (Future<Channel> channelPromise) -> {
+              if (!channelPromise.isSuccess()) {
+                result.setException(channelPromise.cause());
+                return;
+              }
+
+              Channel ch = channelPromise.getNow();
+              ch.writeAndFlush(headCmd)
+                  .addListener(
+                      (f) -> {
+                        try {
+                          if (f.isSuccess()) {
+                            result.set(true);
+                          } else if (f.cause() instanceof HttpException
+                              && cacheMiss(((HttpException) f.cause()).response().status())) {
+                            result.set(false);
+                          } else {
+                            result.setException(f.cause());
+                          }
+                        } finally {
+                          channelPool.release(ch);
+                        }
+                      });
+            });
+    return result;
   }
 
   private boolean reset(InputStream in) throws IOException {
@@ -0,0 +1,110 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.remote.http;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.auth.Credentials;
+import com.google.common.collect.ImmutableList;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.util.internal.StringUtil;
+import java.io.IOException;
+import java.util.Map.Entry;
+
+/**
+ * ChannelHandler for existence checks. It sends a {@code HEAD} request for the blob of a {@link
+ * DownloadCommand}, and succeeds if the blob exists. The command's output stream is not used.
+ */
+final class HttpHeadHandler extends AbstractHttpHandler<FullHttpResponse> {
+
+  /** the path header in the http request */
+  private String path;
+
+  public HttpHeadHandler(
+      Credentials credentials, ImmutableList<Entry<String, String>> extraHttpHeaders) {
+    super(credentials, extraHttpHeaders);
+  }
+
+  @Override
+  protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+    if (!response.decoderResult().isSuccess()) {
+      failAndClose(new IOException("Failed to parse the HTTP response."), ctx);
+      return;
+    }
+
+    checkState(userPromise != null, "response before request");
+    ChannelPromise promise = userPromise;
+    userPromise = null;
+    if (response.status().equals(HttpResponseStatus.OK)) {
+      promise.setSuccess();
+    } else {
+      promise.setFailure(new HttpException(response, response.status().toString(), null));
+    }
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    checkState(userPromise == null, "handler can't be shared between pipelines.");
+    userPromise = promise;
+    if (!(msg instanceof DownloadCommand)) {
+      failAndResetUserPromise(
+          new IllegalArgumentException(
+              "Unsupported message type: " + StringUtil.simpleClassName(msg)));
+      return;
+    }
+    DownloadCommand cmd = (DownloadCommand) msg;
+    path = constructPath(cmd.uri(), cmd.digest().getHash(), cmd.casDownload());
+    HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.HEAD, path);
+    request.headers().set(HttpHeaderNames.HOST, constructHost(cmd.uri()));
+    request.headers().set(HttpHeaderNames.ACCEPT, "*/*");
+    addCredentialHeaders(request, cmd.uri());
+    addExtraRemoteHeaders(request);
+    addUserAgentHeader(request);
+    ctx.writeAndFlush(request)
+        .addListener(
+            (f) -> {
+              if (!f.isSuccess()) {
+                failAndClose(f.cause(), ctx);
+              }
+            });
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable t) {
+    if (t instanceof ReadTimeoutException) {
+      super.exceptionCaught(
+          ctx, new DownloadTimeoutException(path, /* bytesReceived= */ 0, /* contentLength= */ -1));
+    } else {
+      super.exceptionCaught(ctx, t);
+    }
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private void failAndClose(Throwable t, ChannelHandlerContext ctx) {
+    // All resets must happen *before* completing the user promise. Otherwise there is a race
+    // condition, where this handler can be reused even though it is closed.
+    ctx.close();
+    failAndResetUserPromise(t);
+  }
+}
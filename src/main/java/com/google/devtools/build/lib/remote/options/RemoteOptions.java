@@ -68,6 +68,16 @@ public final class RemoteOptions extends OptionsBase {
               + "0 will make Bazel choose the number of connections automatically.")
   public int remoteMaxConnections;
 
+  @Option(
+      name = "experimental_remote_min_connections",
+      defaultValue = "1",
+      documentationCategory = OptionDocumentationCategory.REMOTE,
+      effectTags = {OptionEffectTag.HOST_MACHINE_RESOURCE_OPTIMIZATIONS},
+      help =
+          "The minimum number of gRPC connections to open to each remote endpoint before "
+              + "calls share a connection.")
+  public int remoteMinConnections;
+
   @Option(
       name = "remote_executor",
       defaultValue = "null",
@@ -518,6 +528,64 @@ public final class RemoteOptions extends OptionsBase {
               + "that loads objects from the CAS on demand.")
   public String remoteDownloadSymlinkTemplate;
 
+  @Option(
+      name = "experimental_remote_cache_compression",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.REMOTE,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "If enabled, blobs transferred through the ByteStream API of a gRPC remote cache are "
+              + "compressed, using the compressed-blobs resource names of the remote execution "
+              + "API. Requires a remote cache that advertises support for DEFLATE compression.")
+  public boolean cacheCompression;
+
+  @Option(
+      name = "experimental_remote_cache_compression_threshold",
+      defaultValue = "100",
+      documentationCategory = OptionDocumentationCategory.REMOTE,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "The minimum size in bytes of a blob for it to be compressed when "
+              + "--experimental_remote_cache_compression is enabled. Smaller blobs are "
+              + "transferred uncompressed, as compressing them saves little.")
+  public int cacheCompressionThreshold;
+
+  @Option(
+      name = "experimental_remote_cache_http2",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.REMOTE,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "If enabled, use HTTP/2 to talk to an HTTP remote cache: h2 negotiated via ALPN for "
+              + "https:// and h2c with prior knowledge for http://. Requests are multiplexed "
+              + "over a few connections, at most --remote_max_connections of them, and blobs "
+              + "that already exist in the cache are detected with HEAD requests and not "
+              + "uploaded again.")
+  public boolean remoteCacheHttp2;
+
+  @Option(
+      name = "experimental_remote_action_result_memory_cache_size",
+      defaultValue = "0",
+      documentationCategory = OptionDocumentationCategory.REMOTE,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "If positive, the server remembers the results of up to this many actions that were "
+              + "recently found in or uploaded to the remote cache, and answers later cache "
+              + "lookups for them without a round trip. The results are kept across commands as "
+              + "long as the remote cache options don't change.")
+  public int actionResultMemoryCacheSize;
+
+  @Option(
+      name = "experimental_remote_action_result_memory_cache_ttl",
+      defaultValue = "10m",
+      converter = Converters.DurationConverter.class,
+      documentationCategory = OptionDocumentationCategory.REMOTE,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "How long results are kept by --experimental_remote_action_result_memory_cache_size. "
+              + "Their outputs are assumed to stay in the remote cache for this long.")
+  public Duration actionResultMemoryCacheTtl;
+
   // The below options are not configurable by users, only tests.
   // This is part of the effort to reduce the overall number of flags.
 
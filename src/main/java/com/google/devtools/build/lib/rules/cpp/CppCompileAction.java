@@ -13,6 +13,7 @@
 // limitations under the License.
 package com.google.devtools.build.lib.rules.cpp;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
@@ -113,6 +114,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import net.starlark.java.eval.EvalException;
 import net.starlark.java.eval.Sequence;
@@ -1573,10 +1575,9 @@ public class CppCompileAction extends AbstractAction implements IncludeScannable
         this,
         getSourceFile(),
         needsIncludeValidation,
-        ImmutableList.<Path>builderWithExpectedSize(stdoutDeps.size() + stderrDeps.size())
-            .addAll(stdoutDeps)
-            .addAll(stderrDeps)
-            .build(),
+        Stream.concat(stdoutDeps.stream(), stderrDeps.stream())
+            .map(Path::asFragment)
+            .collect(toImmutableList()),
         getPermittedSystemIncludePrefixes(execRoot),
         getAllowedDerivedInputs(),
         execRoot,
@@ -1597,7 +1598,7 @@ public class CppCompileAction extends AbstractAction implements IncludeScannable
         this,
         getSourceFile(),
         needsIncludeValidation,
-        processDepset(actionExecutionContext, execRoot, dotDContents).getDependencies(),
+        processDepset(actionExecutionContext, execRoot, dotDContents).getDependencyFragments(),
         getPermittedSystemIncludePrefixes(execRoot),
         getAllowedDerivedInputs(),
         execRoot,
@@ -57,6 +57,9 @@ final class HeaderDiscovery {
    * dynamically-discovered dependency information from the parsed dependency set after the action
    * has run.
    *
+   * <p>Relative dependencies are exec paths. Dependencies under the permitted system include
+   * prefixes are ignored; other absolute ones are checked against the exec root.
+   *
    * <p>Artifacts are considered inputs but not "mandatory" inputs.
    *
    * @throws ActionExecutionException iff the .d is missing (when required), malformed, or has
@@ -66,7 +69,7 @@ final class HeaderDiscovery {
       Action action,
       Artifact sourceFile,
       boolean shouldValidateInclusions,
-      Collection<Path> dependencies,
+      Collection<PathFragment> dependencies,
       List<Path> permittedSystemIncludePrefixes,
       NestedSet<Artifact> allowedDerivedInputs,
       Path execRoot,
@@ -112,7 +115,7 @@ final class HeaderDiscovery {
       Action action,
       Artifact sourceFile,
       boolean shouldValidateInclusions,
-      Collection<Path> dependencies,
+      Collection<PathFragment> dependencies,
       List<Path> permittedSystemIncludePrefixes,
       Map<PathFragment, Artifact> regularDerivedArtifacts,
       Map<PathFragment, SpecialArtifact> treeArtifacts,
@@ -124,13 +127,14 @@ final class HeaderDiscovery {
 
     // Check inclusions.
     IncludeProblems problems = new IncludeProblems();
-    for (Path execPath : dependencies) {
-      PathFragment execPathFragment = execPath.asFragment();
-      if (execPathFragment.isAbsolute()) {
-        // Absolute includes from system paths are ignored.
-        if (FileSystemUtils.startsWithAny(execPath, permittedSystemIncludePrefixes)) {
-          continue;
-        }
+    for (PathFragment execPathFragment : dependencies) {
+      Path execPath = execRoot.getRelative(execPathFragment);
+      // Includes from system paths are ignored.
+      if (FileSystemUtils.startsWithAny(execPath, permittedSystemIncludePrefixes)) {
+        continue;
+      }
+      // The common case is a plain exec path, which can be looked up as is.
+      if (execPathFragment.isAbsolute() || execPathFragment.containsUplevelReferences()) {
         // Since gcc is given only relative paths on the command line, non-system include paths here
         // should never be absolute. If they are, it's probably due to a non-hermetic #include, and
         // we should stop the build with an error.
@@ -142,7 +146,7 @@ final class HeaderDiscovery {
               LabelConstants.EXPERIMENTAL_EXTERNAL_PATH_PREFIX.getRelative(
                   execPath.relativeTo(execRoot.getParentDirectory()));
         } else {
-          problems.add(execPathFragment.getPathString());
+          problems.add(execPath.getPathString());
           continue;
         }
       }
@@ -359,6 +359,9 @@ public class PythonOptions extends FragmentOptions {
   public FragmentOptions getNormalized() {
     // We want to ensure that options with "null" physical default values are normalized, to avoid
     // #7808.
+    if (pythonVersion != null) {
+      return this;
+    }
     PythonOptions newOptions = (PythonOptions) clone();
     newOptions.setPythonVersion(newOptions.getPythonVersion());
     return newOptions;
@@ -168,6 +168,12 @@ final class RetainedHeapLimiter implements NotificationListener {
       // This was a manually triggered GC, but not from the other branch: short-circuit.
       return;
     }
+    if (manualGc) {
+      logger.atInfo().log(
+          "The triggered full GC freed %s bytes of tenured space",
+          getTenuredSpaceUsed(info.getGcInfo().getMemoryUsageBeforeGc())
+              - getTenuredSpaceUsed(info.getGcInfo().getMemoryUsageAfterGc()));
+    }
 
     @Nullable
     MemoryUsage space = getTenuredSpacedIfFull(info.getGcInfo().getMemoryUsageAfterGc(), threshold);
@@ -209,6 +215,16 @@ final class RetainedHeapLimiter implements NotificationListener {
         || "ZHeap".equals(name);
   }
 
+  private static long getTenuredSpaceUsed(Map<String, MemoryUsage> spaces) {
+    long used = 0;
+    for (Map.Entry<String, MemoryUsage> space : spaces.entrySet()) {
+      if (isTenuredSpace(space.getKey())) {
+        used += space.getValue().getUsed();
+      }
+    }
+    return used;
+  }
+
   @Nullable
   private static MemoryUsage getTenuredSpacedIfFull(
       Map<String, MemoryUsage> spaces, int threshold) {
@@ -0,0 +1,111 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.runtime;
+
+import com.google.common.flogger.GoogleLogger;
+import com.google.devtools.build.lib.exec.local.LocalExecutionOptions;
+import com.google.devtools.build.lib.shell.SpawnLauncherSubprocessFactory;
+import com.google.devtools.build.lib.util.DetailedExitCode;
+import com.google.devtools.build.lib.util.OS;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+/**
+ * Owns the {@code spawn-launcher} daemon that starts local spawns, see {@link
+ * SpawnLauncherSubprocessFactory}.
+ *
+ * <p>The daemon is started by the first command that asks for it and is shared by all later
+ * commands of the server. It is restarted if it died or if its configuration changed, stopped when
+ * a command turns it off, and stopped when the server shuts down.
+ */
+public final class SpawnLauncherModule extends BlazeModule {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  /** Name of the spawn-launcher binary, without any path components. */
+  private static final String BIN_BASENAME = "spawn-launcher";
+
+  @Nullable private SpawnLauncherSubprocessFactory factory;
+  @Nullable private String factoryKey;
+
+  /** Whether the current command uses the daemon. */
+  private boolean enabled;
+
+  /**
+   * Returns the subprocess factory for local spawns of the given invocation.
+   *
+   * @return a factory backed by the spawn-launcher daemon, or null if it is disabled or not
+   *     supported in the current system, in which case the default subprocess factory should be
+   *     used
+   */
+  @Nullable
+  public static SpawnLauncherSubprocessFactory fromCommandEnvironment(CommandEnvironment env) {
+    SpawnLauncherModule module = env.getRuntime().getBlazeModule(SpawnLauncherModule.class);
+    return module != null ? module.getFactory() : null;
+  }
+
+  @Nullable
+  private synchronized SpawnLauncherSubprocessFactory getFactory() {
+    return enabled ? factory : null;
+  }
+
+  @Override
+  public synchronized void beforeCommand(CommandEnvironment env) {
+    LocalExecutionOptions options = env.getOptions().getOptions(LocalExecutionOptions.class);
+    if (options == null) {
+      // The command doesn't execute spawns; keep the daemon for later commands.
+      enabled = false;
+      return;
+    }
+    Path path = env.getBlazeWorkspace().getBinTools().getEmbeddedPath(BIN_BASENAME);
+    enabled =
+        options.localSpawnLauncher && OS.isPosixCompatible() && path != null && path.exists();
+    if (!enabled) {
+      stop();
+      return;
+    }
+    String key = path.getPathString() + " " + options.localSigkillGraceSeconds;
+    if (factory != null && factory.isAlive() && key.equals(factoryKey)) {
+      return;
+    }
+    stop();
+    try {
+      factory =
+          SpawnLauncherSubprocessFactory.start(
+              path.getPathString(), options.localSigkillGraceSeconds);
+      factoryKey = key;
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed to start %s", path);
+    }
+  }
+
+  @Override
+  public synchronized void blazeShutdown() {
+    stop();
+  }
+
+  @Override
+  public synchronized void blazeShutdownOnCrash(DetailedExitCode exitCode) {
+    stop();
+  }
+
+  private void stop() {
+    if (factory != null) {
+      factory.close();
+      factory = null;
+      factoryKey = null;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.sandbox;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.GoogleLogger;
+import com.google.devtools.build.lib.shell.Subprocess;
+import com.google.devtools.build.lib.shell.SubprocessBuilder;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+
+/**
+ * A pool of sandbox namespaces that are prepared by {@code linux-sandbox} in advance.
+ *
+ * <p>Creating the user, mount, PID and network namespaces of a sandbox and making the filesystem
+ * read-only in them takes a sizable part of the time it takes to run a short action. Each slot of
+ * the pool is a {@code linux-sandbox -P} process that does this once and then waits. Commands that
+ * are run with {@code linux-sandbox -p} join the namespaces of a free slot, apply their own mounts
+ * in a copy of its mount namespace and kill whatever processes they leave behind when they are
+ * done, so that the slot can be used again. If all slots are busy, or if a command needs different
+ * namespace options than the pool was created with, it gets fresh namespaces as usual.
+ */
+final class LinuxSandboxPool {
+
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  private final Path poolDirectory;
+  private final ImmutableList<Subprocess> slots;
+
+  private LinuxSandboxPool(Path poolDirectory, ImmutableList<Subprocess> slots) {
+    this.poolDirectory = poolDirectory;
+    this.slots = slots;
+  }
+
+  /**
+   * Starts the slots of a new pool. The namespaces are prepared asynchronously; slots that are not
+   * ready yet are not used.
+   *
+   * @param linuxSandbox path to the {@code linux-sandbox} binary
+   * @param poolDirectory directory in which to create the pool
+   * @param size number of slots in the pool
+   * @param createNetworkNamespace whether the slots have their own network namespace
+   * @param useFakeHostname whether the hostname in the slots is 'localhost'
+   * @param useFakeUsername whether the username in the slots is 'nobody'
+   * @param useDebugMode whether {@code linux-sandbox} prints debugging messages to the log files
+   *     of the slots
+   * @throws IOException if any of the slots cannot be started, in which case no slot is left
+   *     running
+   */
+  static LinuxSandboxPool start(
+      Path linuxSandbox,
+      Path poolDirectory,
+      int size,
+      boolean createNetworkNamespace,
+      boolean useFakeHostname,
+      boolean useFakeUsername,
+      boolean useDebugMode)
+      throws IOException {
+    poolDirectory.createDirectoryAndParents();
+    ImmutableList.Builder<Subprocess> slots = ImmutableList.builder();
+    try {
+      for (int i = 0; i < size; i++) {
+        String name = Integer.toString(i);
+        ImmutableList<String> argv =
+            LinuxSandboxUtil.commandLineBuilder(linuxSandbox, ImmutableList.of())
+                .setPoolSlotDirectory(poolDirectory.getChild(name))
+                .setCreateNetworkNamespace(createNetworkNamespace)
+                .setUseFakeHostname(useFakeHostname)
+                .setUseFakeUsername(useFakeUsername)
+                .setUseDebugMode(useDebugMode)
+                .build();
+        // The slot is held until we close its stdin, so it must not be redirected.
+        slots.add(
+            new SubprocessBuilder()
+                .setArgv(argv)
+                .setStdout(StreamAction.DISCARD)
+                .setStderr(poolDirectory.getChild(name + ".log").getPathFile())
+                .start());
+      }
+    } catch (IOException e) {
+      new LinuxSandboxPool(poolDirectory, slots.build()).close();
+      throw e;
+    }
+    return new LinuxSandboxPool(poolDirectory, slots.build());
+  }
+
+  /** Returns the directory of the pool, to be passed to {@code linux-sandbox -p}. */
+  Path getPoolDirectory() {
+    return poolDirectory;
+  }
+
+  /**
+   * Stops all slots of the pool, which kills any processes that are still running in them, and
+   * waits for them to exit.
+   */
+  void close() {
+    for (Subprocess slot : slots) {
+      try {
+        slot.getOutputStream().close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to close stdin pipe of sandbox pool slot");
+        slot.destroy();
+      }
+    }
+    for (Subprocess slot : slots) {
+      try {
+        slot.waitFor();
+      } catch (InterruptedException e) {
+        slot.destroyAndWait();
+        Thread.currentThread().interrupt();
+      }
+      slot.close();
+    }
+  }
+}
@@ -73,6 +73,8 @@ public final class LinuxSandboxUtil {
     private boolean useFakeUsername = false;
     private boolean useDebugMode = false;
     private boolean sigintSendsSigterm = false;
+    private Path poolDirectory;
+    private Path poolSlotDirectory;
 
     private CommandLineBuilder(Path linuxSandboxPath, List<String> commandArguments) {
       this.linuxSandboxPath = linuxSandboxPath;
@@ -170,6 +172,24 @@ public final class LinuxSandboxUtil {
       return this;
     }
 
+    /**
+     * Sets the directory of a pool of prepared sandbox namespaces to run the command in if one of
+     * them is free and suitable, see {@link LinuxSandboxPool}.
+     */
+    public CommandLineBuilder setPoolDirectory(Path poolDirectory) {
+      this.poolDirectory = poolDirectory;
+      return this;
+    }
+
+    /**
+     * Sets the pool slot directory to prepare and hold sandbox namespaces in, instead of running a
+     * command. The namespaces are held until the standard input of {@code linux-sandbox} is closed.
+     */
+    public CommandLineBuilder setPoolSlotDirectory(Path poolSlotDirectory) {
+      this.poolSlotDirectory = poolSlotDirectory;
+      return this;
+    }
+
     /** Incorporates settings from a spawn's execution info. */
     public CommandLineBuilder addExecutionInfo(Map<String, String> executionInfo) {
       if (executionInfo.containsKey(ExecutionRequirements.GRACEFUL_TERMINATION)) {
@@ -239,6 +259,12 @@ public final class LinuxSandboxUtil {
       if (sigintSendsSigterm) {
         commandLineBuilder.add("-i");
       }
+      if (poolDirectory != null) {
+        commandLineBuilder.add("-p", poolDirectory.getPathString());
+      }
+      if (poolSlotDirectory != null) {
+        commandLineBuilder.add("-P", poolSlotDirectory.getPathString());
+      }
       commandLineBuilder.add("--");
       commandLineBuilder.addAll(commandArguments);
 
@@ -112,6 +112,7 @@ final class LinuxSandboxedSpawnRunner extends AbstractSandboxSpawnRunner {
   @Nullable private final SandboxfsProcess sandboxfsProcess;
   private final boolean sandboxfsMapSymlinkTargets;
   private final TreeDeleter treeDeleter;
+  @Nullable private final Path poolDirectory;
 
   /**
    * Creates a sandboxed spawn runner that uses the {@code linux-sandbox} tool.
@@ -125,6 +126,8 @@ final class LinuxSandboxedSpawnRunner extends AbstractSandboxSpawnRunner {
    * @param sandboxfsProcess instance of the sandboxfs process to use; may be null for none, in
    *     which case the runner uses a symlinked sandbox
    * @param sandboxfsMapSymlinkTargets map the targets of symlinks within the sandbox if true
+   * @param poolDirectory directory of a {@link LinuxSandboxPool} to run spawns in; may be null for
+   *     none, in which case each spawn gets fresh namespaces
    */
   LinuxSandboxedSpawnRunner(
       SandboxHelpers helpers,
@@ -135,7 +138,8 @@ final class LinuxSandboxedSpawnRunner extends AbstractSandboxSpawnRunner {
       Duration timeoutKillDelay,
       @Nullable SandboxfsProcess sandboxfsProcess,
       boolean sandboxfsMapSymlinkTargets,
-      TreeDeleter treeDeleter) {
+      TreeDeleter treeDeleter,
+      @Nullable Path poolDirectory) {
     super(cmdEnv);
     this.helpers = helpers;
     this.fileSystem = cmdEnv.getRuntime().getFileSystem();
@@ -151,6 +155,7 @@ final class LinuxSandboxedSpawnRunner extends AbstractSandboxSpawnRunner {
     this.sandboxfsMapSymlinkTargets = sandboxfsMapSymlinkTargets;
     this.localEnvProvider = new PosixLocalEnvProvider(cmdEnv.getClientEnv());
     this.treeDeleter = treeDeleter;
+    this.poolDirectory = poolDirectory;
   }
 
   @Override
@@ -204,6 +209,10 @@ final class LinuxSandboxedSpawnRunner extends AbstractSandboxSpawnRunner {
       commandLineBuilder.setTimeout(timeout);
     }
 
+    if (poolDirectory != null) {
+      commandLineBuilder.setPoolDirectory(poolDirectory);
+    }
+
     if (spawn.getExecutionInfo().containsKey(ExecutionRequirements.REQUIRES_FAKEROOT)) {
       commandLineBuilder.setUseFakeRoot(true);
     } else if (getSandboxOptions().sandboxFakeUsername) {
@@ -45,6 +45,7 @@ public final class LinuxSandboxedStrategy extends AbstractSpawnStrategy {
    * @param sandboxfsProcess instance of the sandboxfs process to use; may be null for none, in
    *     which case the runner uses a symlinked sandbox
    * @param sandboxfsMapSymlinkTargets map the targets of symlinks within the sandbox if true
+   * @param pool pool of prepared sandbox namespaces to run spawns in; may be null for none
    */
   static LinuxSandboxedSpawnRunner create(
       SandboxHelpers helpers,
@@ -53,7 +54,8 @@ public final class LinuxSandboxedStrategy extends AbstractSpawnStrategy {
       Duration timeoutKillDelay,
       @Nullable SandboxfsProcess sandboxfsProcess,
       boolean sandboxfsMapSymlinkTargets,
-      TreeDeleter treeDeleter)
+      TreeDeleter treeDeleter,
+      @Nullable LinuxSandboxPool pool)
       throws IOException {
     Path inaccessibleHelperFile = sandboxBase.getRelative("inaccessibleHelperFile");
     FileSystemUtils.touchFile(inaccessibleHelperFile);
@@ -76,6 +78,7 @@ public final class LinuxSandboxedStrategy extends AbstractSpawnStrategy {
         timeoutKillDelay,
         sandboxfsProcess,
         sandboxfsMapSymlinkTargets,
-        treeDeleter);
+        treeDeleter,
+        pool == null ? null : pool.getPoolDirectory());
   }
 }
@@ -44,6 +44,7 @@ import com.google.devtools.build.lib.runtime.BlazeModule;
 import com.google.devtools.build.lib.runtime.Command;
 import com.google.devtools.build.lib.runtime.CommandEnvironment;
 import com.google.devtools.build.lib.runtime.ProcessWrapper;
+import com.google.devtools.build.lib.runtime.SpawnLauncherModule;
 import com.google.devtools.build.lib.server.FailureDetails.FailureDetail;
 import com.google.devtools.build.lib.server.FailureDetails.Sandbox;
 import com.google.devtools.build.lib.util.AbruptExitException;
@@ -81,6 +82,9 @@ public final class SandboxModule extends BlazeModule {
   /** Instance of the sandboxfs process in use, if enabled. */
   @Nullable private SandboxfsProcess sandboxfsProcess;
 
+  /** Pool of prepared linux-sandbox namespaces for the running command, if enabled. */
+  @Nullable private LinuxSandboxPool linuxSandboxPool;
+
   /**
    * Collection of spawn runner instantiated during the executor setup.
    *
@@ -339,6 +343,23 @@ public final class SandboxModule extends BlazeModule {
 
     // This is the preferred sandboxing strategy on Linux.
     if (linuxSandboxSupported) {
+      // The namespaces of the pool are created before sandboxfs could mount anything on top of
+      // the sandbox base, so they can't be used with it.
+      if (options.linuxSandboxPoolSize > 0 && sandboxfsProcess == null) {
+        try (SilentCloseable c = Profiler.instance().profile("startLinuxSandboxPool")) {
+          // Use the options that most spawns use; the others get fresh namespaces.
+          linuxSandboxPool =
+              LinuxSandboxPool.start(
+                  LinuxSandboxUtil.getLinuxSandbox(cmdEnv),
+                  sandboxBase.getRelative("linux-sandbox-pool"),
+                  options.linuxSandboxPoolSize,
+                  !(helpers.shouldAllowNetwork(cmdEnv.getOptions())
+                      || options.defaultSandboxAllowNetwork),
+                  options.sandboxFakeHostname,
+                  options.sandboxFakeUsername,
+                  options.sandboxDebug);
+        }
+      }
       SpawnRunner spawnRunner =
           withFallback(
               cmdEnv,
@@ -349,7 +370,8 @@ public final class SandboxModule extends BlazeModule {
                   timeoutKillDelay,
                   sandboxfsProcess,
                   options.sandboxfsMapSymlinkTargets,
-                  treeDeleter));
+                  treeDeleter,
+                  linuxSandboxPool));
       spawnRunners.add(spawnRunner);
       builder.registerStrategy(
           new LinuxSandboxedStrategy(cmdEnv.getExecRoot(), spawnRunner, verboseFailures),
@@ -447,6 +469,7 @@ public final class SandboxModule extends BlazeModule {
         LocalEnvProvider.forCurrentOs(env.getClientEnv()),
         env.getBlazeWorkspace().getBinTools(),
         ProcessWrapper.fromCommandEnvironment(env),
+        SpawnLauncherModule.fromCommandEnvironment(env),
         // TODO(buchgr): Replace singleton by a command-scoped RunfilesTreeUpdater
         RunfilesTreeUpdater.INSTANCE);
   }
@@ -570,14 +593,35 @@ public final class SandboxModule extends BlazeModule {
     }
   }
 
+  /**
+   * Stops the linux-sandbox pool, if any, and deletes its directory unless the user asked not to by
+   * providing the {@code --sandbox_debug} flag.
+   */
+  private void stopLinuxSandboxPool() {
+    if (linuxSandboxPool != null) {
+      linuxSandboxPool.close();
+      if (shouldCleanupSandboxBase) {
+        try {
+          linuxSandboxPool.getPoolDirectory().deleteTree();
+        } catch (IOException e) {
+          logger.atWarning().withCause(e).log(
+              "Failed to delete %s", linuxSandboxPool.getPoolDirectory());
+        }
+      }
+      linuxSandboxPool = null;
+    }
+  }
+
   @Subscribe
   public void buildComplete(@SuppressWarnings("unused") BuildCompleteEvent event) {
     unmountSandboxfs();
+    stopLinuxSandboxPool();
   }
 
   @Subscribe
   public void buildInterrupted(@SuppressWarnings("unused") BuildInterruptedEvent event) {
     unmountSandboxfs();
+    stopLinuxSandboxPool();
   }
 
   /**
@@ -605,6 +649,9 @@ public final class SandboxModule extends BlazeModule {
   public void afterCommand() {
     checkNotNull(env, "env not initialized; was beforeCommand called?");
 
+    // The build events may not have been sent if the command failed early.
+    stopLinuxSandboxPool();
+
     SandboxOptions options = env.getOptions().getOptions(SandboxOptions.class);
     int asyncTreeDeleteThreads = options != null ? options.asyncTreeDeleteIdleThreads : 0;
 
@@ -650,6 +697,7 @@ public final class SandboxModule extends BlazeModule {
 
   private void commonShutdown() {
     tryUnmountSandboxfsOnShutdown();
+    stopLinuxSandboxPool();
 
     // Try to clean up as much garbage as possible, if there happens to be any. This will delay
     // server termination but it's the nice thing to do. If the user gets impatient, they can always
@@ -371,6 +371,17 @@ public class SandboxOptions extends OptionsBase {
               + " avoid unnecessary setup costs.")
   public boolean reuseSandboxDirectories;
 
+  @Option(
+      name = "experimental_linux_sandbox_pool_size",
+      defaultValue = "0",
+      documentationCategory = OptionDocumentationCategory.EXECUTION_STRATEGY,
+      effectTags = {OptionEffectTag.EXECUTION},
+      help =
+          "If greater than 0, the linux-sandbox strategy keeps this many sets of sandbox namespaces"
+              + " prepared in advance, and actions run in them instead of creating their own. This"
+              + " saves setup time for actions that are short-running.")
+  public int linuxSandboxPoolSize;
+
   /** Converter for the number of threads used for asynchronous tree deletion. */
   public static final class AsyncTreeDeletesConverter extends ResourceConverter {
     public AsyncTreeDeletesConverter() {
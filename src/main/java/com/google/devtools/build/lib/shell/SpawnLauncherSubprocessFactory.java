@@ -0,0 +1,402 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.shell;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.flogger.GoogleLogger;
+import com.google.common.io.ByteStreams;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A subprocess factory that delegates starting subprocesses to a {@code spawn-launcher} daemon.
+ *
+ * <p>Forking a process takes time proportional to the size of the parent's address space, which
+ * makes every subprocess started by a server with a multi-gigabyte heap expensive. The daemon is a
+ * small native process that is started once, and forks and execs subprocesses on our behalf. It
+ * also collects their resource usage, see {@link LauncherSubprocess#getResourceUsage}.
+ *
+ * <p>The standard input of subprocesses is {@code /dev/null}; their standard output and error can
+ * only be redirected to files or discarded. Subprocesses that stream their output, as well as all
+ * subprocesses started after the daemon died, are started by {@link JavaSubprocessFactory}
+ * instead.
+ */
+public final class SpawnLauncherSubprocessFactory implements SubprocessFactory, AutoCloseable {
+
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  private static final int SPAWN = 1;
+  private static final int TERMINATE = 2;
+
+  private static final int STARTED = 1;
+  private static final int FAILED = 2;
+  private static final int EXITED = 3;
+
+  private static final int INHERIT_ENV = 1;
+  private static final int REDIRECT_ERROR_STREAM = 2;
+
+  private final Process daemon;
+
+  @GuardedBy("this")
+  private final DataOutputStream requests;
+
+  private final Map<Integer, LauncherSubprocess> subprocesses = new ConcurrentHashMap<>();
+  private final AtomicInteger nextId = new AtomicInteger();
+
+  /** Set once the daemon's responses can't be read anymore. */
+  @Nullable private volatile IOException failure;
+
+  private volatile boolean closed;
+
+  private SpawnLauncherSubprocessFactory(Process daemon) {
+    this.daemon = daemon;
+    this.requests = new DataOutputStream(new BufferedOutputStream(daemon.getOutputStream()));
+  }
+
+  /**
+   * Starts the {@code spawn-launcher} daemon at the given path.
+   *
+   * @param killDelaySeconds the delay between sending SIGTERM and SIGKILL to subprocesses that time
+   *     out or are destroyed
+   */
+  public static SpawnLauncherSubprocessFactory start(String launcherPath, double killDelaySeconds)
+      throws IOException {
+    Process daemon =
+        new ProcessBuilder(launcherPath, "--kill_delay=" + killDelaySeconds)
+            .redirectError(Redirect.INHERIT)
+            .start();
+    SpawnLauncherSubprocessFactory factory = new SpawnLauncherSubprocessFactory(daemon);
+    Thread reader = new Thread(factory::readResponses, "spawn-launcher-reader");
+    reader.setDaemon(true);
+    reader.start();
+    return factory;
+  }
+
+  /** Returns whether subprocesses are started by the daemon. */
+  public boolean isAlive() {
+    return failure == null && daemon.isAlive();
+  }
+
+  @Override
+  public Subprocess create(SubprocessBuilder params) throws IOException {
+    if (params.getStdout() == StreamAction.STREAM
+        || params.getStderr() == StreamAction.STREAM
+        || !isAlive()) {
+      return JavaSubprocessFactory.INSTANCE.create(params);
+    }
+
+    int id = nextId.incrementAndGet();
+    LauncherSubprocess subprocess = new LauncherSubprocess(id);
+    subprocesses.put(id, subprocess);
+    try {
+      send(SPAWN, encodeSpawn(id, params));
+      subprocess.awaitStart();
+    } catch (IOException e) {
+      subprocesses.remove(id);
+      throw e;
+    }
+    return subprocess;
+  }
+
+  private static byte[] encodeSpawn(int id, SubprocessBuilder params) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(id);
+    out.writeLong(params.getTimeoutMillis());
+    Map<String, String> env = params.getEnv();
+    int flags = env == null ? INHERIT_ENV : 0;
+    if (params.redirectErrorStream()) {
+      flags |= REDIRECT_ERROR_STREAM;
+    }
+    out.writeInt(flags);
+    File workingDirectory = params.getWorkingDirectory();
+    writeString(out, workingDirectory == null ? "" : workingDirectory.getPath());
+    writeString(out, outputPath(params.getStdout(), params.getStdoutFile()));
+    writeString(out, outputPath(params.getStderr(), params.getStderrFile()));
+    List<String> argv = params.getArgv();
+    out.writeInt(argv.size());
+    for (String arg : argv) {
+      writeString(out, arg);
+    }
+    if (env == null) {
+      out.writeInt(0);
+    } else {
+      out.writeInt(env.size());
+      for (Map.Entry<String, String> entry : env.entrySet()) {
+        writeString(out, entry.getKey() + "=" + entry.getValue());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /** Returns the path the daemon redirects an output stream to, where "" means discard. */
+  private static String outputPath(StreamAction action, File file) {
+    return action == StreamAction.REDIRECT ? file.getPath() : "";
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private synchronized void send(int type, byte[] payload) throws IOException {
+    requests.writeInt(4 + payload.length);
+    requests.writeInt(type);
+    requests.write(payload);
+    requests.flush();
+  }
+
+  private void readResponses() {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(daemon.getInputStream()))) {
+      while (true) {
+        in.readInt(); // The payload length; all responses are parsed field by field.
+        int type = in.readInt();
+        int id = in.readInt();
+        LauncherSubprocess subprocess = subprocesses.get(id);
+        if (subprocess == null) {
+          throw new IOException("Response for unknown subprocess " + id);
+        }
+        switch (type) {
+          case STARTED:
+            subprocess.started();
+            break;
+          case FAILED:
+            int errno = in.readInt();
+            String message = readString(in);
+            subprocesses.remove(id);
+            subprocess.failed(new IOException(message + " (error=" + errno + ")"));
+            break;
+          case EXITED:
+            int exitValue = in.readInt();
+            boolean timedOut = in.readInt() != 0;
+            Protos.ResourceUsage resourceUsage =
+                Protos.ResourceUsage.newBuilder()
+                    .setUtimeSec(in.readLong())
+                    .setUtimeUsec(in.readLong())
+                    .setStimeSec(in.readLong())
+                    .setStimeUsec(in.readLong())
+                    .setMaxrss(in.readLong())
+                    .setMinflt(in.readLong())
+                    .setMajflt(in.readLong())
+                    .setInblock(in.readLong())
+                    .setOublock(in.readLong())
+                    .setNvcsw(in.readLong())
+                    .setNivcsw(in.readLong())
+                    .build();
+            subprocesses.remove(id);
+            subprocess.exited(
+                exitValue, timedOut, new ExecutionStatistics.ResourceUsage(resourceUsage));
+            break;
+          default:
+            throw new IOException("Unknown response type " + type);
+        }
+      }
+    } catch (IOException e) {
+      IOException failure =
+          e instanceof EOFException ? new IOException("spawn-launcher exited", e) : e;
+      this.failure = failure;
+      if (!closed) {
+        logger.atWarning().withCause(e).log("spawn-launcher failed, falling back to forking");
+      }
+      List<LauncherSubprocess> orphans = new ArrayList<>(subprocesses.values());
+      subprocesses.clear();
+      for (LauncherSubprocess subprocess : orphans) {
+        subprocess.failed(failure);
+      }
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /** Stops the daemon, which kills all subprocesses that are still running. */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    try {
+      requests.close();
+    } catch (IOException e) {
+      // The daemon is gone already.
+    }
+    daemon.destroy();
+  }
+
+  /** A subprocess started by the daemon. */
+  public final class LauncherSubprocess implements Subprocess {
+    private final int id;
+
+    @GuardedBy("this")
+    private boolean started;
+
+    @GuardedBy("this")
+    private boolean exited;
+
+    @GuardedBy("this")
+    @Nullable
+    private IOException failure;
+
+    @GuardedBy("this")
+    private int exitValue;
+
+    @GuardedBy("this")
+    private boolean timedOut;
+
+    @GuardedBy("this")
+    @Nullable
+    private ExecutionStatistics.ResourceUsage resourceUsage;
+
+    private LauncherSubprocess(int id) {
+      this.id = id;
+    }
+
+    private synchronized void awaitStart() throws IOException {
+      boolean interrupted = false;
+      while (!started && failure == null) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // The daemon answers right after the fork, so this doesn't take long.
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (!started) {
+        throw failure;
+      }
+    }
+
+    private synchronized void started() {
+      started = true;
+      notifyAll();
+    }
+
+    private synchronized void failed(IOException failure) {
+      this.failure = failure;
+      if (started) {
+        // We lost track of the process, treat it as killed.
+        exited(128 + 9, false, null);
+      }
+      notifyAll();
+    }
+
+    private synchronized void exited(
+        int exitValue, boolean timedOut, @Nullable ExecutionStatistics.ResourceUsage usage) {
+      this.exited = true;
+      this.exitValue = exitValue;
+      this.timedOut = timedOut;
+      this.resourceUsage = usage;
+      notifyAll();
+    }
+
+    /** Returns the resource usage of the process, once it has finished. */
+    public synchronized Optional<ExecutionStatistics.ResourceUsage> getResourceUsage() {
+      return Optional.ofNullable(resourceUsage);
+    }
+
+    @Override
+    public boolean destroy() {
+      synchronized (this) {
+        if (exited) {
+          return true;
+        }
+      }
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(id);
+        send(TERMINATE, bytes.toByteArray());
+        return true;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    @Override
+    public synchronized int exitValue() {
+      if (!exited) {
+        throw new IllegalThreadStateException("process hasn't exited");
+      }
+      return exitValue;
+    }
+
+    @Override
+    public synchronized boolean finished() {
+      return exited;
+    }
+
+    @Override
+    public synchronized boolean isAlive() {
+      return !exited;
+    }
+
+    @Override
+    public synchronized boolean timedout() {
+      return timedOut;
+    }
+
+    @Override
+    public synchronized void waitFor() throws InterruptedException {
+      while (!exited) {
+        wait();
+      }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return ByteStreams.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public void close() {
+      // The daemon reaps the process and kills what is left of its process group.
+    }
+  }
+}
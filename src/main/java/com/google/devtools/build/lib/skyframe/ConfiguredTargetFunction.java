@@ -86,6 +86,7 @@ import com.google.devtools.build.lib.util.OrderedSetMultimap;
 import com.google.devtools.build.skyframe.SkyFunction;
 import com.google.devtools.build.skyframe.SkyFunctionException;
 import com.google.devtools.build.skyframe.SkyKey;
+import com.google.devtools.build.skyframe.SkyKeyComputeState;
 import com.google.devtools.build.skyframe.SkyValue;
 import com.google.devtools.build.skyframe.ValueOrException;
 import java.util.ArrayList;
@@ -272,12 +273,18 @@ public final class ConfiguredTargetFunction implements SkyFunction {
     //  would exit this SkyFunction and restart it when permits were available.
     maybeAcquireSemaphoreWithLogging(key);
     try {
-      // Determine what toolchains are needed by this target.
-      ComputedToolchainContexts result =
-          computeUnloadedToolchainContexts(
-              env, ruleClassProvider, ctgValue, configuredTargetKey.getToolchainContextKey());
-      if (env.valuesMissing()) {
-        return null;
+      // Determine what toolchains are needed by this target. Toolchain resolution is redone on
+      // every restart unless its result was retained from an earlier one.
+      State state = env.getState(State::new);
+      ComputedToolchainContexts result = state.computedToolchainContexts;
+      if (result == null) {
+        result =
+            computeUnloadedToolchainContexts(
+                env, ruleClassProvider, ctgValue, configuredTargetKey.getToolchainContextKey());
+        if (env.valuesMissing()) {
+          return null;
+        }
+        state.computedToolchainContexts = result;
       }
       unloadedToolchainContexts = result.toolchainCollection;
       execGroupCollectionBuilder = result.execGroupCollectionBuilder;
@@ -440,6 +447,11 @@ public final class ConfiguredTargetFunction implements SkyFunction {
     }
   }
 
+  /** Partial results of {@link #compute} retained across its restarts. */
+  private static class State implements SkyKeyComputeState {
+    @Nullable ComputedToolchainContexts computedToolchainContexts;
+  }
+
   /**
    * Simple wrapper to allow returning two variables from {@link #computeUnloadedToolchainContexts}.
    */
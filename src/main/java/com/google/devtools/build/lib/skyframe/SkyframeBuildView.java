@@ -60,6 +60,7 @@ import com.google.devtools.build.lib.analysis.config.BuildOptions.OptionsDiff;
 import com.google.devtools.build.lib.analysis.config.ConfigConditions;
 import com.google.devtools.build.lib.analysis.config.CoreOptions;
 import com.google.devtools.build.lib.analysis.config.FragmentClassSet;
+import com.google.devtools.build.lib.analysis.starlark.FunctionTransitionUtil;
 import com.google.devtools.build.lib.bugreport.BugReport;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.ConfigurationId;
@@ -320,6 +321,7 @@ public final class SkyframeBuildView {
               "--discard_analysis_cache was used in the previous build, "
                   + "discarding analysis cache."));
       skyframeExecutor.handleAnalysisInvalidatingChange();
+      FunctionTransitionUtil.clearCache();
     } else {
       String diff = describeConfigurationDifference(configurations, maxDifferencesToShow);
       if (diff != null) {
@@ -331,6 +333,7 @@ public final class SkyframeBuildView {
         // to not invalidate the cache, leading to potentially better performance on incremental
         // builds.
         skyframeExecutor.handleAnalysisInvalidatingChange();
+        FunctionTransitionUtil.clearCache();
       }
     }
 
@@ -370,6 +373,7 @@ public final class SkyframeBuildView {
     // TODO(bazel-team): Consider clearing packages too to save more memory.
     skyframeAnalysisWasDiscarded = true;
     skyframeExecutor.clearAnalysisCache(topLevelTargets, topLevelAspects);
+    FunctionTransitionUtil.clearCache();
   }
 
   /**
@@ -1110,6 +1114,7 @@ public final class SkyframeBuildView {
     configurations = null;
     skyframeAnalysisWasDiscarded = false;
     clearLegacyData();
+    FunctionTransitionUtil.clearCache();
   }
 
   /**
@@ -16,14 +16,17 @@ package com.google.devtools.build.lib.util;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -49,11 +52,12 @@ import java.util.concurrent.atomic.AtomicReference;
 public final class DependencySet {
 
   /**
-   * The set of dependent files that this DependencySet embodies. They are all
-   * Path with the same FileSystem  A tree set is used to ensure that we
-   * write them out in a consistent order.
+   * The dependent files that this DependencySet embodies, in the order they were read. Relative
+   * fragments are relative to {@link #root}; absolute ones are kept as they appeared in the .d
+   * file. Keeping them as fragments avoids building an absolute {@link Path} for every header only
+   * to have consumers relativize it against the root again.
    */
-  private final Collection<Path> dependencies = new ArrayList<>();
+  private final List<PathFragment> dependencies = new ArrayList<>();
 
   private final Path root;
   private String outputFileName;
@@ -81,7 +85,15 @@ public final class DependencySet {
    * from this DependencySet instance.
    */
   public Collection<Path> getDependencies() {
-    return Collections.unmodifiableCollection(dependencies);
+    return Collections.unmodifiableCollection(Lists.transform(dependencies, root::getRelative));
+  }
+
+  /**
+   * Gets an unmodifiable view of the dependencies as they were read: relative fragments are
+   * relative to the root this DependencySet was constructed with, absolute ones are absolute.
+   */
+  public List<PathFragment> getDependencyFragments() {
+    return Collections.unmodifiableList(dependencies);
   }
 
   /**
@@ -92,7 +104,7 @@ public final class DependencySet {
   public void addDependencies(Collection<Path> deps) {
     for (Path d : deps) {
       Preconditions.checkArgument(d.startsWith(root));
-      dependencies.add(d);
+      dependencies.add(d.asFragment());
     }
   }
 
@@ -100,9 +112,7 @@ public final class DependencySet {
    * Adds a given dependency to this DependencySet instance.
    */
   private void addDependency(String dep) {
-    dep = translatePath(dep);
-    Path depPath = root.getRelative(dep);
-    dependencies.add(depPath);
+    dependencies.add(PathFragment.create(translatePath(dep)));
   }
 
   private String translatePath(String path) {
@@ -238,7 +248,7 @@ public final class DependencySet {
 
     try (PrintStream out = new PrintStream(dotdFile.getOutputStream())) {
       out.print(outFile.relativeTo(root) + ": ");
-      for (Path d : dependencies) {
+      for (PathFragment d : dependencies) {
         out.print(" \\\n  " + d.getPathString());  // should already be root relative
       }
       out.println();
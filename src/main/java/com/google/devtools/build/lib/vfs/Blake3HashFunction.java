@@ -0,0 +1,225 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.vfs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link HashFunction} computing 256-bit BLAKE3 digests.
+ *
+ * <p>Guava only exposes its abstract hashing base classes to its own package, so this implements
+ * the {@link Hasher} interface directly. Like Guava's hashers, multi-byte primitives are added in
+ * little-endian order.
+ */
+final class Blake3HashFunction implements HashFunction {
+  static final Blake3HashFunction INSTANCE = new Blake3HashFunction();
+
+  private Blake3HashFunction() {}
+
+  @Override
+  public Hasher newHasher() {
+    return new Blake3GuavaHasher();
+  }
+
+  @Override
+  public Hasher newHasher(int expectedInputSize) {
+    checkArgument(expectedInputSize >= 0, "expectedInputSize must be >= 0: %s", expectedInputSize);
+    return newHasher();
+  }
+
+  @Override
+  public HashCode hashInt(int input) {
+    return newHasher().putInt(input).hash();
+  }
+
+  @Override
+  public HashCode hashLong(long input) {
+    return newHasher().putLong(input).hash();
+  }
+
+  @Override
+  public HashCode hashBytes(byte[] input) {
+    return hashBytes(input, 0, input.length);
+  }
+
+  @Override
+  public HashCode hashBytes(byte[] input, int off, int len) {
+    checkPositionIndexes(off, off + len, input.length);
+    return newHasher().putBytes(input, off, len).hash();
+  }
+
+  @Override
+  public HashCode hashBytes(ByteBuffer input) {
+    return newHasher().putBytes(input).hash();
+  }
+
+  @Override
+  public HashCode hashUnencodedChars(CharSequence input) {
+    return newHasher().putUnencodedChars(input).hash();
+  }
+
+  @Override
+  public HashCode hashString(CharSequence input, Charset charset) {
+    return newHasher().putString(input, charset).hash();
+  }
+
+  @Override
+  public <T> HashCode hashObject(T instance, Funnel<? super T> funnel) {
+    return newHasher().putObject(instance, funnel).hash();
+  }
+
+  @Override
+  public int bits() {
+    return Blake3Hasher.OUT_LEN * 8;
+  }
+
+  @Override
+  public String toString() {
+    return "Hashing.blake3()";
+  }
+
+  private static final class Blake3GuavaHasher implements Hasher {
+    private final Blake3Hasher hasher = new Blake3Hasher();
+    // Scratch space for multi-byte primitives.
+    private final ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private boolean done;
+
+    @Override
+    public Hasher putByte(byte b) {
+      checkNotDone();
+      hasher.update(b);
+      return this;
+    }
+
+    @Override
+    public Hasher putBytes(byte[] bytes) {
+      return putBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public Hasher putBytes(byte[] bytes, int off, int len) {
+      checkPositionIndexes(off, off + len, bytes.length);
+      checkNotDone();
+      hasher.update(bytes, off, len);
+      return this;
+    }
+
+    @Override
+    public Hasher putBytes(ByteBuffer bytes) {
+      checkNotDone();
+      if (bytes.hasArray()) {
+        hasher.update(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        bytes.position(bytes.limit());
+      } else {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        hasher.update(copy, 0, copy.length);
+      }
+      return this;
+    }
+
+    private Hasher putScratch(int len) {
+      checkNotDone();
+      hasher.update(scratch.array(), 0, len);
+      scratch.clear();
+      return this;
+    }
+
+    @Override
+    public Hasher putShort(short s) {
+      scratch.putShort(s);
+      return putScratch(Short.BYTES);
+    }
+
+    @Override
+    public Hasher putInt(int i) {
+      scratch.putInt(i);
+      return putScratch(Integer.BYTES);
+    }
+
+    @Override
+    public Hasher putLong(long l) {
+      scratch.putLong(l);
+      return putScratch(Long.BYTES);
+    }
+
+    @Override
+    public Hasher putFloat(float f) {
+      return putInt(Float.floatToRawIntBits(f));
+    }
+
+    @Override
+    public Hasher putDouble(double d) {
+      return putLong(Double.doubleToRawLongBits(d));
+    }
+
+    @Override
+    public Hasher putBoolean(boolean b) {
+      return putByte(b ? (byte) 1 : (byte) 0);
+    }
+
+    @Override
+    public Hasher putChar(char c) {
+      scratch.putChar(c);
+      return putScratch(Character.BYTES);
+    }
+
+    @Override
+    public Hasher putUnencodedChars(CharSequence charSequence) {
+      for (int i = 0, len = charSequence.length(); i < len; i++) {
+        putChar(charSequence.charAt(i));
+      }
+      return this;
+    }
+
+    @Override
+    public Hasher putString(CharSequence charSequence, Charset charset) {
+      return putBytes(charSequence.toString().getBytes(charset));
+    }
+
+    @Override
+    public <T> Hasher putObject(T instance, Funnel<? super T> funnel) {
+      funnel.funnel(instance, this);
+      return this;
+    }
+
+    @Override
+    public HashCode hash() {
+      checkNotDone();
+      done = true;
+      return HashCode.fromBytes(hasher.finish());
+    }
+
+    @Override
+    @Deprecated
+    public int hashCode() {
+      return hash().asInt();
+    }
+
+    private void checkNotDone() {
+      checkState(!done, "Cannot re-use a Hasher after calling hash() on it");
+    }
+  }
+}
@@ -0,0 +1,423 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.vfs;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.io.ByteStreams;
+import com.google.devtools.build.lib.concurrent.NamedForkJoinPool;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Incremental BLAKE3 hasher producing the default 256-bit output in hash mode.
+ *
+ * <p>This follows the structure of the BLAKE3 reference implementation: input is split into 1 KiB
+ * chunks whose chaining values form a binary tree, which is merged eagerly through a stack. Because
+ * whole subtrees of the tree are independent of each other, {@link #hashParallel} hashes large
+ * inputs by computing aligned subtrees concurrently and only merges their chaining values in order.
+ *
+ * <p>Instances are not thread safe.
+ */
+final class Blake3Hasher implements Cloneable {
+  static final int OUT_LEN = 32;
+  static final int BLOCK_LEN = 64;
+  static final int CHUNK_LEN = 1024;
+
+  private static final int CHUNK_START = 1;
+  private static final int CHUNK_END = 1 << 1;
+  private static final int PARENT = 1 << 2;
+  private static final int ROOT = 1 << 3;
+
+  private static final int[] IV = {
+    0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A, 0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19,
+  };
+
+  private static final int[] MSG_PERMUTATION = {
+    2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8,
+  };
+
+  private static final int ROUNDS = 7;
+
+  // The message word indices used by each round, i.e. MSG_PERMUTATION applied round times.
+  private static final int[][] MSG_SCHEDULE = new int[ROUNDS][16];
+
+  static {
+    for (int i = 0; i < 16; i++) {
+      MSG_SCHEDULE[0][i] = i;
+    }
+    for (int r = 1; r < ROUNDS; r++) {
+      for (int i = 0; i < 16; i++) {
+        MSG_SCHEDULE[r][i] = MSG_SCHEDULE[r - 1][MSG_PERMUTATION[i]];
+      }
+    }
+  }
+
+  // Enough to hold the chaining values of a tree with 2^54 chunks, the maximum input size.
+  private static final int MAX_DEPTH = 54;
+
+  /** Log2 of the number of chunks in a subtree hashed as one unit by {@link #hashParallel}. */
+  private static final int PARALLEL_SUBTREE_LOG2_CHUNKS = 10;
+
+  /** Size in bytes of a subtree hashed as one unit by {@link #hashParallel}, 1 MiB. */
+  static final int PARALLEL_SUBTREE_LEN = CHUNK_LEN << PARALLEL_SUBTREE_LOG2_CHUNKS;
+
+  /**
+   * Bounds the memory held by subtrees that have been read but not yet hashed, across all
+   * concurrent calls of {@link #hashParallel}. A call that finds the budget exhausted hashes its
+   * subtree on the calling thread instead.
+   */
+  private static final Semaphore PENDING_SUBTREE_BUDGET =
+      new Semaphore(2 * Runtime.getRuntime().availableProcessors());
+
+  /** Lazily creates the pool so that users of other digest functions never pay for it. */
+  private static final class PoolHolder {
+    private static final ForkJoinPool POOL =
+        NamedForkJoinPool.newNamedPool("blake3-digest", Runtime.getRuntime().availableProcessors());
+  }
+
+  // State of the chunk currently being filled.
+  private int[] chunkCv = IV.clone();
+  private long chunkCounter;
+  private byte[] block = new byte[BLOCK_LEN];
+  private int blockLen;
+  private int blocksCompressed;
+
+  // Chaining values of completed subtrees, one per set bit of the number of completed chunks.
+  private int[][] cvStack = new int[MAX_DEPTH][];
+  private int cvStackLen;
+
+  /** Adds {@code len} bytes of {@code input}, starting at {@code offset}, to the hashed data. */
+  void update(byte[] input, int offset, int len) {
+    while (len > 0) {
+      // Only finish the current chunk once more input arrives, as the last chunk is finalized
+      // differently if it is the root of the tree.
+      if (chunkLength() == CHUNK_LEN) {
+        int[] cv = chunkOutput().chainingValue();
+        long totalChunks = chunkCounter + 1;
+        addChainingValue(cv, totalChunks);
+        resetChunk(totalChunks);
+      }
+      if (blockLen == BLOCK_LEN) {
+        // Likewise, only compress a full block once it is known not to be the chunk's last one.
+        compressBlockInPlace();
+      }
+      int take = Math.min(BLOCK_LEN - blockLen, len);
+      System.arraycopy(input, offset, block, blockLen, take);
+      blockLen += take;
+      offset += take;
+      len -= take;
+    }
+  }
+
+  void update(byte input) {
+    update(new byte[] {input}, 0, 1);
+  }
+
+  /** Writes the 32 byte digest of the data added so far to {@code out} at {@code offset}. */
+  void finish(byte[] out, int offset) {
+    Output output = chunkOutput();
+    for (int i = cvStackLen - 1; i >= 0; i--) {
+      output = parentOutput(cvStack[i], output.chainingValue());
+    }
+    output.writeRootBytes(out, offset);
+  }
+
+  byte[] finish() {
+    byte[] out = new byte[OUT_LEN];
+    finish(out, 0);
+    return out;
+  }
+
+  /** Discards all data added so far. */
+  void reset() {
+    resetChunk(0);
+    for (int i = 0; i < cvStackLen; i++) {
+      cvStack[i] = null;
+    }
+    cvStackLen = 0;
+  }
+
+  @Override
+  public Blake3Hasher clone() {
+    Blake3Hasher copy;
+    try {
+      copy = (Blake3Hasher) super.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+    // The chaining values on the stack are never mutated, so a shallow copy of it is sufficient.
+    copy.chunkCv = chunkCv.clone();
+    copy.block = block.clone();
+    copy.cvStack = cvStack.clone();
+    return copy;
+  }
+
+  /**
+   * Returns the BLAKE3 digest of the remaining content of {@code in}, hashing subtrees of {@link
+   * #PARALLEL_SUBTREE_LEN} bytes concurrently while the stream is read.
+   *
+   * <p>Does not close the stream.
+   */
+  static byte[] hashParallel(InputStream in) throws IOException {
+    Blake3Hasher hasher = new Blake3Hasher();
+    ArrayDeque<Future<int[]>> pending = new ArrayDeque<>();
+    byte[] current = new byte[PARALLEL_SUBTREE_LEN];
+    int currentLen = ByteStreams.read(in, current, 0, current.length);
+    long submittedSubtrees = 0;
+    try {
+      // A full subtree can only be hashed as a non-root node once it is known that more content
+      // follows it; otherwise it is the root and is finalized by the sequential hasher below.
+      while (currentLen == PARALLEL_SUBTREE_LEN) {
+        byte[] next = new byte[PARALLEL_SUBTREE_LEN];
+        int nextLen = ByteStreams.read(in, next, 0, next.length);
+        if (nextLen == 0) {
+          break;
+        }
+        byte[] subtree = current;
+        long chunkCounter = submittedSubtrees++ << PARALLEL_SUBTREE_LOG2_CHUNKS;
+        if (PENDING_SUBTREE_BUDGET.tryAcquire()) {
+          // The submitted task retains the subtree until its future is dropped, so the budget is
+          // only returned once the subtree has been merged.
+          pending.add(
+              PoolHolder.POOL.submit(
+                  () -> subtreeChainingValue(subtree, chunkCounter, PARALLEL_SUBTREE_LOG2_CHUNKS)));
+        } else {
+          while (!pending.isEmpty()) {
+            hasher.mergePendingSubtree(pending);
+          }
+          hasher.addSubtree(
+              subtreeChainingValue(subtree, chunkCounter, PARALLEL_SUBTREE_LOG2_CHUNKS),
+              PARALLEL_SUBTREE_LOG2_CHUNKS);
+        }
+        current = next;
+        currentLen = nextLen;
+      }
+      while (!pending.isEmpty()) {
+        hasher.mergePendingSubtree(pending);
+      }
+    } finally {
+      for (Future<int[]> future : pending) {
+        future.cancel(false);
+        PENDING_SUBTREE_BUDGET.release();
+      }
+    }
+    hasher.update(current, 0, currentLen);
+    return hasher.finish();
+  }
+
+  /**
+   * Waits for the first of the {@code pending} subtrees, adds it and returns its share of the
+   * budget. The subtree is left in {@code pending} if waiting for it fails.
+   */
+  private void mergePendingSubtree(ArrayDeque<Future<int[]>> pending) throws IOException {
+    int[] cv = awaitSubtree(pending.peek());
+    pending.remove();
+    PENDING_SUBTREE_BUDGET.release();
+    addSubtree(cv, PARALLEL_SUBTREE_LOG2_CHUNKS);
+  }
+
+  private static int[] awaitSubtree(Future<int[]> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while computing BLAKE3 digest");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Adds the chaining value of a complete subtree of {@code 2^log2Chunks} chunks, which must start
+   * at the current chunk and be followed by more input.
+   */
+  private void addSubtree(int[] cv, int log2Chunks) {
+    checkState(chunkLength() == 0, "subtree must start at a chunk boundary");
+    checkState((chunkCounter & ((1L << log2Chunks) - 1)) == 0, "subtree must be aligned");
+    long totalChunks = chunkCounter + (1L << log2Chunks);
+    // All subtrees on the stack are at least as large as this one, so merging can proceed as if
+    // the unit were a single chunk of the tree scaled down by 2^log2Chunks.
+    addChainingValue(cv, totalChunks >>> log2Chunks);
+    resetChunk(totalChunks);
+  }
+
+  /**
+   * Returns the non-root chaining value of the {@code 2^log2Chunks} full chunks in {@code input},
+   * the first of which is chunk {@code chunkCounter} of the whole input.
+   */
+  private static int[] subtreeChainingValue(byte[] input, long chunkCounter, int log2Chunks) {
+    Blake3Hasher hasher = new Blake3Hasher();
+    int[][] stack = new int[log2Chunks + 1][];
+    int stackLen = 0;
+    int chunks = 1 << log2Chunks;
+    for (int i = 0; i < chunks; i++) {
+      hasher.resetChunk(chunkCounter + i);
+      hasher.update(input, i * CHUNK_LEN, CHUNK_LEN);
+      int[] cv = hasher.chunkOutput().chainingValue();
+      for (int total = i + 1; (total & 1) == 0; total >>= 1) {
+        cv = parentOutput(stack[--stackLen], cv).chainingValue();
+      }
+      stack[stackLen++] = cv;
+    }
+    return stack[0];
+  }
+
+  private void addChainingValue(int[] cv, long totalChunks) {
+    while ((totalChunks & 1) == 0) {
+      cv = parentOutput(cvStack[--cvStackLen], cv).chainingValue();
+      cvStack[cvStackLen] = null;
+      totalChunks >>>= 1;
+    }
+    cvStack[cvStackLen++] = cv;
+  }
+
+  private int chunkLength() {
+    return BLOCK_LEN * blocksCompressed + blockLen;
+  }
+
+  private int startFlag() {
+    return blocksCompressed == 0 ? CHUNK_START : 0;
+  }
+
+  private void resetChunk(long counter) {
+    System.arraycopy(IV, 0, chunkCv, 0, IV.length);
+    chunkCounter = counter;
+    blockLen = 0;
+    blocksCompressed = 0;
+  }
+
+  private void compressBlockInPlace() {
+    int[] state = compress(chunkCv, wordsOf(block, 0), chunkCounter, BLOCK_LEN, startFlag());
+    System.arraycopy(state, 0, chunkCv, 0, 8);
+    blocksCompressed++;
+    blockLen = 0;
+  }
+
+  private Output chunkOutput() {
+    byte[] lastBlock = block;
+    if (blockLen < BLOCK_LEN) {
+      lastBlock = new byte[BLOCK_LEN];
+      System.arraycopy(block, 0, lastBlock, 0, blockLen);
+    }
+    return new Output(
+        chunkCv.clone(),
+        wordsOf(lastBlock, 0),
+        chunkCounter,
+        blockLen,
+        startFlag() | CHUNK_END);
+  }
+
+  private static Output parentOutput(int[] left, int[] right) {
+    int[] blockWords = new int[16];
+    System.arraycopy(left, 0, blockWords, 0, 8);
+    System.arraycopy(right, 0, blockWords, 8, 8);
+    return new Output(IV, blockWords, 0, BLOCK_LEN, PARENT);
+  }
+
+  /** The inputs of a compression that may either produce a chaining value or the root digest. */
+  private static final class Output {
+    private final int[] inputCv;
+    private final int[] blockWords;
+    private final long counter;
+    private final int blockLen;
+    private final int flags;
+
+    Output(int[] inputCv, int[] blockWords, long counter, int blockLen, int flags) {
+      this.inputCv = inputCv;
+      this.blockWords = blockWords;
+      this.counter = counter;
+      this.blockLen = blockLen;
+      this.flags = flags;
+    }
+
+    int[] chainingValue() {
+      int[] state = compress(inputCv, blockWords, counter, blockLen, flags);
+      int[] cv = new int[8];
+      System.arraycopy(state, 0, cv, 0, 8);
+      return cv;
+    }
+
+    void writeRootBytes(byte[] out, int offset) {
+      // The default output length fits into the first output block, so the counter stays zero.
+      int[] state = compress(inputCv, blockWords, 0, blockLen, flags | ROOT);
+      for (int i = 0; i < OUT_LEN / 4; i++) {
+        int word = state[i];
+        out[offset + 4 * i] = (byte) word;
+        out[offset + 4 * i + 1] = (byte) (word >>> 8);
+        out[offset + 4 * i + 2] = (byte) (word >>> 16);
+        out[offset + 4 * i + 3] = (byte) (word >>> 24);
+      }
+    }
+  }
+
+  private static int[] wordsOf(byte[] bytes, int offset) {
+    int[] words = new int[16];
+    for (int i = 0; i < 16; i++) {
+      int p = offset + 4 * i;
+      words[i] =
+          (bytes[p] & 0xff)
+              | (bytes[p + 1] & 0xff) << 8
+              | (bytes[p + 2] & 0xff) << 16
+              | (bytes[p + 3] & 0xff) << 24;
+    }
+    return words;
+  }
+
+  private static int[] compress(int[] cv, int[] blockWords, long counter, int blockLen, int flags) {
+    int[] state = {
+      cv[0], cv[1], cv[2], cv[3], cv[4], cv[5], cv[6], cv[7],
+      IV[0], IV[1], IV[2], IV[3], (int) counter, (int) (counter >>> 32), blockLen, flags,
+    };
+    for (int[] schedule : MSG_SCHEDULE) {
+      round(state, blockWords, schedule);
+    }
+    for (int i = 0; i < 8; i++) {
+      state[i] ^= state[i + 8];
+      state[i + 8] ^= cv[i];
+    }
+    return state;
+  }
+
+  private static void round(int[] s, int[] m, int[] i) {
+    // Mix the columns.
+    g(s, 0, 4, 8, 12, m[i[0]], m[i[1]]);
+    g(s, 1, 5, 9, 13, m[i[2]], m[i[3]]);
+    g(s, 2, 6, 10, 14, m[i[4]], m[i[5]]);
+    g(s, 3, 7, 11, 15, m[i[6]], m[i[7]]);
+    // Mix the diagonals.
+    g(s, 0, 5, 10, 15, m[i[8]], m[i[9]]);
+    g(s, 1, 6, 11, 12, m[i[10]], m[i[11]]);
+    g(s, 2, 7, 8, 13, m[i[12]], m[i[13]]);
+    g(s, 3, 4, 9, 14, m[i[14]], m[i[15]]);
+  }
+
+  private static void g(int[] s, int a, int b, int c, int d, int mx, int my) {
+    s[a] = s[a] + s[b] + mx;
+    s[d] = Integer.rotateRight(s[d] ^ s[a], 16);
+    s[c] = s[c] + s[d];
+    s[b] = Integer.rotateRight(s[b] ^ s[c], 12);
+    s[a] = s[a] + s[b] + my;
+    s[d] = Integer.rotateRight(s[d] ^ s[a], 8);
+    s[c] = s[c] + s[d];
+    s[b] = Integer.rotateRight(s[b] ^ s[c], 7);
+  }
+}
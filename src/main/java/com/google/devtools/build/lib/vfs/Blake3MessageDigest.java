@@ -0,0 +1,73 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.vfs;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/** A {@link MessageDigest} computing 256-bit BLAKE3 digests. */
+final class Blake3MessageDigest extends MessageDigest implements Cloneable {
+  static final String NAME = "BLAKE3";
+
+  private Blake3Hasher hasher = new Blake3Hasher();
+
+  Blake3MessageDigest() {
+    super(NAME);
+  }
+
+  @Override
+  protected int engineGetDigestLength() {
+    return Blake3Hasher.OUT_LEN;
+  }
+
+  @Override
+  protected void engineUpdate(byte input) {
+    hasher.update(input);
+  }
+
+  @Override
+  protected void engineUpdate(byte[] input, int offset, int len) {
+    hasher.update(input, offset, len);
+  }
+
+  @Override
+  protected byte[] engineDigest() {
+    byte[] digest = hasher.finish();
+    hasher.reset();
+    return digest;
+  }
+
+  @Override
+  protected int engineDigest(byte[] buf, int offset, int len) throws DigestException {
+    if (len < Blake3Hasher.OUT_LEN) {
+      throw new DigestException("partial digests not returned");
+    }
+    hasher.finish(buf, offset);
+    hasher.reset();
+    return Blake3Hasher.OUT_LEN;
+  }
+
+  @Override
+  protected void engineReset() {
+    hasher.reset();
+  }
+
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    Blake3MessageDigest copy = (Blake3MessageDigest) super.clone();
+    copy.hasher = hasher.clone();
+    return copy;
+  }
+}
@@ -27,6 +27,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.function.Supplier;
 
 /**
  * Type of hash function to use for digesting files.
@@ -68,21 +69,35 @@ public class DigestHashFunction {
   public static final DigestHashFunction SHA1 = register(Hashing.sha1(), "SHA-1", "SHA1");
   public static final DigestHashFunction SHA256 = register(Hashing.sha256(), "SHA-256", "SHA256");
 
+  // The JDK does not provide BLAKE3, so its MessageDigest is created directly rather than looked
+  // up through a security provider.
+  public static final DigestHashFunction BLAKE3 =
+      register(
+          Blake3HashFunction.INSTANCE,
+          new DigestLengthImpl(Blake3HashFunction.INSTANCE),
+          Blake3MessageDigest::new,
+          Blake3MessageDigest.NAME);
+
   private final HashFunction hashFunction;
   private final DigestLength digestLength;
   private final String name;
+  private final Supplier<MessageDigest> messageDigestFactory;
   private final MessageDigest messageDigestPrototype;
   private final boolean messageDigestPrototypeSupportsClone;
   private final ImmutableList<String> names;
 
   private DigestHashFunction(
-      HashFunction hashFunction, DigestLength digestLength, ImmutableList<String> names) {
+      HashFunction hashFunction,
+      DigestLength digestLength,
+      Supplier<MessageDigest> messageDigestFactory,
+      ImmutableList<String> names) {
     this.hashFunction = hashFunction;
     this.digestLength = digestLength;
     checkArgument(!names.isEmpty());
     this.name = names.get(0);
     this.names = names;
-    this.messageDigestPrototype = getMessageDigestInstance();
+    this.messageDigestFactory = messageDigestFactory;
+    this.messageDigestPrototype = messageDigestFactory.get();
     this.messageDigestPrototypeSupportsClone = supportsClone(messageDigestPrototype);
   }
 
@@ -112,10 +127,20 @@ public class DigestHashFunction {
               + hashName,
           e);
     }
+    return register(
+        hash, digestLength, () -> getMessageDigestInstance(hashName), hashName, altNames);
+  }
 
+  private static DigestHashFunction register(
+      HashFunction hash,
+      DigestLength digestLength,
+      Supplier<MessageDigest> messageDigestFactory,
+      String hashName,
+      String... altNames) {
     ImmutableList<String> names =
         ImmutableList.<String>builder().add(hashName).add(altNames).build();
-    DigestHashFunction hashFunction = new DigestHashFunction(hash, digestLength, names);
+    DigestHashFunction hashFunction =
+        new DigestHashFunction(hash, digestLength, messageDigestFactory, names);
     synchronized (hashFunctionRegistry) {
       for (String name : names) {
         if (hashFunctionRegistry.containsKey(name)) {
@@ -158,7 +183,7 @@ public class DigestHashFunction {
         throw new IllegalStateException("Could not clone message digest", e);
       }
     } else {
-      return getMessageDigestInstance();
+      return messageDigestFactory.get();
     }
   }
 
@@ -175,7 +200,7 @@ public class DigestHashFunction {
     return name;
   }
 
-  private MessageDigest getMessageDigestInstance() {
+  private static MessageDigest getMessageDigestInstance(String name) {
     try {
       return MessageDigest.getInstance(name);
     } catch (NoSuchAlgorithmException e) {
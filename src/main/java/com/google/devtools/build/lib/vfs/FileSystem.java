@@ -331,6 +331,13 @@ public abstract class FileSystem {
    * @throws IOException if the digest could not be computed for any reason
    */
   protected byte[] getDigest(PathFragment path) throws IOException {
+    if (digestFunction == DigestHashFunction.BLAKE3
+        && getFileSize(path, /*followSymlinks=*/ true) > Blake3Hasher.PARALLEL_SUBTREE_LEN) {
+      // BLAKE3 is a tree hash, so the subtrees of large files can be digested on multiple cores.
+      try (InputStream in = getInputStream(path)) {
+        return Blake3Hasher.hashParallel(in);
+      }
+    }
     return new ByteSource() {
       @Override
       public InputStream openStream() throws IOException {
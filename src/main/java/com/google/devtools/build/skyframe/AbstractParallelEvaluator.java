@@ -553,6 +553,7 @@ abstract class AbstractParallelEvaluator {
                 state);
 
         SkyValue value = null;
+        boolean isRestart = evaluatorContext.startCompute(skyKey);
         long startTimeNanos = BlazeClock.instance().nanoTime();
         try {
           try {
@@ -568,7 +569,7 @@ abstract class AbstractParallelEvaluator {
                   .logSimpleTaskDuration(
                       startTimeNanos,
                       Duration.ofNanos(elapsedTimeNanos),
-                      ProfilerTask.SKYFUNCTION,
+                      isRestart ? ProfilerTask.SKYFUNCTION_RESTART : ProfilerTask.SKYFUNCTION,
                       skyKey.functionName().getName());
             }
           }
@@ -656,6 +657,12 @@ abstract class AbstractParallelEvaluator {
           return;
         }
 
+        if (value == null) {
+          // Unless it is committed with an error below, this node will be computed again once its
+          // missing deps are done, picking up any state it retained.
+          evaluatorContext.noteAwaitingRestart(skyKey);
+        }
+
         // Helper objects for all the newly requested deps that weren't known to the environment,
         // and may contain duplicate elements.
         GroupedListHelper<SkyKey> newDirectDeps = env.getNewlyRequestedDeps();
@@ -1012,6 +1019,7 @@ abstract class AbstractParallelEvaluator {
     evaluatorContext
         .getGraphInconsistencyReceiver()
         .noteInconsistencyAndMaybeThrow(key, /*otherKeys=*/ null, Inconsistency.RESET_REQUESTED);
+    evaluatorContext.discardComputeState(key);
     entry.resetForRestartFromScratch();
   }
 
@@ -33,6 +33,7 @@ import com.google.devtools.build.skyframe.ThinNodeEntry.DirtyType;
 import com.google.devtools.build.skyframe.ThinNodeEntry.MarkedDirtyResult;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -322,6 +323,13 @@ public abstract class InvalidatingNodeVisitor<GraphT extends QueryableGraph> {
   static class DirtyingNodeVisitor extends InvalidatingNodeVisitor<QueryableGraph> {
     private static final int SAFE_STACK_DEPTH = 1 << 9;
 
+    /**
+     * The number of nodes that are dirtied by one task. Dirtying a node is cheap compared to
+     * scheduling a task for it, so nodes with many reverse deps would otherwise spend most of their
+     * invalidation time in the executor.
+     */
+    private static final int BATCH_SIZE = 32;
+
     private final Set<SkyKey> changed =
         Collections.newSetFromMap(
             new ConcurrentHashMap<>(EXPECTED_VISITED_SET_SIZE, .75f, DEFAULT_THREAD_COUNT));
@@ -360,7 +368,12 @@ public abstract class InvalidatingNodeVisitor<GraphT extends QueryableGraph> {
     @Override
     void visit(Iterable<SkyKey> keys, InvalidationType invalidationType) {
       Preconditions.checkState(invalidationType != InvalidationType.DELETED, keys);
-      visit(keys, invalidationType, /*depthForOverflowCheck=*/ 0, null);
+      visit(
+          keys,
+          invalidationType,
+          /*depthForOverflowCheck=*/ 0,
+          null,
+          /*processLastBatchInline=*/ true);
     }
 
     /**
@@ -388,13 +401,17 @@ public abstract class InvalidatingNodeVisitor<GraphT extends QueryableGraph> {
      *
      * <p>If either of the above tests shows that we have already started a task to mark this entry
      * dirty/changed, or that it is already marked dirty/changed, we do not continue this task.
+     *
+     * <p>The nodes are dirtied in batches of {@link #BATCH_SIZE}. If {@code processLastBatchInline}
+     * is true, the last batch is dirtied on the calling thread instead of in a new task.
      */
     @ThreadSafe
     private void visit(
         Iterable<SkyKey> keys,
         final InvalidationType invalidationType,
         int depthForOverflowCheck,
-        @Nullable SkyKey enqueueingKeyForExistenceCheck) {
+        @Nullable SkyKey enqueueingKeyForExistenceCheck,
+        boolean processLastBatchInline) {
       // Code from here until pendingVisitations#add is called below must be uninterruptible.
       boolean isChanged = (invalidationType == InvalidationType.CHANGED);
       Set<SkyKey> setToCheck = isChanged ? changed : dirtied;
@@ -430,26 +447,55 @@ public abstract class InvalidatingNodeVisitor<GraphT extends QueryableGraph> {
                 "key(s) %s not in the graph, but enqueued for dirtying by %s",
                 Iterables.limit(missingKeys, 10), enqueueingKeyForExistenceCheck));
       }
-      // We take a deeper thread stack in exchange for less contention in the executor.
-      int lastIndex = keysToGet.size() - 1;
-      if (lastIndex == -1) {
+      if (keysToGet.isEmpty()) {
         return;
       }
-      for (int i = 0; i < lastIndex; i++) {
-        SkyKey key = keysToGet.get(i);
-        executor.execute(() -> dirtyKeyAndVisitParents(key, entries, invalidationType, 0));
+      int lastBatchStart = (keysToGet.size() - 1) / BATCH_SIZE * BATCH_SIZE;
+      for (int start = 0; start < lastBatchStart; start += BATCH_SIZE) {
+        List<SkyKey> batch = keysToGet.subList(start, start + BATCH_SIZE);
+        executor.execute(() -> dirtyKeysAndVisitParents(batch, entries, invalidationType, 0));
+      }
+      List<SkyKey> lastBatch = keysToGet.subList(lastBatchStart, keysToGet.size());
+      if (!processLastBatchInline) {
+        executor.execute(() -> dirtyKeysAndVisitParents(lastBatch, entries, invalidationType, 0));
+        return;
       }
-      SkyKey lastParent = keysToGet.get(lastIndex);
+      // We take a deeper thread stack in exchange for less contention in the executor.
       if (depthForOverflowCheck > SAFE_STACK_DEPTH) {
         logger.atInfo().atMostEvery(1, MINUTES).log(
             "Stack depth too deep to safely recurse for %s (%s)",
-            lastParent, enqueueingKeyForExistenceCheck);
-        executor.execute(() -> dirtyKeyAndVisitParents(lastParent, entries, invalidationType, 0));
+            lastBatch, enqueueingKeyForExistenceCheck);
+        executor.execute(() -> dirtyKeysAndVisitParents(lastBatch, entries, invalidationType, 0));
         return;
       }
       if (!Thread.interrupted()) {
         // Emulate what would happen if we'd submitted this to the executor: skip on interrupt.
-        dirtyKeyAndVisitParents(lastParent, entries, invalidationType, depthForOverflowCheck + 1);
+        dirtyKeysAndVisitParents(lastBatch, entries, invalidationType, depthForOverflowCheck + 1);
+      }
+    }
+
+    /**
+     * Dirties the given nodes one after the other. Only the reverse deps of the last node may be
+     * visited on this thread, so that the other nodes don't wait for the deep visitations that this
+     * may lead to.
+     */
+    private void dirtyKeysAndVisitParents(
+        List<SkyKey> keys,
+        Map<SkyKey, ? extends ThinNodeEntry> entries,
+        InvalidationType invalidationType,
+        int depthForOverflowCheck) {
+      int lastIndex = keys.size() - 1;
+      for (int i = 0; i <= lastIndex; i++) {
+        if (i > 0 && Thread.currentThread().isInterrupted()) {
+          // The remaining nodes are still pending, so we can resume next time.
+          return;
+        }
+        dirtyKeyAndVisitParents(
+            keys.get(i),
+            entries,
+            invalidationType,
+            depthForOverflowCheck,
+            /*visitParentsInline=*/ i == lastIndex);
       }
     }
 
@@ -457,7 +503,8 @@ public abstract class InvalidatingNodeVisitor<GraphT extends QueryableGraph> {
         SkyKey key,
         Map<SkyKey, ? extends ThinNodeEntry> entries,
         InvalidationType invalidationType,
-        int depthForOverflowCheck) {
+        int depthForOverflowCheck,
+        boolean visitParentsInline) {
       ThinNodeEntry entry = entries.get(key);
 
       if (entry == null) {
@@ -510,7 +557,8 @@ public abstract class InvalidatingNodeVisitor<GraphT extends QueryableGraph> {
           markedDirtyResult.getReverseDepsUnsafe(),
           InvalidationType.DIRTIED,
           depthForOverflowCheck,
-          key);
+          key,
+          /*processLastBatchInline=*/ visitParentsInline);
     }
   }
 }
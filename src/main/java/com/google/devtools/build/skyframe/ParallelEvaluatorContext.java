@@ -13,6 +13,8 @@
 // limitations under the License.
 package com.google.devtools.build.skyframe;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
@@ -24,6 +26,8 @@ import com.google.devtools.build.lib.events.ExtendedEventHandler.Postable;
 import com.google.devtools.build.skyframe.MemoizingEvaluator.EmittedEventState;
 import com.google.devtools.build.skyframe.QueryableGraph.Reason;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
 /**
@@ -56,6 +60,17 @@ class ParallelEvaluatorContext {
    */
   private final Supplier<NodeEntryVisitor> visitorSupplier;
 
+  /**
+   * {@link SkyKeyComputeState} retained for keys whose last {@link SkyFunction#compute} call
+   * returned {@code null}. Softly referenced so that it gives way to memory pressure: losing it
+   * only costs the work it would have saved.
+   */
+  private final Cache<SkyKey, SkyKeyComputeState> computeStates =
+      Caffeine.newBuilder().softValues().build();
+
+  /** Keys whose last {@link SkyFunction#compute} call returned {@code null} for missing deps. */
+  private final Set<SkyKey> keysAwaitingRestart = ConcurrentHashMap.newKeySet();
+
   /**
    * Returns a {@link Runnable} given a {@code key} to evaluate and an {@code evaluationPriority}
    * indicating whether it should be scheduled for evaluation soon (higher is better). The returned
@@ -194,6 +209,38 @@ class ParallelEvaluatorContext {
     return graphInconsistencyReceiver.restartPermitted();
   }
 
+  /**
+   * Returns the {@link SkyKeyComputeState} retained for {@code key}, creating it with {@code
+   * stateSupplier} if there is none.
+   */
+  @SuppressWarnings("unchecked") // Each key is only ever computed by the same SkyFunction.
+  <T extends SkyKeyComputeState> T getComputeState(
+      SkyKey key, java.util.function.Supplier<T> stateSupplier) {
+    return (T) computeStates.get(key, k -> stateSupplier.get());
+  }
+
+  /** Records that {@code key} will be computed again once its missing deps are done. */
+  void noteAwaitingRestart(SkyKey key) {
+    keysAwaitingRestart.add(key);
+  }
+
+  /**
+   * Returns whether the {@link SkyFunction#compute} call about to start for {@code key} is a
+   * restart, and clears that mark.
+   */
+  boolean startCompute(SkyKey key) {
+    return keysAwaitingRestart.remove(key);
+  }
+
+  /**
+   * Discards everything retained across restarts of {@code key}, either because its evaluation
+   * is done or because it is being reset and must start from scratch.
+   */
+  void discardComputeState(SkyKey key) {
+    computeStates.invalidate(key);
+    keysAwaitingRestart.remove(key);
+  }
+
   /** Receives the events from the NestedSet and delegates to the reporter. */
   private static final class NestedSetEventReceiver
       implements NestedSetVisitor.Receiver<TaggedEvents> {
@@ -23,6 +23,7 @@ import com.google.devtools.build.lib.events.ExtendedEventHandler;
 import com.google.devtools.build.lib.util.GroupedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 /**
@@ -419,6 +420,19 @@ public interface SkyFunction {
       getValues(keys);
     }
 
+    /**
+     * Returns the {@link SkyKeyComputeState} retained for the key being computed since its last
+     * restart, or a new instance obtained from {@code stateSupplier} if there is none.
+     *
+     * <p>The same instance is returned for all calls during the current evaluation of the key
+     * until the evaluator drops it; see {@link SkyKeyComputeState} for the exact guarantees.
+     * Environments that do not retain state may keep the default implementation, which always
+     * returns a new instance.
+     */
+    default <T extends SkyKeyComputeState> T getState(Supplier<T> stateSupplier) {
+      return stateSupplier.get();
+    }
+
     /** Returns whether we are currently in error bubbling. */
     @VisibleForTesting
     boolean inErrorBubblingForTesting();
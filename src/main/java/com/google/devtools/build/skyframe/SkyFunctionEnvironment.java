@@ -50,6 +50,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 /** A {@link SkyFunction.Environment} implementation for {@link ParallelEvaluator}. */
@@ -813,6 +814,7 @@ class SkyFunctionEnvironment extends AbstractSkyFunctionEnvironment {
    * shut down the main evaluation anyway.
    */
   Set<SkyKey> commitAndGetParents(NodeEntry primaryEntry) throws InterruptedException {
+    evaluatorContext.discardComputeState(skyKey);
     // Construct the definitive error info, if there is one.
     if (errorInfo == null) {
       errorInfo = evaluatorContext.getErrorInfoManager().getErrorInfoToUse(
@@ -951,6 +953,11 @@ class SkyFunctionEnvironment extends AbstractSkyFunctionEnvironment {
     newlyRequestedDeps.endGroup();
   }
 
+  @Override
+  public <T extends SkyKeyComputeState> T getState(Supplier<T> stateSupplier) {
+    return evaluatorContext.getComputeState(skyKey, stateSupplier);
+  }
+
   @Override
   public void injectVersionForNonHermeticFunction(Version version) {
     Preconditions.checkState(hermeticity == FunctionHermeticity.NONHERMETIC, skyKey);
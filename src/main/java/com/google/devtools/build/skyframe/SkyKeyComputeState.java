@@ -0,0 +1,34 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.skyframe;
+
+/**
+ * Marker interface for state that a {@link SkyFunction} keeps for a {@link SkyKey} across the
+ * restarts of a single evaluation of that key.
+ *
+ * <p>A {@link SkyFunction#compute} call that returns {@code null} because of missing deps is
+ * normally restarted from scratch once those deps are done, redoing all the work that came before
+ * the first missing dep. A function can instead stash intermediate results in an object obtained
+ * via {@link SkyFunction.Environment#getState} and pick up where it left off on the next call.
+ *
+ * <p>Retention is best-effort: the evaluator may drop the state at any time (for instance under
+ * memory pressure), in which case the next call gets a fresh instance. Functions must therefore
+ * produce the same result whether or not the state was retained. The state is discarded once the
+ * key's evaluation is done, successfully or not, and when the key is restarted by the evaluator
+ * (e.g. after an upstream change was detected mid-evaluation).
+ *
+ * <p>Implementations are only ever accessed by the thread currently computing the key, so they
+ * need not be thread-safe.
+ */
+public interface SkyKeyComputeState {}
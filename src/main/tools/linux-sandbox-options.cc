@@ -73,6 +73,10 @@ static void Usage(char *program_name, const char *fmt, ...) {
           "  -R  if set, make the uid/gid be root\n"
           "  -U  if set, make the uid/gid be nobody\n"
           "  -D  if set, debug info will be printed\n"
+          "  -p <dir>  run the command in a pre-created namespace of the pool "
+          "in dir, if one is free\n"
+          "  -P <dir>  create a namespace for a pool and hold it in dir until "
+          "stdin is closed; no command is run\n"
           "  @FILE  read newline-separated arguments from FILE\n"
           "  --  command to run inside sandbox, followed by arguments\n");
   exit(EXIT_FAILURE);
@@ -94,7 +98,7 @@ static void ParseCommandLine(unique_ptr<vector<char *>> args) {
   bool source_specified = false;
 
   while ((c = getopt(args->size(), args->data(),
-                     ":W:T:t:il:L:w:e:M:m:S:HNRUD")) != -1) {
+                     ":W:T:t:il:L:w:e:M:m:S:HNRUDp:P:")) != -1) {
     if (c != 'M' && c != 'm') source_specified = false;
     switch (c) {
       case 'W':
@@ -195,6 +199,14 @@ static void ParseCommandLine(unique_ptr<vector<char *>> args) {
       case 'D':
         opt.debug = true;
         break;
+      case 'p':
+        ValidateIsAbsolutePath(optarg, args->front(), static_cast<char>(c));
+        opt.pool_dir.assign(optarg);
+        break;
+      case 'P':
+        ValidateIsAbsolutePath(optarg, args->front(), static_cast<char>(c));
+        opt.pool_slot_dir.assign(optarg);
+        break;
       case '?':
         Usage(args->front(), "Unrecognized argument: -%c (%d)", optopt, optind);
         break;
@@ -262,7 +274,11 @@ void ParseOptions(int argc, char *argv[]) {
   vector<char *> args(argv, argv + argc);
   ParseCommandLine(ExpandArguments(args));
 
-  if (opt.args.empty()) {
+  if (!opt.pool_slot_dir.empty()) {
+    if (!opt.args.empty() || !opt.pool_dir.empty()) {
+      Usage(args.front(), "The -P option cannot be used with a command.");
+    }
+  } else if (opt.args.empty()) {
     Usage(args.front(), "No command specified.");
   }
 
@@ -54,6 +54,10 @@ struct Options {
   bool fake_username;
   // Print debugging messages (-D)
   bool debug;
+  // Directory with pre-created sandbox namespaces to run the command in (-p)
+  std::string pool_dir;
+  // Slot of a namespace pool to create and hold a namespace in (-P)
+  std::string pool_slot_dir;
   // Command to run (--)
   std::vector<char *> args;
 };
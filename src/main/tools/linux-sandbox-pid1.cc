@@ -26,6 +26,7 @@
 #include <mntent.h>
 #include <net/if.h>
 #include <pwd.h>
+#include <sched.h>
 #include <signal.h>
 #include <stdarg.h>
 #include <stdbool.h>
@@ -249,6 +250,66 @@ static bool ShouldBeWritable(const std::string &mnt_dir) {
   return false;
 }
 
+// Returns the flags to remount the given mount entry with. MS_REMOUNT does not
+// allow us to change certain flags. This means, we have to first read them out
+// and then pass them in back again. There seems to be no better way than this
+// (an API for just getting the mount flags of a mount entry as a bitmask would
+// be great).
+static int GetRemountFlags(struct mntent *ent) {
+  int mountFlags = MS_BIND | MS_REMOUNT;
+  if (hasmntopt(ent, "nodev") != nullptr) {
+    mountFlags |= MS_NODEV;
+  }
+  if (hasmntopt(ent, "noexec") != nullptr) {
+    mountFlags |= MS_NOEXEC;
+  }
+  if (hasmntopt(ent, "nosuid") != nullptr) {
+    mountFlags |= MS_NOSUID;
+  }
+  if (hasmntopt(ent, "noatime") != nullptr) {
+    mountFlags |= MS_NOATIME;
+  }
+  if (hasmntopt(ent, "nodiratime") != nullptr) {
+    mountFlags |= MS_NODIRATIME;
+  }
+  if (hasmntopt(ent, "relatime") != nullptr) {
+    mountFlags |= MS_RELATIME;
+  }
+  return mountFlags;
+}
+
+static void Remount(struct mntent *ent, int mountFlags) {
+  PRINT_DEBUG("remount %s: %s", (mountFlags & MS_RDONLY) ? "ro" : "rw",
+              ent->mnt_dir);
+  if (mount(nullptr, ent->mnt_dir, nullptr, mountFlags, nullptr) < 0) {
+    // If we get EACCES or EPERM, this might be a mount-point for which we
+    // don't have read access. Not much we can do about this, but it also
+    // won't do any harm, so let's go on. The same goes for EINVAL or ENOENT,
+    // which are fired in case a later mount overlaps an earlier mount, e.g.
+    // consider the case of /proc, /proc/sys/fs/binfmt_misc and /proc, with
+    // the latter /proc being the one that an outer sandbox has mounted on
+    // top of its parent /proc. In that case, we're not allowed to remount
+    // /proc/sys/fs/binfmt_misc, because it is hidden. If we get ESTALE, the
+    // mount is a broken NFS mount. In the ideal case, the user would either
+    // fix or remove that mount, but in cases where that's not possible, we
+    // should just ignore it.
+    switch (errno) {
+      case EACCES:
+      case EPERM:
+      case EINVAL:
+      case ENOENT:
+      case ESTALE:
+        PRINT_DEBUG(
+            "remount(nullptr, %s, nullptr, %d, nullptr) failure (%m) ignored",
+            ent->mnt_dir, mountFlags);
+        break;
+      default:
+        DIE("remount(nullptr, %s, nullptr, %d, nullptr)", ent->mnt_dir,
+            mountFlags);
+    }
+  }
+}
+
 // Makes the whole filesystem read-only, except for the paths for which
 // ShouldBeWritable returns true.
 static void MakeFilesystemMostlyReadOnly() {
@@ -259,63 +320,41 @@ static void MakeFilesystemMostlyReadOnly() {
 
   struct mntent *ent;
   while ((ent = getmntent(mounts)) != nullptr) {
-    int mountFlags = MS_BIND | MS_REMOUNT;
-
-    // MS_REMOUNT does not allow us to change certain flags. This means, we have
-    // to first read them out and then pass them in back again. There seems to
-    // be no better way than this (an API for just getting the mount flags of a
-    // mount entry as a bitmask would be great).
-    if (hasmntopt(ent, "nodev") != nullptr) {
-      mountFlags |= MS_NODEV;
-    }
-    if (hasmntopt(ent, "noexec") != nullptr) {
-      mountFlags |= MS_NOEXEC;
-    }
-    if (hasmntopt(ent, "nosuid") != nullptr) {
-      mountFlags |= MS_NOSUID;
-    }
-    if (hasmntopt(ent, "noatime") != nullptr) {
-      mountFlags |= MS_NOATIME;
-    }
-    if (hasmntopt(ent, "nodiratime") != nullptr) {
-      mountFlags |= MS_NODIRATIME;
-    }
-    if (hasmntopt(ent, "relatime") != nullptr) {
-      mountFlags |= MS_RELATIME;
-    }
-
+    int mountFlags = GetRemountFlags(ent);
     if (!ShouldBeWritable(ent->mnt_dir)) {
       mountFlags |= MS_RDONLY;
     }
+    Remount(ent, mountFlags);
+  }
+
+  endmntent(mounts);
+}
 
-    PRINT_DEBUG("remount %s: %s", (mountFlags & MS_RDONLY) ? "ro" : "rw",
-                ent->mnt_dir);
-    if (mount(nullptr, ent->mnt_dir, nullptr, mountFlags, nullptr) < 0) {
-      // If we get EACCES or EPERM, this might be a mount-point for which we
-      // don't have read access. Not much we can do about this, but it also
-      // won't do any harm, so let's go on. The same goes for EINVAL or ENOENT,
-      // which are fired in case a later mount overlaps an earlier mount, e.g.
-      // consider the case of /proc, /proc/sys/fs/binfmt_misc and /proc, with
-      // the latter /proc being the one that an outer sandbox has mounted on
-      // top of its parent /proc. In that case, we're not allowed to remount
-      // /proc/sys/fs/binfmt_misc, because it is hidden. If we get ESTALE, the
-      // mount is a broken NFS mount. In the ideal case, the user would either
-      // fix or remove that mount, but in cases where that's not possible, we
-      // should just ignore it.
-      switch (errno) {
-        case EACCES:
-        case EPERM:
-        case EINVAL:
-        case ENOENT:
-        case ESTALE:
-          PRINT_DEBUG(
-              "remount(nullptr, %s, nullptr, %d, nullptr) failure (%m) ignored",
-              ent->mnt_dir, mountFlags);
-          break;
-        default:
-          DIE("remount(nullptr, %s, nullptr, %d, nullptr)", ent->mnt_dir,
-              mountFlags);
-      }
+static bool IsBindMountTarget(const std::string &mnt_dir) {
+  for (const std::string &target : opt.bind_mount_targets) {
+    if (mnt_dir == target) {
+      return true;
+    }
+  }
+  return false;
+}
+
+// Like MakeFilesystemMostlyReadOnly, but for a mount namespace in which
+// everything was made read-only before MountFilesystems ran. Only the mounts
+// created by MountFilesystems need to be remounted: the writable ones, which
+// inherited the read-only flag of their source, and the explicit bind mounts.
+static void RemountPerActionFilesystems() {
+  FILE *mounts = setmntent("/proc/self/mounts", "r");
+  if (mounts == nullptr) {
+    DIE("setmntent");
+  }
+
+  struct mntent *ent;
+  while ((ent = getmntent(mounts)) != nullptr) {
+    if (ShouldBeWritable(ent->mnt_dir)) {
+      Remount(ent, GetRemountFlags(ent));
+    } else if (IsBindMountTarget(ent->mnt_dir)) {
+      Remount(ent, GetRemountFlags(ent) | MS_RDONLY);
     }
   }
 
@@ -483,3 +522,102 @@ int Pid1Main(void *sync_pipe_param) {
   // automatically once we exit.
   return WaitForChild();
 }
+
+static void ReapOrphans(int) {
+  // Processes that joined our PID namespace with setns(2) are not our
+  // children, but their orphaned descendants are reparented to us.
+  int saved_errno = errno;
+  while (waitpid(-1, nullptr, WNOHANG) > 0) {
+  }
+  errno = saved_errno;
+}
+
+int PoolPid1Main(void *pipes_param) {
+  PRINT_DEBUG("PoolPid1Main started");
+
+  if (getpid() != 1) {
+    DIE("Using PID namespaces, but we are not PID 1");
+  }
+
+  // Start with default signal handlers and an empty signal mask.
+  ClearSignalMask();
+
+  int *pipes = reinterpret_cast<int *>(pipes_param);
+  SetupSelfDestruction(pipes);
+  if (close(pipes[2]) < 0) {
+    DIE("close");
+  }
+
+  // Prepare everything that does not depend on the action: the namespaces, a
+  // read-only view of the filesystem, /proc and networking.
+  SetupMountNamespace();
+  SetupUserNamespace();
+  if (opt.fake_hostname) {
+    SetupUtsNamespace();
+  }
+  MakeFilesystemMostlyReadOnly();
+  MountProc();
+  SetupNetworking();
+
+  InstallSignalHandler(SIGCHLD, ReapOrphans);
+
+  // Tell our parent that the namespace is ready to be used.
+  char buf = 0;
+  if (write(pipes[3], &buf, 1) < 0) {
+    DIE("write");
+  }
+  if (close(pipes[3]) < 0) {
+    DIE("close");
+  }
+
+  // We are killed by our parent once the pool is shut down.
+  while (true) {
+    pause();
+  }
+}
+
+void PooledSandboxMain() {
+  PRINT_DEBUG("PooledSandboxMain started");
+
+  // Get a private copy of the prepared mount namespace, so that the mounts of
+  // this action disappear with it once the action is done. The IPC and UTS
+  // namespaces are not shared with other actions either: a fresh IPC
+  // namespace drops the System V IPC objects and POSIX message queues of
+  // earlier actions, and a copy of the prepared UTS namespace undoes any
+  // change of the host name.
+  int flags = CLONE_NEWNS | CLONE_NEWIPC;
+  if (opt.fake_hostname) {
+    flags |= CLONE_NEWUTS;
+  }
+  if (unshare(flags) < 0) {
+    DIE("unshare");
+  }
+  MountFilesystems();
+  RemountPerActionFilesystems();
+  EnterSandbox();
+
+  // Put ourselves into our own process group, so that signals can be
+  // forwarded to all of our descendants.
+  if (setpgid(0, 0) < 0) {
+    DIE("setpgid");
+  }
+
+  // Try to assign our terminal to the action.
+  if (tcsetpgrp(STDIN_FILENO, getpgrp()) < 0 && errno != ENOTTY) {
+    DIE("tcsetpgrp");
+  }
+
+  // Unblock all signals, restore default handlers.
+  ClearSignalMask();
+
+  // Force umask to include read and execute for everyone, to make output
+  // permissions predictable.
+  umask(022);
+
+  // argv[] passed to execve() must be a null-terminated array.
+  opt.args.push_back(nullptr);
+
+  if (execvp(opt.args[0], opt.args.data()) < 0) {
+    DIE("execvp(%s, %p)", opt.args[0], opt.args.data());
+  }
+}
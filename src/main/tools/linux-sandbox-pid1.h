@@ -17,4 +17,14 @@
 
 int Pid1Main(void *sync_pipe_param);
 
+// PID 1 of a namespace in a pool: prepares the namespaces and then waits to be
+// killed. pipes_param points to the sync pipe followed by a pipe on which it
+// reports that the namespace is ready.
+int PoolPid1Main(void *pipes_param);
+
+// Runs the command in a fresh copy of the mount namespace of a pool. Must be
+// called after joining the namespaces of a PoolPid1Main process. Does not
+// return.
+void PooledSandboxMain();
+
 #endif
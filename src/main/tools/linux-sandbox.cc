@@ -35,6 +35,15 @@
  *  - The hostname and domainname will be set to "sandbox".
  *  - The process runs in its own PID namespace, so other processes on the
  *    system are invisible.
+ *
+ * Creating the namespaces and making the filesystem read-only takes a while,
+ * which adds up for many short-lived commands. With -P, linux-sandbox instead
+ * prepares a set of namespaces without running a command and holds them in a
+ * pool slot until its stdin is closed. With -p, the command joins the
+ * namespaces of a free slot of that pool, if there is one with the same -H,
+ * -N, -R and -U options, and only applies its own mounts in a fresh copy of
+ * the prepared mount namespace. Any processes that it leaves behind are killed
+ * afterwards, so that the slot can be used by the next command.
  */
 
 #include "src/main/tools/linux-sandbox.h"
@@ -51,6 +60,7 @@
 #include <stdlib.h>
 #include <string.h>
 #include <sys/prctl.h>
+#include <sys/file.h>
 #include <sys/resource.h>
 #include <sys/stat.h>
 #include <sys/time.h>
@@ -59,6 +69,7 @@
 #include <unistd.h>
 
 #include <atomic>
+#include <string>
 #include <vector>
 
 #include "src/main/tools/linux-sandbox-options.h"
@@ -145,16 +156,23 @@ static void OnTimeoutOrTerm(int) {
   alarm(opt.kill_delay_secs);
 }
 
-static pid_t SpawnPid1() {
+// Clones a process running pid1_main in fresh namespaces. If ready_pipe is
+// given, it is passed on to pid1_main after the sync pipe.
+static pid_t SpawnPid1(int (*pid1_main)(void *), const int *ready_pipe) {
   const int kStackSize = 1024 * 1024;
   std::vector<char> child_stack(kStackSize);
 
   PRINT_DEBUG("calling pipe(2)...");
 
-  int sync_pipe[2];
+  int pipes[4];
+  int *sync_pipe = pipes;
   if (pipe(sync_pipe) < 0) {
     DIE("pipe");
   }
+  if (ready_pipe != nullptr) {
+    pipes[2] = ready_pipe[0];
+    pipes[3] = ready_pipe[1];
+  }
 
   int clone_flags =
       CLONE_NEWUSER | CLONE_NEWNS | CLONE_NEWIPC | CLONE_NEWPID | SIGCHLD;
@@ -171,7 +189,7 @@ static pid_t SpawnPid1() {
   PRINT_DEBUG("calling clone(2)...");
 
   const pid_t child_pid =
-      clone(Pid1Main, child_stack.data() + kStackSize, clone_flags, sync_pipe);
+      clone(pid1_main, child_stack.data() + kStackSize, clone_flags, pipes);
 
   if (child_pid < 0) {
     DIE("clone");
@@ -234,6 +252,323 @@ static int WaitForPid1(const pid_t child_pid) {
   return exit_code;
 }
 
+// Returns a string describing the options that the namespaces of a pool depend
+// on. A command can only use a pool slot that was created with the same ones.
+static std::string GetPoolConfig() {
+  std::string config = "-";
+  if (opt.fake_hostname) {
+    config += "H";
+  }
+  if (opt.create_netns) {
+    config += "N";
+  }
+  if (opt.fake_root) {
+    config += "R";
+  }
+  if (opt.fake_username) {
+    config += "U";
+  }
+  return config;
+}
+
+// Records that the namespaces of a pool slot are ready, by writing the PID of
+// its PID 1 and the config to <slot>/pid.
+static void PublishPoolSlot(pid_t pid1) {
+  const std::string path = opt.pool_slot_dir + "/pid";
+  const std::string tmp_path = path + ".tmp";
+  FILE *f = fopen(tmp_path.c_str(), "w");
+  if (f == nullptr) {
+    DIE("fopen(%s)", tmp_path.c_str());
+  }
+  if (fprintf(f, "%d %s\n", pid1, GetPoolConfig().c_str()) < 0) {
+    DIE("fprintf(%s)", tmp_path.c_str());
+  }
+  if (fclose(f) != 0) {
+    DIE("fclose(%s)", tmp_path.c_str());
+  }
+  if (rename(tmp_path.c_str(), path.c_str()) < 0) {
+    DIE("rename(%s, %s)", tmp_path.c_str(), path.c_str());
+  }
+}
+
+static void OnPoolPid1Exit(int) {
+  // The namespaces are gone. Exiting releases the lock on <slot>/alive, which
+  // tells commands not to use this slot anymore.
+  _exit(EXIT_FAILURE);
+}
+
+// Creates the namespaces of a pool slot (-P) and holds them until stdin is
+// closed.
+static int HoldPoolSlot() {
+  if (mkdir(opt.pool_slot_dir.c_str(), 0755) < 0 && errno != EEXIST) {
+    DIE("mkdir(%s)", opt.pool_slot_dir.c_str());
+  }
+
+  // Commands check whether this lock is held to find out whether the slot is
+  // still alive, so we keep it until we exit.
+  const std::string alive_path = opt.pool_slot_dir + "/alive";
+  const int alive_fd =
+      open(alive_path.c_str(), O_RDWR | O_CREAT | O_CLOEXEC, 0644);
+  if (alive_fd < 0) {
+    DIE("open(%s)", alive_path.c_str());
+  }
+  if (flock(alive_fd, LOCK_EX | LOCK_NB) < 0) {
+    DIE("flock(%s)", alive_path.c_str());
+  }
+
+  // Remove what a previous holder of the slot may have left behind, so that
+  // no command uses the slot before it is ready.
+  const std::string pid_path = opt.pool_slot_dir + "/pid";
+  if (unlink(pid_path.c_str()) < 0 && errno != ENOENT) {
+    DIE("unlink(%s)", pid_path.c_str());
+  }
+
+  int ready_pipe[2];
+  if (pipe(ready_pipe) < 0) {
+    DIE("pipe");
+  }
+  const pid_t pid1 = SpawnPid1(PoolPid1Main, ready_pipe);
+  if (close(ready_pipe[1]) < 0) {
+    DIE("close");
+  }
+  char buf;
+  ssize_t n;
+  while ((n = read(ready_pipe[0], &buf, 1)) < 0 && errno == EINTR) {
+  }
+  if (close(ready_pipe[0]) < 0) {
+    DIE("close");
+  }
+  if (n != 1) {
+    // PID 1 failed to set up the namespaces and has already said why.
+    return WaitForPid1(pid1);
+  }
+
+  InstallSignalHandler(SIGCHLD, OnPoolPid1Exit);
+  PublishPoolSlot(pid1);
+  PRINT_DEBUG("pool slot %s is ready", opt.pool_slot_dir.c_str());
+
+  char stdin_buf[64];
+  while ((n = read(STDIN_FILENO, stdin_buf, sizeof(stdin_buf))) != 0) {
+    if (n < 0 && errno != EINTR) {
+      break;
+    }
+  }
+
+  PRINT_DEBUG("shutting down pool slot %s", opt.pool_slot_dir.c_str());
+  InstallDefaultSignalHandler(SIGCHLD);
+  unlink(pid_path.c_str());
+  kill(pid1, SIGKILL);
+  WaitForPid1(pid1);
+  return 0;
+}
+
+// A pool slot that is used by this command.
+struct PoolSlot {
+  // The slot directory.
+  std::string dir;
+  // The PID of the PID 1 of the slot.
+  pid_t pid1;
+  // The file descriptor holding the lock on <slot>/lock.
+  int lock_fd;
+};
+
+// Joins the given namespaces of the PID 1 of a pool slot. The user namespace,
+// which grants us the permissions for the others, always comes first.
+static void JoinPoolNamespaces(pid_t pid1,
+                               const std::vector<const char *> &ns) {
+  std::vector<int> fds;
+  for (const char *name : ns) {
+    const std::string path =
+        "/proc/" + std::to_string(pid1) + "/ns/" + std::string(name);
+    const int fd = open(path.c_str(), O_RDONLY | O_CLOEXEC);
+    if (fd < 0) {
+      DIE("open(%s)", path.c_str());
+    }
+    fds.push_back(fd);
+  }
+  for (size_t i = 0; i < fds.size(); i++) {
+    if (setns(fds[i], 0) < 0) {
+      DIE("setns(%s)", ns[i]);
+    }
+    close(fds[i]);
+  }
+}
+
+// Kills all processes left behind in the PID namespace of a pool slot by a
+// command, except its PID 1.
+static void CleanUpPoolSlot(const PoolSlot &slot) {
+  PRINT_DEBUG("cleaning up pool slot %s", slot.dir.c_str());
+  const pid_t pid = fork();
+  if (pid < 0) {
+    DIE("fork");
+  } else if (pid == 0) {
+    JoinPoolNamespaces(slot.pid1, {"user", "pid"});
+    // Joining a PID namespace only affects our children.
+    const pid_t killer = fork();
+    if (killer < 0) {
+      DIE("fork");
+    } else if (killer == 0) {
+      // Signals everything in the PID namespace but PID 1 and ourselves.
+      kill(-1, SIGKILL);
+      _exit(EXIT_SUCCESS);
+    }
+    _exit(WaitChild(killer, false) == 0 ? EXIT_SUCCESS : EXIT_FAILURE);
+  }
+  if (WaitChild(pid, false) != 0) {
+    DIE("failed to clean up pool slot %s", slot.dir.c_str());
+  }
+}
+
+static std::string ReadPoolSlotPid(const std::string &slot_dir, pid_t *pid1) {
+  FILE *f = fopen((slot_dir + "/pid").c_str(), "r");
+  if (f == nullptr) {
+    return "";
+  }
+  char config[16];
+  const int n = fscanf(f, "%d %15s", pid1, config);
+  fclose(f);
+  return n == 2 ? config : "";
+}
+
+// Tries to reserve a ready slot of the pool that matches our options. Returns
+// false if there is none.
+static bool AcquirePoolSlot(PoolSlot *slot) {
+  DIR *dir = opendir(opt.pool_dir.c_str());
+  if (dir == nullptr) {
+    PRINT_DEBUG("opendir(%s) failed (%m), not using the pool",
+                opt.pool_dir.c_str());
+    return false;
+  }
+  const std::string config = GetPoolConfig();
+  bool found = false;
+  struct dirent *dent;
+  while (!found && (dent = readdir(dir)) != nullptr) {
+    if (dent->d_name[0] == '.') {
+      continue;
+    }
+    slot->dir = opt.pool_dir + "/" + dent->d_name;
+
+    // Reserve the slot. The lock is released automatically when we exit.
+    const std::string lock_path = slot->dir + "/lock";
+    slot->lock_fd =
+        open(lock_path.c_str(), O_RDWR | O_CREAT | O_CLOEXEC, 0644);
+    if (slot->lock_fd < 0) {
+      continue;
+    }
+    if (flock(slot->lock_fd, LOCK_EX | LOCK_NB) < 0) {
+      close(slot->lock_fd);
+      continue;
+    }
+
+    // Check that the holder of the slot is alive and that its namespaces are
+    // ready and suitable.
+    const int alive_fd =
+        open((slot->dir + "/alive").c_str(), O_RDONLY | O_CLOEXEC);
+    const bool alive =
+        alive_fd >= 0 && flock(alive_fd, LOCK_SH | LOCK_NB) < 0 &&
+        errno == EWOULDBLOCK;
+    if (alive_fd >= 0) {
+      close(alive_fd);
+    }
+    if (alive && ReadPoolSlotPid(slot->dir, &slot->pid1) == config) {
+      found = true;
+    } else {
+      close(slot->lock_fd);
+    }
+  }
+  closedir(dir);
+  if (!found) {
+    PRINT_DEBUG("no free pool slot in %s", opt.pool_dir.c_str());
+    return false;
+  }
+
+  // If a previous command was killed before it could clean up after itself,
+  // do so now.
+  const std::string dirty_path = slot->dir + "/dirty";
+  if (access(dirty_path.c_str(), F_OK) == 0) {
+    CleanUpPoolSlot(*slot);
+  } else {
+    const int fd = open(dirty_path.c_str(), O_WRONLY | O_CREAT | O_CLOEXEC,
+                        0644);
+    if (fd < 0) {
+      DIE("open(%s)", dirty_path.c_str());
+    }
+    close(fd);
+  }
+  PRINT_DEBUG("using pool slot %s with PID 1 %d", slot->dir.c_str(),
+              slot->pid1);
+  return true;
+}
+
+static void ReleasePoolSlot(const PoolSlot &slot) {
+  CleanUpPoolSlot(slot);
+  if (unlink((slot.dir + "/dirty").c_str()) < 0) {
+    DIE("unlink(%s/dirty)", slot.dir.c_str());
+  }
+  close(slot.lock_fd);
+}
+
+// The PID of the command started in a pool slot, for use in signal handlers of
+// the process that joined the namespaces of the slot.
+static pid_t global_pooled_child_pid;
+
+static void ForwardSignalToPooledChild(int signum) {
+  kill(-global_pooled_child_pid, signum);
+}
+
+// Starts the command in the namespaces of the given pool slot. Returns the PID
+// of a process that exits like the command does, to be waited for with
+// WaitForPid1.
+static pid_t SpawnInPoolSlot(const PoolSlot &slot) {
+  const pid_t parent_pid = getpid();
+  const pid_t child_pid = fork();
+  if (child_pid < 0) {
+    DIE("fork");
+  } else if (child_pid > 0) {
+    PRINT_DEBUG("pool slot joiner has PID %d", child_pid);
+    return child_pid;
+  }
+
+  // Like linux-sandbox-pid1, we die with our parent.
+  if (prctl(PR_SET_PDEATHSIG, SIGKILL) < 0) {
+    DIE("prctl");
+  }
+  if (getppid() != parent_pid) {
+    _exit(EXIT_FAILURE);
+  }
+
+  // The command gets its own IPC namespace, see PooledSandboxMain.
+  std::vector<const char *> ns = {"user"};
+  if (opt.fake_hostname) {
+    ns.push_back("uts");
+  }
+  if (opt.create_netns) {
+    ns.push_back("net");
+  }
+  ns.push_back("mnt");
+  ns.push_back("pid");
+  JoinPoolNamespaces(slot.pid1, ns);
+
+  global_pooled_child_pid = fork();
+  if (global_pooled_child_pid < 0) {
+    DIE("fork");
+  } else if (global_pooled_child_pid == 0) {
+    if (prctl(PR_SET_PDEATHSIG, SIGKILL) < 0) {
+      DIE("prctl");
+    }
+    PooledSandboxMain();
+  }
+
+  // Forward requests to shut down gracefully to the command, like
+  // linux-sandbox-pid1 does. It moves itself into its own process group, but
+  // we do the same here to avoid racing with it.
+  setpgid(global_pooled_child_pid, global_pooled_child_pid);
+  InstallSignalHandler(SIGTERM, ForwardSignalToPooledChild);
+
+  const int status = WaitChild(global_pooled_child_pid, false);
+  _exit(WIFSIGNALED(status) ? 128 + WTERMSIG(status) : WEXITSTATUS(status));
+}
+
 int main(int argc, char *argv[]) {
   // Ask the kernel to kill us with SIGKILL if our parent dies.
   if (prctl(PR_SET_PDEATHSIG, SIGKILL) < 0) {
@@ -264,9 +599,21 @@ int main(int argc, char *argv[]) {
   // Ensure we don't pass on any FDs from our parent to our child.
   CloseFds();
 
-  // Spawn the child that will fork the sandboxed progam with fresh namespaces
-  // etc.
-  const pid_t child_pid = SpawnPid1();
+  if (!opt.pool_slot_dir.empty()) {
+    // The pool outlives the thread that started us, so we rely on stdin being
+    // closed instead.
+    if (prctl(PR_SET_PDEATHSIG, 0) < 0) {
+      DIE("prctl");
+    }
+    return HoldPoolSlot();
+  }
+
+  // Spawn the child that will fork the sandboxed progam, in the namespaces of
+  // a pool slot if possible, or with fresh namespaces etc.
+  PoolSlot slot;
+  const bool pooled = !opt.pool_dir.empty() && AcquirePoolSlot(&slot);
+  const pid_t child_pid =
+      pooled ? SpawnInPoolSlot(slot) : SpawnPid1(Pid1Main, nullptr);
 
   // Let the signal handlers installed below know the PID of the child.
   global_child_pid.store(child_pid, std::memory_order_relaxed);
@@ -299,5 +646,9 @@ int main(int argc, char *argv[]) {
   }
 
   // Wait for the child to exit, returning an appropriate status.
-  return WaitForPid1(child_pid);
+  const int exit_code = WaitForPid1(child_pid);
+  if (pooled) {
+    ReleasePoolSlot(slot);
+  }
+  return exit_code;
 }
@@ -0,0 +1,546 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+// spawn-launcher is a long-lived helper that starts subprocesses on behalf of
+// the Bazel server, so that the (potentially very large) server JVM doesn't
+// have to fork for every spawn. It is started once per server and reads
+// requests from stdin and writes responses to stdout. It exits, killing all of
+// its remaining subprocesses, once stdin is closed.
+//
+// Every message is a big-endian int32 payload length followed by the payload.
+// Integers are big-endian, strings are an int32 length followed by the bytes.
+//
+// Requests:
+//   SPAWN (1):     int32 id, int64 timeout_ms (0 for none), int32 flags,
+//                  string cwd, string stdout, string stderr, int32 argc,
+//                  argc strings, int32 envc, envc strings ("KEY=VALUE")
+//   TERMINATE (2): int32 id
+//
+// Responses:
+//   STARTED (1):   int32 id
+//   FAILED (2):    int32 id, int32 errno, string message
+//   EXITED (3):    int32 id, int32 exit value, int32 timed out, followed by
+//                  the rusage fields utime_sec, utime_usec, stime_sec,
+//                  stime_usec, maxrss, minflt, majflt, inblock, oublock,
+//                  nvcsw and nivcsw as int64s
+//
+// An empty stdout or stderr path redirects to /dev/null. The exit value is
+// the exit code, or 128 + the signal number if the subprocess was killed.
+// Every subprocess runs in its own process group, and the whole group is
+// killed once the subprocess exits. On timeout the group is sent SIGTERM,
+// followed by SIGKILL after the delay given by --kill_delay. On TERMINATE the
+// group is sent SIGKILL right away.
+
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <signal.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/resource.h>
+#include <sys/stat.h>
+#include <sys/time.h>
+#include <sys/types.h>
+#include <sys/wait.h>
+#include <time.h>
+#include <unistd.h>
+
+#include <map>
+#include <string>
+#include <vector>
+
+#include "src/main/tools/logging.h"
+#include "src/main/tools/process-tools.h"
+
+extern char **environ;
+
+namespace {
+
+enum RequestType { kSpawn = 1, kTerminate = 2 };
+enum ResponseType { kStarted = 1, kFailed = 2, kExited = 3 };
+
+const int32_t kInheritEnv = 1;
+const int32_t kRedirectErrorStream = 2;
+
+struct Child {
+  int32_t id;
+  // Monotonic time in milliseconds at which the child times out, or 0.
+  int64_t deadline;
+  // Monotonic time in milliseconds at which the child is killed, or 0.
+  int64_t kill_at;
+  bool timed_out;
+};
+
+int64_t kill_delay_ms = 15000;
+int sigchld_pipe[2];
+std::map<pid_t, Child> children;
+std::map<int32_t, pid_t> pids_by_id;
+
+int64_t NowMillis() {
+  struct timespec ts;
+  if (clock_gettime(CLOCK_MONOTONIC, &ts) < 0) {
+    DIE("clock_gettime");
+  }
+  return static_cast<int64_t>(ts.tv_sec) * 1000 + ts.tv_nsec / 1000000;
+}
+
+void SetCloseOnExec(int fd) {
+  if (fcntl(fd, F_SETFD, FD_CLOEXEC) < 0) {
+    DIE("fcntl(%d, F_SETFD, FD_CLOEXEC)", fd);
+  }
+}
+
+void OnSigchld(int) {
+  int saved_errno = errno;
+  char c = 0;
+  // The pipe is non-blocking; if it is full, a wakeup is pending anyway.
+  if (write(sigchld_pipe[1], &c, 1) < 0) {
+    // Nothing to do.
+  }
+  errno = saved_errno;
+}
+
+// Reads the payloads of length-prefixed messages.
+class Reader {
+ public:
+  explicit Reader(const std::string &payload) : payload_(payload), pos_(0) {}
+
+  int32_t ReadInt32() { return static_cast<int32_t>(ReadBigEndian(4)); }
+
+  int64_t ReadInt64() { return static_cast<int64_t>(ReadBigEndian(8)); }
+
+  std::string ReadString() {
+    int32_t length = ReadInt32();
+    if (length < 0 || payload_.size() - pos_ < static_cast<size_t>(length)) {
+      DIE("malformed request");
+    }
+    std::string result = payload_.substr(pos_, length);
+    pos_ += length;
+    return result;
+  }
+
+ private:
+  uint64_t ReadBigEndian(size_t bytes) {
+    if (payload_.size() - pos_ < bytes) {
+      DIE("malformed request");
+    }
+    uint64_t result = 0;
+    for (size_t i = 0; i < bytes; ++i) {
+      result = (result << 8) | static_cast<uint8_t>(payload_[pos_++]);
+    }
+    return result;
+  }
+
+  const std::string &payload_;
+  size_t pos_;
+};
+
+// Builds a length-prefixed message and writes it to stdout.
+class Writer {
+ public:
+  void WriteInt32(int32_t value) { WriteBigEndian(value, 4); }
+
+  void WriteInt64(int64_t value) { WriteBigEndian(value, 8); }
+
+  void WriteString(const std::string &value) {
+    WriteInt32(value.size());
+    payload_ += value;
+  }
+
+  void Send() {
+    std::string message;
+    uint32_t length = payload_.size();
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      message += static_cast<char>((length >> shift) & 0xff);
+    }
+    message += payload_;
+    const char *data = message.data();
+    size_t remaining = message.size();
+    while (remaining > 0) {
+      ssize_t written = write(STDOUT_FILENO, data, remaining);
+      if (written < 0) {
+        if (errno == EINTR) {
+          continue;
+        }
+        DIE("write");
+      }
+      data += written;
+      remaining -= written;
+    }
+  }
+
+ private:
+  void WriteBigEndian(uint64_t value, int bytes) {
+    for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+      payload_ += static_cast<char>((value >> shift) & 0xff);
+    }
+  }
+
+  std::string payload_;
+};
+
+void SendFailed(int32_t id, int error, const std::string &message) {
+  Writer writer;
+  writer.WriteInt32(kFailed);
+  writer.WriteInt32(id);
+  writer.WriteInt32(error);
+  writer.WriteString(message + ": " + strerror(error));
+  writer.Send();
+}
+
+void SendExited(int32_t id, int status, bool timed_out,
+                const struct rusage &usage) {
+  Writer writer;
+  writer.WriteInt32(kExited);
+  writer.WriteInt32(id);
+  writer.WriteInt32(WIFSIGNALED(status) ? 128 + WTERMSIG(status)
+                                        : WEXITSTATUS(status));
+  writer.WriteInt32(timed_out ? 1 : 0);
+  writer.WriteInt64(usage.ru_utime.tv_sec);
+  writer.WriteInt64(usage.ru_utime.tv_usec);
+  writer.WriteInt64(usage.ru_stime.tv_sec);
+  writer.WriteInt64(usage.ru_stime.tv_usec);
+  writer.WriteInt64(usage.ru_maxrss);
+  writer.WriteInt64(usage.ru_minflt);
+  writer.WriteInt64(usage.ru_majflt);
+  writer.WriteInt64(usage.ru_inblock);
+  writer.WriteInt64(usage.ru_oublock);
+  writer.WriteInt64(usage.ru_nvcsw);
+  writer.WriteInt64(usage.ru_nivcsw);
+  writer.Send();
+}
+
+// Opens the file that a standard stream of a child is redirected to. Existing
+// files are replaced, and written to in append mode so that writes of several
+// processes sharing the file don't overwrite each other.
+int OpenOutput(const std::string &path) {
+  if (path.empty()) {
+    return open("/dev/null", O_WRONLY);
+  }
+  if (unlink(path.c_str()) < 0 && errno != ENOENT) {
+    return -1;
+  }
+  return open(path.c_str(), O_WRONLY | O_CREAT | O_APPEND, 0666);
+}
+
+void CloseUnlessStandardStream(int fd) {
+  if (fd > STDERR_FILENO) {
+    close(fd);
+  }
+}
+
+// Runs in the forked child. Reports the errno of a failed setup step through
+// error_fd, which is closed by a successful exec.
+void ExecChild(int error_fd, const std::string &cwd,
+               const std::string &stdout_path, const std::string &stderr_path,
+               int32_t flags, char *const *argv, char *const *envp) {
+  int error = 0;
+  ClearSignalMask();
+  if (setpgid(0, 0) < 0) {
+    error = errno;
+  } else if (!cwd.empty() && chdir(cwd.c_str()) < 0) {
+    error = errno;
+  } else {
+    int in = open("/dev/null", O_RDONLY);
+    int out = OpenOutput(stdout_path);
+    int err = (flags & kRedirectErrorStream) != 0 ? dup(out)
+                                                   : OpenOutput(stderr_path);
+    if (in < 0 || out < 0 || err < 0 || dup2(in, STDIN_FILENO) < 0 ||
+        dup2(out, STDOUT_FILENO) < 0 || dup2(err, STDERR_FILENO) < 0) {
+      error = errno;
+    }
+    // The child only gets the copies on the standard streams.
+    CloseUnlessStandardStream(in);
+    CloseUnlessStandardStream(out);
+    CloseUnlessStandardStream(err);
+  }
+
+  if (error == 0) {
+    if (strchr(argv[0], '/') != nullptr) {
+      execve(argv[0], argv, envp);
+      error = errno;
+    } else {
+      // Like the JVM, look up the binary on the PATH of the server, not on
+      // the PATH of the subprocess.
+      const char *path = getenv("PATH");
+      std::string dirs = path != nullptr ? path : "/bin:/usr/bin";
+      error = ENOENT;
+      size_t start = 0;
+      while (start <= dirs.size()) {
+        size_t end = dirs.find(':', start);
+        if (end == std::string::npos) {
+          end = dirs.size();
+        }
+        std::string dir = dirs.substr(start, end - start);
+        std::string candidate = (dir.empty() ? "." : dir) + "/" + argv[0];
+        execve(candidate.c_str(), argv, envp);
+        if (errno != ENOENT && errno != ENOTDIR) {
+          error = errno;
+        }
+        start = end + 1;
+      }
+    }
+  }
+
+  if (write(error_fd, &error, sizeof(error)) < 0) {
+    // The parent reports a generic failure.
+  }
+  _exit(127);
+}
+
+void Spawn(Reader *reader) {
+  int32_t id = reader->ReadInt32();
+  int64_t timeout_ms = reader->ReadInt64();
+  int32_t flags = reader->ReadInt32();
+  std::string cwd = reader->ReadString();
+  std::string stdout_path = reader->ReadString();
+  std::string stderr_path = reader->ReadString();
+  std::vector<std::string> args(reader->ReadInt32());
+  for (std::string &arg : args) {
+    arg = reader->ReadString();
+  }
+  std::vector<std::string> env(reader->ReadInt32());
+  for (std::string &var : env) {
+    var = reader->ReadString();
+  }
+
+  if (args.empty()) {
+    SendFailed(id, EINVAL, "empty argument list");
+    return;
+  }
+  std::vector<char *> argv;
+  for (std::string &arg : args) {
+    argv.push_back(&arg[0]);
+  }
+  argv.push_back(nullptr);
+  std::vector<char *> envp;
+  for (std::string &var : env) {
+    envp.push_back(&var[0]);
+  }
+  envp.push_back(nullptr);
+
+  int error_pipe[2];
+  if (pipe(error_pipe) < 0) {
+    SendFailed(id, errno, "pipe");
+    return;
+  }
+  SetCloseOnExec(error_pipe[0]);
+  SetCloseOnExec(error_pipe[1]);
+
+  pid_t pid = fork();
+  if (pid < 0) {
+    int error = errno;
+    close(error_pipe[0]);
+    close(error_pipe[1]);
+    SendFailed(id, error, "fork");
+    return;
+  } else if (pid == 0) {
+    close(error_pipe[0]);
+    ExecChild(error_pipe[1], cwd, stdout_path, stderr_path, flags,
+              argv.data(),
+              (flags & kInheritEnv) != 0 ? environ : envp.data());
+  }
+
+  close(error_pipe[1]);
+  int error = 0;
+  ssize_t bytes_read;
+  do {
+    bytes_read = read(error_pipe[0], &error, sizeof(error));
+  } while (bytes_read < 0 && errno == EINTR);
+  close(error_pipe[0]);
+  if (bytes_read != 0) {
+    // The child failed before or during exec and has exited with 127. Reap
+    // it here, so that it isn't reported as exited.
+    while (waitpid(pid, nullptr, 0) < 0 && errno == EINTR) {
+    }
+    SendFailed(id, bytes_read == sizeof(error) ? error : EIO,
+               "cannot run program \"" + args[0] + "\"");
+    return;
+  }
+
+  PRINT_DEBUG("spawn %d: started pid %d", id, pid);
+  children[pid] = {id, timeout_ms > 0 ? NowMillis() + timeout_ms : 0, 0, false};
+  pids_by_id[id] = pid;
+  Writer writer;
+  writer.WriteInt32(kStarted);
+  writer.WriteInt32(id);
+  writer.Send();
+}
+
+void HandleRequest(const std::string &payload) {
+  Reader reader(payload);
+  int32_t type = reader.ReadInt32();
+  if (type == kSpawn) {
+    Spawn(&reader);
+  } else if (type == kTerminate) {
+    auto it = pids_by_id.find(reader.ReadInt32());
+    if (it != pids_by_id.end()) {
+      kill(-it->second, SIGKILL);
+    }
+  } else {
+    DIE("unknown request type %d", type);
+  }
+}
+
+void ReapChildren() {
+  char buffer[64];
+  while (read(sigchld_pipe[0], buffer, sizeof(buffer)) > 0) {
+  }
+  while (true) {
+    // Look for an exited child without reaping it: as long as it is a zombie,
+    // its process group id can't be reused by an unrelated process group.
+    siginfo_t info;
+    info.si_pid = 0;
+    if (waitid(P_ALL, 0, &info, WEXITED | WNOHANG | WNOWAIT) < 0) {
+      if (errno == EINTR) {
+        continue;
+      }
+      return;
+    }
+    pid_t pid = info.si_pid;
+    if (pid == 0) {
+      return;
+    }
+    auto it = children.find(pid);
+    if (it != children.end()) {
+      // Don't leave behind any processes the child started.
+      kill(-pid, SIGKILL);
+    }
+    int status;
+    struct rusage usage;
+    while (wait4(pid, &status, 0, &usage) < 0) {
+      if (errno != EINTR) {
+        DIE("wait4");
+      }
+    }
+    if (it == children.end()) {
+      continue;
+    }
+    PRINT_DEBUG("spawn %d: pid %d exited with status %d", it->second.id, pid,
+                status);
+    SendExited(it->second.id, status, it->second.timed_out, usage);
+    pids_by_id.erase(it->second.id);
+    children.erase(it);
+  }
+}
+
+// Enforces timeouts and kill delays, and returns the number of milliseconds
+// until the next one is due, or -1 if there is none.
+int CheckDeadlines() {
+  int64_t now = NowMillis();
+  int64_t next = -1;
+  for (auto &entry : children) {
+    Child &child = entry.second;
+    if (child.deadline != 0 && now >= child.deadline) {
+      child.deadline = 0;
+      child.timed_out = true;
+      kill(-entry.first, SIGTERM);
+      child.kill_at = now + kill_delay_ms;
+    }
+    if (child.kill_at != 0 && now >= child.kill_at) {
+      child.kill_at = 0;
+      kill(-entry.first, SIGKILL);
+    }
+    for (int64_t due : {child.deadline, child.kill_at}) {
+      if (due != 0 && (next < 0 || due - now < next)) {
+        next = due - now;
+      }
+    }
+  }
+  return static_cast<int>(next);
+}
+
+void ParseOptions(int argc, char *argv[]) {
+  for (int i = 1; i < argc; ++i) {
+    if (strncmp(argv[i], "--kill_delay=", 13) == 0) {
+      double seconds = strtod(argv[i] + 13, nullptr);
+      kill_delay_ms = static_cast<int64_t>(seconds * 1000);
+    } else if (strcmp(argv[i], "--debug") == 0) {
+      global_debug = true;
+    } else {
+      fprintf(stderr, "Usage: %s [--kill_delay=<seconds>] [--debug]\n",
+              argv[0]);
+      exit(EXIT_FAILURE);
+    }
+  }
+}
+
+}  // namespace
+
+int main(int argc, char *argv[]) {
+  ParseOptions(argc, argv);
+
+  IgnoreSignal(SIGPIPE);
+  if (pipe(sigchld_pipe) < 0) {
+    DIE("pipe");
+  }
+  for (int fd : sigchld_pipe) {
+    SetCloseOnExec(fd);
+    if (fcntl(fd, F_SETFL, O_NONBLOCK) < 0) {
+      DIE("fcntl(%d, F_SETFL, O_NONBLOCK)", fd);
+    }
+  }
+  InstallSignalHandler(SIGCHLD, OnSigchld);
+
+  std::string buffer;
+  char chunk[65536];
+  while (true) {
+    struct pollfd fds[2] = {{STDIN_FILENO, POLLIN, 0},
+                            {sigchld_pipe[0], POLLIN, 0}};
+    if (poll(fds, 2, CheckDeadlines()) < 0) {
+      if (errno == EINTR) {
+        continue;
+      }
+      DIE("poll");
+    }
+    if (fds[1].revents != 0) {
+      ReapChildren();
+    }
+    if (fds[0].revents != 0) {
+      ssize_t bytes_read = read(STDIN_FILENO, chunk, sizeof(chunk));
+      if (bytes_read < 0) {
+        if (errno == EINTR) {
+          continue;
+        }
+        DIE("read");
+      }
+      if (bytes_read == 0) {
+        break;
+      }
+      buffer.append(chunk, bytes_read);
+      size_t pos = 0;
+      while (buffer.size() - pos >= 4) {
+        uint32_t length = 0;
+        for (int i = 0; i < 4; ++i) {
+          length = (length << 8) | static_cast<uint8_t>(buffer[pos + i]);
+        }
+        if (buffer.size() - pos - 4 < length) {
+          break;
+        }
+        HandleRequest(buffer.substr(pos + 4, length));
+        pos += 4 + length;
+      }
+      buffer.erase(0, pos);
+    }
+  }
+
+  // The server went away, so nobody is interested in the results anymore.
+  PRINT_DEBUG("stdin closed, killing %zu subprocesses", children.size());
+  for (const auto &entry : children) {
+    kill(-entry.first, SIGKILL);
+  }
+  return 0;
+}
@@ -15,10 +15,12 @@ package com.google.devtools.build.lib.analysis;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.analysis.config.BuildConfiguration;
 import com.google.devtools.build.lib.analysis.config.transitions.ConfigurationTransition;
+import com.google.devtools.build.lib.analysis.starlark.FunctionTransitionUtil;
 import com.google.devtools.build.lib.analysis.test.TestConfiguration.TestOptions;
 import com.google.devtools.build.lib.analysis.util.BuildViewTestCase;
 import com.google.devtools.build.lib.analysis.util.DummyTestFragment;
@@ -155,6 +157,56 @@ public class StarlarkRuleTransitionProviderTest extends BuildViewTestCase {
         .isEqualTo("pre-transition->post-transition");
   }
 
+  @Test
+  public void testTransitionResultReusedAcrossDependents() throws Exception {
+    writeAllowlistFile();
+    scratch.file(
+        "test/transitions.bzl",
+        "def _impl(settings, attr):",
+        "  return {'//command_line_option:foo': ",
+        "    settings['//command_line_option:foo']+'->post-transition'}",
+        "my_transition = transition(",
+        "  implementation = _impl,",
+        "  inputs = ['//command_line_option:foo'],",
+        "  outputs = ['//command_line_option:foo'],",
+        ")");
+    scratch.file(
+        "test/rules.bzl",
+        "load('//test:transitions.bzl', 'my_transition')",
+        "def _impl(ctx):",
+        "  return []",
+        "my_rule = rule(",
+        "  implementation = _impl,",
+        "  cfg = my_transition,",
+        "  attrs = {",
+        "    '_allowlist_function_transition': attr.label(",
+        "        default = '//tools/allowlists/function_transition_allowlist',",
+        "    ),",
+        "  })",
+        "simple_rule = rule(",
+        "  implementation = _impl,",
+        "  attrs = {'deps': attr.label_list()})");
+    scratch.file(
+        "test/BUILD",
+        "load('//test:rules.bzl', 'my_rule', 'simple_rule')",
+        "my_rule(name = 'dep')",
+        "simple_rule(name = 'parent1', deps = [':dep'])",
+        "simple_rule(name = 'parent2', deps = [':dep'])");
+
+    useConfiguration("--foo=pre-transition");
+    getConfiguredTarget("//test:parent1");
+    CacheStats statsBefore = FunctionTransitionUtil.getCacheStats();
+    ConfiguredTarget parent2 = getConfiguredTarget("//test:parent2");
+
+    // The edge from parent2 applies the transition of dep to the same options as the edge from
+    // parent1 did.
+    assertThat(FunctionTransitionUtil.getCacheStats().minus(statsBefore).hitCount()).isAtLeast(1);
+    BuildConfiguration depConfiguration =
+        getConfiguration(getDirectPrerequisite(parent2, "//test:dep"));
+    assertThat(depConfiguration.getOptions().get(DummyTestOptions.class).foo)
+        .isEqualTo("pre-transition->post-transition");
+  }
+
   @Test
   public void testBuildSettingCannotTransition() throws Exception {
     writeAllowlistFile();
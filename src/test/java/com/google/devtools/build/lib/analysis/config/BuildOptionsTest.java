@@ -119,6 +119,36 @@ public final class BuildOptionsTest {
     assertThat(diffTwoThree.areSame()).isTrue();
   }
 
+  @Test
+  public void withReplacedFragments_sharesOtherFragments() throws Exception {
+    BuildOptions original =
+        BuildOptions.of(
+            ImmutableList.of(CoreOptions.class, CppOptions.class), "--compilation_mode=opt");
+    CoreOptions replacement = (CoreOptions) original.get(CoreOptions.class).clone();
+    replacement.compilationMode = CompilationMode.DBG;
+
+    BuildOptions modified =
+        original.withReplacedFragments(ImmutableMap.of(CoreOptions.class, replacement));
+
+    assertThat(modified.get(CoreOptions.class)).isSameInstanceAs(replacement);
+    assertThat(modified.get(CppOptions.class)).isSameInstanceAs(original.get(CppOptions.class));
+    assertThat(original.get(CoreOptions.class).compilationMode).isEqualTo(CompilationMode.OPT);
+    assertThat(modified).isNotEqualTo(original);
+    OptionsDiff diff = BuildOptions.diff(original, modified);
+    assertThat(diff.prettyPrint()).contains("opt");
+    assertThat(diff.prettyPrint()).contains("dbg");
+  }
+
+  @Test
+  public void withReplacedFragments_rejectsMissingFragment() {
+    BuildOptions original = BuildOptions.of(ImmutableMap.of());
+    CppOptions cppOptions = new CppOptions();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> original.withReplacedFragments(ImmutableMap.of(CppOptions.class, cppOptions)));
+  }
+
   @Test
   public void optionsDiff_differentFragments() throws Exception {
     BuildOptions one = BuildOptions.of(ImmutableList.of(CppOptions.class));
@@ -18,7 +18,6 @@ import static com.google.devtools.build.lib.bazel.repository.TestArchiveDescript
 import static com.google.devtools.build.lib.bazel.repository.TestArchiveDescriptor.ROOT_FOLDER_NAME;
 
 import com.google.devtools.build.lib.vfs.Path;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
@@ -68,9 +67,8 @@ public class CompressedTarFunctionTest {
     descriptorBuilder.setDecompressor(TarGzFunction.INSTANCE);
     return new CompressedTarFunction() {
       @Override
-      protected InputStream getDecompressorStream(DecompressorDescriptor descriptor)
-          throws IOException {
-        return new GZIPInputStream(new FileInputStream(descriptor.archivePath().getPathFile()));
+      protected InputStream getDecompressorStream(InputStream compressed) throws IOException {
+        return new GZIPInputStream(compressed);
       }
     }.decompress(descriptorBuilder.build());
   }
@@ -0,0 +1,114 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.bazel.repository;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ReadAheadInputStream}. */
+@RunWith(JUnit4.class)
+public class ReadAheadInputStreamTest {
+
+  @Test
+  public void readsAllContent() throws Exception {
+    byte[] content = new byte[1024 * 1024 + 17];
+    new Random(42).nextBytes(content);
+
+    try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(content), "test")) {
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(content);
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void readsEmptyStream() throws Exception {
+    try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), "test")) {
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void propagatesReadFailure() throws Exception {
+    InputStream failing =
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("corrupt archive");
+          }
+        };
+
+    try (InputStream in = new ReadAheadInputStream(failing, "test")) {
+      IOException e = assertThrows(IOException.class, in::read);
+      assertThat(e).hasCauseThat().isInstanceOf(IOException.class);
+      assertThat(e).hasCauseThat().hasMessageThat().isEqualTo("corrupt archive");
+      // The failure is not mistaken for the end of the stream by later reads.
+      e = assertThrows(IOException.class, () -> in.read(new byte[1], 0, 1));
+      assertThat(e).hasCauseThat().hasMessageThat().isEqualTo("corrupt archive");
+    }
+  }
+
+  @Test
+  public void propagatesUncheckedReadFailure() throws Exception {
+    InputStream failing =
+        new InputStream() {
+          @Override
+          public int read() {
+            throw new IllegalStateException("decompressor bug");
+          }
+        };
+
+    try (InputStream in = new ReadAheadInputStream(failing, "test")) {
+      IOException e = assertThrows(IOException.class, in::read);
+      assertThat(e).hasCauseThat().isInstanceOf(IllegalStateException.class);
+      assertThat(e).hasCauseThat().hasMessageThat().isEqualTo("decompressor bug");
+    }
+  }
+
+  @Test
+  public void closeStopsReadingAndClosesDelegate() throws Exception {
+    CountDownLatch closed = new CountDownLatch(1);
+    InputStream endless =
+        new InputStream() {
+          @Override
+          public int read() {
+            return 1;
+          }
+
+          @Override
+          public void close() {
+            closed.countDown();
+          }
+        };
+
+    InputStream in = new ReadAheadInputStream(endless, "test");
+    assertThat(in.read()).isEqualTo(1);
+    in.close();
+
+    assertThat(closed.await(10, TimeUnit.SECONDS)).isTrue();
+    IOException e = assertThrows(IOException.class, in::read);
+    assertThat(e).hasMessageThat().contains("closed");
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.bazel.repository;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link StreamingTarExtraction}. */
+@RunWith(JUnit4.class)
+public class StreamingTarExtractionTest {
+
+  private Scratch scratch;
+  private Path repository;
+  private Path download;
+
+  @Before
+  public void setUp() throws Exception {
+    scratch = new Scratch("/");
+    repository = scratch.dir("/repo");
+    download = scratch.resolve("/repo/temp/archive.tar.gz");
+  }
+
+  @Test
+  public void completedDownload_movesEntriesIntoRepository() throws Exception {
+    scratch.file("/repo/root/dir/file", "old");
+    scratch.file("/repo/root/unrelated", "unrelated");
+    StreamingTarExtraction extraction = newExtraction(/* prefix= */ null);
+
+    assertThat(extraction.accept(download)).isTrue();
+    writeInPieces(extraction, tarGz("root/dir/file", "new", "root/other", "other"));
+    extraction.complete();
+
+    assertThat(extraction.commit()).isTrue();
+    assertThat(read("/repo/root/dir/file")).isEqualTo("new");
+    assertThat(read("/repo/root/other")).isEqualTo("other");
+    // Scratch ends files with a newline.
+    assertThat(read("/repo/root/unrelated")).isEqualTo("unrelated\n");
+  }
+
+  @Test
+  public void completedDownload_stripsPrefix() throws Exception {
+    StreamingTarExtraction extraction = newExtraction("root");
+
+    assertThat(extraction.accept(download)).isTrue();
+    writeInPieces(extraction, tarGz("root/dir/file", "content"));
+    extraction.complete();
+
+    assertThat(extraction.commit()).isTrue();
+    assertThat(read("/repo/dir/file")).isEqualTo("content");
+    assertThat(scratch.resolve("/repo/root").exists()).isFalse();
+  }
+
+  @Test
+  public void abandonedDownload_movesNothing() throws Exception {
+    StreamingTarExtraction extraction = newExtraction(/* prefix= */ null);
+    byte[] archive = tarGz("root/file", "content");
+
+    assertThat(extraction.accept(download)).isTrue();
+    extraction.write(archive, 0, archive.length);
+    // For example because the checksum didn't match.
+    extraction.abandon();
+
+    assertThat(extraction.commit()).isFalse();
+    assertThat(scratch.resolve("/repo/root").exists()).isFalse();
+  }
+
+  @Test
+  public void failedExtraction_movesNothing() throws Exception {
+    StreamingTarExtraction extraction = newExtraction("missing_prefix");
+    byte[] archive = tarGz("root/file", "content");
+
+    assertThat(extraction.accept(download)).isTrue();
+    writeInPieces(extraction, archive);
+    // The download goes on after the extraction fails.
+    writeInPieces(extraction, archive);
+    extraction.complete();
+
+    assertThat(extraction.commit()).isFalse();
+    assertThat(scratch.resolve("/repo/root").exists()).isFalse();
+  }
+
+  @Test
+  public void zipArchive_isNotAccepted() throws Exception {
+    StreamingTarExtraction extraction = newExtraction(/* prefix= */ null);
+
+    assertThat(extraction.accept(scratch.resolve("/repo/temp/archive.zip"))).isFalse();
+    assertThat(extraction.commit()).isFalse();
+  }
+
+  private StreamingTarExtraction newExtraction(String prefix) {
+    return new StreamingTarExtraction(
+        repository, prefix, download.getParentDirectory().getChild("extracted"));
+  }
+
+  private String read(String path) throws IOException {
+    return FileSystemUtils.readContent(scratch.resolve(path), UTF_8);
+  }
+
+  /** Passes on the content in small pieces, as a download from the network would. */
+  private static void writeInPieces(StreamingTarExtraction extraction, byte[] content)
+      throws IOException {
+    for (int offset = 0; offset < content.length; offset += 7) {
+      extraction.write(content, offset, Math.min(7, content.length - offset));
+    }
+  }
+
+  /** Returns a .tar.gz archive of the given alternating file names and contents. */
+  private static byte[] tarGz(String... namesAndContents) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream tar =
+        new TarArchiveOutputStream(new GZIPOutputStream(bytes))) {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        byte[] content = namesAndContents[i + 1].getBytes(UTF_8);
+        TarArchiveEntry entry = new TarArchiveEntry(namesAndContents[i]);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -18,7 +18,16 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.devtools.build.lib.bazel.repository.TestArchiveDescriptor.INNER_FOLDER_NAME;
 import static com.google.devtools.build.lib.bazel.repository.TestArchiveDescriptor.ROOT_FOLDER_NAME;
 
+import com.google.devtools.build.lib.testutil.TestUtils;
+import com.google.devtools.build.lib.vfs.DigestHashFunction;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.JavaIoFileSystem;
 import com.google.devtools.build.lib.vfs.Path;
+import java.io.File;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -68,6 +77,32 @@ public class ZipDecompressorTest {
     archiveDescriptor.assertOutputFiles(outputDir, INNER_FOLDER_NAME);
   }
 
+  /** Test decompressing an entry that is large enough to be inflated on a separate thread. */
+  @Test
+  public void testDecompressLargeEntry() throws Exception {
+    byte[] large = new byte[3 * 1024 * 1024 + 5];
+    new Random(42).nextBytes(large);
+    FileSystem fs = new JavaIoFileSystem(DigestHashFunction.SHA256);
+    Path workingDir = fs.getPath(new File(TestUtils.tmpDir()).getCanonicalPath());
+    Path zipFile = workingDir.getRelative("large.zip");
+    try (ZipOutputStream zip = new ZipOutputStream(zipFile.getOutputStream())) {
+      zip.putNextEntry(new ZipEntry("large"));
+      zip.write(large);
+      zip.closeEntry();
+      zip.putNextEntry(new ZipEntry("small"));
+      zip.write(new byte[] {1, 2, 3});
+      zip.closeEntry();
+    }
+    Path outputDir = workingDir.getRelative("large_out");
+
+    decompress(
+        DecompressorDescriptor.builder().setArchivePath(zipFile).setRepositoryPath(outputDir));
+
+    assertThat(FileSystemUtils.readContent(outputDir.getRelative("large"))).isEqualTo(large);
+    assertThat(FileSystemUtils.readContent(outputDir.getRelative("small")))
+        .isEqualTo(new byte[] {1, 2, 3});
+  }
+
   private Path decompress(DecompressorDescriptor.Builder descriptorBuilder) throws Exception {
     descriptorBuilder.setDecompressor(ZipDecompressor.INSTANCE);
     return ZipDecompressor.INSTANCE.decompress(descriptorBuilder.build());
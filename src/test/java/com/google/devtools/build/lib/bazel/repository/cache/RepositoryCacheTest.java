@@ -18,11 +18,18 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Strings;
 import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache.KeyType;
+import com.google.devtools.build.lib.testutil.ManualClock;
 import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.vfs.DigestHashFunction;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -46,9 +53,23 @@ public class RepositoryCacheTest {
   private Path downloadedFile;
   private String downloadedFileSha256;
 
+  private final ManualClock clock = new ManualClock();
+  // Files read through the file system, to tell whether a cache value was hashed.
+  private final List<PathFragment> readFiles = new ArrayList<>();
+
   @Before
   public void setUp() throws Exception {
-    scratch = new Scratch("/");
+    scratch =
+        new Scratch(
+            new InMemoryFileSystem(clock, DigestHashFunction.SHA256) {
+              @Override
+              protected synchronized InputStream getInputStream(PathFragment path)
+                  throws IOException {
+                readFiles.add(path);
+                return super.getInputStream(path);
+              }
+            },
+            "/");
     repositoryCachePath = scratch.dir("/repository_cache");
     repositoryCache = new RepositoryCache();
     repositoryCache.setRepositoryCachePath(repositoryCachePath);
@@ -204,4 +225,51 @@ public class RepositoryCacheTest {
     Path lookupNoId = repositoryCache.get(downloadedFileSha256, targetPath, KeyType.SHA256);
     assertThat(lookupNoId).isEqualTo(targetPath);
   }
+
+  @Test
+  public void testPutRecordsVerification() throws Exception {
+    repositoryCache.put(downloadedFileSha256, downloadedFile, KeyType.SHA256);
+
+    Path cacheEntry =
+        KeyType.SHA256.getCachePath(contentAddressableCachePath).getChild(downloadedFileSha256);
+    assertThat(cacheEntry.getChild(RepositoryCache.VERIFIED_FILENAME).exists()).isTrue();
+  }
+
+  @Test
+  public void testModifiedVerifiedCacheValueIsRehashed() throws Exception {
+    repositoryCache.put(downloadedFileSha256, downloadedFile, KeyType.SHA256);
+    Path cacheValue =
+        KeyType.SHA256
+            .getCachePath(contentAddressableCachePath)
+            .getChild(downloadedFileSha256)
+            .getChild(RepositoryCache.DEFAULT_CACHE_FILENAME);
+    // Content of the same size, so only the changed status of the file tells the difference.
+    clock.advanceMillis(1);
+    FileSystemUtils.writeContent(cacheValue, Charset.defaultCharset(), "poisoned");
+
+    Path targetDirectory = scratch.dir("/external");
+    Path targetPath = targetDirectory.getChild(downloadedFile.getBaseName());
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("does not match expected");
+
+    repositoryCache.get(downloadedFileSha256, targetPath, KeyType.SHA256);
+  }
+
+  @Test
+  public void testVerifiedCacheValueIsNotRehashed() throws Exception {
+    repositoryCache.setHardlink(true);
+    repositoryCache.put(downloadedFileSha256, downloadedFile, KeyType.SHA256);
+    Path cacheValue =
+        KeyType.SHA256
+            .getCachePath(contentAddressableCachePath)
+            .getChild(downloadedFileSha256)
+            .getChild(RepositoryCache.DEFAULT_CACHE_FILENAME);
+    Path targetPath = scratch.dir("/external").getChild(downloadedFile.getBaseName());
+    readFiles.clear();
+
+    assertThat(repositoryCache.get(downloadedFileSha256, targetPath, KeyType.SHA256))
+        .isEqualTo(targetPath);
+    assertThat(readFiles).doesNotContain(cacheValue.asFragment());
+  }
 }
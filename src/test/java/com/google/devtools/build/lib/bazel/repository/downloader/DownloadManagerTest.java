@@ -0,0 +1,162 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.bazel.repository.downloader;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache;
+import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache.KeyType;
+import com.google.devtools.build.lib.events.Event;
+import com.google.devtools.build.lib.events.ExtendedEventHandler;
+import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DownloadManager}. */
+@RunWith(JUnit4.class)
+public class DownloadManagerTest {
+
+  private static final String CONTENTS = "contents";
+  private static final String CONTENTS_SHA256 =
+      "d1b2a59fbea7e20077af9f91b27e95e865061b270be03ff539ab3b73587882e8";
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final CountDownLatch leaderStarted = new CountDownLatch(1);
+  private final CountDownLatch releaseLeader = new CountDownLatch(1);
+  private final CountDownLatch followerWaiting = new CountDownLatch(1);
+  private final AtomicInteger downloads = new AtomicInteger();
+  private volatile boolean failLeader = false;
+
+  private Scratch scratch;
+  private DownloadManager downloadManager;
+
+  @Before
+  public void setUp() throws Exception {
+    scratch = new Scratch("/");
+    RepositoryCache repositoryCache = new RepositoryCache();
+    repositoryCache.setRepositoryCachePath(scratch.dir("/repository_cache"));
+    downloadManager = new DownloadManager(repositoryCache, new FakeDownloader());
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void concurrentDownloadsOfSameFile_downloadOnce() throws Exception {
+    Future<Path> leader = executor.submit(() -> download("/leader/file"));
+    leaderStarted.await();
+    Future<Path> follower = executor.submit(() -> download("/follower/file"));
+    followerWaiting.await();
+    releaseLeader.countDown();
+
+    assertThat(FileSystemUtils.readContent(leader.get(), UTF_8)).isEqualTo(CONTENTS);
+    assertThat(FileSystemUtils.readContent(follower.get(), UTF_8)).isEqualTo(CONTENTS);
+    assertThat(downloads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void concurrentDownloadsOfSameFile_leaderFails_followerDownloads() throws Exception {
+    failLeader = true;
+    Future<Path> leader = executor.submit(() -> download("/leader/file"));
+    leaderStarted.await();
+    Future<Path> follower = executor.submit(() -> download("/follower/file"));
+    followerWaiting.await();
+    releaseLeader.countDown();
+
+    ExecutionException e = assertThrows(ExecutionException.class, leader::get);
+    assertThat(e).hasCauseThat().isInstanceOf(IOException.class);
+    assertThat(e).hasCauseThat().hasMessageThat().isEqualTo("leader failed");
+    assertThat(FileSystemUtils.readContent(follower.get(), UTF_8)).isEqualTo(CONTENTS);
+    assertThat(downloads.get()).isEqualTo(2);
+  }
+
+  private Path download(String output) throws Exception {
+    return downloadManager.download(
+        ImmutableList.of(new URL("http://example.com/file")),
+        ImmutableMap.of(),
+        Optional.of(Checksum.fromString(KeyType.SHA256, CONTENTS_SHA256)),
+        "",
+        Optional.absent(),
+        scratch.resolve(output),
+        new WaitingEventHandler(),
+        ImmutableMap.of(),
+        "repo");
+  }
+
+  /**
+   * Blocks the first download until the test releases it, then fails it if {@link #failLeader} is
+   * set. Later downloads complete immediately.
+   */
+  private class FakeDownloader implements Downloader {
+    @Override
+    public void download(
+        List<URL> urls,
+        Map<URI, Map<String, String>> authHeaders,
+        Optional<Checksum> checksum,
+        String canonicalId,
+        Path output,
+        ExtendedEventHandler eventHandler,
+        Map<String, String> clientEnv,
+        Optional<String> type)
+        throws IOException, InterruptedException {
+      if (downloads.getAndIncrement() == 0) {
+        leaderStarted.countDown();
+        releaseLeader.await();
+        if (failLeader) {
+          throw new IOException("leader failed");
+        }
+      }
+      FileSystemUtils.createDirectoryAndParents(output.getParentDirectory());
+      FileSystemUtils.writeContent(output, UTF_8, CONTENTS);
+    }
+  }
+
+  /** Signals when a download starts waiting for a concurrent one. */
+  private class WaitingEventHandler implements ExtendedEventHandler {
+    @Override
+    public void handle(Event event) {}
+
+    @Override
+    public void post(ExtendedEventHandler.Postable obj) {
+      if (obj instanceof ExtendedEventHandler.FetchProgress
+          && ((ExtendedEventHandler.FetchProgress) obj).getProgress().startsWith("Waiting")) {
+        followerWaiting.countDown();
+      }
+    }
+  }
+}
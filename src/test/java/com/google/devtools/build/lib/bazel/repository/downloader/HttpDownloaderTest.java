@@ -23,11 +23,14 @@ import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Strings;
 import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache;
+import com.google.devtools.build.lib.bazel.repository.cache.RepositoryCache.KeyType;
 import com.google.devtools.build.lib.events.ExtendedEventHandler;
 import com.google.devtools.build.lib.vfs.DigestHashFunction;
 import com.google.devtools.build.lib.vfs.JavaIoFileSystem;
 import com.google.devtools.build.lib.vfs.Path;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -37,6 +40,7 @@ import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -55,6 +59,9 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public class HttpDownloaderTest {
 
+  private static final String HELLO_SHA256 =
+      "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
   @Rule public final TemporaryFolder workingDir = new TemporaryFolder();
 
   @Rule public final Timeout timeout = new Timeout(30, SECONDS);
@@ -326,6 +333,111 @@ public class HttpDownloaderTest {
     }
   }
 
+  @Test
+  public void downloadWithSink_passesContentAndCompletes() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName(null))) {
+      @SuppressWarnings("unused")
+      Future<?> possiblyIgnoredError = executor.submit(() -> serve(server, "hello"));
+      RecordingSink sink = new RecordingSink();
+      Path destination = fs.getPath(workingDir.newFile().getAbsolutePath());
+
+      httpDownloader.download(
+          Collections.singletonList(
+              new URL(String.format("http://localhost:%d/foo", server.getLocalPort()))),
+          Collections.emptyMap(),
+          Optional.of(Checksum.fromString(KeyType.SHA256, HELLO_SHA256)),
+          "testCanonicalId",
+          destination,
+          eventHandler,
+          Collections.emptyMap(),
+          Optional.absent(),
+          sink);
+
+      assertThat(new String(readFile(destination), UTF_8)).isEqualTo("hello");
+      assertThat(sink.content.toString(UTF_8.name())).isEqualTo("hello");
+      assertThat(sink.completed).isTrue();
+      assertThat(sink.abandoned).isFalse();
+    }
+  }
+
+  @Test
+  public void downloadWithSink_checksumMismatch_abandonsSinkAndTriesNextUrl() throws Exception {
+    try (ServerSocket server1 = new ServerSocket(0, 1, InetAddress.getByName(null));
+        ServerSocket server2 = new ServerSocket(0, 1, InetAddress.getByName(null))) {
+      // Large enough for the mismatch to be detected only at the end of the stream.
+      String corrupted = Strings.repeat("x", HttpStream.PRECHECK_BYTES + 1);
+      @SuppressWarnings("unused")
+      Future<?> possiblyIgnoredError = executor.submit(() -> serve(server1, corrupted));
+      @SuppressWarnings("unused")
+      Future<?> possiblyIgnoredError2 = executor.submit(() -> serve(server2, "hello"));
+      RecordingSink sink = new RecordingSink();
+      Path destination = fs.getPath(workingDir.newFile().getAbsolutePath());
+
+      httpDownloader.download(
+          Arrays.asList(
+              new URL(String.format("http://localhost:%d/foo", server1.getLocalPort())),
+              new URL(String.format("http://localhost:%d/foo", server2.getLocalPort()))),
+          Collections.emptyMap(),
+          Optional.of(Checksum.fromString(KeyType.SHA256, HELLO_SHA256)),
+          "testCanonicalId",
+          destination,
+          eventHandler,
+          Collections.emptyMap(),
+          Optional.absent(),
+          sink);
+
+      assertThat(new String(readFile(destination), UTF_8)).isEqualTo("hello");
+      // Only the first attempt is streamed.
+      assertThat(sink.content.toString(UTF_8.name())).isEqualTo(corrupted);
+      assertThat(sink.completed).isFalse();
+      assertThat(sink.abandoned).isTrue();
+    }
+  }
+
+  /** Answers one request with the given body. */
+  private static Void serve(ServerSocket server, String body) throws IOException {
+    try (Socket socket = server.accept()) {
+      readHttpRequest(socket.getInputStream());
+      sendLines(
+          socket,
+          "HTTP/1.1 200 OK",
+          "Date: Fri, 31 Dec 1999 23:59:59 GMT",
+          "Connection: close",
+          "Content-Type: text/plain",
+          "Content-Length: " + body.length(),
+          "",
+          body);
+    }
+    return null;
+  }
+
+  /** Records what a download passes on to it. */
+  private static final class RecordingSink implements DownloadSink {
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    private boolean completed;
+    private boolean abandoned;
+
+    @Override
+    public boolean accept(Path destination) {
+      return true;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+      content.write(buffer, offset, length);
+    }
+
+    @Override
+    public void complete() {
+      completed = true;
+    }
+
+    @Override
+    public void abandon() {
+      abandoned = true;
+    }
+  }
+
   private static byte[] readFile(Path path) throws IOException {
     final byte[] data = new byte[(int) path.getFileSize()];
 
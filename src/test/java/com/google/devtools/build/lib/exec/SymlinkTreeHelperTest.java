@@ -15,17 +15,22 @@
 package com.google.devtools.build.lib.exec;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.devtools.build.lib.actions.FilesetOutputSymlink;
 import com.google.devtools.build.lib.actions.HasDigest;
 import com.google.devtools.build.lib.shell.Command;
 import com.google.devtools.build.lib.vfs.DigestHashFunction;
 import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.io.IOException;
 import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -104,4 +109,108 @@ public final class SymlinkTreeHelperTest {
             PathFragment.create("root2/rel2"),
             PathFragment.create("/path"));
   }
+
+  @Test
+  public void readRunfilesManifest() throws Exception {
+    Path manifest = fs.getPath("/MANIFEST");
+    FileSystemUtils.writeContentAsLatin1(manifest, "ws/a /target/a\nws/empty \n");
+
+    assertThat(SymlinkTreeHelper.readRunfilesManifest(manifest))
+        .containsExactly(
+            PathFragment.create("ws/a"), "/target/a", PathFragment.create("ws/empty"), "");
+  }
+
+  @Test
+  public void readRunfilesManifest_malformedLine() throws Exception {
+    Path manifest = fs.getPath("/MANIFEST");
+    FileSystemUtils.writeContentAsLatin1(manifest, "ws/a /target/a /target/b\n");
+
+    assertThrows(IOException.class, () -> SymlinkTreeHelper.readRunfilesManifest(manifest));
+  }
+
+  @Test
+  public void updateSymlinksIncrementally_withoutOutputManifest() throws Exception {
+    Path runfiles = fs.getPath("/runfiles");
+    Path inputManifest = fs.getPath("/input_manifest");
+    FileSystemUtils.writeContentAsLatin1(inputManifest, "ws/a /target/a\n");
+
+    assertThat(
+            new SymlinkTreeHelper(inputManifest, runfiles, /* filesetTree= */ false)
+                .updateSymlinksIncrementally(MoreExecutors.newDirectExecutorService()))
+        .isFalse();
+    assertThat(runfiles.getRelative("ws/a").exists(Symlinks.NOFOLLOW)).isFalse();
+  }
+
+  @Test
+  public void updateSymlinksIncrementally_appliesOnlyDifference() throws Exception {
+    Path runfiles = fs.getPath("/runfiles");
+    runfiles.getRelative("ws/dir").createDirectoryAndParents();
+    runfiles.getRelative("other").createDirectoryAndParents();
+    runfiles.getRelative("ws/unchanged").createSymbolicLink(PathFragment.create("/target/u"));
+    runfiles.getRelative("ws/changed").createSymbolicLink(PathFragment.create("/target/old"));
+    runfiles.getRelative("ws/dir/removed").createSymbolicLink(PathFragment.create("/target/r"));
+    runfiles.getRelative("other/empty").createSymbolicLink(PathFragment.create("/target/e"));
+    FileSystemUtils.writeContentAsLatin1(
+        runfiles.getChild("MANIFEST"),
+        "ws/unchanged /target/u\n"
+            + "ws/changed /target/old\n"
+            + "ws/dir/removed /target/r\n"
+            + "other/empty /target/e\n");
+    FileSystemUtils.createEmptyFile(runfiles.getChild(SymlinkTreeHelper.SYMLINK_TREE_MARKER));
+    Path inputManifest = fs.getPath("/input_manifest");
+    FileSystemUtils.writeContentAsLatin1(
+        inputManifest,
+        "ws/unchanged /target/u\n"
+            + "ws/changed /target/new\n"
+            + "ws/new/added /target/a\n"
+            + "other/empty \n");
+
+    assertThat(
+            new SymlinkTreeHelper(inputManifest, runfiles, /* filesetTree= */ false)
+                .updateSymlinksIncrementally(MoreExecutors.newDirectExecutorService()))
+        .isTrue();
+
+    assertThat(runfiles.getRelative("ws/unchanged").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/target/u"));
+    assertThat(runfiles.getRelative("ws/changed").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/target/new"));
+    assertThat(runfiles.getRelative("ws/new/added").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/target/a"));
+    assertThat(runfiles.getRelative("other/empty").isFile(Symlinks.NOFOLLOW)).isTrue();
+    assertThat(runfiles.getRelative("ws/dir").exists(Symlinks.NOFOLLOW)).isFalse();
+    assertThat(FileSystemUtils.readContent(runfiles.getChild("MANIFEST")))
+        .isEqualTo(FileSystemUtils.readContent(inputManifest));
+    assertThat(runfiles.getChild(SymlinkTreeHelper.SYMLINK_TREE_MARKER).exists()).isTrue();
+  }
+
+  @Test
+  public void updateSymlinksIncrementally_withoutSymlinkTreeMarker() throws Exception {
+    Path runfiles = fs.getPath("/runfiles");
+    runfiles.createDirectoryAndParents();
+    // Written by a build with runfiles disabled, which didn't create the symlinks.
+    FileSystemUtils.writeContentAsLatin1(runfiles.getChild("MANIFEST"), "ws/a /target/a\n");
+    Path inputManifest = fs.getPath("/input_manifest");
+    FileSystemUtils.writeContentAsLatin1(inputManifest, "ws/a /target/a\nws/b /target/b\n");
+
+    assertThat(
+            new SymlinkTreeHelper(inputManifest, runfiles, /* filesetTree= */ false)
+                .updateSymlinksIncrementally(MoreExecutors.newDirectExecutorService()))
+        .isFalse();
+    assertThat(runfiles.getRelative("ws/b").exists(Symlinks.NOFOLLOW)).isFalse();
+  }
+
+  @Test
+  public void copyManifest_deletesSymlinkTreeMarker() throws Exception {
+    Path runfiles = fs.getPath("/runfiles");
+    runfiles.createDirectoryAndParents();
+    FileSystemUtils.createEmptyFile(runfiles.getChild(SymlinkTreeHelper.SYMLINK_TREE_MARKER));
+    Path inputManifest = fs.getPath("/input_manifest");
+    FileSystemUtils.writeContentAsLatin1(inputManifest, "ws/a /target/a\n");
+
+    new SymlinkTreeHelper(inputManifest, runfiles, /* filesetTree= */ false).copyManifest();
+
+    assertThat(runfiles.getChild(SymlinkTreeHelper.SYMLINK_TREE_MARKER).exists()).isFalse();
+    assertThat(FileSystemUtils.readContent(runfiles.getChild("MANIFEST")))
+        .isEqualTo(FileSystemUtils.readContent(inputManifest));
+  }
 }
@@ -0,0 +1,138 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.query2.query.output;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.packages.Attribute;
+import com.google.devtools.build.lib.packages.DependencyFilter;
+import com.google.devtools.build.lib.packages.Target;
+import com.google.devtools.build.lib.packages.util.PackageLoadingTestCase;
+import com.google.devtools.build.lib.query2.engine.OutputFormatterCallback;
+import com.google.devtools.build.lib.query2.query.aspectresolvers.AspectResolver;
+import com.google.devtools.build.lib.query2.query.aspectresolvers.NullAspectResolver;
+import com.google.devtools.build.lib.query2.query.aspectresolvers.PreciseAspectResolver;
+import com.google.devtools.build.lib.vfs.DigestHashFunction;
+import com.google.devtools.common.options.Options;
+import java.io.ByteArrayOutputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link StreamedProtoOutputFormatter}. */
+@RunWith(JUnit4.class)
+public class StreamedProtoOutputFormatterTest extends PackageLoadingTestCase {
+  private final QueryOptions options = Options.getDefaults(QueryOptions.class);
+
+  /** Returns enough targets to be converted in parallel, in a fixed order. */
+  private ImmutableList<Target> createTargets() throws Exception {
+    ImmutableList.Builder<String> lines = ImmutableList.builder();
+    for (int i = 0; i < 2500; i++) {
+      lines.add(
+          String.format(
+              "genrule(name = 'g%d', srcs = ['in%d'], outs = ['out%d'], cmd = 'touch $@')",
+              i, i, i));
+    }
+    scratch.file("pkg/BUILD", lines.build().toArray(new String[0]));
+    ImmutableList.Builder<Target> targets = ImmutableList.builder();
+    for (int i = 0; i < 2500; i++) {
+      // Alternate between rules and files to check that the result order is kept.
+      targets.add(getTarget("//pkg:g" + i));
+      targets.add(getTarget("//pkg:in" + i));
+    }
+    return targets.build();
+  }
+
+  /** Writes the targets one after another on the calling thread. */
+  private byte[] sequentialOutput(Iterable<Target> targets, AspectResolver aspectResolver)
+      throws Exception {
+    ProtoOutputFormatter formatter = new ProtoOutputFormatter();
+    formatter.setOptions(options, aspectResolver, DigestHashFunction.SHA256.getHashFunction());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Target target : targets) {
+      formatter.toTargetProtoBuffer(target).writeDelimitedTo(out);
+    }
+    return out.toByteArray();
+  }
+
+  private byte[] streamedOutput(Iterable<Target> targets, AspectResolver aspectResolver)
+      throws Exception {
+    StreamedProtoOutputFormatter formatter = new StreamedProtoOutputFormatter();
+    formatter.setOptions(options, aspectResolver, DigestHashFunction.SHA256.getHashFunction());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OutputFormatterCallback<Target> callback =
+        formatter.createPostFactoStreamCallback(out, options);
+    callback.start();
+    callback.processOutput(targets);
+    callback.close(/* failFast= */ false);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void parallelOutputIsIdenticalToSequentialOutput() throws Exception {
+    ImmutableList<Target> targets = createTargets();
+    RecordingAspectResolver aspectResolver = new RecordingAspectResolver();
+
+    byte[] streamed = streamedOutput(targets, aspectResolver);
+
+    assertThat(streamed).isEqualTo(sequentialOutput(targets, new NullAspectResolver()));
+    // The targets were converted on the pool rather than on the calling thread.
+    assertThat(aspectResolver.threads).isNotEmpty();
+    assertThat(aspectResolver.threads).doesNotContain(Thread.currentThread());
+  }
+
+  @Test
+  public void convertsSequentiallyWithPackageLoadingAspectResolver() throws Exception {
+    ImmutableList<Target> targets = createTargets();
+    RecordingPreciseAspectResolver aspectResolver = new RecordingPreciseAspectResolver();
+
+    byte[] streamed = streamedOutput(targets, aspectResolver);
+
+    assertThat(aspectResolver.threads).containsExactly(Thread.currentThread());
+    assertThat(streamed).isEqualTo(sequentialOutput(targets, aspectResolver));
+  }
+
+  /** A resolver that doesn't load packages and records the threads it is called on. */
+  private static final class RecordingAspectResolver extends NullAspectResolver {
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public ImmutableMultimap<Attribute, Label> computeAspectDependencies(
+        Target target, DependencyFilter dependencyFilter) {
+      threads.add(Thread.currentThread());
+      return super.computeAspectDependencies(target, dependencyFilter);
+    }
+  }
+
+  /** A {@link PreciseAspectResolver} that records the threads it is called on. */
+  private final class RecordingPreciseAspectResolver extends PreciseAspectResolver {
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    RecordingPreciseAspectResolver() {
+      super(getPackageManager(), reporter);
+    }
+
+    @Override
+    public ImmutableMultimap<Attribute, Label> computeAspectDependencies(
+        Target target, DependencyFilter dependencyFilter) throws InterruptedException {
+      threads.add(Thread.currentThread());
+      return super.computeAspectDependencies(target, dependencyFilter);
+    }
+  }
+}
@@ -31,6 +31,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -63,6 +64,7 @@ import io.grpc.stub.StreamObserver;
 import io.grpc.util.MutableHandlerRegistry;
 import io.reactivex.rxjava3.core.Single;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -77,6 +79,8 @@ import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import javax.annotation.Nullable;
 import org.junit.After;
 import org.junit.Before;
@@ -225,6 +229,89 @@ public class ByteStreamUploaderTest {
     blockUntilInternalStateConsistent(uploader);
   }
 
+  @Test
+  public void compressedUploadShouldWork() throws Exception {
+    RemoteRetrier retrier =
+        TestUtils.newRemoteRetrier(() -> mockBackoff, (e) -> true, retryService);
+    ByteStreamUploader uploader =
+        new ByteStreamUploader(
+            INSTANCE_NAME,
+            new ReferenceCountedChannel(channelConnectionFactory),
+            CallCredentialsProvider.NO_CREDENTIALS,
+            /* callTimeoutSecs= */ 60,
+            retrier);
+
+    // Compressible data that still spans multiple chunks once compressed.
+    byte[] blob = new byte[CHUNK_SIZE * 100];
+    for (int i = 0; i < blob.length; i++) {
+      blob[i] = (byte) (i % 7);
+    }
+
+    Chunker chunker =
+        Chunker.builder().setInput(blob).setChunkSize(CHUNK_SIZE).setCompressed(true).build();
+    HashCode hash = HashCode.fromString(DIGEST_UTIL.compute(blob).getHash());
+
+    serviceRegistry.addService(
+        new ByteStreamImplBase() {
+          @Override
+          public StreamObserver<WriteRequest> write(StreamObserver<WriteResponse> streamObserver) {
+            return new StreamObserver<WriteRequest>() {
+
+              ByteArrayOutputStream receivedData = new ByteArrayOutputStream();
+              boolean finished;
+
+              @Override
+              public void onNext(WriteRequest writeRequest) {
+                if (receivedData.size() == 0) {
+                  assertThat(writeRequest.getResourceName())
+                      .startsWith(INSTANCE_NAME + "/uploads/");
+                  assertThat(writeRequest.getResourceName())
+                      .endsWith("/compressed-blobs/deflate/" + hash + "/" + blob.length);
+                }
+                assertThat(writeRequest.getWriteOffset()).isEqualTo(receivedData.size());
+                assertThat(finished).isFalse();
+                byte[] data = writeRequest.getData().toByteArray();
+                receivedData.write(data, 0, data.length);
+                finished = writeRequest.getFinishWrite();
+              }
+
+              @Override
+              public void onError(Throwable throwable) {
+                fail("onError should never be called.");
+              }
+
+              @Override
+              public void onCompleted() {
+                assertThat(finished).isTrue();
+                assertThat(receivedData.size()).isLessThan(blob.length);
+                try {
+                  assertThat(
+                          ByteStreams.toByteArray(
+                              new InflaterInputStream(
+                                  new ByteArrayInputStream(receivedData.toByteArray()),
+                                  new Inflater(/* nowrap= */ true))))
+                      .isEqualTo(blob);
+                } catch (IOException e) {
+                  throw new AssertionError(e);
+                }
+
+                WriteResponse response =
+                    WriteResponse.newBuilder().setCommittedSize(receivedData.size()).build();
+                streamObserver.onNext(response);
+                streamObserver.onCompleted();
+              }
+            };
+          }
+        });
+
+    uploader.uploadBlob(context, hash, chunker, true);
+
+    // This test should not have triggered any retries.
+    Mockito.verifyZeroInteractions(mockBackoff);
+
+    blockUntilInternalStateConsistent(uploader);
+  }
+
   @Test
   public void progressiveUploadShouldWork() throws Exception {
     Mockito.when(mockBackoff.getRetryAttempts()).thenReturn(0);
@@ -16,16 +16,20 @@ package com.google.devtools.build.lib.remote;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 
+import com.google.common.io.ByteStreams;
 import com.google.devtools.build.lib.remote.Chunker.Chunk;
 import com.google.protobuf.ByteString;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -130,7 +134,7 @@ public class ChunkerTest {
       return in.get();
     };
 
-    Chunker chunker = new Chunker(supplier, data.length, 1);
+    Chunker chunker = new Chunker(supplier, data.length, 1, /* compressed= */ false);
     assertThat(in.get()).isNull();
     assertNextEquals(chunker, (byte) 1);
     Mockito.verify(in.get(), Mockito.never()).close();
@@ -173,6 +177,72 @@ public class ChunkerTest {
     assertThat(next.getData()).hasSize(8);
   }
 
+  @Test
+  public void compressedChunksInflateToInput() throws IOException {
+    byte[] data = new byte[4096];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i % 13);
+    }
+    Chunker chunker =
+        Chunker.builder().setInput(data).setChunkSize(16).setCompressed(true).build();
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    while (chunker.hasNext()) {
+      Chunk next = chunker.next();
+      assertThat(next.getOffset()).isEqualTo(compressed.size());
+      assertThat(next.getData().size()).isAtMost(16);
+      next.getData().writeTo(compressed);
+    }
+
+    assertThat(chunker.isCompressed()).isTrue();
+    assertThat(chunker.getSize()).isEqualTo(data.length);
+    assertThat(chunker.getOffset()).isEqualTo(compressed.size());
+    assertThat(compressed.size()).isLessThan(data.length);
+    assertThat(inflate(compressed.toByteArray())).isEqualTo(data);
+  }
+
+  @Test
+  public void seekInCompressedData() throws IOException {
+    byte[] data = new byte[4096];
+    new Random().nextBytes(data);
+    Chunker chunker =
+        Chunker.builder().setInput(data).setChunkSize(100).setCompressed(true).build();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    while (chunker.hasNext()) {
+      chunker.next().getData().writeTo(compressed);
+    }
+
+    chunker.seek(150);
+
+    ByteArrayOutputStream rest = new ByteArrayOutputStream();
+    assertThat(chunker.next().getOffset()).isEqualTo(150);
+    chunker.seek(150);
+    while (chunker.hasNext()) {
+      chunker.next().getData().writeTo(rest);
+    }
+    byte[] expected = compressed.toByteArray();
+    assertThat(rest.toByteArray()).isEqualTo(Arrays.copyOfRange(expected, 150, expected.length));
+  }
+
+  @Test
+  public void emptyInputIsNotCompressed() throws IOException {
+    Chunker chunker = Chunker.builder().setInput(new byte[0]).setCompressed(true).build();
+
+    assertThat(chunker.isCompressed()).isFalse();
+    assertNextEquals(chunker);
+    assertThat(chunker.hasNext()).isFalse();
+  }
+
+  private static byte[] inflate(byte[] compressed) throws IOException {
+    Inflater inflater = new Inflater(/* nowrap= */ true);
+    try (InputStream in =
+        new InflaterInputStream(new ByteArrayInputStream(compressed), inflater)) {
+      return ByteStreams.toByteArray(in);
+    } finally {
+      inflater.end();
+    }
+  }
+
   private void assertNextEquals(Chunker chunker, byte... data) throws IOException {
     assertThat(chunker.hasNext()).isTrue();
     ByteString next = chunker.next().getData();
@@ -47,6 +47,7 @@ import com.google.bytestream.ByteStreamProto.ReadRequest;
 import com.google.bytestream.ByteStreamProto.ReadResponse;
 import com.google.bytestream.ByteStreamProto.WriteRequest;
 import com.google.bytestream.ByteStreamProto.WriteResponse;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
@@ -105,12 +106,15 @@ import io.reactivex.rxjava3.core.Single;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -1232,6 +1236,141 @@ public class GrpcCacheClientTest {
     assertThat(downloadBlob(context, client, digest)).isEqualTo(downloadContents.toByteArray());
   }
 
+  @Test
+  public void testDownloadCompressedBlob() throws Exception {
+    RemoteOptions remoteOptions = Options.getDefaults(RemoteOptions.class);
+    remoteOptions.cacheCompression = true;
+    remoteOptions.cacheCompressionThreshold = 0;
+    GrpcCacheClient client = newClient(remoteOptions);
+    String content = Strings.repeat("abcdefg", 100);
+    Digest digest = DIGEST_UTIL.computeAsUtf8(content);
+    ByteString compressed = deflate(content);
+    serviceRegistry.addService(
+        new ByteStreamImplBase() {
+          @Override
+          public void read(ReadRequest request, StreamObserver<ReadResponse> responseObserver) {
+            int half = compressed.size() / 2;
+            responseObserver.onNext(
+                ReadResponse.newBuilder().setData(compressed.substring(0, half)).build());
+            responseObserver.onNext(
+                ReadResponse.newBuilder().setData(compressed.substring(half)).build());
+            responseObserver.onCompleted();
+          }
+        });
+
+    assertThat(new String(downloadBlob(context, client, digest), UTF_8)).isEqualTo(content);
+  }
+
+  @Test
+  public void compressedDownload_usesCompressedBlobsResourceNameAboveThreshold() throws Exception {
+    RemoteOptions remoteOptions = Options.getDefaults(RemoteOptions.class);
+    remoteOptions.remoteInstanceName = "instance";
+    remoteOptions.cacheCompression = true;
+    remoteOptions.cacheCompressionThreshold = 10;
+    GrpcCacheClient client = newClient(remoteOptions);
+    String smallContent = "abc";
+    String largeContent = Strings.repeat("abcdefg", 100);
+    Digest smallDigest = DIGEST_UTIL.computeAsUtf8(smallContent);
+    Digest largeDigest = DIGEST_UTIL.computeAsUtf8(largeContent);
+    List<String> resourceNames = new ArrayList<>();
+    serviceRegistry.addService(
+        new ByteStreamImplBase() {
+          @Override
+          public void read(ReadRequest request, StreamObserver<ReadResponse> responseObserver) {
+            resourceNames.add(request.getResourceName());
+            ByteString data =
+                request.getResourceName().contains("compressed-blobs")
+                    ? deflate(largeContent)
+                    : ByteString.copyFromUtf8(smallContent);
+            responseObserver.onNext(ReadResponse.newBuilder().setData(data).build());
+            responseObserver.onCompleted();
+          }
+        });
+
+    assertThat(new String(downloadBlob(context, client, smallDigest), UTF_8))
+        .isEqualTo(smallContent);
+    assertThat(new String(downloadBlob(context, client, largeDigest), UTF_8))
+        .isEqualTo(largeContent);
+    assertThat(resourceNames)
+        .containsExactly(
+            "instance/blobs/" + DigestUtil.toString(smallDigest),
+            "instance/compressed-blobs/deflate/" + DigestUtil.toString(largeDigest))
+        .inOrder();
+  }
+
+  @Test
+  public void compressedDownload_isResumedAtCompressedOffsetWithSameInflater() throws Exception {
+    Backoff mockBackoff = Mockito.mock(Backoff.class);
+    RemoteOptions remoteOptions = Options.getDefaults(RemoteOptions.class);
+    remoteOptions.cacheCompression = true;
+    remoteOptions.cacheCompressionThreshold = 0;
+    GrpcCacheClient client = newClient(remoteOptions, () -> mockBackoff);
+    String content = Strings.repeat("abcdefg", 100);
+    Digest digest = DIGEST_UTIL.computeAsUtf8(content);
+    ByteString compressed = deflate(content);
+    int split = compressed.size() / 2;
+    List<Long> readOffsets = new ArrayList<>();
+    serviceRegistry.addService(
+        new ByteStreamImplBase() {
+          @Override
+          public void read(ReadRequest request, StreamObserver<ReadResponse> responseObserver) {
+            long offset = request.getReadOffset();
+            readOffsets.add(offset);
+            if (offset == 0) {
+              // Fails in the middle of the compressed stream.
+              responseObserver.onNext(
+                  ReadResponse.newBuilder().setData(compressed.substring(0, split)).build());
+              responseObserver.onError(Status.DEADLINE_EXCEEDED.asException());
+            } else {
+              responseObserver.onNext(
+                  ReadResponse.newBuilder().setData(compressed.substring((int) offset)).build());
+              responseObserver.onCompleted();
+            }
+          }
+        });
+
+    assertThat(new String(downloadBlob(context, client, digest), UTF_8)).isEqualTo(content);
+    assertThat(readOffsets).containsExactly(0L, (long) split).inOrder();
+    Mockito.verify(mockBackoff, Mockito.never()).nextDelayMillis(any(Exception.class));
+  }
+
+  @Test
+  public void compressedDownload_endingPrematurely_fails() throws Exception {
+    RemoteOptions remoteOptions = Options.getDefaults(RemoteOptions.class);
+    remoteOptions.cacheCompression = true;
+    remoteOptions.cacheCompressionThreshold = 0;
+    GrpcCacheClient client = newClient(remoteOptions);
+    String content = Strings.repeat("abcdefg", 100);
+    Digest digest = DIGEST_UTIL.computeAsUtf8(content);
+    ByteString compressed = deflate(content);
+    serviceRegistry.addService(
+        new ByteStreamImplBase() {
+          @Override
+          public void read(ReadRequest request, StreamObserver<ReadResponse> responseObserver) {
+            responseObserver.onNext(
+                ReadResponse.newBuilder()
+                    .setData(compressed.substring(0, compressed.size() - 2))
+                    .build());
+            responseObserver.onCompleted();
+          }
+        });
+
+    IOException e = assertThrows(IOException.class, () -> downloadBlob(context, client, digest));
+    assertThat(e).hasMessageThat().contains("ended prematurely");
+  }
+
+  /** Compresses the given content like a cache serving compressed-blobs/deflate does. */
+  private static ByteString deflate(String content) {
+    ByteString.Output out = ByteString.newOutput();
+    try (DeflaterOutputStream deflater =
+        new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED, /* nowrap= */ true))) {
+      deflater.write(content.getBytes(UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return out.toByteString();
+  }
+
   @Test
   public void isRemoteCacheOptionsWhenGrpcEnabled() {
     RemoteOptions options = Options.getDefaults(RemoteOptions.class);
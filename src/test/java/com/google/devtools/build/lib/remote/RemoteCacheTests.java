@@ -819,6 +819,38 @@ public class RemoteCacheTests {
     verify(outputFilesLocker, never()).lock();
   }
 
+  @Test
+  public void missingTreeWaitsForOutputFileDownloadsToComplete() throws Exception {
+    // Output files are downloaded while the trees of output directories are fetched, so a missing
+    // tree must still wait for them before cleaning up.
+    InMemoryRemoteCache cache = newRemoteCache();
+    Digest treeDigest = digestUtil.computeAsUtf8("missing tree");
+    Digest fileDigest = cache.addContents(context, "file1");
+
+    ActionResult result =
+        ActionResult.newBuilder()
+            .setExitCode(0)
+            .addOutputDirectories(
+                OutputDirectory.newBuilder().setPath("outputdir").setTreeDigest(treeDigest))
+            .addOutputFiles(OutputFile.newBuilder().setPath("file1").setDigest(fileDigest))
+            .build();
+    BulkTransferException e =
+        assertThrows(
+            BulkTransferException.class,
+            () ->
+                cache.download(
+                    context,
+                    remotePathResolver,
+                    result,
+                    null,
+                    outputFilesLocker,
+                    progressStatusListener));
+    assertThat(e.onlyCausedByCacheNotFoundException()).isTrue();
+    assertThat(cache.getNumSuccessfulDownloads()).isEqualTo(1);
+    assertThat(execRoot.getRelative("file1").exists()).isFalse();
+    verify(outputFilesLocker, never()).lock();
+  }
+
   @Test
   public void downloadWithMultipleErrorsAddsThemAsSuppressed() throws Exception {
     Path stdout = fs.getPath("/execroot/stdout");
@@ -18,6 +18,7 @@ import static com.google.common.truth.Truth.assertThat;
 import build.bazel.remote.execution.v2.ActionCacheUpdateCapabilities;
 import build.bazel.remote.execution.v2.CacheCapabilities;
 import build.bazel.remote.execution.v2.CapabilitiesGrpc.CapabilitiesImplBase;
+import build.bazel.remote.execution.v2.Compressor;
 import build.bazel.remote.execution.v2.DigestFunction;
 import build.bazel.remote.execution.v2.ExecutionCapabilities;
 import build.bazel.remote.execution.v2.GetCapabilitiesRequest;
@@ -311,6 +312,50 @@ public class RemoteServerCapabilitiesTest {
     assertThat(st.getErrors().get(0)).containsMatch("Cannot use hash function");
   }
 
+  @Test
+  public void testCheckClientServerCompatibility_remoteCacheDoesNotSupportCompression()
+      throws Exception {
+    CacheCapabilities.Builder cacheCaps =
+        CacheCapabilities.newBuilder()
+            .addDigestFunction(DigestFunction.Value.SHA256)
+            .setActionCacheUpdateCapabilities(
+                ActionCacheUpdateCapabilities.newBuilder().setUpdateEnabled(true).build());
+    ServerCapabilities caps =
+        ServerCapabilities.newBuilder()
+            .setLowApiVersion(ApiVersion.current.toSemVer())
+            .setHighApiVersion(ApiVersion.current.toSemVer())
+            .setCacheCapabilities(cacheCaps.build())
+            .build();
+    RemoteOptions remoteOptions = Options.getDefaults(RemoteOptions.class);
+    remoteOptions.remoteCache = "server:port";
+    remoteOptions.cacheCompression = true;
+    RemoteServerCapabilities.ClientServerCompatibilityStatus st =
+        RemoteServerCapabilities.checkClientServerCompatibility(
+            caps, remoteOptions, DigestFunction.Value.SHA256, ServerCapabilitiesRequirement.CACHE);
+    assertThat(st.getErrors()).hasSize(1);
+    assertThat(st.getErrors().get(0)).containsMatch("does not support DEFLATE compression");
+
+    // Accepted once the cache advertises DEFLATE.
+    caps =
+        caps.toBuilder()
+            .setCacheCapabilities(cacheCaps.addSupportedCompressors(Compressor.Value.DEFLATE))
+            .build();
+    st =
+        RemoteServerCapabilities.checkClientServerCompatibility(
+            caps, remoteOptions, DigestFunction.Value.SHA256, ServerCapabilitiesRequirement.CACHE);
+    assertThat(st.isOk()).isTrue();
+
+    // Not checked without compression.
+    remoteOptions.cacheCompression = false;
+    st =
+        RemoteServerCapabilities.checkClientServerCompatibility(
+            caps.toBuilder().setCacheCapabilities(cacheCaps.clearSupportedCompressors()).build(),
+            remoteOptions,
+            DigestFunction.Value.SHA256,
+            ServerCapabilitiesRequirement.CACHE);
+    assertThat(st.isOk()).isTrue();
+  }
+
   @Test
   public void testCheckClientServerCompatibility_remoteCacheDoesNotSupportUpdate()
       throws Exception {
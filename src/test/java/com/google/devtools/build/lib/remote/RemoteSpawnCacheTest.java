@@ -19,6 +19,7 @@ import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -84,6 +85,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.SortedMap;
+import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -203,6 +205,11 @@ public class RemoteSpawnCacheTest {
   }
 
   private RemoteSpawnCache remoteSpawnCacheWithOptions(RemoteOptions options) {
+    return remoteSpawnCacheWithOptions(options, /* actionResultMemoryCache= */ null);
+  }
+
+  private RemoteSpawnCache remoteSpawnCacheWithOptions(
+      RemoteOptions options, @Nullable ActionResultMemoryCache actionResultMemoryCache) {
     RemoteExecutionService remoteExecutionService =
         new RemoteExecutionService(
             execRoot,
@@ -215,7 +222,12 @@ public class RemoteSpawnCacheTest {
             null,
             ImmutableSet.of());
     return new RemoteSpawnCache(
-        execRoot, options, /* verboseFailures=*/ true, reporter, remoteExecutionService);
+        execRoot,
+        options,
+        /* verboseFailures=*/ true,
+        reporter,
+        remoteExecutionService,
+        actionResultMemoryCache);
   }
 
   @Before
@@ -758,4 +770,93 @@ public class RemoteSpawnCacheTest {
     assertThat(evt.getKind()).isEqualTo(EventKind.WARNING);
     assertThat(evt.getMessage()).contains(downloadFailure.getMessage());
   }
+
+  @Test
+  public void actionResultMemoryCache_answersRepeatedLookups() throws Exception {
+    ActionResult actionResult = ActionResult.getDefaultInstance();
+    when(remoteCache.downloadActionResult(
+            any(RemoteActionExecutionContext.class),
+            any(ActionKey.class),
+            /* inlineOutErr= */ eq(false)))
+        .thenReturn(actionResult);
+    cache =
+        remoteSpawnCacheWithOptions(
+            Options.getDefaults(RemoteOptions.class),
+            new ActionResultMemoryCache(/* maxSize= */ 10, Duration.ofMinutes(10)));
+
+    assertThat(cache.lookup(simpleSpawn, simplePolicy).hasResult()).isTrue();
+    assertThat(cache.lookup(simpleSpawn, simplePolicy).hasResult()).isTrue();
+
+    verify(remoteCache, times(1))
+        .downloadActionResult(
+            any(RemoteActionExecutionContext.class),
+            any(ActionKey.class),
+            /* inlineOutErr= */ eq(false));
+    verify(remoteCache, times(2))
+        .download(any(), any(), eq(actionResult), eq(outErr), any(), any());
+  }
+
+  @Test
+  public void actionResultMemoryCache_forgetsResultWithMissingOutputs() throws Exception {
+    Digest digest = digestUtil.computeAsUtf8("bla");
+    ActionResult actionResult =
+        ActionResult.newBuilder()
+            .addOutputFiles(OutputFile.newBuilder().setPath("/random/file").setDigest(digest))
+            .build();
+    when(remoteCache.downloadActionResult(
+            any(RemoteActionExecutionContext.class),
+            any(ActionKey.class),
+            /* inlineOutErr= */ eq(false)))
+        .thenReturn(actionResult);
+    doThrow(new CacheNotFoundException(digest))
+        .when(remoteCache)
+        .download(any(), any(), eq(actionResult), eq(outErr), any(), any());
+    cache =
+        remoteSpawnCacheWithOptions(
+            Options.getDefaults(RemoteOptions.class),
+            new ActionResultMemoryCache(/* maxSize= */ 10, Duration.ofMinutes(10)));
+
+    assertThat(cache.lookup(simpleSpawn, simplePolicy).hasResult()).isFalse();
+    assertThat(cache.lookup(simpleSpawn, simplePolicy).hasResult()).isFalse();
+
+    verify(remoteCache, times(2))
+        .downloadActionResult(
+            any(RemoteActionExecutionContext.class),
+            any(ActionKey.class),
+            /* inlineOutErr= */ eq(false));
+  }
+
+  @Test
+  public void actionResultMemoryCache_rememberedResultWithoutDownloads_takesNoRoundTrip()
+      throws Exception {
+    Digest digest = digestUtil.computeAsUtf8("bla");
+    ActionResult actionResult =
+        ActionResult.newBuilder()
+            .addOutputFiles(OutputFile.newBuilder().setPath("/random/file").setDigest(digest))
+            .build();
+    when(remoteCache.downloadActionResult(
+            any(RemoteActionExecutionContext.class),
+            any(ActionKey.class),
+            /* inlineOutErr= */ eq(false)))
+        .thenReturn(actionResult);
+    RemoteOptions remoteOptions = Options.getDefaults(RemoteOptions.class);
+    remoteOptions.remoteOutputsMode = RemoteOutputsMode.MINIMAL;
+    cache =
+        remoteSpawnCacheWithOptions(
+            remoteOptions, new ActionResultMemoryCache(/* maxSize= */ 10, Duration.ofMinutes(10)));
+
+    assertThat(cache.lookup(simpleSpawn, simplePolicy).hasResult()).isTrue();
+    assertThat(cache.lookup(simpleSpawn, simplePolicy).hasResult()).isTrue();
+
+    // Only the first lookup asks the remote cache; both only inject the output metadata.
+    verify(remoteCache, times(1))
+        .downloadActionResult(
+            any(RemoteActionExecutionContext.class),
+            any(ActionKey.class),
+            /* inlineOutErr= */ eq(false));
+    verify(remoteCache, times(2))
+        .downloadMinimal(
+            any(), any(), eq(actionResult), anyCollection(), any(), any(), any(), any());
+    verifyNoMoreInteractions(remoteCache);
+  }
 }
@@ -159,6 +159,60 @@ public class DynamicConnectionPoolTest {
     assertThat(connectionFactoryCreateTimes.get()).isEqualTo(1);
   }
 
+  @Test
+  public void create_belowMinConnections_createNewConnection() {
+    DynamicConnectionPool pool =
+        new DynamicConnectionPool(connectionFactory, 2, /* minConnections= */ 2);
+
+    TestObserver<SharedConnection> observer0 = pool.create().test();
+    TestObserver<SharedConnection> observer1 = pool.create().test();
+    TestObserver<SharedConnection> observer2 = pool.create().test();
+
+    observer0.assertValue(conn -> conn.getUnderlyingConnection() == connection0).assertComplete();
+    observer1.assertValue(conn -> conn.getUnderlyingConnection() == connection1).assertComplete();
+    observer2.assertComplete();
+    assertThat(connectionFactoryCreateTimes.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void create_routesToLeastLoadedConnection() throws IOException {
+    DynamicConnectionPool pool =
+        new DynamicConnectionPool(connectionFactory, 3, /* minConnections= */ 2);
+    TestObserver<SharedConnection> observer0 = pool.create().test();
+    TestObserver<SharedConnection> observer1 = pool.create().test();
+    TestObserver<SharedConnection> observer2 = pool.create().test();
+    observer0.assertValue(conn -> conn.getUnderlyingConnection() == connection0).assertComplete();
+    observer1.assertValue(conn -> conn.getUnderlyingConnection() == connection1).assertComplete();
+    observer2.assertComplete();
+    // Release both requests on connection0, whichever connection the third request went to.
+    observer0.values().get(0).close();
+    if (observer2.values().get(0).getUnderlyingConnection() == connection0) {
+      observer2.values().get(0).close();
+    }
+
+    TestObserver<SharedConnection> observer3 = pool.create().test();
+
+    observer3.assertValue(conn -> conn.getUnderlyingConnection() == connection0).assertComplete();
+    assertThat(connectionFactoryCreateTimes.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void getConnectionStats_reportsInFlightAndTotalRequests() throws IOException {
+    DynamicConnectionPool pool = new DynamicConnectionPool(connectionFactory, 2);
+    TestObserver<SharedConnection> observer0 = pool.create().test();
+    TestObserver<SharedConnection> observer1 = pool.create().test();
+    TestObserver<SharedConnection> observer2 = pool.create().test();
+    observer0.values().get(0).close();
+
+    assertThat(pool.getConnectionStats()).hasSize(2);
+    assertThat(pool.getConnectionStats().get(0).getInFlightRequests()).isEqualTo(1);
+    assertThat(pool.getConnectionStats().get(0).getTotalRequests()).isEqualTo(2);
+    assertThat(pool.getConnectionStats().get(1).getInFlightRequests()).isEqualTo(1);
+    assertThat(pool.getConnectionStats().get(1).getTotalRequests()).isEqualTo(1);
+    observer1.assertComplete();
+    observer2.assertComplete();
+  }
+
   @Test
   public void closePool_noNewConnectionAllowed() throws IOException {
     DynamicConnectionPool pool = new DynamicConnectionPool(connectionFactory, 1);
@@ -0,0 +1,272 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.remote.http;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.devtools.build.runfiles.Runfiles;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http2.DefaultHttp2GoAwayFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link Http2ChannelPool}. */
+@RunWith(JUnit4.class)
+public class Http2ChannelPoolTest {
+
+  private static final String CERTIFICATE_DIR = "io_bazel/src/test/testdata/test_tls_certificate/";
+
+  private final EventLoopGroup eventLoop = new NioEventLoopGroup(2);
+  @Nullable private ServerChannel server;
+  @Nullable private Http2ChannelPool pool;
+
+  @After
+  public void tearDown() throws Exception {
+    if (pool != null) {
+      pool.close();
+    }
+    if (server != null) {
+      server.close().sync();
+    }
+    eventLoop.shutdownGracefully(0, 10, SECONDS).sync();
+  }
+
+  @Test
+  public void tls_negotiatesHttp2ViaAlpn() throws Exception {
+    startServer(serverSslContext(ApplicationProtocolNames.HTTP_2), new RespondingHandler());
+    pool = newPool(clientSslContext());
+
+    Http2StreamChannel stream = (Http2StreamChannel) pool.acquire().get(10, SECONDS);
+
+    assertThat(stream.parent().pipeline().get(SslHandler.class)).isNotNull();
+    assertThat(get(stream).get(10, SECONDS).headers().status().toString()).isEqualTo("200");
+  }
+
+  @Test
+  public void tls_failsIfServerDoesNotSupportHttp2() throws Exception {
+    startServer(serverSslContext(ApplicationProtocolNames.HTTP_1_1), new RespondingHandler());
+    pool = newPool(clientSslContext());
+
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> pool.acquire().get(10, SECONDS));
+    assertThat(e).hasCauseThat().isInstanceOf(IOException.class);
+    assertThat(e).hasCauseThat().hasMessageThat().contains("does not support HTTP/2");
+  }
+
+  @Test
+  public void goAway_closesConnectionOnceStreamsComplete() throws Exception {
+    startServer(/* sslCtx= */ null, new GoAwayHandler());
+    pool = newPool(/* sslCtx= */ null);
+    Http2StreamChannel stream = (Http2StreamChannel) pool.acquire().get(10, SECONDS);
+    get(stream);
+    Channel retired = awaitRetired(stream.parent());
+
+    assertThat(retired.isOpen()).isTrue();
+    pool.release(stream);
+    assertThat(retired.closeFuture().await(10, SECONDS)).isTrue();
+  }
+
+  @Test
+  public void close_closesRetiredConnections() throws Exception {
+    startServer(/* sslCtx= */ null, new GoAwayHandler());
+    pool = newPool(/* sslCtx= */ null);
+    Http2StreamChannel stream = (Http2StreamChannel) pool.acquire().get(10, SECONDS);
+    get(stream);
+    Channel retired = awaitRetired(stream.parent());
+
+    pool.close();
+
+    assertThat(retired.closeFuture().await(10, SECONDS)).isTrue();
+  }
+
+  private void startServer(@Nullable SslContext sslCtx, ChannelHandler streamHandler)
+      throws InterruptedException {
+    server =
+        (ServerChannel)
+            new ServerBootstrap()
+                .group(eventLoop)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(
+                    new ChannelInitializer<SocketChannel>() {
+                      @Override
+                      protected void initChannel(SocketChannel ch) {
+                        if (sslCtx != null) {
+                          ch.pipeline().addLast(sslCtx.newHandler(ch.alloc()));
+                        }
+                        ch.pipeline()
+                            .addLast(
+                                Http2FrameCodecBuilder.forServer().build(),
+                                new Http2MultiplexHandler(streamHandler));
+                      }
+                    })
+                .bind(new InetSocketAddress("localhost", 0))
+                .sync()
+                .channel();
+  }
+
+  private Http2ChannelPool newPool(@Nullable SslContext sslCtx) {
+    int port = ((InetSocketAddress) server.localAddress()).getPort();
+    Bootstrap bootstrap =
+        new Bootstrap()
+            .channel(NioSocketChannel.class)
+            .group(eventLoop)
+            .remoteAddress("localhost", port);
+    return new Http2ChannelPool(
+        bootstrap,
+        sslCtx,
+        "localhost",
+        port,
+        /* maxConnections= */ 0,
+        /* maxStreamsPerConnection= */ 100);
+  }
+
+  /**
+   * Acquires streams until one is opened on a connection other than the given one, which shows
+   * that the pool has retired it.
+   */
+  private Channel awaitRetired(Channel connection) throws Exception {
+    long deadline = System.nanoTime() + SECONDS.toNanos(10);
+    while (true) {
+      Channel stream = pool.acquire().get(10, SECONDS);
+      pool.release(stream);
+      if (stream.parent() != connection) {
+        return connection;
+      }
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  /** Sends a GET request on the given stream and returns its response headers. */
+  private static SettableFuture<Http2HeadersFrame> get(Channel stream) {
+    SettableFuture<Http2HeadersFrame> response = SettableFuture.create();
+    stream
+        .pipeline()
+        .addLast(
+            new SimpleChannelInboundHandler<Http2HeadersFrame>() {
+              @Override
+              protected void channelRead0(ChannelHandlerContext ctx, Http2HeadersFrame headers) {
+                response.set(headers);
+              }
+            });
+    DefaultHttp2Headers request = new DefaultHttp2Headers();
+    request.method("GET").scheme("https").authority("localhost").path("/");
+    stream.writeAndFlush(new DefaultHttp2HeadersFrame(request, /* endStream= */ true));
+    return response;
+  }
+
+  private static SslContext serverSslContext(String protocol) throws Exception {
+    Runfiles runfiles = Runfiles.create();
+    return SslContextBuilder.forServer(
+            new File(runfiles.rlocation(CERTIFICATE_DIR + "server.crt")),
+            new File(runfiles.rlocation(CERTIFICATE_DIR + "server.pem")))
+        .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+        .applicationProtocolConfig(
+            new ApplicationProtocolConfig(
+                Protocol.ALPN,
+                SelectorFailureBehavior.NO_ADVERTISE,
+                SelectedListenerFailureBehavior.ACCEPT,
+                protocol))
+        .build();
+  }
+
+  private static SslContext clientSslContext() throws Exception {
+    return SslContextBuilder.forClient()
+        .trustManager(new File(Runfiles.create().rlocation(CERTIFICATE_DIR + "ca.crt")))
+        .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+        .applicationProtocolConfig(
+            new ApplicationProtocolConfig(
+                Protocol.ALPN,
+                SelectorFailureBehavior.NO_ADVERTISE,
+                SelectedListenerFailureBehavior.ACCEPT,
+                ApplicationProtocolNames.HTTP_2))
+        .build();
+  }
+
+  /** Answers every request with an empty 200 response. */
+  private static final class RespondingHandler extends ChannelInitializer<Http2StreamChannel> {
+    @Override
+    protected void initChannel(Http2StreamChannel ch) {
+      ch.pipeline()
+          .addLast(
+              new SimpleChannelInboundHandler<Http2HeadersFrame>() {
+                @Override
+                protected void channelRead0(ChannelHandlerContext ctx, Http2HeadersFrame request) {
+                  ctx.writeAndFlush(
+                      new DefaultHttp2HeadersFrame(
+                          new DefaultHttp2Headers().status("200"), /* endStream= */ true));
+                }
+              });
+    }
+  }
+
+  /**
+   * Sends a GOAWAY on the connection of every request, and leaves the request unanswered so that
+   * its stream stays active.
+   */
+  private static final class GoAwayHandler extends ChannelInitializer<Http2StreamChannel> {
+    @Override
+    protected void initChannel(Http2StreamChannel ch) {
+      ch.pipeline()
+          .addLast(
+              new SimpleChannelInboundHandler<Http2HeadersFrame>() {
+                @Override
+                protected void channelRead0(ChannelHandlerContext ctx, Http2HeadersFrame request) {
+                  ctx.channel()
+                      .parent()
+                      .writeAndFlush(new DefaultHttp2GoAwayFrame(Http2Error.NO_ERROR));
+                }
+              });
+    }
+  }
+}
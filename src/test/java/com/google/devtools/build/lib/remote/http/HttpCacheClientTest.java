@@ -32,11 +32,15 @@ import com.google.auth.Credentials;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.devtools.build.lib.remote.common.CacheNotFoundException;
 import com.google.devtools.build.lib.remote.common.RemoteActionExecutionContext;
 import com.google.devtools.build.lib.remote.util.DigestUtil;
 import com.google.devtools.build.lib.remote.util.TracingMetadataUtils;
 import com.google.devtools.build.lib.vfs.DigestHashFunction;
 import com.google.devtools.build.remote.worker.http.HttpCacheServerHandler;
+import com.google.devtools.build.remote.worker.http.HttpCacheServerInitializer;
 import com.google.protobuf.ByteString;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
@@ -269,6 +273,7 @@ public class HttpCacheClientTest {
           uri,
           timeoutSeconds,
           /* remoteMaxConnections= */ 0,
+          /* useHttp2= */ false,
           remoteVerifyDownloads,
           ImmutableList.of(),
           DIGEST_UTIL,
@@ -280,6 +285,7 @@ public class HttpCacheClientTest {
           uri,
           timeoutSeconds,
           /* remoteMaxConnections= */ 0,
+          /* useHttp2= */ false,
           remoteVerifyDownloads,
           ImmutableList.of(),
           DIGEST_UTIL,
@@ -337,6 +343,74 @@ public class HttpCacheClientTest {
     }
   }
 
+  @Test
+  public void http2_multiplexesTransfersAndFindsMissingDigests() throws Exception {
+    ConcurrentHashMap<String, byte[]> cacheContents = new ConcurrentHashMap<>();
+    EventLoopGroup eventLoop = new NioEventLoopGroup(1);
+    // The server speaks h2c to clients that send the HTTP/2 connection preface.
+    ServerChannel server =
+        (ServerChannel)
+            new ServerBootstrap()
+                .group(eventLoop)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(
+                    new HttpCacheServerInitializer(new HttpCacheServerHandler(cacheContents)))
+                .bind(new InetSocketAddress("localhost", 0))
+                .sync()
+                .channel();
+    try {
+      URI uri =
+          new URI("http://localhost:" + ((InetSocketAddress) server.localAddress()).getPort());
+      HttpCacheClient blobStore =
+          HttpCacheClient.create(
+              uri,
+              /* timeoutSeconds= */ 1,
+              /* remoteMaxConnections= */ 2,
+              /* useHttp2= */ true,
+              /* verifyDownloads= */ true,
+              ImmutableList.of(),
+              DIGEST_UTIL,
+              /* creds= */ null);
+      List<ByteString> blobs = new ArrayList<>();
+      List<Digest> digests = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        ByteString data = ByteString.copyFromUtf8("blob " + i);
+        blobs.add(data);
+        digests.add(DIGEST_UTIL.compute(data.toByteArray()));
+      }
+
+      assertThat(getFromFuture(blobStore.findMissingDigests(remoteActionExecutionContext, digests)))
+          .containsExactlyElementsIn(digests);
+
+      List<ListenableFuture<Void>> uploads = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        uploads.add(
+            blobStore.uploadBlob(remoteActionExecutionContext, digests.get(i), blobs.get(i)));
+      }
+      getFromFuture(Futures.allAsList(uploads));
+
+      assertThat(cacheContents).hasSize(5);
+      assertThat(getFromFuture(blobStore.findMissingDigests(remoteActionExecutionContext, digests)))
+          .containsExactlyElementsIn(digests.subList(5, 10));
+      for (int i = 0; i < 5; i++) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        getFromFuture(blobStore.downloadBlob(remoteActionExecutionContext, digests.get(i), out));
+        assertThat(out.toByteArray()).isEqualTo(blobs.get(i).toByteArray());
+      }
+      assertThrows(
+          CacheNotFoundException.class,
+          () ->
+              getFromFuture(
+                  blobStore.downloadBlob(
+                      remoteActionExecutionContext, digests.get(5), new ByteArrayOutputStream())));
+      blobStore.close();
+    } finally {
+      server.close();
+      server.closeFuture().sync();
+      eventLoop.shutdownGracefully().sync();
+    }
+  }
+
   @Test(expected = ConnectException.class, timeout = 30000)
   public void connectTimeout() throws Exception {
     ServerChannel server = testServer.start(new ChannelInboundHandlerAdapter() {});
@@ -14,6 +14,8 @@
 
 package com.google.devtools.build.lib.rules.cpp;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.mock;
 
@@ -31,6 +33,7 @@ import com.google.devtools.build.lib.collect.nestedset.Order;
 import com.google.devtools.build.lib.vfs.DigestHashFunction;
 import com.google.devtools.build.lib.vfs.FileSystem;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -63,6 +66,48 @@ public final class HeaderDiscoveryTest {
                     Order.STABLE_ORDER, treeArtifact(derivedRoot.getRelative("tree_artifact2")))));
   }
 
+  @Test
+  public void resolvesRelativeAndAbsoluteExecPaths() throws Exception {
+    Artifact relativeHeader =
+        ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("relative.h"));
+    Artifact absoluteHeader =
+        ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("absolute.h"));
+
+    NestedSet<Artifact> discovered =
+        HeaderDiscovery.discoverInputsFromDependencies(
+            new ActionsTestUtil.NullAction(),
+            ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("foo.cc")),
+            /*shouldValidateInclusions=*/ true,
+            ImmutableList.of(
+                relativeHeader.getExecPath(), absoluteHeader.getPath().asFragment()),
+            /*permittedSystemIncludePrefixes=*/ ImmutableList.of(),
+            NestedSetBuilder.create(Order.STABLE_ORDER, relativeHeader, absoluteHeader),
+            execRoot,
+            mock(ArtifactResolver.class),
+            /*siblingRepositoryLayout=*/ false);
+
+    assertThat(discovered.toList()).containsExactly(relativeHeader, absoluteHeader);
+  }
+
+  @Test
+  public void ignoresRelativeExecPathsUnderPermittedSystemIncludePrefixes() throws Exception {
+    Path builtinIncludes = execRoot.getRelative("external/toolchain/include");
+
+    NestedSet<Artifact> discovered =
+        HeaderDiscovery.discoverInputsFromDependencies(
+            new ActionsTestUtil.NullAction(),
+            ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("foo.cc")),
+            /*shouldValidateInclusions=*/ true,
+            ImmutableList.of(PathFragment.create("external/toolchain/include/stddef.h")),
+            /*permittedSystemIncludePrefixes=*/ ImmutableList.of(builtinIncludes),
+            NestedSetBuilder.emptySet(Order.STABLE_ORDER),
+            execRoot,
+            mock(ArtifactResolver.class),
+            /*siblingRepositoryLayout=*/ false);
+
+    assertThat(discovered.toList()).isEmpty();
+  }
+
   private void checkHeaderInclusion(
       ArtifactResolver artifactResolver,
       ImmutableList<Path> dependencies,
@@ -72,7 +117,7 @@ public final class HeaderDiscoveryTest {
         new ActionsTestUtil.NullAction(),
         ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("foo.cc")),
         /*shouldValidateInclusions=*/ true,
-        dependencies,
+        dependencies.stream().map(Path::asFragment).collect(toImmutableList()),
         /*permittedSystemIncludePrefixes=*/ ImmutableList.of(),
         includedHeaders,
         execRoot,
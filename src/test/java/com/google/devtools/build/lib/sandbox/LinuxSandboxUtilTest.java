@@ -174,4 +174,27 @@ public final class LinuxSandboxUtilTest {
 
     assertThat(commandLine).containsExactlyElementsIn(expectedCommandLine).inOrder();
   }
+
+  @Test
+  public void testLinuxSandboxCommandLineBuilder_buildsPoolArguments() {
+    Path linuxSandboxPath = testFS.getPath("/linux-sandbox");
+    Path poolDirectory = testFS.getPath("/pool");
+
+    List<String> commandLine =
+        LinuxSandboxUtil.commandLineBuilder(linuxSandboxPath, ImmutableList.of("true"))
+            .setCreateNetworkNamespace(true)
+            .setPoolDirectory(poolDirectory)
+            .build();
+    assertThat(commandLine)
+        .containsExactly(linuxSandboxPath.getPathString(), "-N", "-p", "/pool", "--", "true")
+        .inOrder();
+
+    List<String> holderCommandLine =
+        LinuxSandboxUtil.commandLineBuilder(linuxSandboxPath, ImmutableList.of())
+            .setPoolSlotDirectory(poolDirectory.getChild("0"))
+            .build();
+    assertThat(holderCommandLine)
+        .containsExactly(linuxSandboxPath.getPathString(), "-P", "/pool/0", "--")
+        .inOrder();
+  }
 }
@@ -0,0 +1,168 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.shell;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.shell.SpawnLauncherSubprocessFactory.LauncherSubprocess;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
+import com.google.devtools.build.runfiles.Runfiles;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SpawnLauncherSubprocessFactory}. */
+@RunWith(JUnit4.class)
+public final class SpawnLauncherSubprocessFactoryTest {
+
+  private SpawnLauncherSubprocessFactory factory;
+  private File tmpDir;
+
+  @Before
+  public void startLauncher() throws Exception {
+    String launcher = Runfiles.create().rlocation("io_bazel/src/main/tools/spawn-launcher");
+    factory = SpawnLauncherSubprocessFactory.start(launcher, /* killDelaySeconds= */ 1);
+    tmpDir = Files.createTempDirectory("spawn-launcher-test").toFile();
+  }
+
+  @After
+  public void stopLauncher() {
+    factory.close();
+  }
+
+  private SubprocessBuilder command(String script) {
+    return new SubprocessBuilder(factory)
+        .setArgv(ImmutableList.of("/bin/sh", "-c", script))
+        .setStdout(new File(tmpDir, "stdout"))
+        .setStderr(new File(tmpDir, "stderr"));
+  }
+
+  private String readFile(String name) throws IOException {
+    return new String(Files.readAllBytes(new File(tmpDir, name).toPath()), UTF_8);
+  }
+
+  @Test
+  public void redirectsOutputAndReportsExitValue() throws Exception {
+    Subprocess subprocess = command("echo out; echo err >&2; exit 3").start();
+    subprocess.waitFor();
+
+    assertThat(subprocess).isInstanceOf(LauncherSubprocess.class);
+    assertThat(subprocess.exitValue()).isEqualTo(3);
+    assertThat(subprocess.timedout()).isFalse();
+    assertThat(readFile("stdout")).isEqualTo("out\n");
+    assertThat(readFile("stderr")).isEqualTo("err\n");
+    assertThat(((LauncherSubprocess) subprocess).getResourceUsage().isPresent()).isTrue();
+  }
+
+  @Test
+  public void replacesExistingOutputFiles() throws Exception {
+    Files.write(new File(tmpDir, "stdout").toPath(), "stale output\n".getBytes(UTF_8));
+
+    Subprocess subprocess = command("echo fresh").start();
+    subprocess.waitFor();
+
+    assertThat(readFile("stdout")).isEqualTo("fresh\n");
+  }
+
+  @Test
+  public void setsEnvironmentAndWorkingDirectory() throws Exception {
+    Subprocess subprocess =
+        new SubprocessBuilder(factory)
+            .setArgv(ImmutableList.of("sh", "-c", "echo $FOO; pwd"))
+            .setEnv(ImmutableMap.of("FOO", "bar"))
+            .setWorkingDirectory(tmpDir)
+            .setStdout(new File(tmpDir, "stdout"))
+            .setStderr(StreamAction.DISCARD)
+            .start();
+    subprocess.waitFor();
+
+    assertThat(subprocess.exitValue()).isEqualTo(0);
+    assertThat(readFile("stdout")).isEqualTo("bar\n" + tmpDir.getCanonicalPath() + "\n");
+  }
+
+  @Test
+  public void timesOut() throws Exception {
+    Subprocess subprocess = command("sleep 60").setTimeoutMillis(100).start();
+    subprocess.waitFor();
+
+    assertThat(subprocess.timedout()).isTrue();
+    assertThat(subprocess.exitValue()).isEqualTo(128 + 15);
+  }
+
+  @Test
+  public void killsIgnoringProcessAfterKillDelay() throws Exception {
+    Subprocess subprocess = command("trap '' TERM; sleep 60").setTimeoutMillis(100).start();
+    subprocess.waitFor();
+
+    assertThat(subprocess.timedout()).isTrue();
+    assertThat(subprocess.exitValue()).isEqualTo(128 + 9);
+  }
+
+  @Test
+  public void destroyKillsProcess() throws Exception {
+    Subprocess subprocess = command("sleep 60").start();
+    assertThat(subprocess.isAlive()).isTrue();
+
+    subprocess.destroy();
+    subprocess.waitFor();
+
+    assertThat(subprocess.finished()).isTrue();
+    assertThat(subprocess.exitValue()).isEqualTo(128 + 9);
+  }
+
+  @Test
+  public void missingBinaryThrows() {
+    SubprocessBuilder builder =
+        new SubprocessBuilder(factory)
+            .setArgv(ImmutableList.of(tmpDir + "/does-not-exist"))
+            .setStdout(StreamAction.DISCARD)
+            .setStderr(StreamAction.DISCARD);
+
+    IOException e = assertThrows(IOException.class, builder::start);
+    assertThat(e).hasMessageThat().contains("does-not-exist");
+  }
+
+  @Test
+  public void streamingFallsBackToForking() throws Exception {
+    Subprocess subprocess =
+        new SubprocessBuilder(factory).setArgv(ImmutableList.of("/bin/sh", "-c", "true")).start();
+    subprocess.waitFor();
+
+    assertThat(subprocess).isNotInstanceOf(LauncherSubprocess.class);
+    assertThat(subprocess.exitValue()).isEqualTo(0);
+  }
+
+  @Test
+  public void childOnlyInheritsStandardStreams() throws Exception {
+    assumeTrue(new File("/proc/self/fd").isDirectory());
+
+    // Lists the descriptors of the shell, not those of ls.
+    Subprocess subprocess = command("ls /proc/$$/fd").start();
+    subprocess.waitFor();
+
+    assertThat(subprocess.exitValue()).isEqualTo(0);
+    assertThat(readFile("stdout")).isEqualTo("0\n1\n2\n");
+  }
+}
@@ -23,6 +23,7 @@ import com.google.devtools.build.lib.testutil.Scratch;
 import com.google.devtools.build.lib.vfs.FileSystem;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Collection;
@@ -236,6 +237,20 @@ public class DependencySetTest {
     assertThat(depset.getDependencies()).isEmpty();
   }
 
+  @Test
+  public void dotDParser_keepsRelativeDependenciesRelative() throws Exception {
+    Path file1 = fileSystem.getPath("/usr/local/blah/blah/genhello/hello.h");
+    Path dotd =
+        scratch.file("/tmp/foo.d", "hello.o: \\", " bazel-out/hello.cc \\", " " + file1);
+    DependencySet depset = newDependencySet().read(dotd);
+    assertThat(depset.getDependencyFragments())
+        .containsExactly(PathFragment.create("bazel-out/hello.cc"), file1.asFragment())
+        .inOrder();
+    assertThat(depset.getDependencies())
+        .containsExactly(root.getRelative("bazel-out/hello.cc"), file1)
+        .inOrder();
+  }
+
   @Test
   public void writeSet() throws Exception {
     Path file1 = fileSystem.getPath("/usr/local/blah/blah/genhello/hello.cc");
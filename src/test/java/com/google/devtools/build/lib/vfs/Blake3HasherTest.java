@@ -0,0 +1,135 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.vfs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link Blake3Hasher}. */
+@RunWith(JUnit4.class)
+public class Blake3HasherTest {
+
+  /** Returns the input used by the official BLAKE3 test vectors: bytes cycling through 0..250. */
+  private static byte[] testInput(int len) {
+    byte[] input = new byte[len];
+    for (int i = 0; i < len; i++) {
+      input[i] = (byte) (i % 251);
+    }
+    return input;
+  }
+
+  private static String hash(byte[] input) {
+    Blake3Hasher hasher = new Blake3Hasher();
+    hasher.update(input, 0, input.length);
+    return HashCode.fromBytes(hasher.finish()).toString();
+  }
+
+  @Test
+  public void matchesOfficialTestVectors() {
+    assertThat(hash(testInput(0)))
+        .isEqualTo("af1349b9f5f9a1a6a0404dea36dcc9499bcb25c9adc112b7cc9a93cae41f3262");
+    assertThat(hash(testInput(1)))
+        .isEqualTo("2d3adedff11b61f14c886e35afa036736dcd87a74d27b5c1510225d0f592e213");
+    assertThat(hash(testInput(1023)))
+        .isEqualTo("10108970eeda3eb932baac1428c7a2163b0e924c9a9e25b35bba72b28f70bd11");
+    assertThat(hash(testInput(1024)))
+        .isEqualTo("42214739f095a406f3fc83deb889744ac00df831c10daa55189b5d121c855af7");
+    assertThat(hash(testInput(1025)))
+        .isEqualTo("d00278ae47eb27b34faecf67b4fe263f82d5412916c1ffd97c8cb7fb814b8444");
+    assertThat(hash(testInput(3072)))
+        .isEqualTo("b98cb0ff3623be03326b373de6b9095218513e64f1ee2edd2525c7ad1e5cffd2");
+    assertThat(hash(testInput(31744)))
+        .isEqualTo("62b6960e1a44bcc1eb1a611a8d6235b6b4b78f32e7abc4fb4c6cdcce94895c47");
+  }
+
+  @Test
+  public void incrementalUpdatesMatchSingleUpdate() {
+    byte[] input = testInput(5000);
+    Blake3Hasher hasher = new Blake3Hasher();
+    int offset = 0;
+    for (int step = 1; offset < input.length; step = step * 3 % 257 + 1) {
+      int len = Math.min(step, input.length - offset);
+      hasher.update(input, offset, len);
+      offset += len;
+    }
+    assertThat(HashCode.fromBytes(hasher.finish()).toString()).isEqualTo(hash(input));
+  }
+
+  @Test
+  public void parallelHashMatchesSequentialHash() throws Exception {
+    int subtree = Blake3Hasher.PARALLEL_SUBTREE_LEN;
+    for (int len :
+        new int[] {0, 1, subtree - 1, subtree, subtree + 1, 2 * subtree, 3 * subtree + 7,
+            5 * subtree}) {
+      byte[] input = testInput(len);
+      byte[] parallel = Blake3Hasher.hashParallel(new ByteArrayInputStream(input));
+      assertThat(HashCode.fromBytes(parallel).toString()).isEqualTo(hash(input));
+    }
+  }
+
+  @Test
+  public void concurrentParallelHashesMatchSequentialHash() throws Exception {
+    // More concurrent calls than the shared budget of pending subtrees allows, so that some of
+    // them hash their subtrees on the calling thread.
+    int calls = 4 * Runtime.getRuntime().availableProcessors();
+    byte[] input = testInput(5 * Blake3Hasher.PARALLEL_SUBTREE_LEN + 3);
+    String expected = hash(input);
+    ExecutorService executor = Executors.newFixedThreadPool(calls);
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < calls; i++) {
+        results.add(
+            executor.submit(() -> Blake3Hasher.hashParallel(new ByteArrayInputStream(input))));
+      }
+      for (Future<byte[]> result : results) {
+        assertThat(HashCode.fromBytes(result.get()).toString()).isEqualTo(expected);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void messageDigestIsNotInstalledAsSecurityProvider() {
+    assertThat(DigestHashFunction.BLAKE3.cloneOrCreateMessageDigest()).isNotNull();
+    assertThrows(NoSuchAlgorithmException.class, () -> MessageDigest.getInstance("BLAKE3"));
+  }
+
+  @Test
+  public void messageDigestIsRegisteredAndCloneable() throws Exception {
+    assertThat(DigestHashFunction.BLAKE3.toString()).isEqualTo("BLAKE3");
+    MessageDigest digest = DigestHashFunction.BLAKE3.cloneOrCreateMessageDigest();
+    byte[] input = testInput(2000);
+    digest.update(input, 0, 1500);
+    MessageDigest copy = (MessageDigest) digest.clone();
+    copy.update(input, 1500, 500);
+    assertThat(HashCode.fromBytes(copy.digest()).toString()).isEqualTo(hash(input));
+    digest.update(input, 1500, 500);
+    assertThat(HashCode.fromBytes(digest.digest()).toString()).isEqualTo(hash(input));
+  }
+}
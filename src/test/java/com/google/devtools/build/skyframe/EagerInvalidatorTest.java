@@ -421,6 +421,28 @@ public class EagerInvalidatorTest {
     invalidateWithoutError(new DirtyTrackingProgressReceiver(null), leafKey);
   }
 
+  @Test
+  public void wideGraph() throws Exception {
+    graph = new InMemoryGraphImpl();
+    int width = 1000;
+    SkyKey leafKey = GraphTester.nonHermeticKey("leaf");
+    SkyKey topKey = GraphTester.skyKey("top");
+    for (int i = 0; i < width; i++) {
+      SkyKey parentKey = GraphTester.skyKey(Integer.toString(i));
+      tester.getOrCreate(parentKey).addDependency(leafKey).setComputedValue(CONCATENATE);
+      tester.getOrCreate(topKey).addDependency(parentKey);
+    }
+    tester.getOrCreate(topKey).setComputedValue(CONCATENATE);
+    tester.set(leafKey, new StringValue("leaf"));
+    eval(/*keepGoing=*/ false, topKey);
+    invalidateWithoutError(new DirtyTrackingProgressReceiver(null), leafKey);
+    assertChanged(leafKey);
+    for (int i = 0; i < width; i++) {
+      assertDirtyAndNotChanged(GraphTester.skyKey(Integer.toString(i)));
+    }
+    assertDirtyAndNotChanged(topKey);
+  }
+
   private SkyKey[] constructLargeGraph(int size) {
     Random random = new Random(TestUtils.getRandomSeed());
     SkyKey[] values = new SkyKey[size];
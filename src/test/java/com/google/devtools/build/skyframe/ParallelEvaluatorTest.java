@@ -53,6 +53,7 @@ import com.google.devtools.build.skyframe.NotifyingHelper.Listener;
 import com.google.devtools.build.skyframe.NotifyingHelper.Order;
 import com.google.devtools.build.skyframe.SkyFunctionException.Transience;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -197,6 +198,52 @@ public class ParallelEvaluatorTest {
     assertThat(result.get(parentKey)).isEqualTo(new StringValue("good"));
   }
 
+  private static class ComputeCountState implements SkyKeyComputeState {
+    int computeCount;
+  }
+
+  @Test
+  public void computeStateRetainedAcrossRestarts() throws Exception {
+    SkyKey parentKey = GraphTester.toSkyKey("parent");
+    SkyKey firstChildKey = GraphTester.toSkyKey("firstChild");
+    SkyKey secondChildKey = GraphTester.toSkyKey("secondChild");
+    set("firstChild", "first");
+    set("secondChild", "second");
+    List<ComputeCountState> states = Collections.synchronizedList(new ArrayList<>());
+    tester
+        .getOrCreate(parentKey)
+        .setBuilder(
+            new SkyFunction() {
+              @Override
+              public SkyValue compute(SkyKey skyKey, Environment env) throws InterruptedException {
+                ComputeCountState state = env.getState(ComputeCountState::new);
+                states.add(state);
+                state.computeCount++;
+                if (env.getValue(firstChildKey) == null) {
+                  return null;
+                }
+                if (env.getValue(secondChildKey) == null) {
+                  return null;
+                }
+                return new StringValue(Integer.toString(state.computeCount));
+              }
+
+              @Override
+              public String extractTag(SkyKey skyKey) {
+                return null;
+              }
+            });
+    graph = new InMemoryGraphImpl();
+
+    EvaluationResult<StringValue> result = eval(/*keepGoing=*/ false, ImmutableList.of(parentKey));
+
+    assertThat(result.hasError()).isFalse();
+    // Computed once initially and once after each of the two missing children was done, always
+    // with the same state.
+    assertThat(result.get(parentKey)).isEqualTo(new StringValue("3"));
+    assertThat(ImmutableSet.copyOf(states)).hasSize(1);
+  }
+
   @Test
   public void enqueueBadFuture() throws Exception {
     final SkyKey parentKey = GraphTester.toSkyKey("parentKey");
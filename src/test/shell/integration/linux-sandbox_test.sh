@@ -388,6 +388,95 @@ function test_child_ignores_sigterm_and_sigalrm_no_kill_delay() {
   assert_equals 137 "$code" # SIGNAL_BASE + SIGTERM = 128 + 9
 }
 
+# The PIDs of the slot holders started by start_pool_slot, and the file
+# descriptors that keep their stdin open.
+pool_slot_pids=()
+pool_slot_fds=()
+
+function start_pool_slot() {
+  local slot="$1"; shift
+
+  # The slot is held until its stdin is closed by stop_pool_slots.
+  mkfifo "${slot}.stdin"
+  $linux_sandbox -P "$slot" "$@" < "${slot}.stdin" &> "${slot}.log" &
+  pool_slot_pids+=($!)
+  local fd
+  exec {fd}> "${slot}.stdin"
+  pool_slot_fds+=($fd)
+  until test -f "$slot/pid"; do sleep 0.1; done
+}
+
+function stop_pool_slots() {
+  local fd
+  for fd in "${pool_slot_fds[@]}"; do
+    exec {fd}>&-
+  done
+  wait "${pool_slot_pids[@]}" || true
+  pool_slot_pids=()
+  pool_slot_fds=()
+}
+
+function test_pool_runs_command_in_prepared_namespaces() {
+  local pool="${OUT_DIR}/pool"
+  mkdir -p "$pool"
+  start_pool_slot "$pool/0"
+
+  $linux_sandbox $SANDBOX_DEFAULT_OPTS -p "$pool" -D -- /bin/bash -c \
+    'touch written; (sleep 1000 &); exit 42' &> $TEST_log || code=$?
+  assert_equals 42 "$code"
+  expect_log "using pool slot"
+  test -f "$SANDBOX_DIR/written" || fail "working directory is not writable"
+
+  # The process left behind by the first command must be gone.
+  $linux_sandbox $SANDBOX_DEFAULT_OPTS -p "$pool" -- /bin/bash -c \
+    'for p in /proc/[0-9]*; do read c < $p/comm; echo $c; done' \
+    &> $TEST_log || fail
+  expect_log "^bash$"
+  expect_not_log "^sleep$"
+
+  $linux_sandbox $SANDBOX_DEFAULT_OPTS -p "$pool" -- /bin/bash -c \
+    'touch /not-writable' &> $TEST_log && fail "root should be read-only"
+  expect_log "Read-only file system"
+
+  stop_pool_slots
+}
+
+function test_pool_gives_each_command_fresh_ipc_and_uts_namespaces() {
+  if ! type ipcmk ipcs &> /dev/null; then
+    echo "Skipping test: ipcmk and ipcs are not available" >&2
+    return 0
+  fi
+  local pool="${OUT_DIR}/pool"
+  mkdir -p "$pool"
+  start_pool_slot "$pool/0" -R -H
+
+  $linux_sandbox $SANDBOX_DEFAULT_OPTS -p "$pool" -R -H -D -- /bin/bash -c \
+    'ipcmk -M 4096 && ipcmk -Q && hostname changed' &> $TEST_log || fail
+  expect_log "using pool slot"
+
+  $linux_sandbox $SANDBOX_DEFAULT_OPTS -p "$pool" -R -H -D -- /bin/bash -c \
+    'hostname; ipcs -m -q' &> $TEST_log || fail
+  expect_log "using pool slot"
+  expect_log "^localhost$"
+  expect_not_log "^changed$"
+  expect_not_log "^0x"
+
+  stop_pool_slots
+}
+
+function test_pool_is_not_used_with_other_options() {
+  local pool="${OUT_DIR}/pool"
+  mkdir -p "$pool"
+  start_pool_slot "$pool/0"
+
+  $linux_sandbox $SANDBOX_DEFAULT_OPTS -p "$pool" -R -D -- /usr/bin/id \
+    &> $TEST_log || fail
+  expect_log "uid=0(root)"
+  expect_log "no free pool slot"
+
+  stop_pool_slots
+}
+
 # The test shouldn't fail if the environment doesn't support running it.
 [[ "$(uname -s)" = Linux ]] || exit 0
 check_sandbox_allowed || exit 0
@@ -24,6 +24,7 @@ import com.google.bytestream.ByteStreamProto.ReadResponse;
 import com.google.bytestream.ByteStreamProto.WriteRequest;
 import com.google.bytestream.ByteStreamProto.WriteResponse;
 import com.google.common.flogger.GoogleLogger;
+import com.google.common.io.ByteStreams;
 import com.google.devtools.build.lib.remote.Chunker;
 import com.google.devtools.build.lib.remote.common.CacheNotFoundException;
 import com.google.devtools.build.lib.remote.common.RemoteActionExecutionContext;
@@ -35,8 +36,11 @@ import io.grpc.Status;
 import io.grpc.protobuf.StatusProto;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.UUID;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import javax.annotation.Nullable;
 
 /** A basic implementation of a {@link ByteStreamImplBase} service. */
@@ -46,6 +50,17 @@ final class ByteStreamServer extends ByteStreamImplBase {
   private final Path workPath;
   private final DigestUtil digestUtil;
 
+  /**
+   * Returns whether the resource name refers to a DEFLATE compressed blob, i.e. is of the form
+   * {@code .../compressed-blobs/deflate/{hash}/{size}}.
+   */
+  static boolean isCompressedResourceName(String resourceName) {
+    String[] tokens = resourceName.split("/");
+    return tokens.length >= 4
+        && tokens[tokens.length - 4].equals("compressed-blobs")
+        && tokens[tokens.length - 3].equals("deflate");
+  }
+
   @Nullable
   static Digest parseDigestFromResourceName(String resourceName) {
     try {
@@ -84,7 +99,10 @@ final class ByteStreamServer extends ByteStreamImplBase {
       // This still relies on the blob size to be small enough to fit in memory.
       // TODO(olaola): refactor to fix this if the need arises.
       Chunker c =
-          Chunker.builder().setInput(getFromFuture(cache.downloadBlob(context, digest))).build();
+          Chunker.builder()
+              .setInput(getFromFuture(cache.downloadBlob(context, digest)))
+              .setCompressed(isCompressedResourceName(request.getResourceName()))
+              .build();
       while (c.hasNext()) {
         responseObserver.onNext(
             ReadResponse.newBuilder().setData(c.next().getData()).build());
@@ -118,6 +136,8 @@ final class ByteStreamServer extends ByteStreamImplBase {
       private Digest digest;
       private long offset;
       private String resourceName;
+      private boolean compressed;
+      private boolean finished;
       private boolean closed;
 
       @Override
@@ -129,6 +149,7 @@ final class ByteStreamServer extends ByteStreamImplBase {
         if (digest == null) {
           resourceName = request.getResourceName();
           digest = parseDigestFromResourceName(resourceName);
+          compressed = isCompressedResourceName(resourceName);
         }
 
         if (digest == null) {
@@ -142,8 +163,10 @@ final class ByteStreamServer extends ByteStreamImplBase {
 
         if (offset == 0) {
           if (cache.containsKey(digest)) {
+            // The size of the compressed data is unknown, which is signalled with -1.
+            long committedSize = compressed ? -1 : digest.getSizeBytes();
             responseObserver.onNext(
-                WriteResponse.newBuilder().setCommittedSize(digest.getSizeBytes()).build());
+                WriteResponse.newBuilder().setCommittedSize(committedSize).build());
             responseObserver.onCompleted();
             closed = true;
             return;
@@ -182,7 +205,9 @@ final class ByteStreamServer extends ByteStreamImplBase {
           offset += size;
         }
 
-        boolean shouldFinishWrite = offset == digest.getSizeBytes();
+        finished = request.getFinishWrite();
+        // The compressed size is only known to the client.
+        boolean shouldFinishWrite = compressed ? finished : offset == digest.getSizeBytes();
 
         if (shouldFinishWrite != request.getFinishWrite()) {
           responseObserver.onError(
@@ -213,7 +238,7 @@ final class ByteStreamServer extends ByteStreamImplBase {
           return;
         }
 
-        if (digest == null || offset != digest.getSizeBytes()) {
+        if (digest == null || (compressed ? !finished : offset != digest.getSizeBytes())) {
           responseObserver.onError(
               StatusProto.toStatusRuntimeException(
                   com.google.rpc.Status.newBuilder()
@@ -225,13 +250,19 @@ final class ByteStreamServer extends ByteStreamImplBase {
         }
 
         try {
-          Digest d = digestUtil.compute(temp);
-          getFromFuture(cache.uploadFile(context, d, temp));
+          Path blob = compressed ? decompress(temp) : temp;
+          Digest d = digestUtil.compute(blob);
+          getFromFuture(cache.uploadFile(context, d, blob));
           try {
             temp.delete();
+            blob.delete();
           } catch (IOException e) {
             logger.atWarning().withCause(e).log("Could not delete temp file");
           }
+          if (compressed) {
+            logger.atFine().log(
+                "Received %d compressed bytes for blob %s", offset, DigestUtil.toString(d));
+          }
 
           if (!d.equals(digest)) {
             responseObserver.onError(
@@ -253,6 +284,19 @@ final class ByteStreamServer extends ByteStreamImplBase {
     };
   }
 
+  /** Decompresses the raw DEFLATE data in {@code compressed} into a sibling file. */
+  private static Path decompress(Path compressed) throws IOException {
+    Path decompressed = compressed.getParentDirectory().getChild(compressed.getBaseName() + ".raw");
+    Inflater inflater = new Inflater(/* nowrap= */ true);
+    try (InputStream in = new InflaterInputStream(compressed.getInputStream(), inflater);
+        OutputStream out = decompressed.getOutputStream()) {
+      ByteStreams.copy(in, out);
+    } finally {
+      inflater.end();
+    }
+    return decompressed;
+  }
+
   private static class NoOpStreamObserver<T> implements StreamObserver<T> {
     @Override
     public void onNext(T value) {
@@ -17,6 +17,7 @@ package com.google.devtools.build.remote.worker;
 import build.bazel.remote.execution.v2.ActionCacheUpdateCapabilities;
 import build.bazel.remote.execution.v2.CacheCapabilities;
 import build.bazel.remote.execution.v2.CapabilitiesGrpc.CapabilitiesImplBase;
+import build.bazel.remote.execution.v2.Compressor;
 import build.bazel.remote.execution.v2.DigestFunction;
 import build.bazel.remote.execution.v2.ExecutionCapabilities;
 import build.bazel.remote.execution.v2.GetCapabilitiesRequest;
@@ -53,6 +54,7 @@ final class CapabilitiesServer extends CapabilitiesImplBase {
                     .setActionCacheUpdateCapabilities(
                         ActionCacheUpdateCapabilities.newBuilder().setUpdateEnabled(true).build())
                     .setMaxBatchTotalSizeBytes(CasServer.MAX_BATCH_SIZE_BYTES)
+                    .addSupportedCompressors(Compressor.Value.DEFLATE)
                     .build());
     if (execEnabled) {
       response.setExecutionCapabilities(
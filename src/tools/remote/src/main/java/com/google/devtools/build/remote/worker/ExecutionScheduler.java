@@ -0,0 +1,147 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.rpc.Code;
+import com.google.rpc.Status;
+import io.grpc.StatusException;
+import io.grpc.protobuf.StatusProto;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Runs the actions of the {@link ExecutionServer} on a fixed number of threads.
+ *
+ * <p>Waiting actions are kept in one FIFO queue per platform, and the queues take turns whenever a
+ * thread becomes free. A burst of actions for one platform therefore doesn't delay the actions of
+ * all other platforms until it is done. The total number of waiting actions is bounded; requests
+ * beyond that are rejected, so that clients back off instead of piling up work that would time out
+ * before it starts.
+ */
+final class ExecutionScheduler {
+
+  /** An action waiting to run. */
+  private static final class QueuedAction {
+    final ListenableFutureTask<?> task;
+    final long enqueuedNanos;
+
+    QueuedAction(ListenableFutureTask<?> task, long enqueuedNanos) {
+      this.task = task;
+      this.enqueuedNanos = enqueuedNanos;
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final int maxQueuedActions;
+  private final WorkerMetrics metrics;
+
+  /**
+   * The non-empty queues of waiting actions by platform. The queue whose turn it is comes first;
+   * queues move to the back after one of their actions was started.
+   */
+  @GuardedBy("this")
+  private final LinkedHashMap<String, ArrayDeque<QueuedAction>> queues = new LinkedHashMap<>();
+
+  @GuardedBy("this")
+  private int queuedActions;
+
+  ExecutionScheduler(int jobs, int maxQueuedActions, WorkerMetrics metrics) {
+    this.maxQueuedActions = maxQueuedActions;
+    this.metrics = metrics;
+    this.executor =
+        new ThreadPoolExecutor(
+            // This is the max number of concurrent jobs.
+            jobs,
+            // The executor ignores this value with an unbounded queue, but it still checks that it
+            // is greater or equal to the value above.
+            jobs,
+            // Shut down idle threads after one minute. Threads aren't all that expensive, but we
+            // also don't need to keep them around if we don't need them.
+            1,
+            TimeUnit.MINUTES,
+            // Each entry only tells a thread to start the next action in turn, and there is one
+            // entry per action in the (bounded) platform queues.
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("subprocess-handler-%d").build());
+    // Allow the core threads to die.
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Queues an action for the given platform.
+   *
+   * @throws StatusException with code {@code RESOURCE_EXHAUSTED} if too many actions are waiting
+   */
+  <T> ListenableFuture<T> submit(String platform, Callable<T> action) throws StatusException {
+    ListenableFutureTask<T> task = ListenableFutureTask.create(action);
+    synchronized (this) {
+      if (queuedActions >= maxQueuedActions) {
+        metrics.add(WorkerMetrics.ACTIONS_REJECTED, 1);
+        throw StatusProto.toStatusException(
+            Status.newBuilder()
+                .setCode(Code.RESOURCE_EXHAUSTED.getNumber())
+                .setMessage(
+                    String.format(
+                        "Too many queued actions (%d), try again later", queuedActions))
+                .build());
+      }
+      queues
+          .computeIfAbsent(platform, k -> new ArrayDeque<>())
+          .add(new QueuedAction(task, System.nanoTime()));
+      queuedActions++;
+    }
+    metrics.add(WorkerMetrics.ACTIONS_QUEUED, platform, 1);
+    executor.execute(this::runNext);
+    return task;
+  }
+
+  /** Runs the next action in turn. Called exactly once for every queued action. */
+  private void runNext() {
+    String platform;
+    QueuedAction next;
+    synchronized (this) {
+      Iterator<Map.Entry<String, ArrayDeque<QueuedAction>>> it = queues.entrySet().iterator();
+      Map.Entry<String, ArrayDeque<QueuedAction>> first = it.next();
+      platform = first.getKey();
+      ArrayDeque<QueuedAction> queue = first.getValue();
+      next = queue.remove();
+      it.remove();
+      if (!queue.isEmpty()) {
+        queues.put(platform, queue);
+      }
+      queuedActions--;
+    }
+    long startNanos = System.nanoTime();
+    metrics.add(WorkerMetrics.ACTIONS_QUEUED, platform, -1);
+    metrics.add(WorkerMetrics.QUEUE_TIME, startNanos - next.enqueuedNanos);
+    metrics.add(WorkerMetrics.ACTIONS_RUNNING, platform, 1);
+    try {
+      next.task.run();
+    } finally {
+      metrics.add(WorkerMetrics.ACTIONS_RUNNING, platform, -1);
+      metrics.add(WorkerMetrics.EXECUTION_TIME, System.nanoTime() - startNanos);
+    }
+  }
+}
@@ -30,10 +30,9 @@ import build.bazel.remote.execution.v2.RequestMetadata;
 import build.bazel.remote.execution.v2.WaitExecutionRequest;
 import com.google.common.base.Throwables;
 import com.google.common.flogger.GoogleLogger;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.remote.ExecutionStatusException;
 import com.google.devtools.build.lib.remote.common.CacheNotFoundException;
@@ -71,8 +70,6 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -97,8 +94,10 @@ final class ExecutionServer extends ExecutionImplBase {
   private final RemoteWorkerOptions workerOptions;
   private final OnDiskBlobStoreCache cache;
   private final ConcurrentHashMap<String, ListenableFuture<ActionResult>> operationsCache;
-  private final ListeningExecutorService executorService;
+  private final ExecutionScheduler scheduler;
   private final DigestUtil digestUtil;
+  private final WorkerMetrics metrics;
+  @Nullable private final InputStagingCache inputStagingCache;
 
   public ExecutionServer(
       Path workPath,
@@ -106,32 +105,19 @@ final class ExecutionServer extends ExecutionImplBase {
       RemoteWorkerOptions workerOptions,
       OnDiskBlobStoreCache cache,
       ConcurrentHashMap<String, ListenableFuture<ActionResult>> operationsCache,
-      DigestUtil digestUtil) {
+      DigestUtil digestUtil,
+      WorkerMetrics metrics,
+      @Nullable InputStagingCache inputStagingCache) {
     this.workPath = workPath;
     this.sandboxPath = sandboxPath;
     this.workerOptions = workerOptions;
     this.cache = cache;
     this.operationsCache = operationsCache;
     this.digestUtil = digestUtil;
-    ThreadPoolExecutor realExecutor =
-        new ThreadPoolExecutor(
-            // This is actually the max number of concurrent jobs.
-            workerOptions.jobs,
-            // Since we use an unbounded queue, the executor ignores this value, but it still checks
-            // that it is greater or equal to the value above.
-            workerOptions.jobs,
-            // Shut down idle threads after one minute. Threads aren't all that expensive, but we
-            // also
-            // don't need to keep them around if we don't need them.
-            1,
-            TimeUnit.MINUTES,
-            // We use an unbounded queue for now.
-            // TODO(ulfjack): We need to reject work eventually.
-            new LinkedBlockingQueue<>(),
-            new ThreadFactoryBuilder().setNameFormat("subprocess-handler-%d").build());
-    // Allow the core threads to die.
-    realExecutor.allowCoreThreadTimeOut(true);
-    this.executorService = MoreExecutors.listeningDecorator(realExecutor);
+    this.metrics = metrics;
+    this.inputStagingCache = inputStagingCache;
+    this.scheduler =
+        new ExecutionScheduler(workerOptions.jobs, workerOptions.maxQueuedActions, metrics);
   }
 
   @Override
@@ -204,8 +190,30 @@ final class ExecutionServer extends ExecutionImplBase {
     RemoteActionExecutionContext context = RemoteActionExecutionContext.create(metadata);
 
     final String opName = UUID.randomUUID().toString();
-    ListenableFuture<ActionResult> future =
-        executorService.submit(() -> execute(context, request, opName));
+    ListenableFuture<ActionResult> future;
+    try {
+      Action action =
+          Action.parseFrom(
+              getFromFuture(cache.downloadBlob(context, request.getActionDigest())),
+              ExtensionRegistry.getEmptyRegistry());
+      Command command =
+          Command.parseFrom(
+              getFromFuture(cache.downloadBlob(context, action.getCommandDigest())),
+              ExtensionRegistry.getEmptyRegistry());
+      Platform platform = action.hasPlatform() ? action.getPlatform() : command.getPlatform();
+      future =
+          scheduler.submit(
+              platformAsString(platform),
+              () -> execute(context, request.getActionDigest(), action, command, opName));
+    } catch (StatusException e) {
+      // Too many actions are queued already.
+      responseObserver.onError(e);
+      return;
+    } catch (CacheNotFoundException e) {
+      future = Futures.immediateFailedFuture(StatusUtils.notFoundError(e.getMissingDigest()));
+    } catch (IOException | InterruptedException e) {
+      future = Futures.immediateFailedFuture(e);
+    }
     operationsCache.put(opName, future);
     // Send the first operation.
     responseObserver.onNext(Operation.newBuilder().setName(opName).build());
@@ -215,7 +223,11 @@ final class ExecutionServer extends ExecutionImplBase {
 
   @SuppressWarnings("LogAndThrow")
   private ActionResult execute(
-      RemoteActionExecutionContext context, ExecuteRequest request, String id)
+      RemoteActionExecutionContext context,
+      Digest actionDigest,
+      Action action,
+      Command command,
+      String id)
       throws IOException, InterruptedException, StatusException {
     Path tempRoot = workPath.getRelative("build-" + id);
     String workDetails = "";
@@ -227,11 +239,13 @@ final class ExecutionServer extends ExecutionImplBase {
               "build-request-id: %s command-id: %s action-id: %s",
               meta.getCorrelatedInvocationsId(), meta.getToolInvocationId(), meta.getActionId());
       logger.atFine().log("Received work for: %s", workDetails);
-      ActionResult result = execute(context, request.getActionDigest(), tempRoot);
+      ActionResult result = execute(context, actionDigest, action, command, tempRoot);
       logger.atFine().log("Completed %s", workDetails);
+      metrics.add(WorkerMetrics.ACTIONS, "success", 1);
       return result;
     } catch (Exception e) {
       logger.atSevere().withCause(e).log("Work failed: %s", workDetails);
+      metrics.add(WorkerMetrics.ACTIONS, "failure", 1);
       throw e;
     } finally {
       if (workerOptions.debug) {
@@ -247,21 +261,15 @@ final class ExecutionServer extends ExecutionImplBase {
   }
 
   private ActionResult execute(
-      RemoteActionExecutionContext context, Digest actionDigest, Path execRoot)
+      RemoteActionExecutionContext context,
+      Digest actionDigest,
+      Action action,
+      Command command,
+      Path execRoot)
       throws IOException, InterruptedException, StatusException {
-    Command command;
-    Action action;
     ActionKey actionKey = digestUtil.asActionKey(actionDigest);
     try {
-      action =
-          Action.parseFrom(
-              getFromFuture(cache.downloadBlob(context, actionDigest)),
-              ExtensionRegistry.getEmptyRegistry());
-      command =
-          Command.parseFrom(
-              getFromFuture(cache.downloadBlob(context, action.getCommandDigest())),
-              ExtensionRegistry.getEmptyRegistry());
-      cache.downloadTree(context, action.getInputRootDigest(), execRoot);
+      cache.downloadTree(context, action.getInputRootDigest(), execRoot, inputStagingCache);
     } catch (CacheNotFoundException e) {
       throw StatusUtils.notFoundError(e.getMissingDigest());
     }
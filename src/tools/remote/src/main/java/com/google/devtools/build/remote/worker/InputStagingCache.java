@@ -0,0 +1,128 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import build.bazel.remote.execution.v2.Digest;
+import com.google.common.flogger.GoogleLogger;
+import com.google.devtools.build.lib.remote.RemoteCache;
+import com.google.devtools.build.lib.remote.common.RemoteActionExecutionContext;
+import com.google.devtools.build.lib.remote.util.DigestUtil;
+import com.google.devtools.build.lib.remote.util.Utils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Read-only copies of input files, keyed by digest, that are hard-linked into the execution roots
+ * of actions.
+ *
+ * <p>Without it, every input of every action is copied out of the CAS, which dominates the time it
+ * takes to run actions with many or large inputs. The copies must be on the same file system as
+ * the execution roots. Executable and non-executable copies are kept apart, as they can't share an
+ * inode. Copies are deleted when their blob is evicted from the CAS.
+ *
+ * <p>Actions that run as the same user as the worker can make a staged copy writable and modify
+ * it. Each copy is therefore checked to be read-only and to still match its digest before it is
+ * linked into another execution root, and staged again otherwise. This doesn't protect actions
+ * that run at the same time as the one that modifies the copy.
+ */
+final class InputStagingCache {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  private final Path root;
+  private final RemoteCache cache;
+  private final DigestUtil digestUtil;
+  private final WorkerMetrics metrics;
+
+  InputStagingCache(Path root, RemoteCache cache, DigestUtil digestUtil, WorkerMetrics metrics) {
+    this.root = root;
+    this.cache = cache;
+    this.digestUtil = digestUtil;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Creates {@code dst} as a hard link to the staged copy of the given blob, staging it first if
+   * necessary or if the staged copy was modified. Falls back to a plain copy if {@code dst} can't
+   * be linked.
+   */
+  void stage(RemoteActionExecutionContext context, Digest digest, boolean isExecutable, Path dst)
+      throws IOException, InterruptedException {
+    Path staged = toPath(digest.getHash(), isExecutable);
+    if (!staged.exists()) {
+      metrics.add(WorkerMetrics.INPUT_FILES_STAGED, "miss", 1);
+      download(context, digest, isExecutable, staged);
+    } else if (isIntact(staged, digest, isExecutable)) {
+      metrics.add(WorkerMetrics.INPUT_FILES_STAGED, "hit", 1);
+    } else {
+      metrics.add(WorkerMetrics.INPUT_FILES_STAGED, "modified", 1);
+      logger.atWarning().log("Staged input %s was modified, staging it again", staged);
+      staged.delete();
+      download(context, digest, isExecutable, staged);
+    }
+    try {
+      staged.createHardLink(dst);
+    } catch (IOException e) {
+      // The copy may have been evicted in the meantime, or hit the link count limit.
+      logger.atFine().withCause(e).log("Failed to link %s, copying it instead", dst);
+      Utils.getFromFuture(cache.downloadFile(context, dst, digest));
+      dst.setExecutable(isExecutable);
+    }
+  }
+
+  private void download(
+      RemoteActionExecutionContext context, Digest digest, boolean isExecutable, Path staged)
+      throws IOException, InterruptedException {
+    staged.getParentDirectory().createDirectoryAndParents();
+    // Concurrent actions may stage the same blob; whichever rename comes last wins, and links
+    // that were made to the other copy stay valid.
+    Path temp = root.getChild(UUID.randomUUID().toString());
+    try {
+      Utils.getFromFuture(cache.downloadFile(context, temp, digest));
+      temp.setExecutable(isExecutable);
+      temp.setWritable(false);
+      temp.renameTo(staged);
+    } finally {
+      temp.delete();
+    }
+  }
+
+  private boolean isIntact(Path staged, Digest digest, boolean isExecutable) {
+    try {
+      return !staged.isWritable()
+          && staged.isExecutable() == isExecutable
+          && digestUtil.compute(staged).equals(digest);
+    } catch (IOException e) {
+      logger.atFine().withCause(e).log("Failed to check %s", staged);
+      return false;
+    }
+  }
+
+  /** Deletes the staged copies of the blob with the given hash. */
+  void evict(String hash) {
+    for (boolean isExecutable : new boolean[] {false, true}) {
+      try {
+        toPath(hash, isExecutable).delete();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to delete staged input %s", hash);
+      }
+    }
+  }
+
+  private Path toPath(String hash, boolean isExecutable) {
+    // Use the same sharding as the CAS to bypass possible folder file count limits.
+    return root.getChild(hash.substring(0, 2)).getChild(isExecutable ? hash + "-x" : hash);
+  }
+}
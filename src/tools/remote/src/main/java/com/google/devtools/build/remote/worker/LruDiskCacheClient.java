@@ -0,0 +1,215 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import build.bazel.remote.execution.v2.Digest;
+import com.google.common.flogger.GoogleLogger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.devtools.build.lib.remote.common.RemoteActionExecutionContext;
+import com.google.devtools.build.lib.remote.disk.DiskCacheClient;
+import com.google.devtools.build.lib.remote.util.DigestUtil;
+import com.google.devtools.build.lib.vfs.FileStatus;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link DiskCacheClient} that keeps the size of the CAS below a limit by deleting the least
+ * recently used blobs.
+ *
+ * <p>Blobs count as used when they are written, read or looked up. The order of the blobs that are
+ * already in the CAS when the worker starts is taken from their modification times. Blobs that are
+ * deleted while an action that needs them is being set up make it fail with a missing digest, upon
+ * which the client uploads them again.
+ */
+final class LruDiskCacheClient extends DiskCacheClient {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  private final long maxSizeBytes;
+  private final WorkerMetrics metrics;
+  private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+
+  /** The sizes of the blobs by hash, from least to most recently used. */
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Long> blobs =
+      new LinkedHashMap<>(
+          /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+
+  @GuardedBy("this")
+  private long sizeBytes;
+
+  /**
+   * Creates a client for the CAS in {@code root} and indexes the blobs that are already in it.
+   *
+   * @param maxSizeBytes the maximum total size of the blobs, or 0 to never delete any
+   */
+  LruDiskCacheClient(Path root, DigestUtil digestUtil, long maxSizeBytes, WorkerMetrics metrics)
+      throws IOException {
+    super(root, /* verifyDownloads= */ true, digestUtil);
+    this.maxSizeBytes = maxSizeBytes;
+    this.metrics = metrics;
+    loadIndex();
+  }
+
+  /** Registers a function that is called with the hash of each deleted blob. */
+  void addEvictionListener(Consumer<String> listener) {
+    evictionListeners.add(listener);
+  }
+
+  private void loadIndex() throws IOException {
+    Path casDirectory = getCasDirectory();
+    if (!casDirectory.exists()) {
+      return;
+    }
+    List<Path> existing = new ArrayList<>();
+    Map<Path, FileStatus> stats = new HashMap<>();
+    for (Path shard : casDirectory.getDirectoryEntries()) {
+      for (Path blob : shard.getDirectoryEntries()) {
+        existing.add(blob);
+        stats.put(blob, blob.stat());
+      }
+    }
+    existing.sort(Comparator.comparingLong(blob -> lastModifiedTime(stats.get(blob))));
+    for (Path blob : existing) {
+      added(blob.getBaseName(), stats.get(blob).getSize());
+    }
+    logger.atInfo().log("Found %d blobs in %s", existing.size(), casDirectory);
+  }
+
+  private static long lastModifiedTime(FileStatus stat) {
+    try {
+      return stat.getLastModifiedTime();
+    } catch (IOException e) {
+      // Treat the blob as the least recently used one.
+      return 0;
+    }
+  }
+
+  @Override
+  public boolean contains(Digest digest) {
+    boolean contains = super.contains(digest);
+    if (contains) {
+      used(digest.getHash());
+    }
+    return contains;
+  }
+
+  @Override
+  public void captureFile(Path src, Digest digest, boolean isActionCache) throws IOException {
+    super.captureFile(src, digest, isActionCache);
+    if (!isActionCache) {
+      added(digest.getHash(), digest.getSizeBytes());
+    }
+  }
+
+  @Override
+  public ListenableFuture<Void> downloadBlob(
+      RemoteActionExecutionContext context, Digest digest, OutputStream out) {
+    used(digest.getHash());
+    return super.downloadBlob(context, digest, out);
+  }
+
+  @Override
+  public ListenableFuture<Void> uploadFile(
+      RemoteActionExecutionContext context, Digest digest, Path file) {
+    return whenAdded(super.uploadFile(context, digest, file), digest);
+  }
+
+  @Override
+  public ListenableFuture<Void> uploadBlob(
+      RemoteActionExecutionContext context, Digest digest, ByteString data) {
+    return whenAdded(super.uploadBlob(context, digest, data), digest);
+  }
+
+  private ListenableFuture<Void> whenAdded(ListenableFuture<Void> upload, Digest digest) {
+    return Futures.transform(
+        upload,
+        v -> {
+          added(digest.getHash(), digest.getSizeBytes());
+          return v;
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private synchronized void used(String hash) {
+    blobs.get(hash);
+  }
+
+  private void added(String hash, long size) {
+    Map<String, Long> victims = new LinkedHashMap<>();
+    synchronized (this) {
+      if (blobs.putIfAbsent(hash, size) != null) {
+        return;
+      }
+      sizeBytes += size;
+      long evictedBytes = 0;
+      Iterator<Map.Entry<String, Long>> it = blobs.entrySet().iterator();
+      while (maxSizeBytes > 0 && sizeBytes - evictedBytes > maxSizeBytes && blobs.size() > 1) {
+        Map.Entry<String, Long> eldest = it.next();
+        victims.put(eldest.getKey(), eldest.getValue());
+        evictedBytes += eldest.getValue();
+        it.remove();
+      }
+      sizeBytes -= evictedBytes;
+      metrics.add(WorkerMetrics.CAS_SIZE, size - evictedBytes);
+    }
+    if (victims.isEmpty()) {
+      return;
+    }
+    // The files are deleted without holding the lock, as that can be slow. A blob that is uploaded
+    // again in the meantime may be deleted right after it was written, which is no different from
+    // it being evicted by a later upload.
+    List<String> evicted = new ArrayList<>(victims.size());
+    for (Map.Entry<String, Long> victim : victims.entrySet()) {
+      try {
+        toPath(victim.getKey(), /* actionResult= */ false).delete();
+        evicted.add(victim.getKey());
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to delete blob %s", victim.getKey());
+        // Keep accounting for the blob, so that it is deleted again later.
+        synchronized (this) {
+          if (blobs.putIfAbsent(victim.getKey(), victim.getValue()) == null) {
+            sizeBytes += victim.getValue();
+            metrics.add(WorkerMetrics.CAS_SIZE, victim.getValue());
+          }
+        }
+      }
+    }
+    metrics.add(WorkerMetrics.CAS_EVICTIONS, evicted.size());
+    for (String evictedHash : evicted) {
+      for (Consumer<String> listener : evictionListeners) {
+        listener.accept(evictedHash);
+      }
+    }
+  }
+
+  /** Returns the total size of the blobs in the CAS, as far as this client knows. */
+  synchronized long getSizeBytes() {
+    return sizeBytes;
+  }
+}
@@ -27,35 +27,50 @@ import com.google.devtools.build.lib.remote.util.DigestUtil;
 import com.google.devtools.build.lib.remote.util.Utils;
 import com.google.devtools.build.lib.vfs.Path;
 import java.io.IOException;
+import javax.annotation.Nullable;
 
 /** A {@link RemoteCache} backed by an {@link DiskCacheClient}. */
 class OnDiskBlobStoreCache extends RemoteCache {
 
-  public OnDiskBlobStoreCache(RemoteOptions options, Path cacheDir, DigestUtil digestUtil) {
-    super(
-        new DiskCacheClient(cacheDir, /* verifyDownloads= */ true, digestUtil),
-        options,
-        digestUtil);
+  public OnDiskBlobStoreCache(
+      RemoteOptions options, DiskCacheClient cacheClient, DigestUtil digestUtil) {
+    super(cacheClient, options, digestUtil);
   }
 
   public boolean containsKey(Digest digest) {
     return ((DiskCacheClient) cacheProtocol).contains(digest);
   }
 
+  /**
+   * Downloads the input tree with the given root to {@code rootLocation}.
+   *
+   * @param inputStagingCache if not null, files are hard-linked from it instead of being copied
+   */
   @SuppressWarnings("ProtoParseWithRegistry")
   public void downloadTree(
-      RemoteActionExecutionContext context, Digest rootDigest, Path rootLocation)
+      RemoteActionExecutionContext context,
+      Digest rootDigest,
+      Path rootLocation,
+      @Nullable InputStagingCache inputStagingCache)
       throws IOException, InterruptedException {
     rootLocation.createDirectoryAndParents();
     Directory directory =
         Directory.parseFrom(Utils.getFromFuture(downloadBlob(context, rootDigest)));
     for (FileNode file : directory.getFilesList()) {
       Path dst = rootLocation.getRelative(file.getName());
-      Utils.getFromFuture(downloadFile(context, dst, file.getDigest()));
-      dst.setExecutable(file.getIsExecutable());
+      if (inputStagingCache != null) {
+        inputStagingCache.stage(context, file.getDigest(), file.getIsExecutable(), dst);
+      } else {
+        Utils.getFromFuture(downloadFile(context, dst, file.getDigest()));
+        dst.setExecutable(file.getIsExecutable());
+      }
     }
     for (DirectoryNode child : directory.getDirectoriesList()) {
-      downloadTree(context, child.getDigest(), rootLocation.getRelative(child.getName()));
+      downloadTree(
+          context,
+          child.getDigest(),
+          rootLocation.getRelative(child.getName()),
+          inputStagingCache);
     }
   }
 
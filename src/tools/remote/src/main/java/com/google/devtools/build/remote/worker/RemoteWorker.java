@@ -50,6 +50,7 @@ import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.build.remote.worker.http.HttpCacheServerInitializer;
 import com.google.devtools.common.options.OptionsParser;
 import com.google.devtools.common.options.OptionsParsingException;
+import com.sun.net.httpserver.HttpServer;
 import io.grpc.Server;
 import io.grpc.ServerInterceptor;
 import io.grpc.ServerInterceptors;
@@ -112,8 +113,10 @@ public final class RemoteWorker {
       FileSystem fs,
       RemoteWorkerOptions workerOptions,
       OnDiskBlobStoreCache cache,
+      LruDiskCacheClient cacheClient,
       Path sandboxPath,
-      DigestUtil digestUtil)
+      DigestUtil digestUtil,
+      WorkerMetrics metrics)
       throws IOException {
     this.workerOptions = workerOptions;
     this.actionCacheServer = new ActionCacheServer(cache, digestUtil);
@@ -140,9 +143,24 @@ public final class RemoteWorker {
       ConcurrentHashMap<String, ListenableFuture<ActionResult>> operationsCache =
           new ConcurrentHashMap<>();
       FileSystemUtils.createDirectoryAndParents(workPath);
+      InputStagingCache inputStagingCache = null;
+      if (workerOptions.hardlinkInputs) {
+        Path inputsPath = workPath.getRelative("inputs");
+        // Staged copies that were made by an earlier worker may have been evicted from the CAS.
+        inputsPath.deleteTree();
+        inputStagingCache = new InputStagingCache(inputsPath, cache, digestUtil, metrics);
+        cacheClient.addEvictionListener(inputStagingCache::evict);
+      }
       execServer =
           new ExecutionServer(
-              workPath, sandboxPath, workerOptions, cache, operationsCache, digestUtil);
+              workPath,
+              sandboxPath,
+              workerOptions,
+              cache,
+              operationsCache,
+              digestUtil,
+              metrics,
+              inputStagingCache);
     } else {
       execServer = null;
     }
@@ -258,13 +276,24 @@ public final class RemoteWorker {
     Path casPath =
         remoteWorkerOptions.casPath != null ? fs.getPath(remoteWorkerOptions.casPath) : null;
     DigestUtil digestUtil = new DigestUtil(fs.getDigestFunction());
-    OnDiskBlobStoreCache cache = new OnDiskBlobStoreCache(remoteOptions, casPath, digestUtil);
+    WorkerMetrics metrics = new WorkerMetrics();
+    LruDiskCacheClient cacheClient =
+        new LruDiskCacheClient(
+            casPath, digestUtil, remoteWorkerOptions.casMaxSizeMb * 1024 * 1024, metrics);
+    OnDiskBlobStoreCache cache = new OnDiskBlobStoreCache(remoteOptions, cacheClient, digestUtil);
     ListeningScheduledExecutorService retryService =
         MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(1));
-    RemoteWorker worker = new RemoteWorker(fs, remoteWorkerOptions, cache, sandboxPath, digestUtil);
+    RemoteWorker worker =
+        new RemoteWorker(
+            fs, remoteWorkerOptions, cache, cacheClient, sandboxPath, digestUtil, metrics);
 
     final Server server = worker.startServer();
 
+    HttpServer metricsServer = null;
+    if (remoteWorkerOptions.metricsPort != 0) {
+      metricsServer = metrics.startServer(remoteWorkerOptions.metricsPort);
+    }
+
     EventLoopGroup bossGroup = null;
     EventLoopGroup workerGroup = null;
     Channel ch = null;
@@ -292,6 +321,9 @@ public final class RemoteWorker {
     }
 
     retryService.shutdownNow();
+    if (metricsServer != null) {
+      metricsServer.stop(/* delay= */ 0);
+    }
     if (bossGroup != null) {
       bossGroup.shutdownGracefully();
     }
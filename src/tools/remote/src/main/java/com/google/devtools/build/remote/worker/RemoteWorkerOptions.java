@@ -138,6 +138,53 @@ public class RemoteWorkerOptions extends OptionsBase {
               + " are not allowed.")
   public int jobs;
 
+  @Option(
+      name = "max_queued_actions",
+      defaultValue = "100000",
+      category = "build_worker",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "The maximum number of actions that wait for one of the --jobs slots. Further execution "
+              + "requests are rejected with RESOURCE_EXHAUSTED until the queue drains.")
+  public int maxQueuedActions;
+
+  @Option(
+      name = "cas_max_size_mb",
+      defaultValue = "0",
+      category = "build_worker",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "The maximum size of the blobs in --cas_path, in MiB. The least recently used blobs are "
+              + "deleted when it is exceeded. 0 means no limit.")
+  public long casMaxSizeMb;
+
+  @Option(
+      name = "hardlink_inputs",
+      defaultValue = "false",
+      category = "build_worker",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "Stage the input files of actions by hard-linking read-only copies that are kept in "
+              + "--work_path, instead of copying every input from the CAS for every action. "
+              + "Staged copies are checked against their digest before they are reused, but "
+              + "actions that run concurrently share them, so don't use this for untrusted "
+              + "actions.")
+  public boolean hardlinkInputs;
+
+  @Option(
+      name = "metrics_port",
+      defaultValue = "0",
+      category = "build_worker",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "Serves throughput metrics of the worker in the Prometheus text format at /metrics on "
+              + "the given port. 0 disables the endpoint.")
+  public int metricsPort;
+
   @Option(
       name = "http_listen_port",
       defaultValue = "0",
@@ -0,0 +1,200 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.GoogleLogger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput metrics of the remote worker, served in the Prometheus text exposition format.
+ *
+ * <p>Each metric has at most one label. Values are only ever added to, so that they can be updated
+ * from any thread without locking.
+ */
+final class WorkerMetrics {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  /** A counter or gauge. */
+  static final class Metric {
+    private final String name;
+    private final String type;
+    private final String help;
+    private final String label;
+    private final boolean seconds;
+
+    private Metric(String name, String type, String help, String label, boolean seconds) {
+      this.name = name;
+      this.type = type;
+      this.help = help;
+      this.label = label;
+      this.seconds = seconds;
+    }
+  }
+
+  static final Metric ACTIONS_QUEUED =
+      new Metric(
+          "remote_worker_actions_queued",
+          "gauge",
+          "Actions waiting to be executed.",
+          "platform",
+          false);
+  static final Metric ACTIONS_RUNNING =
+      new Metric(
+          "remote_worker_actions_running", "gauge", "Actions being executed.", "platform", false);
+  static final Metric ACTIONS =
+      new Metric(
+          "remote_worker_actions_total",
+          "counter",
+          "Actions that finished executing.",
+          "result",
+          false);
+  static final Metric ACTIONS_REJECTED =
+      new Metric(
+          "remote_worker_actions_rejected_total",
+          "counter",
+          "Execution requests rejected because the queue was full.",
+          "",
+          false);
+  static final Metric QUEUE_TIME =
+      new Metric(
+          "remote_worker_action_queue_seconds_total",
+          "counter",
+          "Time actions spent waiting to run.",
+          "",
+          true);
+  static final Metric EXECUTION_TIME =
+      new Metric(
+          "remote_worker_action_execution_seconds_total",
+          "counter",
+          "Time spent staging inputs, running commands and uploading outputs.",
+          "",
+          true);
+  static final Metric INPUT_FILES_STAGED =
+      new Metric(
+          "remote_worker_input_files_staged_total",
+          "counter",
+          "Input files hard-linked into execution roots, by whether an intact copy existed.",
+          "result",
+          false);
+  static final Metric CAS_SIZE =
+      new Metric(
+          "remote_worker_cas_size_bytes", "gauge", "Size of the blobs in the CAS.", "", false);
+  static final Metric CAS_EVICTIONS =
+      new Metric(
+          "remote_worker_cas_evictions_total",
+          "counter",
+          "Blobs deleted to keep the CAS below its size limit.",
+          "",
+          false);
+
+  private static final ImmutableList<Metric> ALL =
+      ImmutableList.of(
+          ACTIONS_QUEUED,
+          ACTIONS_RUNNING,
+          ACTIONS,
+          ACTIONS_REJECTED,
+          QUEUE_TIME,
+          EXECUTION_TIME,
+          INPUT_FILES_STAGED,
+          CAS_SIZE,
+          CAS_EVICTIONS);
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  /** The values of each metric, keyed by the value of its label. */
+  private final Map<Metric, Map<String, AtomicLong>> values = new ConcurrentHashMap<>();
+
+  /** Adds {@code delta} to the value of an unlabeled metric. */
+  void add(Metric metric, long delta) {
+    add(metric, "", delta);
+  }
+
+  /**
+   * Adds {@code delta} to the value of the metric with the given label value. Metrics counting
+   * seconds take nanoseconds.
+   */
+  void add(Metric metric, String labelValue, long delta) {
+    values
+        .computeIfAbsent(metric, k -> new ConcurrentSkipListMap<>())
+        .computeIfAbsent(labelValue, k -> new AtomicLong())
+        .addAndGet(delta);
+  }
+
+  /** Returns the metrics in the Prometheus text exposition format. */
+  String format() {
+    StringBuilder out = new StringBuilder();
+    for (Metric metric : ALL) {
+      out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+      out.append("# TYPE ").append(metric.name).append(' ').append(metric.type).append('\n');
+      Map<String, AtomicLong> metricValues = values.getOrDefault(metric, ImmutableMap.of());
+      if (metricValues.isEmpty() && metric.label.isEmpty()) {
+        out.append(metric.name).append(" 0\n");
+      }
+      for (Map.Entry<String, AtomicLong> entry : metricValues.entrySet()) {
+        out.append(metric.name);
+        if (!metric.label.isEmpty()) {
+          out.append('{')
+              .append(metric.label)
+              .append("=\"")
+              .append(escape(entry.getKey()))
+              .append("\"}");
+        }
+        long value = entry.getValue().get();
+        out.append(' ');
+        if (metric.seconds) {
+          out.append(value / NANOS_PER_SECOND);
+        } else {
+          out.append(value);
+        }
+        out.append('\n');
+      }
+    }
+    return out.toString();
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /** Starts serving the metrics at {@code /metrics} on the given port. */
+  HttpServer startServer(int port) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(port), /* backlog= */ 0);
+    server.createContext("/metrics", this::handle);
+    server.start();
+    logger.atInfo().log("Serving metrics on port %d", port);
+    return server;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    byte[] body = format().getBytes(UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
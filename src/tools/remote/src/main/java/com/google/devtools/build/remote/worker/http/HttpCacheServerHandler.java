@@ -65,6 +65,8 @@ public class HttpCacheServerHandler extends SimpleChannelInboundHandler<FullHttp
       handleGet(ctx, request);
     } else if (request.method().equals(HttpMethod.PUT)) {
       handlePut(ctx, request);
+    } else if (request.method().equals(HttpMethod.HEAD)) {
+      handleHead(ctx, request);
     } else {
       sendError(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
     }
@@ -101,6 +103,27 @@ public class HttpCacheServerHandler extends SimpleChannelInboundHandler<FullHttp
     }
   }
 
+  private void handleHead(ChannelHandlerContext ctx, FullHttpRequest request) {
+    if (!isUriValid(request.uri())) {
+      sendError(ctx, request, HttpResponseStatus.BAD_REQUEST);
+      return;
+    }
+
+    byte[] contents = cache.get(request.uri());
+
+    // Responses to HEAD requests must not have a body.
+    FullHttpResponse response =
+        new DefaultFullHttpResponse(
+            HttpVersion.HTTP_1_1,
+            contents != null ? HttpResponseStatus.OK : HttpResponseStatus.NOT_FOUND);
+    HttpUtil.setContentLength(response, contents != null ? contents.length : 0);
+    ChannelFuture lastContentFuture = ctx.writeAndFlush(response);
+
+    if (!HttpUtil.isKeepAlive(request)) {
+      lastContentFuture.addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
   private void handlePut(ChannelHandlerContext ctx, FullHttpRequest request) {
     if (!request.decoderResult().isSuccess()) {
       sendError(ctx, request, HttpResponseStatus.INTERNAL_SERVER_ERROR);
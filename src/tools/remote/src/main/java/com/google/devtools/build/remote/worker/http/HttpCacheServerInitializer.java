@@ -14,21 +14,66 @@
 
 package com.google.devtools.build.remote.worker.http;
 
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
 
-/** The initializer used by the HttpCacheServerHandler. */
+/**
+ * The initializer used by the HttpCacheServerHandler.
+ *
+ * <p>Connections speak HTTP/1.1, or HTTP/2 (h2c) if the client sends the HTTP/2 connection preface
+ * right away. Upgrading an HTTP/1.1 connection to HTTP/2 is not supported.
+ */
 public class HttpCacheServerInitializer extends ChannelInitializer<SocketChannel> {
-  private final HttpCacheServerHandler handler = new HttpCacheServerHandler();
+  private static final int MAX_CONTENT_LENGTH = 100 * 1024 * 1024;
+
+  private final HttpCacheServerHandler handler;
+
+  public HttpCacheServerInitializer() {
+    this(new HttpCacheServerHandler());
+  }
+
+  @VisibleForTesting
+  public HttpCacheServerInitializer(HttpCacheServerHandler handler) {
+    this.handler = handler;
+  }
 
   @Override
   protected void initChannel(SocketChannel ch) {
     ChannelPipeline p = ch.pipeline();
-    p.addLast(new HttpServerCodec());
-    p.addLast(new HttpObjectAggregator(100 * 1024 * 1024));
+    HttpServerCodec httpCodec = new HttpServerCodec();
+    p.addLast(
+        new CleartextHttp2ServerUpgradeHandler(
+            httpCodec,
+            new HttpServerUpgradeHandler(httpCodec, /* upgradeCodecFactory= */ protocol -> null),
+            new ChannelInitializer<Channel>() {
+              @Override
+              protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(Http2FrameCodecBuilder.forServer().build());
+                ch.pipeline().addLast(new Http2MultiplexHandler(new Http2StreamInitializer()));
+              }
+            }));
+    p.addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
     p.addLast(handler);
   }
+
+  /** Serves each HTTP/2 stream like an HTTP/1.1 request. */
+  private final class Http2StreamInitializer extends ChannelInitializer<Http2StreamChannel> {
+    @Override
+    protected void initChannel(Http2StreamChannel ch) {
+      ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(/* isServer= */ true));
+      ch.pipeline().addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+      ch.pipeline().addLast(handler);
+    }
+  }
 }
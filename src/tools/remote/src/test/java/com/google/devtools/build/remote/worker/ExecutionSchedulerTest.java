@@ -0,0 +1,100 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Status;
+import io.grpc.StatusException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ExecutionScheduler}. */
+@RunWith(JUnit4.class)
+public class ExecutionSchedulerTest {
+  private final WorkerMetrics metrics = new WorkerMetrics();
+  private final CountDownLatch blockerStarted = new CountDownLatch(1);
+  private final CountDownLatch releaseBlocker = new CountDownLatch(1);
+
+  /** Occupies the only job of {@code scheduler} until {@link #releaseBlocker} is counted down. */
+  private ListenableFuture<String> block(ExecutionScheduler scheduler) throws Exception {
+    ListenableFuture<String> blocker =
+        scheduler.submit(
+            "blocker",
+            () -> {
+              blockerStarted.countDown();
+              releaseBlocker.await();
+              return "blocker";
+            });
+    blockerStarted.await();
+    return blocker;
+  }
+
+  @Test
+  public void takesTurnsBetweenPlatforms() throws Exception {
+    ExecutionScheduler scheduler =
+        new ExecutionScheduler(/* jobs= */ 1, /* maxQueuedActions= */ 10, metrics);
+    ListenableFuture<String> blocker = block(scheduler);
+    List<String> started = new ArrayList<>();
+    List<ListenableFuture<String>> futures = new ArrayList<>();
+    for (String action : new String[] {"a1", "a2", "a3", "b1", "b2"}) {
+      String platform = action.substring(0, 1);
+      futures.add(
+          scheduler.submit(
+              platform,
+              () -> {
+                synchronized (started) {
+                  started.add(action);
+                }
+                return action;
+              }));
+    }
+
+    releaseBlocker.countDown();
+    blocker.get();
+    for (ListenableFuture<String> future : futures) {
+      future.get();
+    }
+
+    assertThat(started).containsExactly("a1", "b1", "a2", "b2", "a3").inOrder();
+  }
+
+  @Test
+  public void rejectsActionsBeyondQueueLimit() throws Exception {
+    ExecutionScheduler scheduler =
+        new ExecutionScheduler(/* jobs= */ 1, /* maxQueuedActions= */ 2, metrics);
+    ListenableFuture<String> blocker = block(scheduler);
+    ListenableFuture<String> first = scheduler.submit("a", () -> "first");
+    ListenableFuture<String> second = scheduler.submit("b", () -> "second");
+
+    StatusException e =
+        assertThrows(StatusException.class, () -> scheduler.submit("a", () -> "third"));
+
+    assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    assertThat(metrics.format()).contains("\nremote_worker_actions_rejected_total 1\n");
+    releaseBlocker.countDown();
+    assertThat(blocker.get()).isEqualTo("blocker");
+    assertThat(first.get()).isEqualTo("first");
+    assertThat(second.get()).isEqualTo("second");
+    // Actions are accepted again once the queue drained.
+    assertThat(scheduler.submit("a", () -> "fourth").get()).isEqualTo("fourth");
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import build.bazel.remote.execution.v2.Digest;
+import com.google.devtools.build.lib.clock.JavaClock;
+import com.google.devtools.build.lib.remote.common.RemoteActionExecutionContext;
+import com.google.devtools.build.lib.remote.disk.DiskCacheClient;
+import com.google.devtools.build.lib.remote.options.RemoteOptions;
+import com.google.devtools.build.lib.remote.util.DigestUtil;
+import com.google.devtools.build.lib.remote.util.TracingMetadataUtils;
+import com.google.devtools.build.lib.remote.util.Utils;
+import com.google.devtools.build.lib.vfs.DigestHashFunction;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import com.google.devtools.common.options.Options;
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link InputStagingCache}. */
+@RunWith(JUnit4.class)
+public class InputStagingCacheTest {
+  private final DigestUtil digestUtil = new DigestUtil(DigestHashFunction.SHA256);
+  private final RemoteActionExecutionContext context =
+      RemoteActionExecutionContext.create(
+          TracingMetadataUtils.buildMetadata("none", "none", "action-id", null));
+  private final WorkerMetrics metrics = new WorkerMetrics();
+  private Path execRoot;
+  private OnDiskBlobStoreCache cache;
+  private InputStagingCache stagingCache;
+
+  @Before
+  public final void setUp() throws Exception {
+    InMemoryFileSystem fs = new InMemoryFileSystem(new JavaClock(), DigestHashFunction.SHA256);
+    Path cacheRoot = fs.getPath("/cache");
+    cacheRoot.createDirectoryAndParents();
+    execRoot = fs.getPath("/exec");
+    execRoot.createDirectoryAndParents();
+    cache =
+        new OnDiskBlobStoreCache(
+            Options.getDefaults(RemoteOptions.class),
+            new DiskCacheClient(cacheRoot, /* verifyDownloads= */ true, digestUtil),
+            digestUtil);
+    stagingCache = new InputStagingCache(fs.getPath("/inputs"), cache, digestUtil, metrics);
+  }
+
+  private Digest upload(String contents) throws Exception {
+    ByteString data = ByteString.copyFromUtf8(contents);
+    Digest digest = digestUtil.compute(data.toByteArray());
+    Utils.getFromFuture(cache.uploadBlob(context, digest, data));
+    return digest;
+  }
+
+  private Path stage(Digest digest, boolean isExecutable, String name) throws Exception {
+    Path dst = execRoot.getChild(name);
+    stagingCache.stage(context, digest, isExecutable, dst);
+    return dst;
+  }
+
+  private void assertStaged(String result, int count) {
+    assertThat(metrics.format())
+        .contains("\nremote_worker_input_files_staged_total{result=\"" + result + "\"} " + count);
+  }
+
+  @Test
+  public void reusesStagedCopy() throws Exception {
+    Digest digest = upload("contents");
+
+    Path first = stage(digest, /* isExecutable= */ false, "first");
+    Path second = stage(digest, /* isExecutable= */ false, "second");
+
+    assertThat(FileSystemUtils.readContentAsLatin1(first)).isEqualTo("contents");
+    assertThat(FileSystemUtils.readContentAsLatin1(second)).isEqualTo("contents");
+    assertThat(first.isWritable()).isFalse();
+    assertThat(first.isExecutable()).isFalse();
+    assertStaged("miss", 1);
+    assertStaged("hit", 1);
+  }
+
+  @Test
+  public void keepsExecutableCopiesApart() throws Exception {
+    Digest digest = upload("contents");
+
+    Path plain = stage(digest, /* isExecutable= */ false, "plain");
+    Path executable = stage(digest, /* isExecutable= */ true, "executable");
+
+    assertThat(plain.isExecutable()).isFalse();
+    assertThat(executable.isExecutable()).isTrue();
+    assertStaged("miss", 2);
+  }
+
+  @Test
+  public void evictionInvalidatesStagedCopies() throws Exception {
+    Digest digest = upload("contents");
+    stage(digest, /* isExecutable= */ false, "first");
+    stage(digest, /* isExecutable= */ true, "first-x");
+
+    stagingCache.evict(digest.getHash());
+    Path second = stage(digest, /* isExecutable= */ false, "second");
+
+    assertThat(FileSystemUtils.readContentAsLatin1(second)).isEqualTo("contents");
+    assertStaged("miss", 3);
+  }
+
+  @Test
+  public void restagesModifiedCopy() throws Exception {
+    Digest digest = upload("contents");
+    Path first = stage(digest, /* isExecutable= */ false, "first");
+    // An action makes its input writable and overwrites it, which also changes the staged copy.
+    first.setWritable(true);
+    FileSystemUtils.writeContentAsLatin1(first, "modified");
+
+    Path second = stage(digest, /* isExecutable= */ false, "second");
+
+    assertThat(FileSystemUtils.readContentAsLatin1(second)).isEqualTo("contents");
+    assertThat(second.isWritable()).isFalse();
+    assertStaged("modified", 1);
+  }
+
+  @Test
+  public void restagesCopyMadeWritable() throws Exception {
+    Digest digest = upload("contents");
+    stage(digest, /* isExecutable= */ false, "first").setWritable(true);
+
+    Path second = stage(digest, /* isExecutable= */ false, "second");
+
+    assertThat(second.isWritable()).isFalse();
+    assertStaged("modified", 1);
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright 2021 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import build.bazel.remote.execution.v2.Digest;
+import com.google.devtools.build.lib.clock.JavaClock;
+import com.google.devtools.build.lib.remote.common.RemoteActionExecutionContext;
+import com.google.devtools.build.lib.remote.util.DigestUtil;
+import com.google.devtools.build.lib.remote.util.TracingMetadataUtils;
+import com.google.devtools.build.lib.remote.util.Utils;
+import com.google.devtools.build.lib.vfs.DigestHashFunction;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LruDiskCacheClient}. */
+@RunWith(JUnit4.class)
+public class LruDiskCacheClientTest {
+  private final DigestUtil digestUtil = new DigestUtil(DigestHashFunction.SHA256);
+  private final RemoteActionExecutionContext context =
+      RemoteActionExecutionContext.create(
+          TracingMetadataUtils.buildMetadata("none", "none", "action-id", null));
+  private final WorkerMetrics metrics = new WorkerMetrics();
+  private final List<String> evicted = new ArrayList<>();
+  private Path root;
+
+  @Before
+  public final void setUp() throws Exception {
+    root = new InMemoryFileSystem(new JavaClock(), DigestHashFunction.SHA256).getPath("/cache");
+    root.createDirectoryAndParents();
+  }
+
+  private LruDiskCacheClient newClient(long maxSizeBytes) throws Exception {
+    LruDiskCacheClient client = new LruDiskCacheClient(root, digestUtil, maxSizeBytes, metrics);
+    client.addEvictionListener(evicted::add);
+    return client;
+  }
+
+  private Digest upload(LruDiskCacheClient client, String contents) throws Exception {
+    ByteString data = ByteString.copyFromUtf8(contents);
+    Digest digest = digestUtil.compute(data.toByteArray());
+    Utils.getFromFuture(client.uploadBlob(context, digest, data));
+    return digest;
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedBlobs() throws Exception {
+    LruDiskCacheClient client = newClient(/* maxSizeBytes= */ 10);
+    Digest a = upload(client, "aaaa");
+    Digest b = upload(client, "bbbb");
+    assertThat(client.contains(a)).isTrue();
+
+    Digest c = upload(client, "cccc");
+
+    assertThat(evicted).containsExactly(b.getHash());
+    assertThat(client.contains(b)).isFalse();
+    assertThat(client.contains(a)).isTrue();
+    assertThat(client.contains(c)).isTrue();
+  }
+
+  @Test
+  public void evictsAsManyBlobsAsNeeded() throws Exception {
+    LruDiskCacheClient client = newClient(/* maxSizeBytes= */ 10);
+    Digest a = upload(client, "aaaa");
+    Digest b = upload(client, "bbbb");
+
+    Digest c = upload(client, "cccccccc");
+
+    assertThat(evicted).containsExactly(a.getHash(), b.getHash()).inOrder();
+    assertThat(client.contains(c)).isTrue();
+    assertThat(client.getSizeBytes()).isEqualTo(8);
+  }
+
+  @Test
+  public void keepsBlobLargerThanLimit() throws Exception {
+    LruDiskCacheClient client = newClient(/* maxSizeBytes= */ 2);
+
+    Digest a = upload(client, "aaaa");
+
+    assertThat(evicted).isEmpty();
+    assertThat(client.contains(a)).isTrue();
+    assertThat(client.getSizeBytes()).isEqualTo(4);
+  }
+
+  @Test
+  public void accountsForSizeOfBlobs() throws Exception {
+    LruDiskCacheClient client = newClient(/* maxSizeBytes= */ 10);
+    upload(client, "aaaa");
+    upload(client, "bbbb");
+    // Uploading a blob again doesn't count it twice.
+    upload(client, "aaaa");
+    assertThat(client.getSizeBytes()).isEqualTo(8);
+
+    upload(client, "ccc");
+
+    assertThat(client.getSizeBytes()).isEqualTo(7);
+    String metricsText = metrics.format();
+    assertThat(metricsText).contains("\nremote_worker_cas_size_bytes 7\n");
+    assertThat(metricsText).contains("\nremote_worker_cas_evictions_total 1\n");
+  }
+
+  @Test
+  public void unlimitedSizeNeverEvicts() throws Exception {
+    LruDiskCacheClient client = newClient(/* maxSizeBytes= */ 0);
+    for (int i = 0; i < 10; i++) {
+      upload(client, "blob" + i);
+    }
+
+    assertThat(evicted).isEmpty();
+    assertThat(client.getSizeBytes()).isEqualTo(50);
+  }
+
+  @Test
+  public void indexesExistingBlobsByModificationTime() throws Exception {
+    Digest older = writeExisting("older", /* mtime= */ 1000);
+    Digest newer = writeExisting("newer", /* mtime= */ 2000);
+
+    LruDiskCacheClient client = newClient(/* maxSizeBytes= */ 12);
+    assertThat(client.getSizeBytes()).isEqualTo(10);
+    upload(client, "blob");
+
+    assertThat(evicted).containsExactly(older.getHash());
+    assertThat(client.contains(newer)).isTrue();
+    assertThat(client.getSizeBytes()).isEqualTo(9);
+  }
+
+  private Digest writeExisting(String contents, long mtime) throws Exception {
+    Digest digest = digestUtil.computeAsUtf8(contents);
+    String hash = digest.getHash();
+    Path blob = root.getChild("cas").getChild(hash.substring(0, 2)).getChild(hash);
+    blob.getParentDirectory().createDirectoryAndParents();
+    FileSystemUtils.writeContentAsLatin1(blob, contents);
+    blob.setLastModifiedTime(mtime);
+    return digest;
+  }
+}
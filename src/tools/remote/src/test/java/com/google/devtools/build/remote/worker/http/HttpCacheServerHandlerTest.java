@@ -16,6 +16,14 @@ package com.google.devtools.build.remote.worker.http;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.concurrent.ConcurrentHashMap;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -96,4 +104,28 @@ public class HttpCacheServerHandlerTest {
     assertThat(HttpCacheServerHandler.isUriValid("http://localhost:8080/ac/823rhf&*%OL%_^"))
         .isFalse();
   }
+
+  @Test
+  public void testHead() {
+    String uri = "/cas/e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    ConcurrentHashMap<String, byte[]> cache = new ConcurrentHashMap<>();
+    cache.put(uri, new byte[] {1, 2, 3});
+    EmbeddedChannel ch = new EmbeddedChannel(new HttpCacheServerHandler(cache));
+
+    ch.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.HEAD, uri));
+    FullHttpResponse response = ch.readOutbound();
+
+    assertThat(response.status()).isEqualTo(HttpResponseStatus.OK);
+    assertThat(HttpUtil.getContentLength(response)).isEqualTo(3);
+    assertThat(response.content().readableBytes()).isEqualTo(0);
+    response.release();
+
+    String missingUri = uri.replace("/cas/", "/ac/");
+    ch.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.HEAD, missingUri));
+    response = ch.readOutbound();
+
+    assertThat(response.status()).isEqualTo(HttpResponseStatus.NOT_FOUND);
+    assertThat(response.content().readableBytes()).isEqualTo(0);
+    response.release();
+  }
 }
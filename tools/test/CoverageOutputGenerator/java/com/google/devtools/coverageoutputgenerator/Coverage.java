@@ -19,25 +19,36 @@ import static java.util.Arrays.asList;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
 
 class Coverage {
   private final TreeMap<String, SourceFileCoverage> sourceFiles;
+  // Source files whose coverage was created by this instance when merging, and which can hence be
+  // merged into in place. Others may still be referenced by the inputs they were added from.
+  private final Set<String> ownedSourceFiles;
 
   Coverage() {
     sourceFiles = new TreeMap<>();
+    ownedSourceFiles = new HashSet<>();
   }
 
   void add(SourceFileCoverage input) {
     String sourceFilename = input.sourceFileName();
-    if (sourceFiles.containsKey(sourceFilename)) {
-      SourceFileCoverage old = sourceFiles.get(sourceFilename);
-      sourceFiles.put(sourceFilename, SourceFileCoverage.merge(old, input));
-    } else {
+    SourceFileCoverage old = sourceFiles.get(sourceFilename);
+    if (old == null) {
       sourceFiles.put(sourceFilename, input);
+      return;
+    }
+    // A source file such as a common header can be covered by thousands of inputs. Copy it once
+    // and merge the rest into the copy, rather than copying the whole coverage on every merge.
+    if (ownedSourceFiles.add(sourceFilename)) {
+      old = new SourceFileCoverage(old);
+      sourceFiles.put(sourceFilename, old);
     }
+    old.mergeFrom(input);
   }
 
   static Coverage merge(Coverage... coverages) {
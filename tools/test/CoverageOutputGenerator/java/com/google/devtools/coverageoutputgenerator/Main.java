@@ -311,7 +311,10 @@ public class Main {
     for (File file : files) {
       try {
         logger.log(Level.INFO, "Parsing file " + file);
-        List<SourceFileCoverage> sourceFilesCoverage = parser.parse(new FileInputStream(file));
+        List<SourceFileCoverage> sourceFilesCoverage;
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+          sourceFilesCoverage = parser.parse(inputStream);
+        }
         for (SourceFileCoverage sourceFileCoverage : sourceFilesCoverage) {
           coverage.add(sourceFileCoverage);
         }
@@ -20,6 +20,7 @@ import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.Sets;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -164,6 +165,38 @@ class SourceFileCoverage {
     return merged;
   }
 
+  /**
+   * Merges the coverage of {@code other} into this {@link SourceFileCoverage}, with the same result
+   * as {@link #merge}, but without copying the coverage accumulated so far.
+   *
+   * <p>Assumes both have the same {@code sourceFileName}. {@code other} is left unchanged.
+   */
+  void mergeFrom(SourceFileCoverage other) {
+    assert sourceFileName.equals(other.sourceFileName);
+    lineNumbers.putAll(other.lineNumbers);
+    other.functionsExecution.forEach(
+        (name, count) -> functionsExecution.merge(name, count, Long::sum));
+    for (int line : other.branches.keySet()) {
+      List<BranchCoverage> thisBranches = branches.get(line);
+      List<BranchCoverage> otherBranches = other.branches.get(line);
+      if (thisBranches.isEmpty()) {
+        thisBranches.addAll(otherBranches);
+      } else if (thisBranches.size() == otherBranches.size()) {
+        // Same as mergeBranches: conflicting records on the RHS are dropped.
+        for (int i = 0; i < thisBranches.size(); i++) {
+          BranchCoverage b1 = thisBranches.get(i);
+          BranchCoverage b2 = otherBranches.get(i);
+          if (b1.lineNumber() == b2.lineNumber()
+              && b1.blockNumber().equals(b2.blockNumber())
+              && b1.branchNumber().equals(b2.branchNumber())) {
+            thisBranches.set(i, BranchCoverage.merge(b1, b2));
+          }
+        }
+      }
+    }
+    other.lines.forEach((line, coverage) -> lines.merge(line, coverage, LineCoverage::merge));
+  }
+
   String sourceFileName() {
     return sourceFileName;
   }
@@ -67,6 +67,23 @@ public class CoverageTest {
     assertMergedSourceFile(merged, linesExecution1, linesExecution2);
   }
 
+  @Test
+  public void testMergingLeavesInputsUnchanged() throws Exception {
+    int[] linesExecution1 = createLinesExecution1();
+    int[] linesExecution2 = createLinesExecution2();
+    SourceFileCoverage sourceFileCoverage1 = createSourceFile1(linesExecution1);
+    SourceFileCoverage sourceFileCoverage2 = createSourceFile2(linesExecution2);
+    Coverage first = Coverage.create(sourceFileCoverage1);
+
+    Coverage merged =
+        Coverage.merge(first, Coverage.create(sourceFileCoverage2), Coverage.create());
+
+    assertMergedSourceFile(
+        Iterables.getOnlyElement(merged.getAllSourceFiles()), linesExecution1, linesExecution2);
+    assertTracefile1(Iterables.getOnlyElement(first.getAllSourceFiles()));
+    assertTracefile1(sourceFileCoverage1);
+  }
+
   @Test
   public void testTwoTracefiles() throws Exception {
     SourceFileCoverage sourceFileCoverage1 = createSourceFile1(createLinesExecution1());